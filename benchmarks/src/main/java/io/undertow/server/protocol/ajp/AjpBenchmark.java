@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.protocol.ajp;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xnio.Buffers;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.Pool;
+import org.xnio.XnioIoThread;
+import org.xnio.XnioWorker;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.StreamSinkConduit;
+import org.xnio.conduits.WriteReadyHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the AJP request parser and response conduit, using the headers a browser request forwarded by
+ * mod_jk or mod_proxy_ajp typically carries.
+ * <p/>
+ * The response is written to a conduit that discards the data, so only the cost of framing the response is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AjpBenchmark {
+
+    private static final AjpRequestParser PARSER = new AjpRequestParser("UTF-8", true);
+
+    @Param({"1024", "65536"})
+    private int responseSize;
+
+    @Param({"8192", "65536"})
+    private int maxPacketSize;
+
+    private ByteBuffer request;
+    private ByteBuffer response;
+    private final Pool<ByteBuffer> pool = new ByteBufferSlicePool(16 * 1024, 16 * 1024 * 20);
+    private final DiscardingConduit sink = new DiscardingConduit();
+
+    @Setup
+    public void setup() {
+        request = createRequest();
+        response = ByteBuffer.allocateDirect(responseSize);
+        while (response.hasRemaining()) {
+            response.put((byte) 'a');
+        }
+        response.flip();
+    }
+
+    @Benchmark
+    public HttpServerExchange parseRequest() throws IOException {
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        PARSER.parse(request.duplicate(), new AjpRequestParseState(), exchange);
+        return exchange;
+    }
+
+    @Benchmark
+    public long writeResponse() throws IOException {
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/html; charset=UTF-8");
+        exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, responseSize);
+        exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+        exchange.getResponseHeaders().put(Headers.SET_COOKIE, "JSESSIONID=1A530637289A03B07199A44E8D531427; Path=/app; HttpOnly");
+        AjpServerResponseConduit conduit = new AjpServerResponseConduit(sink, pool, exchange, null, false, maxPacketSize);
+        long written = conduit.writeFinal(response.duplicate());
+        conduit.flush();
+        return written;
+    }
+
+    private static ByteBuffer createRequest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(AjpRequestParser.FORWARD_REQUEST);
+        out.write(2); //GET
+        putString(out, "HTTP/1.1");
+        putString(out, "/app/products/index.html");
+        putString(out, "192.168.10.25");
+        putString(out, "192.168.10.25");
+        putString(out, "www.example.com");
+        putInt(out, 80);
+        out.write(0); //is_ssl
+
+        putInt(out, 9);
+        putHeader(out, 0x0B, "www.example.com"); //host
+        putHeader(out, 0x0E, "Mozilla/5.0 (X11; Linux x86_64; rv:31.0) Gecko/20100101 Firefox/31.0"); //user-agent
+        putHeader(out, 0x01, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"); //accept
+        putHeader(out, 0x04, "en-US,en;q=0.5"); //accept-language
+        putHeader(out, 0x03, "gzip, deflate"); //accept-encoding
+        putHeader(out, 0x0D, "http://www.example.com/app/"); //referer
+        putHeader(out, 0x09, "JSESSIONID=1A530637289A03B07199A44E8D531427; lang=en"); //cookie
+        putHeader(out, 0x06, "keep-alive"); //connection
+        putString(out, "X-Forwarded-For");
+        putString(out, "10.1.2.3");
+
+        out.write(0x05); //query string
+        putString(out, "category=books&page=2");
+        out.write(0x06); //route
+        putString(out, "node1");
+        out.write(0xFF);
+
+        byte[] body = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(body.length + 4);
+        buffer.put((byte) 0x12);
+        buffer.put((byte) 0x34);
+        buffer.put((byte) ((body.length >> 8) & 0xFF));
+        buffer.put((byte) (body.length & 0xFF));
+        buffer.put(body);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void putInt(final ByteArrayOutputStream out, final int value) {
+        out.write((value >> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    private static void putString(final ByteArrayOutputStream out, final String value) {
+        putInt(out, value.length());
+        for (int i = 0; i < value.length(); ++i) {
+            out.write(value.charAt(i));
+        }
+        out.write(0);
+    }
+
+    private static void putHeader(final ByteArrayOutputStream out, final int code, final String value) {
+        out.write(0xA0);
+        out.write(code);
+        putString(out, value);
+    }
+
+    /**
+     * A conduit that accepts and discards everything written to it
+     */
+    private static final class DiscardingConduit implements StreamSinkConduit {
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offs, final int len) throws IOException {
+            long total = Buffers.remaining(srcs, offs, len);
+            for (int i = offs; i < offs + len; ++i) {
+                srcs[i].position(srcs[i].limit());
+            }
+            return total;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            int remaining = src.remaining();
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public int writeFinal(final ByteBuffer src) throws IOException {
+            return write(src);
+        }
+
+        @Override
+        public long writeFinal(final ByteBuffer[] srcs, final int offs, final int len) throws IOException {
+            return write(srcs, offs, len);
+        }
+
+        @Override
+        public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferFrom(final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void terminateWrites() throws IOException {
+        }
+
+        @Override
+        public boolean isWriteShutdown() {
+            return false;
+        }
+
+        @Override
+        public void resumeWrites() {
+        }
+
+        @Override
+        public void suspendWrites() {
+        }
+
+        @Override
+        public void wakeupWrites() {
+        }
+
+        @Override
+        public boolean isWriteResumed() {
+            return false;
+        }
+
+        @Override
+        public void awaitWritable() throws IOException {
+        }
+
+        @Override
+        public void awaitWritable(final long time, final TimeUnit timeUnit) throws IOException {
+        }
+
+        @Override
+        public XnioIoThread getWriteThread() {
+            return null;
+        }
+
+        @Override
+        public void setWriteReadyHandler(final WriteReadyHandler handler) {
+        }
+
+        @Override
+        public void truncateWrites() throws IOException {
+        }
+
+        @Override
+        public boolean flush() throws IOException {
+            return true;
+        }
+
+        @Override
+        public XnioWorker getWorker() {
+            return null;
+        }
+    }
+}
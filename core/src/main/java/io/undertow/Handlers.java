@@ -28,6 +28,7 @@ import io.undertow.server.RoutingHandler;
 import io.undertow.server.handlers.AccessControlListHandler;
 import io.undertow.server.handlers.DateHandler;
 import io.undertow.server.handlers.DisableCacheHandler;
+import io.undertow.server.handlers.DispatchExecutorHandler;
 import io.undertow.server.handlers.GracefulShutdownHandler;
 import io.undertow.server.handlers.HttpContinueAcceptingHandler;
 import io.undertow.server.handlers.HttpContinueReadHandler;
@@ -56,6 +57,7 @@ import io.undertow.websockets.WebSocketConnectionCallback;
 import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Utility class with convenience methods for dealing with handlers
@@ -480,6 +482,17 @@ public class Handlers {
         return new DisableCacheHandler(next);
     }
 
+    /**
+     * Returns a handler that sets the executor that is used for dispatches that do not specify an executor.
+     *
+     * @param executor The executor
+     * @param next     The next handler
+     * @return The handler
+     */
+    public static DispatchExecutorHandler dispatchExecutor(final Executor executor, final HttpHandler next) {
+        return new DispatchExecutorHandler(next, executor);
+    }
+
     /**
      * Returns a handler that dumps requests to the log for debugging purposes.
      *
@@ -21,11 +21,16 @@ package io.undertow;
 import io.undertow.security.api.AuthenticationMode;
 import io.undertow.security.api.GSSAPIServerSubjectFactory;
 import io.undertow.security.idm.IdentityManager;
+import io.undertow.server.ConnectionLimiter;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.IoThreadConnectionCounter;
 import io.undertow.server.OpenListener;
+import io.undertow.server.SslHandshakeStatistics;
+import io.undertow.server.handlers.DispatchExecutorHandler;
 import io.undertow.server.protocol.ajp.AjpOpenListener;
 import io.undertow.server.protocol.http.HttpOpenListener;
 import io.undertow.server.protocol.spdy.SpdyOpenListener;
+import io.undertow.util.ThreadLocalBufferPool;
 import org.xnio.BufferAllocator;
 import org.xnio.ByteBufferSlicePool;
 import org.xnio.ChannelListener;
@@ -45,12 +50,15 @@ import org.xnio.ssl.XnioSsl;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Convenience class used to build an Undertow server.
@@ -66,6 +74,10 @@ public class Undertow {
     private final int ioThreads;
     private final int workerThreads;
     private final boolean directBuffers;
+    private final boolean threadLocalBuffers;
+    private final ConnectionLimiter connectionLimiter;
+    private final int sslSessionCacheSize;
+    private final int sslSessionTimeout;
     private final List<ListenerConfig> listeners = new ArrayList<ListenerConfig>();
     private final HttpHandler rootHandler;
     private final OptionMap workerOptions;
@@ -74,6 +86,8 @@ public class Undertow {
 
     private XnioWorker worker;
     private List<AcceptingChannel<? extends StreamConnection>> channels;
+    private List<IoThreadConnectionCounter> connectionCounters;
+    private List<SslHandshakeStatistics> sslHandshakeStatistics;
     private Xnio xnio;
 
     private Undertow(Builder builder) {
@@ -82,8 +96,12 @@ public class Undertow {
         this.ioThreads = builder.ioThreads;
         this.workerThreads = builder.workerThreads;
         this.directBuffers = builder.directBuffers;
+        this.threadLocalBuffers = builder.threadLocalBuffers;
+        this.connectionLimiter = builder.connectionLimiter;
+        this.sslSessionCacheSize = builder.sslSessionCacheSize;
+        this.sslSessionTimeout = builder.sslSessionTimeout;
         this.listeners.addAll(builder.listeners);
-        this.rootHandler = builder.handler;
+        this.rootHandler = builder.dispatchExecutor == null ? builder.handler : new DispatchExecutorHandler(builder.handler, builder.dispatchExecutor);
         this.workerOptions = builder.workerOptions.getMap();
         this.socketOptions = builder.socketOptions.getMap();
         this.serverOptions = builder.serverOptions.getMap();
@@ -99,6 +117,8 @@ public class Undertow {
     public synchronized void start() {
         xnio = Xnio.getInstance(Undertow.class.getClassLoader());
         channels = new ArrayList<AcceptingChannel<? extends StreamConnection>>();
+        connectionCounters = new ArrayList<IoThreadConnectionCounter>();
+        sslHandshakeStatistics = new ArrayList<SslHandshakeStatistics>();
         try {
             worker = xnio.createWorker(OptionMap.builder()
                     .set(Options.WORKER_IO_THREADS, ioThreads)
@@ -121,13 +141,19 @@ public class Undertow {
                     .getMap();
 
 
-            Pool<ByteBuffer> buffers = new ByteBufferSlicePool(directBuffers ? BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR : BufferAllocator.BYTE_BUFFER_ALLOCATOR, bufferSize, bufferSize * buffersPerRegion);
+            Pool<ByteBuffer> buffers;
+            if (threadLocalBuffers) {
+                buffers = new ThreadLocalBufferPool(directBuffers ? BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR : BufferAllocator.BYTE_BUFFER_ALLOCATOR, bufferSize, buffersPerRegion);
+            } else {
+                buffers = new ByteBufferSlicePool(directBuffers ? BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR : BufferAllocator.BYTE_BUFFER_ALLOCATOR, bufferSize, bufferSize * buffersPerRegion);
+            }
 
             for (ListenerConfig listener : listeners) {
                 if (listener.type == ListenerType.AJP) {
                     AjpOpenListener openListener = new AjpOpenListener(buffers, serverOptions, bufferSize);
                     openListener.setRootHandler(rootHandler);
-                    ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners.openListenerAdapter(openListener);
+                    openListener.setConnectionLimiter(connectionLimiter);
+                    ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners.openListenerAdapter(countConnections(openListener));
                     AcceptingChannel<? extends StreamConnection> server = worker.createStreamConnectionServer(new InetSocketAddress(Inet4Address.getByName(listener.host), listener.port), acceptListener, socketOptions);
                     server.resumeAccepts();
                     channels.add(server);
@@ -136,23 +162,45 @@ public class Undertow {
                     if (listener.type == ListenerType.HTTP) {
                         HttpOpenListener openListener = new HttpOpenListener(buffers, undertowOptions, bufferSize);
                         openListener.setRootHandler(rootHandler);
-                        ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners.openListenerAdapter(openListener);
+                        openListener.setConnectionLimiter(connectionLimiter);
+                        ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners.openListenerAdapter(countConnections(openListener));
                         AcceptingChannel<? extends StreamConnection> server = worker.createStreamConnectionServer(new InetSocketAddress(Inet4Address.getByName(listener.host), listener.port), acceptListener, socketOptions);
                         server.resumeAccepts();
                         channels.add(server);
                     } else if (listener.type == ListenerType.HTTPS) {
-                        OpenListener openListener = new HttpOpenListener(buffers, undertowOptions, bufferSize);
+                        HttpOpenListener httpOpenListener = new HttpOpenListener(buffers, undertowOptions, bufferSize);
+                        httpOpenListener.setConnectionLimiter(connectionLimiter);
+                        OpenListener openListener = httpOpenListener;
                         if(serverOptions.get(UndertowOptions.ENABLE_SPDY, false)) {
-                            openListener = new SpdyOpenListener(buffers, new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 1024, 1024), undertowOptions, bufferSize, (HttpOpenListener) openListener);
+                            Pool<ByteBuffer> heapBuffers = threadLocalBuffers ? new ThreadLocalBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 1024, 1) : new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 1024, 1024);
+                            SpdyOpenListener spdyOpenListener = new SpdyOpenListener(buffers, heapBuffers, undertowOptions, bufferSize, httpOpenListener);
+                            spdyOpenListener.setConnectionLimiter(connectionLimiter);
+                            openListener = spdyOpenListener;
                         }
                         openListener.setRootHandler(rootHandler);
-                        ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners.openListenerAdapter(openListener);
+                        SSLContext sslContext = listener.sslContext;
+                        if (sslContext == null && (sslSessionCacheSize >= 0 || sslSessionTimeout >= 0)) {
+                            //we need access to the session context to configure the cache
+                            sslContext = SSLContext.getInstance("TLS");
+                            sslContext.init(listener.keyManagers, listener.trustManagers, null);
+                        }
                         XnioSsl xnioSsl;
-                        if (listener.sslContext != null) {
-                            xnioSsl = new JsseXnioSsl(xnio, OptionMap.create(Options.USE_DIRECT_BUFFERS, true), listener.sslContext);
+                        SSLSessionContext sessionContext = null;
+                        if (sslContext != null) {
+                            sessionContext = sslContext.getServerSessionContext();
+                            if (sslSessionCacheSize >= 0) {
+                                sessionContext.setSessionCacheSize(sslSessionCacheSize);
+                            }
+                            if (sslSessionTimeout >= 0) {
+                                sessionContext.setSessionTimeout(sslSessionTimeout);
+                            }
+                            xnioSsl = new JsseXnioSsl(xnio, OptionMap.create(Options.USE_DIRECT_BUFFERS, true), sslContext);
                         } else {
                             xnioSsl = xnio.getSslProvider(listener.keyManagers, listener.trustManagers, OptionMap.create(Options.USE_DIRECT_BUFFERS, true));
                         }
+                        SslHandshakeStatistics statistics = new SslHandshakeStatistics(openListener, sessionContext);
+                        sslHandshakeStatistics.add(statistics);
+                        ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners.openListenerAdapter(countConnections(statistics));
                         AcceptingChannel<SslConnection> sslServer = xnioSsl.createSslConnectionServer(worker, new InetSocketAddress(Inet4Address.getByName(listener.host), listener.port), (ChannelListener) acceptListener, socketOptions);
                         sslServer.resumeAccepts();
                         channels.add(sslServer);
@@ -166,11 +214,44 @@ public class Undertow {
         }
     }
 
+    private IoThreadConnectionCounter countConnections(final ChannelListener<? super StreamConnection> openListener) {
+        IoThreadConnectionCounter counter = new IoThreadConnectionCounter(openListener, worker.getIoThreadCount());
+        connectionCounters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Returns the per IO thread connection counters of the listeners, in the order the listeners were added
+     * to the builder.
+     *
+     * @return The connection counters
+     */
+    public synchronized List<IoThreadConnectionCounter> getConnectionCounters() {
+        if (connectionCounters == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<IoThreadConnectionCounter>(connectionCounters));
+    }
+
+    /**
+     * Returns the TLS handshake statistics of the HTTPS listeners, in the order the listeners were added to the builder.
+     *
+     * @return The handshake statistics
+     */
+    public synchronized List<SslHandshakeStatistics> getSslHandshakeStatistics() {
+        if (sslHandshakeStatistics == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<SslHandshakeStatistics>(sslHandshakeStatistics));
+    }
+
     public synchronized void stop() {
         for (AcceptingChannel<? extends StreamConnection> channel : channels) {
             IoUtils.safeClose(channel);
         }
         channels = null;
+        connectionCounters = null;
+        sslHandshakeStatistics = null;
         worker.shutdownNow();
         worker = null;
         xnio = null;
@@ -278,8 +359,13 @@ public class Undertow {
         private int ioThreads;
         private int workerThreads;
         private boolean directBuffers;
+        private boolean threadLocalBuffers;
+        private ConnectionLimiter connectionLimiter;
+        private int sslSessionCacheSize = -1;
+        private int sslSessionTimeout = -1;
         private final List<ListenerConfig> listeners = new ArrayList<ListenerConfig>();
         private HttpHandler handler;
+        private Executor dispatchExecutor;
 
         private final OptionMap.Builder workerOptions = OptionMap.builder();
         private final OptionMap.Builder socketOptions = OptionMap.builder();
@@ -371,6 +457,54 @@ public class Undertow {
             return this;
         }
 
+        /**
+         * If this is true then a {@link ThreadLocalBufferPool} will be used, which gives every IO thread its own
+         * buffer cache, rather than a single buffer pool that is shared between all threads.
+         */
+        public Builder setThreadLocalBuffers(final boolean threadLocalBuffers) {
+            this.threadLocalBuffers = threadLocalBuffers;
+            return this;
+        }
+
+        /**
+         * Sets a limiter that caps the number of connections and the request rate of each client address. The limiter
+         * is shared by all listeners.
+         */
+        public Builder setConnectionLimiter(final ConnectionLimiter connectionLimiter) {
+            this.connectionLimiter = connectionLimiter;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of TLS sessions that are cached by each HTTPS listener for resumption. A value of
+         * zero means there is no limit. If this is not set the default of the SSL context is used.
+         */
+        public Builder setSslSessionCacheSize(final int sslSessionCacheSize) {
+            this.sslSessionCacheSize = sslSessionCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the time in seconds that cached TLS sessions can be resumed for. A value of zero means there is no limit.
+         * If this is not set the default of the SSL context is used.
+         */
+        public Builder setSslSessionTimeout(final int sslSessionTimeout) {
+            this.sslSessionTimeout = sslSessionTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the executor that requests are dispatched to when no executor is specified, for example by
+         * {@link io.undertow.server.handlers.BlockingHandler}. If this is not set the XNIO worker is used.
+         *
+         * @see io.undertow.util.VirtualThreadExecutor
+         * @see io.undertow.util.BoundedQueueExecutor
+         */
+        public Builder setDispatchExecutor(final Executor dispatchExecutor) {
+            this.dispatchExecutor = dispatchExecutor;
+            return this;
+        }
+
         public Builder setHandler(final HttpHandler handler) {
             this.handler = handler;
             return this;
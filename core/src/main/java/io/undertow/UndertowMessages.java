@@ -24,6 +24,7 @@ import java.nio.channels.ClosedChannelException;
 
 import io.undertow.predicate.PredicateBuilder;
 import io.undertow.server.handlers.builder.HandlerBuilder;
+import io.undertow.util.HttpString;
 import org.jboss.logging.Messages;
 import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.Message;
@@ -299,4 +300,22 @@ public interface UndertowMessages {
 
     @Message(id = 91, value = "Buffer has already been freed")
     IllegalStateException bufferAlreadyFreed();
+
+    @Message(id = 92, value = "Header %s is used to delimit the response and cannot be part of a pre-encoded header block")
+    IllegalArgumentException headerCannotBePreEncoded(HttpString header);
+
+    @Message(id = 93, value = "Virtual threads are not supported by this JVM")
+    IllegalStateException virtualThreadsNotSupported();
+
+    @Message(id = 94, value = "Frame rejected, as it would take the data queued for sending on this connection over the limit of %s bytes")
+    IOException tooMuchDataQueued(long maxQueuedBytes);
+
+    @Message(id = 95, value = "Invalid AJP packet size %s, it must be between 8192 and 65536")
+    IllegalArgumentException invalidAjpPacketSize(int size);
+
+    @Message(id = 96, value = "Invalid hedge percentile %s, it must be greater than or equal to 0 and less than 100")
+    IllegalArgumentException invalidHedgePercentile(double percentile);
+
+    @Message(id = 97, value = "Header %s contains a CR or LF character and cannot be part of a pre-encoded header block")
+    IllegalArgumentException invalidCharacterInHeaderBlock(HttpString header);
 }
@@ -157,6 +157,20 @@ public class UndertowOptions {
      */
     public static final Option<Boolean> ENABLE_SPDY = Option.simple(UndertowOptions.class, "ENABLE_SPDY", Boolean.class);
 
+    /**
+     * The maximum size of an AJP packet. This must match the packet size configured on the front end proxy
+     * (<code>max_packet_size</code> for mod_jk, <code>ProxyIOBufferSize</code> for mod_proxy_ajp), as AJP has no
+     * way of negotiating it.
+     * <p/>
+     * Must be between 8192 and 65536, defaults to 8192
+     */
+    public static final Option<Integer> MAX_AJP_PACKET_SIZE = Option.simple(UndertowOptions.class, "MAX_AJP_PACKET_SIZE", Integer.class);
+
+    /**
+     * The default maximum AJP packet size
+     */
+    public static final int DEFAULT_MAX_AJP_PACKET_SIZE = 8192;
+
     private UndertowOptions() {
 
     }
@@ -37,7 +37,7 @@ public class CookieAttribute implements ExchangeAttribute {
 
     @Override
     public String readAttribute(final HttpServerExchange exchange) {
-        Cookie cookie = exchange.getRequestCookies().get(cookieName);
+        Cookie cookie = exchange.getRequestCookie(cookieName);
         if (cookie == null) {
             return null;
         }
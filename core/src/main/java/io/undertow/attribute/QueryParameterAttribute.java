@@ -39,7 +39,7 @@ public class QueryParameterAttribute implements ExchangeAttribute {
 
     @Override
     public String readAttribute(final HttpServerExchange exchange) {
-        Deque<String> res = exchange.getQueryParameters().get(parameter);
+        Deque<String> res = exchange.getQueryParameterValues(parameter);
         if(res == null) {
             return null;
         }else if(res.isEmpty()) {
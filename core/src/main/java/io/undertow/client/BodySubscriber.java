@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives a response body as it is read from the connection.
+ * <p>
+ * Data is only delivered once it has been requested via {@link BodySubscription#request(long)}, while there is no
+ * outstanding demand nothing is read from the connection, so the peer is slowed down by normal TCP flow control
+ * rather than the body being buffered in memory.
+ * <p>
+ * All callbacks are invoked by the IO thread, and must not block.
+ *
+ * @see ResponseBodyPublisher
+ */
+public interface BodySubscriber {
+
+    /**
+     * Invoked once before any other method. No data will be delivered until {@link BodySubscription#request(long)}
+     * has been called.
+     *
+     * @param subscription The subscription
+     */
+    void onSubscribe(BodySubscription subscription);
+
+    /**
+     * Invoked with the next chunk of the body. Each invocation uses up one unit of demand.
+     * <p>
+     * The buffer is a pooled buffer that will be reused once this method returns, so any data that is required
+     * after this method returns must be copied.
+     *
+     * @param buffer The data
+     */
+    void onNext(ByteBuffer buffer);
+
+    /**
+     * Invoked once the full body has been read.
+     */
+    void onComplete();
+
+    /**
+     * Invoked if the body could not be read. No further methods will be invoked.
+     *
+     * @param e The failure
+     */
+    void onError(IOException e);
+}
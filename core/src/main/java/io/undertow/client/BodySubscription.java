@@ -0,0 +1,40 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.client;
+
+/**
+ * The demand side of a {@link BodySubscriber}. The methods on this interface can be invoked from any thread,
+ * including from within the subscriber callbacks.
+ */
+public interface BodySubscription {
+
+    /**
+     * Requests that up to <code>n</code> more chunks be delivered to {@link BodySubscriber#onNext(java.nio.ByteBuffer)}.
+     * Demand is cumulative.
+     *
+     * @param n The number of chunks, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Stops delivery of the body. The rest of the body is read and discarded, so that the connection can
+     * be reused, and no further callbacks will be invoked.
+     */
+    void cancel();
+}
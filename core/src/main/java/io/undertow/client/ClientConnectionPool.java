@@ -0,0 +1,471 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.client;
+
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.CopyOnWriteMap;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Pool;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioIoThread;
+import org.xnio.XnioWorker;
+import org.xnio.ssl.XnioSsl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A general purpose pool of client connections.
+ * <p/>
+ * Requests are sent with {@link #sendRequest(java.net.URI, ClientRequest, ClientCallback)}, which picks a connection to
+ * the scheme, host and port of the URI, opening a new one if required. Once the request has been sent and the
+ * response fully read the connection is returned to the pool. The {@link ClientExchange} that is passed to the
+ * callback gives access to the request and response channels, so bodies can be streamed in both directions.
+ * <p/>
+ * Connections belong to an IO thread, so the pool keeps separate connections for every IO thread and all pool
+ * state for a thread is only ever touched by that thread. Requests that are sent from a thread that is not an IO
+ * thread of the pool's worker are dispatched to one of the worker's IO threads.
+ * <p/>
+ * A new request is sent on an idle connection if there is one, otherwise a new connection is opened if the host is
+ * below its connection limit. Only once the limit is reached, and if more than one request per connection is
+ * allowed, are requests queued on connections that are already busy, rather than waiting for a connection to become
+ * free. This is not pipelining: only one exchange is ever in flight on a connection, the queued requests are not
+ * written until the exchange before them is complete.
+ */
+public class ClientConnectionPool implements Closeable {
+
+    /**
+     * Attached to an exchange by the pool. The connection implementations invoke and remove it once the exchange no
+     * longer occupies the connection, which is once the request has been sent and the response fully read, or when
+     * the exchange fails. For multiplexed protocols the exchange is complete once the response has started.
+     */
+    public static final AttachmentKey<ClientCallback<ClientExchange>> EXCHANGE_COMPLETION_LISTENER = AttachmentKey.create(ClientCallback.class);
+
+    private final UndertowClient client;
+    private final XnioWorker worker;
+    private final Pool<ByteBuffer> bufferPool;
+    private final XnioSsl ssl;
+    private final InetSocketAddress bindAddress;
+    private final OptionMap options;
+    private final int maxConnectionsPerThread;
+    private final int maxRequestsPerConnection;
+    private final long acquireTimeout;
+
+    private volatile boolean closed;
+
+    private final ConcurrentMap<XnioIoThread, Map<String, HostThreadData>> threadData = new CopyOnWriteMap<XnioIoThread, Map<String, HostThreadData>>();
+
+    private ClientConnectionPool(final Builder builder) {
+        this.client = builder.client;
+        this.worker = builder.worker;
+        this.bufferPool = builder.bufferPool;
+        this.ssl = builder.ssl;
+        this.bindAddress = builder.bindAddress;
+        this.options = builder.options;
+        this.maxConnectionsPerThread = builder.maxConnectionsPerThread;
+        this.maxRequestsPerConnection = builder.maxRequestsPerConnection;
+        this.acquireTimeout = builder.acquireTimeout;
+    }
+
+    public static Builder builder(final XnioWorker worker, final Pool<ByteBuffer> bufferPool) {
+        return new Builder(worker, bufferPool);
+    }
+
+    /**
+     * Sends a request to the host of the given URI. The callback is invoked with the exchange once the request is
+     * ready to be sent, or with the reason that no connection could be obtained.
+     *
+     * @param uri      The URI of the target. Only the scheme, host and port are used, the path is taken from the request
+     * @param request  The request to send
+     * @param callback The callback
+     */
+    public void sendRequest(final URI uri, final ClientRequest request, final ClientCallback<ClientExchange> callback) {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof XnioIoThread && ((XnioIoThread) thread).getWorker() == worker) {
+            sendRequest((XnioIoThread) thread, uri, request, callback);
+        } else {
+            final XnioIoThread ioThread = worker.getIoThread();
+            ioThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendRequest(ioThread, uri, request, callback);
+                }
+            });
+        }
+    }
+
+    private void sendRequest(final XnioIoThread ioThread, final URI uri, final ClientRequest request, final ClientCallback<ClientExchange> callback) {
+        if (closed) {
+            callback.failed(UndertowClientMessages.MESSAGES.connectionPoolClosed());
+            return;
+        }
+        final HostThreadData host = getHostData(ioThread, uri);
+        final PendingRequest pending = new PendingRequest(host, request, callback);
+        PooledConnection connection = host.findAvailable(1);
+        if (connection != null) {
+            dispatch(host, connection, pending);
+        } else if (host.connections < maxConnectionsPerThread) {
+            openConnection(host, pending);
+        } else if ((connection = host.findAvailable(maxRequestsPerConnection)) != null) {
+            dispatch(host, connection, pending);
+        } else {
+            if (acquireTimeout > 0) {
+                pending.timeoutKey = ioThread.executeAfter(pending, acquireTimeout, TimeUnit.MILLISECONDS);
+            }
+            host.waiting.add(pending);
+        }
+    }
+
+    private void openConnection(final HostThreadData host, final PendingRequest pending) {
+        host.connections++;
+        client.connect(new ClientCallback<ClientConnection>() {
+            @Override
+            public void completed(final ClientConnection result) {
+                final PooledConnection connection = new PooledConnection(result);
+                result.getCloseSetter().set(new ChannelListener<ClientConnection>() {
+                    @Override
+                    public void handleEvent(ClientConnection channel) {
+                        removeConnection(host, connection);
+                    }
+                });
+                host.available.add(connection);
+                dispatch(host, connection, pending);
+                serveWaiting(host, connection);
+            }
+
+            @Override
+            public void failed(IOException e) {
+                host.connections--;
+                pending.callback.failed(e);
+                if (host.connections == 0) {
+                    //there is no connection that could serve the waiting requests, so they fail as well
+                    PendingRequest next = host.pollWaiting();
+                    while (next != null) {
+                        next.callback.failed(e);
+                        next = host.pollWaiting();
+                    }
+                }
+            }
+        }, bindAddress, host.uri, host.ioThread, ssl, bufferPool, options);
+    }
+
+    private void dispatch(final HostThreadData host, final PooledConnection connection, final PendingRequest pending) {
+        connection.inFlight++;
+        connection.connection.sendRequest(pending.request, new RequestCallback(host, connection, pending.callback));
+    }
+
+    /**
+     * Hands waiting requests to a connection, as long as it can accept them
+     */
+    private void serveWaiting(final HostThreadData host, final PooledConnection connection) {
+        while (connection.inFlight < maxRequestsPerConnection && connection.connection.isOpen()) {
+            PendingRequest next = host.pollWaiting();
+            if (next == null) {
+                return;
+            }
+            dispatch(host, connection, next);
+        }
+    }
+
+    private void exchangeDone(final HostThreadData host, final PooledConnection connection) {
+        connection.inFlight--;
+        ClientConnection clientConnection = connection.connection;
+        if (!clientConnection.isOpen()) {
+            //the close listener takes care of it
+            return;
+        }
+        if (clientConnection.isUpgraded()) {
+            //upgraded connections no longer belong to the pool
+            clientConnection.getCloseSetter().set(null);
+            removeConnection(host, connection);
+            return;
+        }
+        if (closed) {
+            if (connection.inFlight == 0) {
+                IoUtils.safeClose(clientConnection);
+            }
+            return;
+        }
+        serveWaiting(host, connection);
+    }
+
+    private void removeConnection(final HostThreadData host, final PooledConnection connection) {
+        if (!host.available.remove(connection)) {
+            return;
+        }
+        host.connections--;
+        if (!closed) {
+            PendingRequest next = host.pollWaiting();
+            if (next != null) {
+                openConnection(host, next);
+            }
+        }
+    }
+
+    private HostThreadData getHostData(final XnioIoThread ioThread, final URI uri) {
+        Map<String, HostThreadData> hosts = threadData.get(ioThread);
+        if (hosts == null) {
+            hosts = new HashMap<String, HostThreadData>();
+            Map<String, HostThreadData> existing = threadData.putIfAbsent(ioThread, hosts);
+            if (existing != null) {
+                hosts = existing;
+            }
+        }
+        String key = uri.getScheme() + "://" + uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort());
+        HostThreadData host = hosts.get(key);
+        if (host == null) {
+            host = new HostThreadData(ioThread, URI.create(key));
+            hosts.put(key, host);
+        }
+        return host;
+    }
+
+    /**
+     * Closes the pool. Idle connections are closed straight away, busy connections are closed once their
+     * current exchanges are complete. Requests that are waiting for a connection fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final Map.Entry<XnioIoThread, Map<String, HostThreadData>> entry : threadData.entrySet()) {
+            entry.getKey().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (HostThreadData host : entry.getValue().values()) {
+                        PendingRequest next = host.pollWaiting();
+                        while (next != null) {
+                            next.callback.failed(UndertowClientMessages.MESSAGES.connectionPoolClosed());
+                            next = host.pollWaiting();
+                        }
+                        for (PooledConnection connection : new ArrayList<PooledConnection>(host.available)) {
+                            if (connection.inFlight == 0) {
+                                IoUtils.safeClose(connection.connection);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Wraps the callback of a request, so the connection can be told when the exchange is done with it
+     */
+    private final class RequestCallback implements ClientCallback<ClientExchange> {
+
+        private final HostThreadData host;
+        private final PooledConnection connection;
+        private final ClientCallback<ClientExchange> callback;
+        private boolean done;
+
+        private RequestCallback(final HostThreadData host, final PooledConnection connection, final ClientCallback<ClientExchange> callback) {
+            this.host = host;
+            this.connection = connection;
+            this.callback = callback;
+        }
+
+        @Override
+        public void completed(final ClientExchange result) {
+            result.putAttachment(EXCHANGE_COMPLETION_LISTENER, new ClientCallback<ClientExchange>() {
+                @Override
+                public void completed(ClientExchange result) {
+                    done();
+                }
+
+                @Override
+                public void failed(IOException e) {
+                    done();
+                }
+            });
+            callback.completed(result);
+        }
+
+        @Override
+        public void failed(final IOException e) {
+            done();
+            callback.failed(e);
+        }
+
+        private void done() {
+            if (!done) {
+                done = true;
+                exchangeDone(host, connection);
+            }
+        }
+    }
+
+    private static final class PooledConnection {
+        final ClientConnection connection;
+        int inFlight;
+
+        private PooledConnection(final ClientConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static final class HostThreadData {
+        final XnioIoThread ioThread;
+        final URI uri;
+        /**
+         * The number of connections that are open or being opened
+         */
+        int connections;
+        final List<PooledConnection> available = new ArrayList<PooledConnection>();
+        final Deque<PendingRequest> waiting = new ArrayDeque<PendingRequest>();
+
+        private HostThreadData(final XnioIoThread ioThread, final URI uri) {
+            this.ioThread = ioThread;
+            this.uri = uri;
+        }
+
+        /**
+         * @param maxRequestsPerConnection The number of requests a connection may have in flight, a value of one only
+         *                                 finds idle connections
+         * @return The open connection with the fewest requests in flight, as long as it can take another request
+         */
+        PooledConnection findAvailable(final int maxRequestsPerConnection) {
+            PooledConnection result = null;
+            for (PooledConnection connection : available) {
+                if (connection.inFlight < maxRequestsPerConnection && connection.connection.isOpen() && !connection.connection.isUpgraded()) {
+                    if (result == null || connection.inFlight < result.inFlight) {
+                        result = connection;
+                    }
+                }
+            }
+            return result;
+        }
+
+        PendingRequest pollWaiting() {
+            PendingRequest pending = waiting.poll();
+            if (pending != null && pending.timeoutKey != null) {
+                pending.timeoutKey.remove();
+            }
+            return pending;
+        }
+    }
+
+    private static final class PendingRequest implements Runnable {
+        final HostThreadData host;
+        final ClientRequest request;
+        final ClientCallback<ClientExchange> callback;
+        XnioExecutor.Key timeoutKey;
+
+        private PendingRequest(final HostThreadData host, final ClientRequest request, final ClientCallback<ClientExchange> callback) {
+            this.host = host;
+            this.request = request;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            //acquire timeout
+            if (host.waiting.remove(this)) {
+                callback.failed(UndertowClientMessages.MESSAGES.connectionAcquireTimedOut(host.uri));
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private final XnioWorker worker;
+        private final Pool<ByteBuffer> bufferPool;
+        private UndertowClient client = UndertowClient.getInstance();
+        private XnioSsl ssl;
+        private InetSocketAddress bindAddress;
+        private OptionMap options = OptionMap.EMPTY;
+        private int maxConnectionsPerThread = 10;
+        private int maxRequestsPerConnection = 1;
+        private long acquireTimeout = -1;
+
+        private Builder(final XnioWorker worker, final Pool<ByteBuffer> bufferPool) {
+            this.worker = worker;
+            this.bufferPool = bufferPool;
+        }
+
+        public ClientConnectionPool build() {
+            return new ClientConnectionPool(this);
+        }
+
+        public Builder setClient(final UndertowClient client) {
+            this.client = client;
+            return this;
+        }
+
+        public Builder setSsl(final XnioSsl ssl) {
+            this.ssl = ssl;
+            return this;
+        }
+
+        public Builder setBindAddress(final InetSocketAddress bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        public Builder setOptions(final OptionMap options) {
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of connections to each host, for every IO thread.
+         */
+        public Builder setMaxConnectionsPerThread(final int maxConnectionsPerThread) {
+            this.maxConnectionsPerThread = maxConnectionsPerThread;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests that may be assigned to a single connection. If this is greater than one then,
+         * once there are no idle connections and no more connections may be opened, new requests are queued on busy
+         * connections rather than waiting for a connection to become free.
+         * <p/>
+         * Requests are not pipelined. The connection still only has one exchange in flight at a time, and the
+         * queued requests are only written once the exchange in front of them is complete.
+         */
+        public Builder setMaxRequestsPerConnection(final int maxRequestsPerConnection) {
+            this.maxRequestsPerConnection = maxRequestsPerConnection;
+            return this;
+        }
+
+        /**
+         * Sets how long a request may wait for a connection before it fails, -1 means wait forever.
+         */
+        public Builder setAcquireTimeout(final long acquireTimeout, final TimeUnit timeUnit) {
+            this.acquireTimeout = acquireTimeout < 0 ? -1 : timeUnit.toMillis(acquireTimeout);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.Pool;
+import org.xnio.Pooled;
+import org.xnio.channels.StreamSourceChannel;
+
+/**
+ * Delivers a response body to a {@link BodySubscriber} in pooled buffers, reading from the channel only while the
+ * subscriber has outstanding demand.
+ * <p>
+ * While there is no demand reads are suspended, so a large response can be processed incrementally without it being
+ * buffered in memory, and without a worker thread being blocked waiting for data.
+ */
+public final class ResponseBodyPublisher implements BodySubscription, ChannelListener<StreamSourceChannel> {
+
+    private static final AtomicLongFieldUpdater<ResponseBodyPublisher> demandUpdater = AtomicLongFieldUpdater.newUpdater(ResponseBodyPublisher.class, "demand");
+
+    private final StreamSourceChannel channel;
+    private final Pool<ByteBuffer> bufferPool;
+    private final BodySubscriber subscriber;
+    private final Runnable resumeTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!done) {
+                channel.resumeReads();
+            }
+        }
+    };
+
+    @SuppressWarnings("unused")
+    private volatile long demand;
+    private volatile boolean cancelled;
+
+    /**
+     * Set once the channel has been fully read, only accessed by the IO thread
+     */
+    private boolean done;
+
+    private ResponseBodyPublisher(final StreamSourceChannel channel, final Pool<ByteBuffer> bufferPool, final BodySubscriber subscriber) {
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * Subscribes to the response body of the given exchange. This must be called once the response has arrived,
+     * typically from the response listener.
+     *
+     * @param exchange   The exchange
+     * @param subscriber The subscriber
+     * @return The subscription
+     */
+    public static BodySubscription subscribe(final ClientExchange exchange, final BodySubscriber subscriber) {
+        return subscribe(exchange.getResponseChannel(), exchange.getConnection().getBufferPool(), subscriber);
+    }
+
+    /**
+     * Subscribes to the contents of the given channel.
+     *
+     * @param channel    The channel to read
+     * @param bufferPool The pool the buffers passed to the subscriber are allocated from
+     * @param subscriber The subscriber
+     * @return The subscription
+     */
+    public static BodySubscription subscribe(final StreamSourceChannel channel, final Pool<ByteBuffer> bufferPool, final BodySubscriber subscriber) {
+        ResponseBodyPublisher publisher = new ResponseBodyPublisher(channel, bufferPool, subscriber);
+        channel.getReadSetter().set(publisher);
+        subscriber.onSubscribe(publisher);
+        return publisher;
+    }
+
+    @Override
+    public void request(final long n) {
+        if (n <= 0) {
+            throw UndertowClientMessages.MESSAGES.demandMustBePositive(n);
+        }
+        long old;
+        long newDemand;
+        do {
+            old = demand;
+            newDemand = old + n;
+            if (newDemand < 0) {
+                newDemand = Long.MAX_VALUE;
+            }
+        } while (!demandUpdater.compareAndSet(this, old, newDemand));
+        if (old == 0) {
+            //reads are resumed from the IO thread, so this cannot race with the listener suspending them
+            channel.getIoThread().execute(resumeTask);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        channel.getIoThread().execute(resumeTask);
+    }
+
+    @Override
+    public void handleEvent(final StreamSourceChannel channel) {
+        if (done) {
+            channel.suspendReads();
+            return;
+        }
+        final Pooled<ByteBuffer> pooled = bufferPool.allocate();
+        final ByteBuffer buffer = pooled.getResource();
+        try {
+            for (; ; ) {
+                if (!cancelled && demand == 0) {
+                    channel.suspendReads();
+                    return;
+                }
+                buffer.clear();
+                int res = channel.read(buffer);
+                if (res == -1) {
+                    done = true;
+                    IoUtils.safeClose(channel);
+                    if (!cancelled) {
+                        subscriber.onComplete();
+                    }
+                    return;
+                } else if (res == 0) {
+                    channel.resumeReads();
+                    return;
+                }
+                if (!cancelled) {
+                    //once cancelled the data is simply discarded
+                    buffer.flip();
+                    demandUpdater.decrementAndGet(this);
+                    subscriber.onNext(buffer);
+                }
+            }
+        } catch (IOException e) {
+            done = true;
+            IoUtils.safeClose(channel);
+            if (!cancelled) {
+                subscriber.onError(e);
+            }
+        } finally {
+            pooled.free();
+        }
+    }
+}
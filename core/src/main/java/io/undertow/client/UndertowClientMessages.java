@@ -74,4 +74,13 @@ public interface UndertowClientMessages {
 
     @Message(id = 1038, value = "Received invalid AJP chunk %s with response already complete")
     IOException receivedInvalidChunk(byte prefix);
+
+    @Message(id = 1039, value = "Connection pool is closed")
+    IOException connectionPoolClosed();
+
+    @Message(id = 1040, value = "Timed out waiting for a connection to %s")
+    IOException connectionAcquireTimedOut(URI uri);
+
+    @Message(id = 1041, value = "Requested demand must be positive, was %s")
+    IllegalArgumentException demandMustBePositive(long n);
 }
@@ -22,6 +22,7 @@ import io.undertow.channels.DetachableStreamSinkChannel;
 import io.undertow.channels.DetachableStreamSourceChannel;
 import io.undertow.client.ClientCallback;
 import io.undertow.client.ClientConnection;
+import io.undertow.client.ClientConnectionPool;
 import io.undertow.client.ClientExchange;
 import io.undertow.client.ClientRequest;
 import io.undertow.client.ClientResponse;
@@ -75,6 +76,7 @@ class HttpClientExchange extends AbstractAttachable implements ClientExchange {
         state |= REQUEST_TERMINATED;
         if (anyAreSet(state, RESPONSE_TERMINATED)) {
             clientConnection.requestDone();
+            invokeCompletionCallback();
         }
     }
 
@@ -82,6 +84,7 @@ class HttpClientExchange extends AbstractAttachable implements ClientExchange {
         state |= RESPONSE_TERMINATED;
         if (anyAreSet(state, REQUEST_TERMINATED)) {
             clientConnection.requestDone();
+            invokeCompletionCallback();
         }
     }
 
@@ -131,6 +134,17 @@ class HttpClientExchange extends AbstractAttachable implements ClientExchange {
             responseCallback.failed(e);
             responseCallback = null;
         }
+        ClientCallback<ClientExchange> completionListener = removeAttachment(ClientConnectionPool.EXCHANGE_COMPLETION_LISTENER);
+        if (completionListener != null) {
+            completionListener.failed(e);
+        }
+    }
+
+    private void invokeCompletionCallback() {
+        ClientCallback<ClientExchange> completionListener = removeAttachment(ClientConnectionPool.EXCHANGE_COMPLETION_LISTENER);
+        if (completionListener != null) {
+            completionListener.completed(this);
+        }
     }
 
     @Override
@@ -20,6 +20,7 @@ package io.undertow.client.spdy;
 
 import io.undertow.client.ClientCallback;
 import io.undertow.client.ClientConnection;
+import io.undertow.client.ClientConnectionPool;
 import io.undertow.client.ClientExchange;
 import io.undertow.client.ClientRequest;
 import io.undertow.client.ClientResponse;
@@ -101,6 +102,10 @@ public class SpdyClientExchange extends AbstractAttachable implements ClientExch
         if(responseListener != null) {
             responseListener.failed(e);
         }
+        ClientCallback<ClientExchange> completionListener = removeAttachment(ClientConnectionPool.EXCHANGE_COMPLETION_LISTENER);
+        if (completionListener != null) {
+            completionListener.failed(e);
+        }
     }
 
     void responseReady(SpdySynReplyStreamSourceChannel result) {
@@ -117,5 +122,10 @@ public class SpdyClientExchange extends AbstractAttachable implements ClientExch
         if (responseListener != null) {
             responseListener.completed(this);
         }
+        //the stream is independent of the rest of the connection, so as far as the connection is concerned we are done
+        ClientCallback<ClientExchange> completionListener = removeAttachment(ClientConnectionPool.EXCHANGE_COMPLETION_LISTENER);
+        if (completionListener != null) {
+            completionListener.completed(this);
+        }
     }
 }
@@ -66,7 +66,7 @@ public class SingleSignOnAuthenticationMechanism implements AuthenticationMechan
 
     @Override
     public AuthenticationMechanismOutcome authenticate(HttpServerExchange exchange, SecurityContext securityContext) {
-        Cookie cookie = exchange.getRequestCookies().get(cookieName);
+        Cookie cookie = exchange.getRequestCookie(cookieName);
         if (cookie != null) {
             final SingleSignOn sso = this.manager.findSingleSignOn(cookie.getValue());
             if (sso != null) {
@@ -0,0 +1,280 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import org.xnio.StreamConnection;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent connections, and the request rate, of each client address.
+ * <p/>
+ * This is applied by the open listeners when a connection is accepted, so abusive clients are rejected before
+ * any parsing state or exchange is allocated for them. Each accepted connection is given a {@link Permit} that
+ * is used to take tokens from the address's request token bucket, and that must be released when the
+ * connection is closed.
+ * <p/>
+ * HTTP requests take a token when their first bytes are read, before they are parsed, and SPDY requests take one
+ * for each SYN_STREAM frame. AJP connections come from a front end proxy, so only the connection cap applies to them.
+ * <p/>
+ * Per address state is kept in a lock-striped table keyed by the raw address bytes. Entries that have no open
+ * connections are expired once they have been idle for longer than the configured expiry time.
+ */
+public class ConnectionLimiter {
+
+    private static final int DEFAULT_STRIPES = 64;
+    private static final long DEFAULT_EXPIRY = TimeUnit.MINUTES.toNanos(1);
+
+    private final int maxConnectionsPerAddress;
+    private final double tokensPerNano;
+    private final double burst;
+    private final long expiryNanos;
+    private final Stripe[] stripes;
+
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    /**
+     * @param maxConnectionsPerAddress The maximum number of concurrent connections per address, or -1 for no limit
+     * @param requestsPerSecond        The sustained request rate allowed per address, or -1 for no limit
+     * @param burst                    The number of requests an address may make in a burst above the sustained rate
+     */
+    public ConnectionLimiter(final int maxConnectionsPerAddress, final double requestsPerSecond, final int burst) {
+        this(maxConnectionsPerAddress, requestsPerSecond, burst, DEFAULT_STRIPES, DEFAULT_EXPIRY, TimeUnit.NANOSECONDS);
+    }
+
+    public ConnectionLimiter(final int maxConnectionsPerAddress, final double requestsPerSecond, final int burst, final int stripes, final long expiry, final TimeUnit expiryUnit) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes");
+        }
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.tokensPerNano = requestsPerSecond > 0 ? requestsPerSecond / TimeUnit.SECONDS.toNanos(1) : -1;
+        this.burst = Math.max(burst, 1);
+        this.expiryNanos = expiryUnit.toNanos(expiry);
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; ++i) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Attempts to open a connection for the peer of the given channel.
+     *
+     * @param channel The newly accepted connection
+     * @return A permit for the connection, or null if the connection should be rejected
+     */
+    public Permit tryOpen(final StreamConnection channel) {
+        final InetSocketAddress peer = channel.getPeerAddress(InetSocketAddress.class);
+        if (peer == null || peer.getAddress() == null) {
+            //not an IP connection, we can't limit it
+            return Permit.UNLIMITED;
+        }
+        return tryOpen(peer.getAddress());
+    }
+
+    /**
+     * Attempts to open a connection for the given address.
+     *
+     * @param address The client address
+     * @return A permit for the connection, or null if the connection should be rejected
+     */
+    public Permit tryOpen(final InetAddress address) {
+        final AddressKey key = new AddressKey(address.getAddress());
+        final Stripe stripe = stripes[key.hashCode & (stripes.length - 1)];
+        final long now = System.nanoTime();
+        synchronized (stripe) {
+            stripe.expire(now, expiryNanos);
+            Entry entry = stripe.entries.get(key);
+            if (entry == null) {
+                entry = new Entry(burst, now);
+                stripe.entries.put(key, entry);
+            }
+            entry.lastAccess = now;
+            if (maxConnectionsPerAddress > 0 && entry.connections >= maxConnectionsPerAddress) {
+                rejectedConnections.incrementAndGet();
+                return null;
+            }
+            entry.connections++;
+            return new Permit(this, stripe, entry);
+        }
+    }
+
+    /**
+     * @return The number of connections that have been rejected
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * @return The number of requests that have been rejected
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return The number of addresses that currently have state in the table
+     */
+    public int getTrackedAddresses() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.entries.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The right of a single connection to exist. This is used to take request tokens, and must be released when the
+     * connection is closed. A permit can be registered as a close listener on the server connection to release it
+     * automatically.
+     */
+    public static class Permit implements ServerConnection.CloseListener {
+
+        /**
+         * A permit that places no limits on the connection
+         */
+        public static final Permit UNLIMITED = new Permit(null, null, null);
+
+        private final ConnectionLimiter limiter;
+        private final Stripe stripe;
+        private final Entry entry;
+        private boolean released;
+
+        Permit(final ConnectionLimiter limiter, final Stripe stripe, final Entry entry) {
+            this.limiter = limiter;
+            this.stripe = stripe;
+            this.entry = entry;
+        }
+
+        /**
+         * Takes a token from the address's request token bucket.
+         *
+         * @return true if the request may proceed
+         */
+        public boolean tryAcquireRequest() {
+            if (limiter == null || limiter.tokensPerNano <= 0) {
+                return true;
+            }
+            final long now = System.nanoTime();
+            synchronized (stripe) {
+                entry.lastAccess = now;
+                entry.tokens = Math.min(limiter.burst, entry.tokens + (now - entry.lastRefill) * limiter.tokensPerNano);
+                entry.lastRefill = now;
+                if (entry.tokens >= 1) {
+                    entry.tokens -= 1;
+                    return true;
+                }
+            }
+            limiter.rejectedRequests.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void closed(final ServerConnection connection) {
+            release();
+        }
+
+        /**
+         * Releases the connection slot. This method is idempotent.
+         */
+        public void release() {
+            if (limiter == null) {
+                return;
+            }
+            synchronized (stripe) {
+                if (!released) {
+                    released = true;
+                    entry.connections--;
+                    entry.lastAccess = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    static final class Stripe {
+
+        final Map<AddressKey, Entry> entries = new HashMap<AddressKey, Entry>();
+        private long lastExpiry = System.nanoTime();
+
+        /**
+         * Removes idle entries, at most once per expiry period. Must be called with the stripe lock held.
+         */
+        void expire(final long now, final long expiryNanos) {
+            if (now - lastExpiry < expiryNanos) {
+                return;
+            }
+            lastExpiry = now;
+            final Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (entry.connections == 0 && now - entry.lastAccess > expiryNanos) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    static final class Entry {
+        int connections;
+        double tokens;
+        long lastRefill;
+        long lastAccess;
+
+        Entry(final double tokens, final long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+            this.lastAccess = now;
+        }
+    }
+
+    static final class AddressKey {
+        private final byte[] address;
+        private final int hashCode;
+
+        AddressKey(final byte[] address) {
+            this.address = address;
+            int h = Arrays.hashCode(address);
+            this.hashCode = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof AddressKey && Arrays.equals(address, ((AddressKey) o).address);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
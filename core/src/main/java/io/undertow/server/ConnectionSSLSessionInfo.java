@@ -50,6 +50,18 @@ public class ConnectionSSLSessionInfo implements SSLSessionInfo {
         this.serverConnection = serverConnection;
     }
 
+    /**
+     * Returns true if the current session was resumed, i.e. its session ID was negotiated by an earlier connection and
+     * this connection only performed an abbreviated handshake. This is only known for connections accepted by a
+     * listener that records {@link SslHandshakeStatistics}, for other connections this returns false.
+     *
+     * @return <code>true</code> if the session was resumed
+     * @see SslHandshakeStatistics
+     */
+    public boolean isSessionResumed() {
+        return Boolean.TRUE.equals(SslHandshakeStatistics.isResumed(channel));
+    }
+
     @Override
     public byte[] getSessionId() {
         return channel.getSslSession().getId();
@@ -21,14 +21,17 @@ package io.undertow.server;
 import io.undertow.UndertowLogger;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.util.DateUtils;
+import io.undertow.util.HeaderBlock;
 import io.undertow.util.Headers;
 import org.xnio.Pooled;
 import org.xnio.channels.StreamSourceChannel;
 
 import java.nio.ByteBuffer;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This class provides the connector part of the {@link HttpServerExchange} API.
@@ -56,6 +59,31 @@ public class Connectors {
         }
     }
 
+    /**
+     * Returns the pre-encoded header blocks that have been added to the response, or null if there are none.
+     *
+     * @param exchange The server exchange
+     * @return The header blocks
+     */
+    public static List<HeaderBlock> getResponseHeaderBlocks(final HttpServerExchange exchange) {
+        return exchange.getAttachment(HttpServerExchange.RESPONSE_HEADER_BLOCKS);
+    }
+
+    /**
+     * Adds the contents of any pre-encoded header blocks to the response header map, and removes the blocks
+     * from the exchange. This should be called by connectors that do not write the encoded blocks directly.
+     *
+     * @param exchange The server exchange
+     */
+    public static void flattenHeaderBlocks(final HttpServerExchange exchange) {
+        List<HeaderBlock> blocks = exchange.removeAttachment(HttpServerExchange.RESPONSE_HEADER_BLOCKS);
+        if (blocks != null) {
+            for (HeaderBlock block : blocks) {
+                block.addTo(exchange.getResponseHeaders());
+            }
+        }
+    }
+
     /**
      * Attached buffered data to the exchange. The will generally be used to allow data to be re-read.
      *
@@ -204,8 +232,16 @@ public class Connectors {
                 exchange.setDispatchExecutor(null);
                 exchange.unDispatch();
                 if (dispatchTask != null) {
-                    executor = executor == null ? exchange.getConnection().getWorker() : executor;
-                    executor.execute(dispatchTask);
+                    executor = executor == null ? exchange.getDefaultDispatchExecutor() : executor;
+                    try {
+                        executor.execute(dispatchTask);
+                    } catch (RejectedExecutionException e) {
+                        UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to dispatch request %s", exchange);
+                        if (!exchange.isResponseStarted()) {
+                            exchange.setResponseCode(503);
+                        }
+                        exchange.endExchange();
+                    }
                 }
             } else if (!resumed) {
                 exchange.endExchange();
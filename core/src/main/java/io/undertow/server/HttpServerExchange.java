@@ -33,13 +33,16 @@ import io.undertow.security.api.SecurityContext;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.util.AbstractAttachable;
 import io.undertow.util.AttachmentKey;
+import io.undertow.util.AttachmentList;
 import io.undertow.util.ConduitFactory;
 import io.undertow.util.Cookies;
+import io.undertow.util.HeaderBlock;
 import io.undertow.util.HeaderMap;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.NetworkUtils;
 import io.undertow.util.Protocols;
+import io.undertow.util.QueryParameterIndex;
 import org.jboss.logging.Logger;
 import org.xnio.Buffers;
 import org.xnio.ChannelExceptionHandler;
@@ -98,6 +101,11 @@ public final class HttpServerExchange extends AbstractAttachable {
      */
     static final AttachmentKey<Pooled<ByteBuffer>[]> BUFFERED_REQUEST_DATA = AttachmentKey.create(Pooled[].class);
 
+    /**
+     * The attachment key that pre-encoded response header blocks are attached under.
+     */
+    static final AttachmentKey<AttachmentList<HeaderBlock>> RESPONSE_HEADER_BLOCKS = AttachmentKey.createList(HeaderBlock.class);
+
     private final ServerConnection connection;
     private final HeaderMap requestHeaders;
     private final HeaderMap responseHeaders;
@@ -107,6 +115,10 @@ public final class HttpServerExchange extends AbstractAttachable {
     private DefaultResponseListener[] defaultResponseListeners;
 
     private Map<String, Deque<String>> queryParameters;
+    /**
+     * Index over the raw query string, only used until the parameter map is actually required
+     */
+    private QueryParameterIndex queryParameterIndex;
     private Map<String, Deque<String>> pathParameters;
 
     private Map<String, Cookie> requestCookies;
@@ -216,6 +228,12 @@ public final class HttpServerExchange extends AbstractAttachable {
      */
     private Executor dispatchExecutor;
 
+    /**
+     * The executor that is used for dispatches when no executor has been specified. If this is null then
+     * the XNIO worker is used.
+     */
+    private Executor defaultDispatchExecutor;
+
 
     private static final int MASK_RESPONSE_CODE = intBitMask(0, 9);
 
@@ -713,7 +731,7 @@ public final class HttpServerExchange extends AbstractAttachable {
             this.dispatchTask = runnable;
         } else {
             if (executor == null) {
-                getConnection().getWorker().execute(runnable);
+                getDefaultDispatchExecutor().execute(runnable);
             } else {
                 executor.execute(runnable);
             }
@@ -760,6 +778,28 @@ public final class HttpServerExchange extends AbstractAttachable {
         return dispatchExecutor;
     }
 
+    /**
+     * Sets the executor that is used for dispatch operations where no executor is specified, in place of the XNIO
+     * worker. Unlike {@link #setDispatchExecutor(java.util.concurrent.Executor)} this applies to every dispatch
+     * for the remainder of the exchange.
+     *
+     * @param executor The executor to use, or null to use the XNIO worker
+     */
+    public HttpServerExchange setDefaultDispatchExecutor(final Executor executor) {
+        this.defaultDispatchExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Gets the executor that is used for dispatch operations where no executor is specified.
+     *
+     * @return The default dispatch executor, which is the XNIO worker unless one has been set
+     */
+    public Executor getDefaultDispatchExecutor() {
+        final Executor executor = defaultDispatchExecutor;
+        return executor == null ? getConnection().getWorker() : executor;
+    }
+
     /**
      * @return The current dispatch task
      */
@@ -927,6 +967,21 @@ public final class HttpServerExchange extends AbstractAttachable {
         return responseHeaders;
     }
 
+    /**
+     * Adds a block of pre-encoded headers to the response. The headers in the block are written out directly
+     * after the status line, before the headers in {@link #getResponseHeaders()}.
+     *
+     * @param headerBlock The header block
+     * @return this exchange
+     */
+    public HttpServerExchange addResponseHeaderBlock(final HeaderBlock headerBlock) {
+        if (isResponseStarted()) {
+            throw UndertowMessages.MESSAGES.responseAlreadyStarted();
+        }
+        addToAttachmentList(RESPONSE_HEADER_BLOCKS, headerBlock);
+        return this;
+    }
+
     /**
      * @return The content length of the response, or <code>-1</code> if it has not been set
      */
@@ -959,16 +1014,64 @@ public final class HttpServerExchange extends AbstractAttachable {
      */
     public Map<String, Deque<String>> getQueryParameters() {
         if (queryParameters == null) {
-            queryParameters = new TreeMap<String, Deque<String>>();
+            if (queryParameterIndex != null) {
+                queryParameters = queryParameterIndex.toMap();
+                queryParameterIndex = null;
+            } else {
+                queryParameters = new TreeMap<String, Deque<String>>();
+            }
         }
         return queryParameters;
     }
 
-    public HttpServerExchange addQueryParam(final String name, final String param) {
-        if (queryParameters == null) {
-            queryParameters = new TreeMap<String, Deque<String>>();
+    /**
+     * Returns the first value of the given query parameter. Unlike {@link #getQueryParameters()} this does not
+     * require every parameter in the query string to be decoded.
+     *
+     * @param name The parameter name
+     * @return The first value, or <code>null</code> if the parameter is not present
+     */
+    public String getQueryParameter(final String name) {
+        if (queryParameters != null) {
+            final Deque<String> values = queryParameters.get(name);
+            return values == null ? null : values.peekFirst();
+        } else if (queryParameterIndex != null) {
+            return queryParameterIndex.getFirst(name);
+        }
+        return null;
+    }
+
+    /**
+     * Returns all values of the given query parameter. Unlike {@link #getQueryParameters()} this does not
+     * require every parameter in the query string to be decoded. The result must not be modified.
+     *
+     * @param name The parameter name
+     * @return The values, or <code>null</code> if the parameter is not present
+     */
+    public Deque<String> getQueryParameterValues(final String name) {
+        if (queryParameters != null) {
+            return queryParameters.get(name);
+        } else if (queryParameterIndex != null) {
+            return queryParameterIndex.get(name);
         }
-        Deque<String> list = queryParameters.get(name);
+        return null;
+    }
+
+    /**
+     * Sets the query parameters from an index over the raw query string. This replaces any existing query
+     * parameters, the parameters are only decoded when they are requested.
+     *
+     * @param queryParameterIndex The index
+     * @return this exchange
+     */
+    public HttpServerExchange setQueryParameterIndex(final QueryParameterIndex queryParameterIndex) {
+        this.queryParameterIndex = queryParameterIndex;
+        this.queryParameters = null;
+        return this;
+    }
+
+    public HttpServerExchange addQueryParam(final String name, final String param) {
+        Deque<String> list = getQueryParameters().get(name);
         if (list == null) {
             queryParameters.put(name, list = new ArrayDeque<String>(2));
         }
@@ -1014,6 +1117,25 @@ public final class HttpServerExchange extends AbstractAttachable {
         return requestCookies;
     }
 
+    /**
+     * Returns a single request cookie. If the cookie map has not been built yet then the cookie headers are scanned
+     * for the given name instead, so handlers that only need one cookie do not pay to parse all of them.
+     * <p>
+     * If the cookie is going to be modified then {@link #getRequestCookies()} should be used instead, as a
+     * cookie returned from a scan is not stored anywhere.
+     *
+     * @param name The cookie name
+     * @return The cookie, or <code>null</code> if it is not present
+     */
+    public Cookie getRequestCookie(final String name) {
+        if (requestCookies != null) {
+            return requestCookies.get(name);
+        }
+        return Cookies.parseRequestCookie(name,
+                getConnection().getUndertowOptions().get(UndertowOptions.ALLOW_EQUALS_IN_COOKIE_VALUE, false),
+                requestHeaders.get(Headers.COOKIE));
+    }
+
     /**
      * Sets a response cookie
      *
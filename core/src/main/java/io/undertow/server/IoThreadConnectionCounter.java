@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import org.xnio.ChannelListener;
+import org.xnio.ChannelListeners;
+import org.xnio.StreamConnection;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A listener that counts the number of connections that have been accepted by each IO thread, and then
+ * passes the connection on to the real open listener. The number of connections that are currently open
+ * on each thread is also tracked, and is decremented when the connection is closed.
+ * <p/>
+ * XNIO registers a listening socket with the selector of every IO thread, and the balancing options
+ * ({@link org.xnio.Options#BALANCING_TOKENS} and {@link org.xnio.Options#BALANCING_CONNECTIONS}) control how accepts
+ * are spread between them. These counters can be used to see the resulting distribution.
+ */
+public class IoThreadConnectionCounter implements ChannelListener<StreamConnection> {
+
+    private final ChannelListener<? super StreamConnection> next;
+    private final AtomicLongArray connections;
+    private final AtomicLongArray open;
+
+    public IoThreadConnectionCounter(final ChannelListener<? super StreamConnection> next, final int ioThreads) {
+        this.next = next;
+        this.connections = new AtomicLongArray(ioThreads);
+        this.open = new AtomicLongArray(ioThreads);
+    }
+
+    @Override
+    public void handleEvent(final StreamConnection channel) {
+        final int thread = channel.getIoThread().getNumber();
+        if (thread < 0 || thread >= connections.length()) {
+            next.handleEvent(channel);
+            return;
+        }
+        connections.incrementAndGet(thread);
+        open.incrementAndGet(thread);
+        next.handleEvent(channel);
+
+        //the open listener installs its own close listener on the connection, so we chain onto it once it is
+        //done. If the connection has already been closed the listener will never fire, so we decrement directly
+        final CloseListener closeListener = new CloseListener(thread, channel.getCloseListener());
+        channel.setCloseListener(closeListener);
+        if (!channel.isOpen()) {
+            closeListener.decrement();
+        }
+    }
+
+    /**
+     * @return The number of connections accepted by each IO thread, indexed by thread number
+     */
+    public long[] getConnectionsPerIoThread() {
+        final long[] result = new long[connections.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = connections.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of connections that are currently open on each IO thread, indexed by thread number
+     */
+    public long[] getOpenConnectionsPerIoThread() {
+        final long[] result = new long[open.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = open.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return The total number of connections that are currently open
+     */
+    public long getOpenConnections() {
+        long total = 0;
+        for (int i = 0; i < open.length(); ++i) {
+            total += open.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return The total number of connections that have been accepted
+     */
+    public long getTotalConnections() {
+        long total = 0;
+        for (int i = 0; i < connections.length(); ++i) {
+            total += connections.get(i);
+        }
+        return total;
+    }
+
+    private final class CloseListener implements ChannelListener<StreamConnection> {
+
+        private final int thread;
+        private final ChannelListener<? super StreamConnection> delegate;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private CloseListener(final int thread, final ChannelListener<? super StreamConnection> delegate) {
+            this.thread = thread;
+            this.delegate = delegate;
+        }
+
+        void decrement() {
+            if (closed.compareAndSet(false, true)) {
+                open.decrementAndGet(thread);
+            }
+        }
+
+        @Override
+        public void handleEvent(final StreamConnection channel) {
+            decrement();
+            ChannelListeners.invokeChannelListener(channel, delegate);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import io.undertow.server.handlers.cache.LRUCache;
+import org.xnio.ChannelListener;
+import org.xnio.StreamConnection;
+import org.xnio.channels.SslChannel;
+import org.xnio.ssl.SslConnection;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A listener that records TLS handshake statistics for the connections accepted by a HTTPS listener, and then
+ * passes the connection on to the real open listener.
+ * <p/>
+ * A handshake is counted as a resumption if its session ID has already been negotiated by an earlier handshake on
+ * this listener, in which case the abbreviated handshake was used. The most recent session IDs are remembered, up to
+ * the size of the session cache. Handshake latency is measured from the time the connection is accepted until the
+ * handshake completes, and is recorded in a fixed set of millisecond buckets.
+ * <p/>
+ * If the server session context of the listener is known then {@link #invalidateSessions()} can be used to discard all
+ * cached sessions, for example when rotating keys, so that every client has to perform a full handshake.
+ */
+public class SslHandshakeStatistics implements ChannelListener<StreamConnection> {
+
+    /**
+     * The upper bounds (inclusive) of the latency histogram buckets in milliseconds. There is an additional bucket
+     * for everything above the last bound.
+     */
+    private static final long[] LATENCY_BUCKETS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500};
+
+    /**
+     * The number of session IDs that are remembered if the session cache is unbounded or not known. This is the
+     * default session cache size of the JDK.
+     */
+    private static final int DEFAULT_SESSION_IDS = 20480;
+
+    /**
+     * The result of the initial handshake of each connection, so it can be reported by {@link ConnectionSSLSessionInfo}.
+     * The connections are weakly referenced, so entries go away with the connection.
+     */
+    private static final Map<SslChannel, Boolean> RESUMED_CONNECTIONS = Collections.synchronizedMap(new WeakHashMap<SslChannel, Boolean>());
+
+    private final ChannelListener<? super StreamConnection> next;
+    private final SSLSessionContext sessionContext;
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong totalHandshakeTime = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final LRUCache<ByteBuffer, Boolean> sessionIds;
+
+    /**
+     * @param next           The listener to pass connections to
+     * @param sessionContext The server session context of the listener, may be null if it is not known
+     */
+    public SslHandshakeStatistics(final ChannelListener<? super StreamConnection> next, final SSLSessionContext sessionContext) {
+        this.next = next;
+        this.sessionContext = sessionContext;
+        final int cacheSize = sessionContext == null ? 0 : sessionContext.getSessionCacheSize();
+        this.sessionIds = new LRUCache<ByteBuffer, Boolean>(cacheSize > 0 ? cacheSize : DEFAULT_SESSION_IDS, -1);
+    }
+
+    @Override
+    public void handleEvent(final StreamConnection channel) {
+        if (channel instanceof SslConnection) {
+            final long start = System.nanoTime();
+            final SslConnection connection = (SslConnection) channel;
+            connection.getHandshakeSetter().set(new ChannelListener<SslConnection>() {
+                @Override
+                public void handleEvent(final SslConnection sslConnection) {
+                    //we only care about the initial handshake, renegotiation is not counted
+                    sslConnection.getHandshakeSetter().set(null);
+                    final boolean resumed = handshakeComplete(sslConnection.getSslSession(), System.nanoTime() - start);
+                    RESUMED_CONNECTIONS.put(sslConnection, resumed);
+                }
+            });
+        }
+        next.handleEvent(channel);
+    }
+
+    /**
+     * Records a completed handshake.
+     *
+     * @param session       The negotiated session
+     * @param durationNanos The time from accept to handshake completion
+     * @return <code>true</code> if the handshake resumed an existing session
+     */
+    boolean handshakeComplete(final SSLSession session, final long durationNanos) {
+        final boolean resumed = isResumed(session);
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+        totalHandshakeTime.addAndGet(durationNanos);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+            ++bucket;
+        }
+        latencyHistogram.incrementAndGet(bucket);
+        return resumed;
+    }
+
+    /**
+     * @param session The session
+     * @return <code>true</code> if the session ID has been seen before, and the session was therefore resumed
+     */
+    private boolean isResumed(final SSLSession session) {
+        if (session == null) {
+            return false;
+        }
+        final byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            //no session ID, so it cannot be resumed
+            return false;
+        }
+        final ByteBuffer key = ByteBuffer.wrap(id.clone());
+        if (sessionIds.get(key) != null) {
+            return true;
+        }
+        sessionIds.add(key, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * @param channel The connection
+     * @return <code>true</code> if the initial handshake of the connection resumed an existing session, or
+     *         <code>null</code> if the handshake was not recorded by a statistics listener
+     */
+    static Boolean isResumed(final SslChannel channel) {
+        return RESUMED_CONNECTIONS.get(channel);
+    }
+
+    /**
+     * @return The number of handshakes that created a new session
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * @return The number of handshakes that resumed an existing session
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * @return The total time spent in handshakes in nanoseconds, from connection accept to handshake completion
+     */
+    public long getTotalHandshakeTime() {
+        return totalHandshakeTime.get();
+    }
+
+    /**
+     * @return The upper bounds of the histogram buckets in milliseconds, the last bucket of the histogram has no upper bound
+     */
+    public static long[] getHandshakeLatencyBuckets() {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    /**
+     * @return The number of handshakes in each latency bucket, see {@link #getHandshakeLatencyBuckets()}
+     */
+    public long[] getHandshakeLatencyHistogram() {
+        final long[] result = new long[latencyHistogram.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = latencyHistogram.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return The server session context of the listener, or null if it is not known
+     */
+    public SSLSessionContext getSessionContext() {
+        return sessionContext;
+    }
+
+    /**
+     * Invalidates every session in the server session cache, so all clients have to perform a full handshake on their
+     * next connection. Connections that are currently open are not affected.
+     *
+     * @return The number of sessions that were invalidated
+     */
+    public int invalidateSessions() {
+        if (sessionContext == null) {
+            return 0;
+        }
+        int count = 0;
+        final Enumeration<byte[]> ids = sessionContext.getIds();
+        while (ids.hasMoreElements()) {
+            final SSLSession session = sessionContext.getSession(ids.nextElement());
+            if (session != null) {
+                session.invalidate();
+                ++count;
+            }
+        }
+        return count;
+    }
+}
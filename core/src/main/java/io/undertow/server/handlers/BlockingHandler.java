@@ -18,12 +18,17 @@
 
 package io.undertow.server.handlers;
 
+import java.util.concurrent.Executor;
+
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 
 /**
  * A {@link HttpHandler} that initiates a blocking request. If the thread is currently running
  * in the io thread it will be dispatched.
+ * <p>
+ * If an executor is provided the request is dispatched to it, otherwise the exchange's default
+ * dispatch executor is used.
  *
  * @author Stuart Douglas
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -31,9 +36,15 @@ import io.undertow.server.HttpServerExchange;
 public final class BlockingHandler implements HttpHandler {
 
     private volatile HttpHandler handler;
+    private final Executor executor;
 
-    public BlockingHandler(final HttpHandler handler) {
+    public BlockingHandler(final HttpHandler handler, final Executor executor) {
         this.handler = handler;
+        this.executor = executor;
+    }
+
+    public BlockingHandler(final HttpHandler handler) {
+        this(handler, null);
     }
 
     public BlockingHandler() {
@@ -45,12 +56,16 @@ public final class BlockingHandler implements HttpHandler {
 
         exchange.startBlocking();
         if (exchange.isInIoThread()) {
-            exchange.dispatch(handler);
+            exchange.dispatch(executor, handler);
         } else {
             handler.handleRequest(exchange);
         }
     }
 
+    public Executor getExecutor() {
+        return executor;
+    }
+
     public HttpHandler getHandler() {
         return handler;
     }
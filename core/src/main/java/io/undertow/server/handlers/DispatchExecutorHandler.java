@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers;
+
+import java.util.concurrent.Executor;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Handler that sets the executor that is used for dispatches that do not specify an executor, such as
+ * those performed by {@link BlockingHandler}.
+ */
+public class DispatchExecutorHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final Executor executor;
+
+    public DispatchExecutorHandler(final HttpHandler next, final Executor executor) {
+        this.next = next;
+        this.executor = executor;
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+        exchange.setDefaultDispatchExecutor(executor);
+        next.handleRequest(exchange);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+}
@@ -278,6 +278,15 @@ public class LoadBalancingProxyClient implements ProxyClient {
         }
     }
 
+    /**
+     * @return <code>true</code> if the exchange is sent on a connection that is pinned to its client connection, in
+     *         which case every request to the backend uses the same connection
+     */
+    boolean isExclusive(final HttpServerExchange exchange) {
+        return exchange.getConnection().getAttachment(exclusiveConnectionKey) != null
+                || (exclusivityChecker != null && exclusivityChecker.isExclusivityRequired(exchange));
+    }
+
     protected Host selectHost(HttpServerExchange exchange) {
         Host[] hosts = this.hosts;
         if (hosts.length == 0) {
@@ -315,9 +324,8 @@ public class LoadBalancingProxyClient implements ProxyClient {
     }
 
     protected Host findStickyHost(HttpServerExchange exchange) {
-        Map<String, Cookie> cookies = exchange.getRequestCookies();
         for (String cookieName : sessionCookieNames) {
-            Cookie sk = cookies.get(cookieName);
+            Cookie sk = exchange.getRequestCookie(cookieName);
             if (sk != null) {
                 int index = sk.getValue().indexOf('.');
 
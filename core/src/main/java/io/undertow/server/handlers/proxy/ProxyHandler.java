@@ -19,6 +19,7 @@
 package io.undertow.server.handlers.proxy;
 
 import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
 import io.undertow.attribute.ExchangeAttribute;
 import io.undertow.attribute.ExchangeAttributes;
 import io.undertow.client.ClientCallback;
@@ -46,15 +47,19 @@ import io.undertow.util.HeaderMap;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
 import io.undertow.util.SameThreadExecutor;
 import org.jboss.logging.Logger;
+import org.xnio.Buffers;
 import org.xnio.ChannelExceptionHandler;
 import org.xnio.ChannelListener;
 import org.xnio.ChannelListeners;
 import org.xnio.IoUtils;
+import org.xnio.Pooled;
 import org.xnio.StreamConnection;
 import org.xnio.XnioExecutor;
 import org.xnio.channels.StreamSinkChannel;
+import org.xnio.channels.StreamSourceChannel;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.security.cert.CertificateEncodingException;
@@ -64,9 +69,15 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -76,6 +87,13 @@ import java.util.concurrent.TimeUnit;
  * knows how to proxy the request. If it does then it will provide a connection that can
  * used to connect to the remote server, otherwise the next handler will be invoked and the
  * request will proceed as normal.
+ * <p/>
+ * Idempotent requests can be retried if the backend cannot be reached, or if the connection fails before the
+ * response headers arrive. They can also be hedged: if the backend has not responded within the configured percentile
+ * of recent response times, a second request is sent, the first response to arrive is used and the other request is
+ * cancelled. A request body can only be replayed if it has been buffered, so only bodies with a content length of at
+ * most {@link #setMaxBufferedRequestSize(int)} bytes are eligible. Requests that use an exclusive backend connection
+ * of a {@link LoadBalancingProxyClient} are never retried or hedged, as every attempt would use the same connection.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -91,7 +109,44 @@ public final class ProxyHandler implements HttpHandler {
     private static final AttachmentKey<HttpServerExchange> EXCHANGE = AttachmentKey.create(HttpServerExchange.class);
     private static final AttachmentKey<XnioExecutor.Key> TIMEOUT_KEY = AttachmentKey.create(XnioExecutor.Key.class);
 
-    private final ProxyClientHandler proxyClientHandler = new ProxyClientHandler();
+    public static final int DEFAULT_MAX_BUFFERED_REQUEST_SIZE = 16 * 1024;
+
+    private static final Set<HttpString> IDEMPOTENT_METHODS;
+
+    private static final HttpString KEEP_ALIVE = new HttpString("Keep-Alive");
+    private static final HttpString PROXY_CONNECTION = new HttpString("Proxy-Connection");
+
+    /**
+     * Hop-by-hop headers that are never forwarded to the backend. Content-Length and Transfer-Encoding are
+     * deliberately absent, as the client connection uses them to frame the request body.
+     */
+    private static final Set<HttpString> HOP_BY_HOP_HEADERS;
+
+    static {
+        Set<HttpString> hopByHop = new HashSet<HttpString>();
+        hopByHop.add(Headers.CONNECTION);
+        hopByHop.add(KEEP_ALIVE);
+        hopByHop.add(PROXY_CONNECTION);
+        hopByHop.add(Headers.PROXY_AUTHORIZATION);
+        hopByHop.add(Headers.TE);
+        hopByHop.add(Headers.TRAILER);
+        hopByHop.add(Headers.UPGRADE);
+        HOP_BY_HOP_HEADERS = Collections.unmodifiableSet(hopByHop);
+
+        Set<HttpString> idempotent = new HashSet<HttpString>();
+        idempotent.add(Methods.GET);
+        idempotent.add(Methods.HEAD);
+        idempotent.add(Methods.OPTIONS);
+        idempotent.add(Methods.PUT);
+        idempotent.add(Methods.DELETE);
+        idempotent.add(Methods.TRACE);
+        IDEMPOTENT_METHODS = Collections.unmodifiableSet(idempotent);
+    }
+
+    private final ResponseTimeTracker responseTimes = new ResponseTimeTracker();
+    private int maxRetries;
+    private double hedgePercentile;
+    private int maxBufferedRequestSize = DEFAULT_MAX_BUFFERED_REQUEST_SIZE;
 
     /**
      * Map of additional headers to add to the request.
@@ -151,15 +206,58 @@ public final class ProxyHandler implements HttpHandler {
                 }
             });
         }
+        final ProxyRequest proxyRequest = new ProxyRequest(exchange, target);
         exchange.dispatch(exchange.isInIoThread() ? SameThreadExecutor.INSTANCE : exchange.getIoThread(), new Runnable() {
             @Override
             public void run() {
                 log.debugf("Proxying request %s, opening connection", exchange.getRequestURL());
-                proxyClient.getConnection(target, exchange, proxyClientHandler, -1, TimeUnit.MILLISECONDS);
+                proxyRequest.start();
             }
         });
     }
 
+    /**
+     * Sets the number of times an idempotent request is retried, if the backend cannot be reached or the
+     * connection fails before the response headers are received. The default is 0.
+     *
+     * @param maxRetries The maximum number of retries
+     * @return this
+     */
+    public ProxyHandler setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Enables hedging of idempotent requests. If the backend has not sent the response headers within the given
+     * percentile of recent response times a second request is sent, and whichever response arrives first is used.
+     * <p/>
+     * A value of 0 disables hedging, which is the default.
+     *
+     * @param hedgePercentile The percentile, for example 95
+     * @return this
+     */
+    public ProxyHandler setHedgePercentile(final double hedgePercentile) {
+        if (hedgePercentile < 0 || hedgePercentile >= 100) {
+            throw UndertowMessages.MESSAGES.invalidHedgePercentile(hedgePercentile);
+        }
+        this.hedgePercentile = hedgePercentile;
+        return this;
+    }
+
+    /**
+     * Sets the largest request body that is buffered so it can be sent again for a retry or a hedged request.
+     * Requests with larger bodies, or without a content length, are streamed to the backend and are never
+     * sent twice.
+     *
+     * @param maxBufferedRequestSize The maximum size in bytes
+     * @return this
+     */
+    public ProxyHandler setMaxBufferedRequestSize(final int maxBufferedRequestSize) {
+        this.maxBufferedRequestSize = maxBufferedRequestSize;
+        return this;
+    }
+
     /**
      * Adds a request header to the outgoing request. If the header resolves to null or an empty string
      * it will not be added, however any existing header with the same name will be removed.
@@ -214,49 +312,343 @@ public final class ProxyHandler implements HttpHandler {
     }
 
 
-    static void copyHeaders(final HeaderMap to, final HeaderMap from) {
+    /**
+     * Copies headers from one side of the proxy to the other in a single pass, dropping hop-by-hop headers
+     * and any header nominated by the inbound Connection header. All the values of a header are copied with a
+     * single {@link HeaderMap#putAll} call, without being parsed.
+     * <p/>
+     * If this is an upgrade the Connection and Upgrade headers are retained, as the other side needs them to
+     * perform the upgrade.
+     *
+     * @param to      The target headers
+     * @param from    The source headers
+     * @param upgrade If this is an upgrade request or response
+     */
+    static void copyEndToEndHeaders(final HeaderMap to, final HeaderMap from, final boolean upgrade) {
+        final HeaderValues connection = from.get(Headers.CONNECTION);
         long f = from.fastIterateNonEmpty();
         HeaderValues values;
         while (f != -1L) {
             values = from.fiCurrent(f);
-            to.putAll(values.getHeaderName(), values);
+            final HttpString name = values.getHeaderName();
+            if (upgrade && (name.equals(Headers.CONNECTION) || name.equals(Headers.UPGRADE))) {
+                to.putAll(name, values);
+            } else if (!HOP_BY_HOP_HEADERS.contains(name) && !isNominatedByConnection(name, connection)) {
+                to.putAll(name, values);
+            }
             f = from.fiNextNonEmpty(f);
         }
     }
 
+    private static boolean isNominatedByConnection(final HttpString name, final HeaderValues connection) {
+        if (connection == null) {
+            return false;
+        }
+        for (String value : connection) {
+            int start = 0;
+            final int length = value.length();
+            for (int i = 0; i <= length; ++i) {
+                if (i == length || value.charAt(i) == ',') {
+                    final String token = value.substring(start, i).trim();
+                    if (!token.isEmpty() && name.equalToString(token)) {
+                        return true;
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        return false;
+    }
+
     public ProxyClient getProxyClient() {
         return proxyClient;
     }
 
-    private final class ProxyClientHandler implements ProxyCallback<ProxyConnection> {
+    ResponseTimeTracker getResponseTimes() {
+        return responseTimes;
+    }
 
-        @Override
-        public void completed(HttpServerExchange exchange, ProxyConnection result) {
-            exchange.putAttachment(CONNECTION, result);
-            exchange.dispatch(SameThreadExecutor.INSTANCE, new ProxyAction(result, exchange, requestHeaders));
+    /**
+     * The state of a request that may be sent to the backend more than once. The connection callbacks and the hedge
+     * timer all run in the IO thread of the exchange, so no synchronization is needed.
+     */
+    private final class ProxyRequest implements ChannelListener<StreamSourceChannel>, ExchangeCompletionListener {
+
+        private final HttpServerExchange exchange;
+        private final ProxyClient.ProxyTarget target;
+        private final List<Pooled<ByteBuffer>> requestBody = new ArrayList<Pooled<ByteBuffer>>();
+        private final List<ClientConnection> connections = new ArrayList<ClientConnection>();
+        private boolean replayable;
+        private boolean bodyBuffered;
+        private boolean bodyStreamed;
+        private int retriesRemaining;
+        private int inFlight;
+        private boolean done;
+        private XnioExecutor.Key hedgeKey;
+
+        private ProxyRequest(final HttpServerExchange exchange, final ProxyClient.ProxyTarget target) {
+            this.exchange = exchange;
+            this.target = target;
+            this.retriesRemaining = maxRetries;
+            exchange.addExchangeCompleteListener(this);
         }
 
+        void start() {
+            boolean retryable = (maxRetries > 0 || hedgePercentile > 0)
+                    && IDEMPOTENT_METHODS.contains(exchange.getRequestMethod())
+                    && !exchange.getRequestHeaders().contains(Headers.UPGRADE)
+                    && !isExclusive();
+            if (retryable && exchange.isRequestComplete() && exchange.getRequestContentLength() == 0) {
+                //an empty body is replayed like a buffered one, rather than streamed from the request channel
+                bodyBuffered = true;
+            } else if (retryable && !exchange.isRequestComplete()) {
+                if (exchange.getRequestContentLength() >= 0
+                        && exchange.getRequestContentLength() <= maxBufferedRequestSize
+                        && !HttpContinue.requiresContinueResponse(exchange)) {
+                    replayable = true;
+                    bodyBuffered = true;
+                    handleEvent(exchange.getRequestChannel());
+                    return;
+                }
+                retryable = false;
+            }
+            replayable = retryable;
+            sendFirstRequest();
+        }
+
+        /**
+         * Every attempt on an exclusive connection would be sent on the same pinned connection, so these requests
+         * are neither retried nor hedged.
+         */
+        private boolean isExclusive() {
+            return proxyClient instanceof LoadBalancingProxyClient && ((LoadBalancingProxyClient) proxyClient).isExclusive(exchange);
+        }
+
+        private void sendFirstRequest() {
+            if (replayable && hedgePercentile > 0) {
+                final long delay = responseTimes.getPercentile(hedgePercentile);
+                if (delay >= 0) {
+                    hedgeKey = exchange.getIoThread().executeAfter(new Runnable() {
+                        @Override
+                        public void run() {
+                            hedgeKey = null;
+                            if (!done && replayable) {
+                                log.debugf("Sending hedged request for %s", exchange.getRequestURL());
+                                attempt();
+                            }
+                        }
+                    }, delay, TimeUnit.NANOSECONDS);
+                }
+            }
+            attempt();
+        }
+
+        private void attempt() {
+            inFlight++;
+            proxyClient.getConnection(target, exchange, new Attempt(this), -1, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Reads the request body into memory, so that it can be sent more than once
+         */
         @Override
-        public void failed(HttpServerExchange exchange) {
-            UndertowLogger.PROXY_REQUEST_LOGGER.proxyRequestFailedToResolveBackend(exchange.getRequestURI());
+        public void handleEvent(final StreamSourceChannel channel) {
+            try {
+                for (; ; ) {
+                    Pooled<ByteBuffer> pooled = exchange.getConnection().getBufferPool().allocate();
+                    int res;
+                    try {
+                        res = channel.read(pooled.getResource());
+                    } catch (IOException e) {
+                        pooled.free();
+                        throw e;
+                    }
+                    if (res <= 0) {
+                        pooled.free();
+                        if (res == -1) {
+                            channel.suspendReads();
+                            channel.getReadSetter().set(null);
+                            sendFirstRequest();
+                        } else {
+                            channel.getReadSetter().set(this);
+                            channel.resumeReads();
+                        }
+                        return;
+                    }
+                    pooled.getResource().flip();
+                    requestBody.add(pooled);
+                }
+            } catch (IOException e) {
+                UndertowLogger.REQUEST_IO_LOGGER.ioException(e);
+                IoUtils.safeClose(channel);
+                done = true;
+                exchange.setResponseCode(500);
+                exchange.endExchange();
+            }
+        }
+
+        /**
+         * @return A copy of the buffered request body for a single attempt, or <code>null</code> if the body was not
+         *         buffered
+         */
+        ByteBuffer[] getRequestBody() {
+            if (!bodyBuffered) {
+                return null;
+            }
+            ByteBuffer[] body = new ByteBuffer[requestBody.size()];
+            for (int i = 0; i < body.length; ++i) {
+                body[i] = requestBody.get(i).getResource().duplicate();
+            }
+            return body;
+        }
+
+        /**
+         * Hands the request channel to the attempt that streams the body, after which the request cannot be sent
+         * again. The channel can only be obtained once, so a hedged attempt that asks for it later gets
+         * <code>null</code>.
+         */
+        StreamSourceChannel streamBody() {
+            replayable = false;
+            if (bodyStreamed) {
+                return null;
+            }
+            bodyStreamed = true;
+            return exchange.getRequestChannel();
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        void connectionAcquired(final ProxyConnection connection) {
+            exchange.putAttachment(CONNECTION, connection);
+            connections.add(connection.getConnection());
+        }
+
+        /**
+         * Called when the response headers are received. If this response is selected its connection becomes the
+         * exchange's connection, as a hedged attempt may have acquired a different one since.
+         *
+         * @return <code>true</code> if this response should be sent to the client, <code>false</code> if a response
+         *         has already been selected, in which case the connection has been closed
+         */
+        boolean responseReceived(final ClientExchange result, final Attempt attempt) {
+            if (done) {
+                IoUtils.safeClose(result.getConnection());
+                return false;
+            }
+            done = true;
+            cancelHedge();
+            exchange.putAttachment(CONNECTION, attempt.connection);
+            responseTimes.record(System.nanoTime() - attempt.start);
+            for (ClientConnection connection : connections) {
+                if (connection != result.getConnection()) {
+                    //cancel the losing request
+                    IoUtils.safeClose(connection);
+                }
+            }
+            connections.clear();
+            return true;
+        }
+
+        /**
+         * Called when an attempt fails before the response headers were received. The request is retried if
+         * possible, otherwise if no other attempt is still in progress the failure is sent to the client.
+         *
+         * @param exception    The cause, or <code>null</code> if no backend connection could be obtained
+         * @param responseCode The response code to send if the request is not retried
+         */
+        void attemptFailed(final IOException exception, final int responseCode) {
+            if (done) {
+                return;
+            }
+            inFlight--;
+            if (replayable && retriesRemaining > 0) {
+                retriesRemaining--;
+                log.debugf(exception, "Retrying proxy request %s", exchange.getRequestURL());
+                attempt();
+                return;
+            }
+            if (inFlight > 0) {
+                //a hedged request is still running
+                return;
+            }
+            done = true;
+            cancelHedge();
+            if (exception == null) {
+                UndertowLogger.PROXY_REQUEST_LOGGER.proxyRequestFailedToResolveBackend(exchange.getRequestURI());
+            } else {
+                UndertowLogger.PROXY_REQUEST_LOGGER.proxyRequestFailed(exchange.getRequestURI(), exception);
+            }
             if (!exchange.isResponseStarted()) {
-                exchange.setResponseCode(503);
+                exchange.setResponseCode(responseCode);
                 exchange.endExchange();
             } else {
                 IoUtils.safeClose(exchange.getConnection());
             }
         }
+
+        private void cancelHedge() {
+            if (hedgeKey != null) {
+                hedgeKey.remove();
+                hedgeKey = null;
+            }
+        }
+
+        @Override
+        public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
+            done = true;
+            cancelHedge();
+            for (Pooled<ByteBuffer> pooled : requestBody) {
+                pooled.free();
+            }
+            requestBody.clear();
+            nextListener.proceed();
+        }
+    }
+
+    /**
+     * A single attempt to send the request to a backend
+     */
+    private final class Attempt implements ProxyCallback<ProxyConnection> {
+
+        private final ProxyRequest proxyRequest;
+        private final long start = System.nanoTime();
+        private ProxyConnection connection;
+
+        private Attempt(final ProxyRequest proxyRequest) {
+            this.proxyRequest = proxyRequest;
+        }
+
+        @Override
+        public void completed(HttpServerExchange exchange, ProxyConnection result) {
+            if (proxyRequest.isDone()) {
+                //another attempt already has the response
+                IoUtils.safeClose(result.getConnection());
+                return;
+            }
+            connection = result;
+            proxyRequest.connectionAcquired(result);
+            exchange.dispatch(SameThreadExecutor.INSTANCE, new ProxyAction(result, exchange, requestHeaders, this));
+        }
+
+        @Override
+        public void failed(HttpServerExchange exchange) {
+            proxyRequest.attemptFailed(null, 503);
+        }
     }
 
     private static class ProxyAction implements Runnable {
         private final ProxyConnection clientConnection;
         private final HttpServerExchange exchange;
         private final Map<HttpString, ExchangeAttribute> requestHeaders;
+        private final Attempt attempt;
 
-        public ProxyAction(final ProxyConnection clientConnection, final HttpServerExchange exchange, Map<HttpString, ExchangeAttribute> requestHeaders) {
+        public ProxyAction(final ProxyConnection clientConnection, final HttpServerExchange exchange, Map<HttpString, ExchangeAttribute> requestHeaders, Attempt attempt) {
             this.clientConnection = clientConnection;
             this.exchange = exchange;
             this.requestHeaders = requestHeaders;
+            this.attempt = attempt;
         }
 
         @Override
@@ -308,9 +700,10 @@ public final class ProxyHandler implements HttpHandler {
                     .setMethod(exchange.getRequestMethod());
             final HeaderMap inboundRequestHeaders = exchange.getRequestHeaders();
             final HeaderMap outboundRequestHeaders = request.getRequestHeaders();
-            copyHeaders(outboundRequestHeaders, inboundRequestHeaders);
+            final boolean upgradeRequest = inboundRequestHeaders.contains(Headers.UPGRADE);
+            copyEndToEndHeaders(outboundRequestHeaders, inboundRequestHeaders, upgradeRequest);
 
-            if (!exchange.isPersistent()) {
+            if (!exchange.isPersistent() && !upgradeRequest) {
                 //just because the client side is non-persistent
                 //we don't want to close the connection to the backend
                 outboundRequestHeaders.put(Headers.CONNECTION, "keep-alive");
@@ -359,6 +752,11 @@ public final class ProxyHandler implements HttpHandler {
             clientConnection.getConnection().sendRequest(request, new ClientCallback<ClientExchange>() {
                 @Override
                 public void completed(ClientExchange result) {
+                    final ProxyRequest proxyRequest = attempt.proxyRequest;
+                    if (proxyRequest.isDone()) {
+                        IoUtils.safeClose(clientConnection.getConnection());
+                        return;
+                    }
 
                     result.putAttachment(EXCHANGE, exchange);
 
@@ -381,20 +779,33 @@ public final class ProxyHandler implements HttpHandler {
                         });
                     }
 
-                    result.setResponseListener(new ResponseCallback(exchange));
+                    result.setResponseListener(new ResponseCallback(exchange, attempt));
+                    final ByteBuffer[] body = proxyRequest.getRequestBody();
+                    if (body != null) {
+                        new BufferedBodyListener(body, new HTTPTrailerChannelListener(exchange, result), clientConnection.getConnection()).handleEvent(result.getRequestChannel());
+                        return;
+                    }
+                    if (!upgradeRequest && !outboundRequestHeaders.contains(Headers.CONTENT_LENGTH)
+                            && !outboundRequestHeaders.contains(Headers.TRANSFER_ENCODING)) {
+                        //there is no request body, the client connection has already terminated the outbound
+                        //request so there is no need to allocate a buffer to pump an empty stream. If there is a
+                        //content length the body still has to be pumped, even if it has already been read, so the
+                        //outbound request is terminated rather than left waiting for data
+                        return;
+                    }
+                    final StreamSourceChannel requestChannel = proxyRequest.streamBody();
+                    if (requestChannel == null) {
+                        //another attempt is already streaming the body, this one fails once its connection is closed
+                        IoUtils.safeClose(clientConnection.getConnection());
+                        return;
+                    }
                     IoExceptionHandler handler = new IoExceptionHandler(exchange, clientConnection.getConnection());
-                    ChannelListeners.initiateTransfer(Long.MAX_VALUE, exchange.getRequestChannel(), result.getRequestChannel(), ChannelListeners.closingChannelListener(), new HTTPTrailerChannelListener(exchange, result), handler, handler, exchange.getConnection().getBufferPool());
+                    ChannelListeners.initiateTransfer(Long.MAX_VALUE, requestChannel, result.getRequestChannel(), ChannelListeners.closingChannelListener(), new HTTPTrailerChannelListener(exchange, result), handler, handler, exchange.getConnection().getBufferPool());
                 }
 
                 @Override
                 public void failed(IOException e) {
-                    UndertowLogger.PROXY_REQUEST_LOGGER.proxyRequestFailed(exchange.getRequestURI(), e);
-                    if (!exchange.isResponseStarted()) {
-                        exchange.setResponseCode(503);
-                        exchange.endExchange();
-                    } else {
-                        IoUtils.safeClose(exchange.getConnection());
-                    }
+                    attempt.proxyRequest.attemptFailed(e, 503);
                 }
             });
 
@@ -405,19 +816,24 @@ public final class ProxyHandler implements HttpHandler {
     private static final class ResponseCallback implements ClientCallback<ClientExchange> {
 
         private final HttpServerExchange exchange;
+        private final Attempt attempt;
 
-        private ResponseCallback(HttpServerExchange exchange) {
+        private ResponseCallback(HttpServerExchange exchange, Attempt attempt) {
             this.exchange = exchange;
+            this.attempt = attempt;
         }
 
         @Override
         public void completed(final ClientExchange result) {
+            if (!attempt.proxyRequest.responseReceived(result, attempt)) {
+                return;
+            }
             HttpServerExchange exchange = result.getAttachment(EXCHANGE);
             final ClientResponse response = result.getResponse();
             final HeaderMap inboundResponseHeaders = response.getResponseHeaders();
             final HeaderMap outboundResponseHeaders = exchange.getResponseHeaders();
             exchange.setResponseCode(response.getResponseCode());
-            copyHeaders(outboundResponseHeaders, inboundResponseHeaders);
+            copyEndToEndHeaders(outboundResponseHeaders, inboundResponseHeaders, exchange.isUpgrade());
 
             if (exchange.isUpgrade()) {
                 exchange.upgradeChannel(new HttpUpgradeListener() {
@@ -443,13 +859,44 @@ public final class ProxyHandler implements HttpHandler {
 
         @Override
         public void failed(IOException e) {
-            UndertowLogger.PROXY_REQUEST_LOGGER.proxyRequestFailed(exchange.getRequestURI(), e);
-            if (!exchange.isResponseStarted()) {
-                exchange.setResponseCode(500);
-                exchange.endExchange();
-            } else {
-                IoUtils.safeClose(exchange.getConnection());
+            attempt.proxyRequest.attemptFailed(e, 500);
+        }
+    }
+
+    /**
+     * Writes a buffered request body to the backend, and then invokes the next listener to terminate the request.
+     */
+    private static final class BufferedBodyListener implements ChannelListener<StreamSinkChannel> {
+
+        private final ByteBuffer[] body;
+        private final ChannelListener<StreamSinkChannel> next;
+        private final ClientConnection clientConnection;
+
+        private BufferedBodyListener(ByteBuffer[] body, ChannelListener<StreamSinkChannel> next, ClientConnection clientConnection) {
+            this.body = body;
+            this.next = next;
+            this.clientConnection = clientConnection;
+        }
+
+        @Override
+        public void handleEvent(final StreamSinkChannel channel) {
+            try {
+                while (Buffers.hasRemaining(body)) {
+                    if (channel.write(body) == 0) {
+                        channel.getWriteSetter().set(this);
+                        channel.resumeWrites();
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                //the response listener is notified of the failure, and may retry
+                UndertowLogger.REQUEST_IO_LOGGER.debug("Exception writing request body to target server", e);
+                IoUtils.safeClose(clientConnection);
+                return;
             }
+            channel.suspendWrites();
+            channel.getWriteSetter().set(null);
+            next.handleEvent(channel);
         }
     }
 
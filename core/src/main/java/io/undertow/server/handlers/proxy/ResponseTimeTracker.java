@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a window of the most recent backend response times, and calculates percentiles over them.
+ * <p/>
+ * Sorting the window is too expensive to do for every request, so a calculated percentile is reused until
+ * {@link #RECALCULATE_INTERVAL} more samples have been recorded.
+ */
+final class ResponseTimeTracker {
+
+    static final int WINDOW_SIZE = 1024;
+
+    /**
+     * No percentile is reported until this many samples have been recorded, as it would not be meaningful
+     */
+    static final int MIN_SAMPLES = 100;
+
+    static final int RECALCULATE_INTERVAL = 64;
+
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int count;
+    private int position;
+
+    private double calculatedPercentile = -1;
+    private long calculatedValue = -1;
+    private int recordedSinceCalculation;
+
+    /**
+     * @param nanos The time taken for the backend to send the response headers, in nanoseconds
+     */
+    synchronized void record(final long nanos) {
+        samples[position] = nanos;
+        position = (position + 1) % WINDOW_SIZE;
+        if (count < WINDOW_SIZE) {
+            ++count;
+        }
+        ++recordedSinceCalculation;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The response time at the given percentile in nanoseconds, or -1 if not enough responses have been recorded
+     */
+    synchronized long getPercentile(final double percentile) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        if (percentile != calculatedPercentile || recordedSinceCalculation >= RECALCULATE_INTERVAL) {
+            final long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            calculatedValue = sorted[Math.min(count - 1, Math.max(0, index))];
+            calculatedPercentile = percentile;
+            recordedSinceCalculation = 0;
+        }
+        return calculatedValue;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy.mod_cluster;
+
+import java.util.Locale;
+
+/**
+ * The fields that can appear in the body of an MCMP message.
+ */
+enum MCMPField {
+
+    JVM_ROUTE("JVMRoute"),
+    BALANCER("Balancer"),
+    STICKY_SESSION("StickySession"),
+    STICKY_SESSION_COOKIE("StickySessionCookie"),
+    STICKY_SESSION_PATH("StickySessionPath"),
+    STICKY_SESSION_REMOVE("StickySessionRemove"),
+    STICKY_SESSION_FORCE("StickySessionForce"),
+    WAIT_WORKER("WaitWorker"),
+    MAX_ATTEMPTS("Maxattempts"),
+    DOMAIN("Domain"),
+    HOST("Host"),
+    PORT("Port"),
+    TYPE("Type"),
+    REVERSED("Reversed"),
+    FLUSH_PACKETS("flushpackets", "flushpacket"),
+    FLUSH_WAIT("flushwait"),
+    PING("ping"),
+    SMAX("smax"),
+    TTL("ttl"),
+    TIMEOUT("Timeout"),
+    LOAD("Load"),
+    SCHEME("Scheme"),
+    ALIAS("Alias"),
+    CONTEXT("Context");
+
+    private static final MCMPField[] VALUES = values();
+
+    /**
+     * The names the field can be sent as, lower cased, as names are matched without regard to case
+     */
+    private final byte[][] names;
+    private final String name;
+
+    MCMPField(final String... names) {
+        this.name = names[0];
+        this.names = new byte[names.length][];
+        for (int i = 0; i < names.length; ++i) {
+            this.names[i] = names[i].toLowerCase(Locale.ENGLISH).getBytes();
+        }
+    }
+
+    /**
+     * @return The name of the field as defined by the MCMP protocol
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Looks up a field from its encoded name, without creating a String.
+     *
+     * @param name   The buffer holding the name
+     * @param length The length of the name
+     * @return The field, or <code>null</code> if the name is not a known field
+     */
+    static MCMPField fromName(final byte[] name, final int length) {
+        for (MCMPField field : VALUES) {
+            for (byte[] candidate : field.names) {
+                if (matches(candidate, name, length)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(final byte[] candidate, final byte[] name, final int length) {
+        if (candidate.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            byte b = name[i];
+            if (b >= 'A' && b <= 'Z') {
+                b = (byte) (b + ('a' - 'A'));
+            }
+            if (b != candidate[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
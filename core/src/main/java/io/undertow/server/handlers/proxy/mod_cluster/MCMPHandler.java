@@ -23,11 +23,8 @@ import io.undertow.Version;
 import io.undertow.io.Sender;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.server.handlers.form.FormData;
-import io.undertow.server.handlers.form.FormDataParser;
-import io.undertow.server.handlers.form.FormEncodedDataDefinition;
-import io.undertow.server.handlers.form.FormParserFactory;
 import io.undertow.util.HttpString;
+import org.xnio.XnioExecutor;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
@@ -41,12 +38,9 @@ import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.TimerTask;
 import java.util.UUID;
 
 import static io.undertow.server.handlers.proxy.mod_cluster.Context.Status;
@@ -125,7 +119,7 @@ public class MCMPHandler implements HttpHandler {
 
     private final HttpHandler next;
 
-    private MCMAdapterBackgroundProcessor backgroundProcessor;
+    private XnioExecutor.Key backgroundProcessor;
 
     MCMPHandler(ModClusterContainer container, MCMPHandlerBuilder config, HttpHandler next) {
         this.container = container;
@@ -145,13 +139,12 @@ public class MCMPHandler implements HttpHandler {
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
-        backgroundProcessor = new MCMAdapterBackgroundProcessor();
-        container.scheduleTask(backgroundProcessor, 1000);
+        backgroundProcessor = container.scheduleTask(new MCMAdapterBackgroundProcessor(), 1000);
     }
 
     public void stop() {
         if (backgroundProcessor != null) {
-            backgroundProcessor.cancel();
+            backgroundProcessor.remove();
         }
         backgroundProcessor = null;
     }
@@ -180,9 +173,8 @@ public class MCMPHandler implements HttpHandler {
                 processConfig(exchange);
             } else if (method.equals(ENABLE_APP)) {
                 try {
-                    Map<String, String[]> params = readPostParameters(exchange);
+                    MCMPRequestParser params = readPostParameters(exchange);
                     if (params == null) {
-                        processError(TYPESYNTAX, SMESPAR, exchange);
                         return;
                     }
                     processEnable(exchange, params);
@@ -191,17 +183,15 @@ public class MCMPHandler implements HttpHandler {
                     Ex.printStackTrace(System.out);
                 }
             } else if (method.equals(DISABLE_APP)) {
-                Map<String, String[]> params = readPostParameters(exchange);
+                MCMPRequestParser params = readPostParameters(exchange);
                 if (params == null) {
-                    processError(TYPESYNTAX, SMESPAR, exchange);
                     return;
                 }
                 processDisable(exchange, params);
                 processOK(exchange);
             } else if (method.equals(STOP_APP)) {
-                Map<String, String[]> params = readPostParameters(exchange);
+                MCMPRequestParser params = readPostParameters(exchange);
                 if (params == null) {
-                    processError(TYPESYNTAX, SMESPAR, exchange);
                     return;
                 }
                 processStop(exchange, params);
@@ -269,9 +259,8 @@ public class MCMPHandler implements HttpHandler {
                             return;
                         } else if (scmd.equals("ENABLE-APP") && range) {
                             String srange = params.get("Range").getFirst();
-                            Map<String, String[]> mparams = buildMap(params);
                             if (srange.equals("NODE")) {
-                                processNodeCmd(exchange, mparams, Status.ENABLED);
+                                processNodeCmd(exchange, getFirst(params, "JVMRoute"), Status.ENABLED);
                             }
                             if (srange.equals("DOMAIN")) {
                                 boolean domain = params.containsKey("Domain");
@@ -281,13 +270,12 @@ public class MCMPHandler implements HttpHandler {
                                 }
                             }
                             if (srange.equals("CONTEXT")) {
-                                processCmd(exchange, mparams, Status.ENABLED);
+                                processCmd(exchange, getFirst(params, "JVMRoute"), getFirst(params, "Alias"), getFirst(params, "Context"), Status.ENABLED);
                             }
                         } else if (scmd.equals("DISABLE-APP") && range) {
                             String srange = params.get("Range").getFirst();
-                            Map<String, String[]> mparams = buildMap(params);
                             if (srange.equals("NODE")) {
-                                processNodeCmd(exchange, mparams, Status.DISABLED);
+                                processNodeCmd(exchange, getFirst(params, "JVMRoute"), Status.DISABLED);
                             }
                             if (srange.equals("DOMAIN")) {
                                 boolean domain = params.containsKey("Domain");
@@ -297,7 +285,7 @@ public class MCMPHandler implements HttpHandler {
                                 }
                             }
                             if (srange.equals("CONTEXT")) {
-                                processCmd(exchange, mparams, Status.DISABLED);
+                                processCmd(exchange, getFirst(params, "JVMRoute"), getFirst(params, "Alias"), getFirst(params, "Context"), Status.DISABLED);
                             }
 
                         }
@@ -386,26 +374,16 @@ public class MCMPHandler implements HttpHandler {
     }
 
     private void processDomainCmd(HttpServerExchange exchange, String domain, Status status) throws Exception {
-        for (Node nodeConfig : container.getNodes()) {
-            if (nodeConfig.getNodeConfig().getDomain().equals(domain)) {
-                Map<String, String[]> params = new HashMap<String, String[]>();
-                String[] values = new String[1];
-                values[0] = nodeConfig.getJvmRoute();
-                params.put("JVMRoute", values);
-                processNodeCmd(exchange, params, status);
+        for (Node node : container.getNodes()) {
+            if (node.getNodeConfig().getDomain().equals(domain)) {
+                processNodeCmd(exchange, node.getJvmRoute(), status);
             }
         }
     }
 
-    private Map<String, String[]> buildMap(Map<String, Deque<String>> params) {
-        Map<String, String[]> sparams = new HashMap<String, String[]>();
-        for (String key : params.keySet()) {
-            // In fact we only have one
-            String[] values = new String[1];
-            values[0] = params.get(key).getFirst();
-            sparams.put(key, values);
-        }
-        return sparams;
+    private static String getFirst(Map<String, Deque<String>> params, String name) {
+        Deque<String> values = params.get(name);
+        return values == null ? null : values.getFirst();
     }
 
     /*
@@ -520,7 +498,8 @@ public class MCMPHandler implements HttpHandler {
             buf.append(" " + status + " ");
         else {
             buf.append(",Status: " + status + ",Elected: " + node.getNodeState().getOldelected() + ",Read: " + node.getNodeState().getRead() + ",Transferred: " + node.getNodeState().getTransfered() + ",Connected: "
-                    + node.getNodeState().getConnected() + ",Load: " + node.getNodeState().getLoad());
+                    + node.getNodeState().getConnected() + ",Load: " + node.getNodeState().getLoad()
+                    + ",Status messages: " + node.getNodeState().getStatusCount() + ",Status time (ns): " + node.getNodeState().getStatusProcessingTime());
         }
     }
 
@@ -543,33 +522,19 @@ public class MCMPHandler implements HttpHandler {
      */
     private void processPing(HttpServerExchange exchange) throws Exception {
         System.out.println("process_ping");
-        Map<String, String[]> params = readPostParameters(exchange);
+        MCMPRequestParser params = readPostParameters(exchange);
         if (params == null) {
-            processError(TYPESYNTAX, SMESPAR, exchange);
             return;
         }
-        String jvmRoute = null;
-        String scheme = null;
-        String host = null;
-        String port = null;
-
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String name = e.getKey();
-            String[] values = e.getValue();
-            String value = values[0];
-            if (name.equalsIgnoreCase("JVMRoute")) {
-                jvmRoute = value;
-            } else if (name.equalsIgnoreCase("Scheme")) {
-                scheme = value;
-            } else if (name.equalsIgnoreCase("Port")) {
-                port = value;
-            } else if (name.equalsIgnoreCase("Host")) {
-                host = value;
-            } else {
-                processError(TYPESYNTAX, SBADFLD + name + SBADFLD1, exchange);
-                return;
-            }
+        String badField = params.checkFields(MCMPField.JVM_ROUTE, MCMPField.SCHEME, MCMPField.PORT, MCMPField.HOST);
+        if (badField != null) {
+            processError(TYPESYNTAX, SBADFLD + badField + SBADFLD1, exchange);
+            return;
         }
+        String jvmRoute = params.get(MCMPField.JVM_ROUTE);
+        String scheme = params.get(MCMPField.SCHEME);
+        String host = params.get(MCMPField.HOST);
+        String port = params.get(MCMPField.PORT);
         if (jvmRoute == null) {
             if (scheme == null && host == null && port == null) {
                 exchange.getResponseHeaders().add(new HttpString("Content-Type"), "text/plain");
@@ -621,34 +586,21 @@ public class MCMPHandler implements HttpHandler {
         }
     }
 
-    private Map<String, String[]> readPostParameters(HttpServerExchange exchange) throws IOException {
-        final Map<String, String[]> ret = new HashMap<String, String[]>();
-        FormDataParser parser = FormParserFactory.builder(false).addParser(new FormEncodedDataDefinition().setForceCreation(true)).build().createParser(exchange);
-
-        FormData formData = parser.parseBlocking();
-        Iterator<String> it = formData.iterator();
-        while (it.hasNext()) {
-            final String name = it.next();
-            Deque<FormData.FormValue> val = formData.get(name);
-            if (ret.containsKey(name)) {
-                String[] existing = ret.get(name);
-                String[] array = new String[val.size() + existing.length];
-                System.arraycopy(existing, 0, array, 0, existing.length);
-                int i = existing.length;
-                for (final FormData.FormValue v : val) {
-                    array[i++] = v.getValue();
-                }
-                ret.put(name, array);
-            } else {
-                String[] array = new String[val.size()];
-                int i = 0;
-                for (final FormData.FormValue v : val) {
-                    array[i++] = v.getValue();
-                }
-                ret.put(name, array);
-            }
+    /**
+     * Reads the body of the message, sending an error response if it cannot be parsed
+     *
+     * @return The parsed message, or <code>null</code> if an error response has been sent
+     */
+    private MCMPRequestParser readPostParameters(HttpServerExchange exchange) throws Exception {
+        MCMPRequestParser params = MCMPRequestParser.parse(exchange);
+        if (params.isTooBig()) {
+            processError(TYPESYNTAX, SBAFBIG, exchange);
+            return null;
+        } else if (params.isMalformed()) {
+            processError(TYPESYNTAX, SMESPAR, exchange);
+            return null;
         }
-        return ret;
+        return params;
     }
 
     private boolean isNodeUp(Node nodeConfig) {
@@ -832,27 +784,19 @@ public class MCMPHandler implements HttpHandler {
      * @throws Exception
      */
     private void processStatus(HttpServerExchange exchange) throws Exception {
-        Map<String, String[]> params = readPostParameters(exchange);
+        MCMPRequestParser params = readPostParameters(exchange);
         if (params == null) {
-            processError(TYPESYNTAX, SMESPAR, exchange);
             return;
         }
-        String jvmRoute = null;
-        String load = null;
-
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String name = e.getKey();
-            String[] values = e.getValue();
-            String value = values[0];
-            if (name.equalsIgnoreCase("JVMRoute")) {
-                jvmRoute = value;
-            } else if (name.equalsIgnoreCase("Load")) {
-                load = value;
-            } else {
-                processError(TYPESYNTAX, SBADFLD + value + SBADFLD1, exchange);
-                return;
-            }
+        //the time spent reading the body depends on the client, so only the processing is measured
+        long start = System.nanoTime();
+        String badField = params.checkFields(MCMPField.JVM_ROUTE, MCMPField.LOAD);
+        if (badField != null) {
+            processError(TYPESYNTAX, SBADFLD + badField + SBADFLD1, exchange);
+            return;
         }
+        String jvmRoute = params.get(MCMPField.JVM_ROUTE);
+        String load = params.get(MCMPField.LOAD);
         if (load == null || jvmRoute == null) {
             processError(TYPESYNTAX, SMISFLD, exchange);
             return;
@@ -863,9 +807,10 @@ public class MCMPHandler implements HttpHandler {
             processError(TYPEMEM, MNODERD, exchange);
             return;
         }
-        node.getNodeState().setLoad(Integer.parseInt(load));
+        container.updateLoad(node, Integer.parseInt(load));
         /* TODO we need to check the node here */
         node.getNodeState().setStatus(NODE_UP);
+        node.getNodeState().statusProcessed(System.nanoTime() - start);
         processOK(exchange);
     }
 
@@ -875,9 +820,8 @@ public class MCMPHandler implements HttpHandler {
      * @throws Exception
      */
     private void processRemove(HttpServerExchange exchange) throws Exception {
-        Map<String, String[]> params = readPostParameters(exchange);
+        MCMPRequestParser params = readPostParameters(exchange);
         if (params == null) {
-            processError(TYPESYNTAX, SMESPAR, exchange);
             return;
         }
 
@@ -885,33 +829,21 @@ public class MCMPHandler implements HttpHandler {
         if (exchange.getRequestPath().equals("*") || exchange.getRequestPath().endsWith("/*")) {
             global = true;
         }
-        Context.ContextBuilder context = Context.builder();
-        VHost.VHostBuilder host = VHost.builder();
-
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String name = e.getKey();
-            String[] values = e.getValue();
-            String value = values[0];
-            if (name.equalsIgnoreCase("JVMRoute")) {
-                if (container.getNodeId(value) == -1) {
-                    processError(TYPEMEM, MNODERD, exchange);
-                    return;
-                }
-                host.setJVMRoute(value);
-                context.setJvmRoute(value);
-            } else if (name.equalsIgnoreCase("Alias")) {
-                // Alias is something like =default-host,localhost,example.com
-                String[] aliases = value.split(",");
-                host.addAliases(Arrays.asList(aliases));
-            } else if (name.equalsIgnoreCase("Context")) {
-                context.setPath(value);
-            }
-
-        }
-        if (context.getJvmRoute() == null) {
+        String jvmRoute = params.get(MCMPField.JVM_ROUTE);
+        if (jvmRoute == null) {
             processError(TYPESYNTAX, SROUBAD, exchange);
             return;
         }
+        if (container.getNode(jvmRoute) == null) {
+            processError(TYPEMEM, MNODERD, exchange);
+            return;
+        }
+        Context.ContextBuilder context = Context.builder();
+        VHost.VHostBuilder host = VHost.builder();
+        host.setJVMRoute(jvmRoute);
+        context.setJvmRoute(jvmRoute);
+        addAliases(host, params.get(MCMPField.ALIAS));
+        context.setPath(params.get(MCMPField.CONTEXT));
 
         if (global) {
             container.removeNode(context.getJvmRoute());
@@ -926,7 +858,7 @@ public class MCMPHandler implements HttpHandler {
      *
      * @throws Exception
      */
-    private void processStop(HttpServerExchange exchange, Map<String, String[]> params) throws Exception {
+    private void processStop(HttpServerExchange exchange, MCMPRequestParser params) throws Exception {
         processCmd(exchange, params, Status.STOPPED);
     }
 
@@ -935,7 +867,7 @@ public class MCMPHandler implements HttpHandler {
      *
      * @throws Exception
      */
-    private void processDisable(HttpServerExchange exchange, Map<String, String[]> params) throws Exception {
+    private void processDisable(HttpServerExchange exchange, MCMPRequestParser params) throws Exception {
         processCmd(exchange, params, Status.DISABLED);
     }
 
@@ -944,77 +876,58 @@ public class MCMPHandler implements HttpHandler {
      *
      * @throws Exception
      */
-    private void processEnable(HttpServerExchange exchange, Map<String, String[]> params) throws Exception {
+    private void processEnable(HttpServerExchange exchange, MCMPRequestParser params) throws Exception {
         processCmd(exchange, params, Status.ENABLED);
     }
 
-    private void processCmd(HttpServerExchange exchange, Map<String, String[]> params, Status status) throws Exception {
+    private void processCmd(HttpServerExchange exchange, MCMPRequestParser params, Status status) throws Exception {
         if (exchange.getRequestPath().equals("*") || exchange.getRequestPath().endsWith("/*")) {
-            processNodeCmd(exchange, params, status);
+            processNodeCmd(exchange, params.get(MCMPField.JVM_ROUTE), status);
             return;
         }
+        processCmd(exchange, params.get(MCMPField.JVM_ROUTE), params.get(MCMPField.ALIAS), params.get(MCMPField.CONTEXT), status);
+    }
 
-        Context.ContextBuilder context = Context.builder();
-        VHost.VHostBuilder host = VHost.builder();
-
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String name = e.getKey();
-            String[] values = e.getValue();
-            String value = values[0];
-            if (name.equalsIgnoreCase("JVMRoute")) {
-                if (container.getNodeId(value) == -1) {
-                    processError(TYPEMEM, MNODERD, exchange);
-                    return;
-                }
-                host.setJVMRoute(value);
-                context.setJvmRoute(value);
-            } else if (name.equalsIgnoreCase("Alias")) {
-                // Alias is something like =default-host,localhost,example.com
-                String[] aliases = value.split(",");
-                host.addAliases(Arrays.asList(aliases));
-            } else if (name.equalsIgnoreCase("Context")) {
-                context.setPath(value);
-            }
-
-        }
-        if (context.getJvmRoute() == null) {
+    private void processCmd(HttpServerExchange exchange, String jvmRoute, String alias, String path, Status status) throws Exception {
+        if (jvmRoute == null) {
             processError(TYPESYNTAX, SROUBAD, exchange);
             return;
         }
+        if (container.getNode(jvmRoute) == null) {
+            processError(TYPEMEM, MNODERD, exchange);
+            return;
+        }
+        Context.ContextBuilder context = Context.builder();
+        VHost.VHostBuilder host = VHost.builder();
+        host.setJVMRoute(jvmRoute);
+        context.setJvmRoute(jvmRoute);
+        addAliases(host, alias);
+        context.setPath(path);
         context.setStatus(status);
         long id = container.insertupdate(host.build());
         context.setHostid(id);
         container.insertupdate(context.build());
     }
 
-    /* Process a *-APP command that applies to the node */
-    private void processNodeCmd(HttpServerExchange exchange, Map<String, String[]> params, Status status) throws Exception {
-        String jvmRoute = null;
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String name = e.getKey();
-            String[] values = e.getValue();
-            String value = values[0];
-            if (name.equalsIgnoreCase("JVMRoute")) {
-                jvmRoute = value;
-            }
+    private static void addAliases(VHost.VHostBuilder host, String alias) {
+        if (alias != null) {
+            // Alias is something like =default-host,localhost,example.com
+            host.addAliases(Arrays.asList(alias.split(",")));
         }
+    }
+
+    /* Process a *-APP command that applies to the node */
+    private void processNodeCmd(HttpServerExchange exchange, String jvmRoute, Status status) throws Exception {
         if (jvmRoute == null) {
             processError(TYPESYNTAX, SROUBAD, exchange);
             return;
         }
-
-        for (VHost host : container.getHosts()) {
-            if (host.getJVMRoute().equals(jvmRoute)) {
-                for (Context context : container.getContexts()) {
-                    if (context.getJvmRoute().equals(jvmRoute) && context.getHostid() == host.getId()) {
-                        if (status != Status.REMOVED) {
-                            context.setStatus(status);
-                            container.insertupdate(context);
-                        } else {
-                            container.remove(context, host);
-                        }
-                    }
-                }
+        for (Context context : container.getContexts(jvmRoute)) {
+            if (status != Status.REMOVED) {
+                context.setStatus(status);
+                container.insertupdate(context);
+            } else {
+                container.remove(context, container.getHostById(context.getHostid()));
             }
         }
     }
@@ -1025,68 +938,75 @@ public class MCMPHandler implements HttpHandler {
      * @throws Exception
      */
     private void processConfig(HttpServerExchange exchange) throws Exception {
-        Map<String, String[]> params = readPostParameters(exchange);
+        MCMPRequestParser params = readPostParameters(exchange);
         if (params == null) {
-            processError(TYPESYNTAX, SMESPAR, exchange);
+            return;
+        }
+        String badField = params.getUnknownField();
+        if (badField != null) {
+            processError(TYPESYNTAX, SBADFLD + badField + SBADFLD1, exchange);
             return;
         }
         NodeConfig.NodeBuilder node = NodeConfig.builder();
         Balancer.BalancerBuilder balancer = Balancer.builder();
 
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String name = e.getKey();
-            String[] values = e.getValue();
-            String value = values[0];
-            if (name.equalsIgnoreCase("Balancer")) {
-                UndertowLogger.ROOT_LOGGER.error("Balancer updates are not supported");
-            } else if (name.equalsIgnoreCase("StickySession")) {
-                if (value.equalsIgnoreCase("No"))
-                    balancer.setStickySession(false);
-            } else if (name.equalsIgnoreCase("StickySessionCookie")) {
-                balancer.setStickySessionCookie(value);
-            } else if (name.equalsIgnoreCase("StickySessionPath")) {
-                balancer.setStickySessionPath(value);
-            } else if (name.equalsIgnoreCase("StickySessionRemove")) {
-                if (value.equalsIgnoreCase("Yes"))
-                    balancer.setStickySessionRemove(true);
-            } else if (name.equalsIgnoreCase("StickySessionForce")) {
-                if (value.equalsIgnoreCase("no"))
-                    balancer.setStickySessionForce(false);
-            } else if (name.equalsIgnoreCase("WaitWorker")) {
-                balancer.setWaitWorker(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("Maxattempts")) {
-                balancer.setMaxattempts(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("JVMRoute")) {
-                node.setJvmRoute(value);
-            } else if (name.equalsIgnoreCase("Domain")) {
-                node.setDomain(value);
-            } else if (name.equalsIgnoreCase("Host")) {
-                node.setHostname(value);
-            } else if (name.equalsIgnoreCase("Port")) {
-                node.setPort(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("Type")) {
-                node.setType(value);
-            } else if (name.equalsIgnoreCase("Reversed")) {
-                continue; // ignore it.
-            } else if (name.equalsIgnoreCase("flushpacket")) {
-                if (value.equalsIgnoreCase("on"))
-                    node.setFlushPackets(true);
-                if (value.equalsIgnoreCase("auto"))
-                    node.setFlushPackets(true);
-            } else if (name.equalsIgnoreCase("flushwait")) {
-                node.setFlushwait(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("ping")) {
-                node.setPing(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("smax")) {
-                node.setSmax(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("ttl")) {
-                node.setTtl(Integer.valueOf(value));
-            } else if (name.equalsIgnoreCase("Timeout")) {
-                node.setTimeout(Integer.valueOf(value));
-            } else {
-                processError(TYPESYNTAX, SBADFLD + name + SBADFLD1, exchange);
-                return;
-            }
+        String value;
+        if (params.has(MCMPField.BALANCER)) {
+            UndertowLogger.ROOT_LOGGER.error("Balancer updates are not supported");
+        }
+        if ((value = params.get(MCMPField.STICKY_SESSION)) != null && value.equalsIgnoreCase("No")) {
+            balancer.setStickySession(false);
+        }
+        if ((value = params.get(MCMPField.STICKY_SESSION_COOKIE)) != null) {
+            balancer.setStickySessionCookie(value);
+        }
+        if ((value = params.get(MCMPField.STICKY_SESSION_PATH)) != null) {
+            balancer.setStickySessionPath(value);
+        }
+        if ((value = params.get(MCMPField.STICKY_SESSION_REMOVE)) != null && value.equalsIgnoreCase("Yes")) {
+            balancer.setStickySessionRemove(true);
+        }
+        if ((value = params.get(MCMPField.STICKY_SESSION_FORCE)) != null && value.equalsIgnoreCase("no")) {
+            balancer.setStickySessionForce(false);
+        }
+        if ((value = params.get(MCMPField.WAIT_WORKER)) != null) {
+            balancer.setWaitWorker(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.MAX_ATTEMPTS)) != null) {
+            balancer.setMaxattempts(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.JVM_ROUTE)) != null) {
+            node.setJvmRoute(value);
+        }
+        if ((value = params.get(MCMPField.DOMAIN)) != null) {
+            node.setDomain(value);
+        }
+        if ((value = params.get(MCMPField.HOST)) != null) {
+            node.setHostname(value);
+        }
+        if ((value = params.get(MCMPField.PORT)) != null) {
+            node.setPort(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.TYPE)) != null) {
+            node.setType(value);
+        }
+        if ((value = params.get(MCMPField.FLUSH_PACKETS)) != null && (value.equalsIgnoreCase("on") || value.equalsIgnoreCase("auto"))) {
+            node.setFlushPackets(true);
+        }
+        if ((value = params.get(MCMPField.FLUSH_WAIT)) != null) {
+            node.setFlushwait(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.PING)) != null) {
+            node.setPing(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.SMAX)) != null) {
+            node.setSmax(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.TTL)) != null) {
+            node.setTtl(Integer.valueOf(value));
+        }
+        if ((value = params.get(MCMPField.TIMEOUT)) != null) {
+            node.setTimeout(Integer.valueOf(value));
         }
 
         container.insertupdate(balancer.build());
@@ -1149,7 +1069,7 @@ public class MCMPHandler implements HttpHandler {
         return managementPort;
     }
 
-    protected class MCMAdapterBackgroundProcessor extends TimerTask {
+    protected class MCMAdapterBackgroundProcessor implements Runnable {
 
         final InetAddress group;
         final InetAddress addr;
@@ -0,0 +1,253 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy.mod_cluster;
+
+import io.undertow.server.HttpServerExchange;
+import org.xnio.Pooled;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSourceChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for the URL encoded body of an MCMP message.
+ * <p/>
+ * The body is decoded as it is read, field names are matched against the known {@link MCMPField}s without
+ * creating strings, and values are stored in an array indexed by field, so the only allocations are the
+ * values themselves.
+ * <p/>
+ * Only the first value of a field is kept, as MCMP never repeats fields.
+ */
+final class MCMPRequestParser {
+
+    /**
+     * The maximum size of a single decoded name or value
+     */
+    static final int MAX_FIELD_SIZE = 4096;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int STATE_NAME = 0;
+    private static final int STATE_VALUE = 1;
+    private static final int STATE_SKIP = 2;
+
+    private final String[] values = new String[MCMPField.values().length];
+    private String unknownField;
+    private boolean malformed;
+    private boolean tooBig;
+
+    private int state = STATE_NAME;
+    private byte[] data = new byte[64];
+    private int length;
+    private MCMPField currentField;
+
+    /**
+     * The number of hex digits of a % escape that are still to be read, and the value decoded so far
+     */
+    private int escapeRemaining;
+    private int escapeValue;
+
+    /**
+     * Reads and parses the request body. As this blocks it must not be called from an IO thread.
+     *
+     * @param exchange The exchange
+     * @return The parsed message
+     */
+    static MCMPRequestParser parse(final HttpServerExchange exchange) throws IOException {
+        final MCMPRequestParser parser = new MCMPRequestParser();
+        final StreamSourceChannel channel = exchange.getRequestChannel();
+        if (channel != null) {
+            final Pooled<ByteBuffer> pooled = exchange.getConnection().getBufferPool().allocate();
+            try {
+                final ByteBuffer buffer = pooled.getResource();
+                for (; ; ) {
+                    buffer.clear();
+                    if (Channels.readBlocking(channel, buffer) == -1) {
+                        break;
+                    }
+                    buffer.flip();
+                    parser.parse(buffer);
+                }
+            } finally {
+                pooled.free();
+            }
+        }
+        parser.finish();
+        return parser;
+    }
+
+    /**
+     * Parses the next part of the body
+     *
+     * @param buffer The data, which is fully consumed
+     */
+    void parse(final ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            final byte b = buffer.get();
+            if (b == '&') {
+                endField();
+                continue;
+            }
+            if (state == STATE_SKIP) {
+                continue;
+            }
+            if (b == '=' && state == STATE_NAME) {
+                endName();
+                continue;
+            }
+            if (escapeRemaining > 0) {
+                final int digit = Character.digit(b, 16);
+                if (digit == -1) {
+                    malformed = true;
+                    state = STATE_SKIP;
+                    continue;
+                }
+                escapeValue = (escapeValue << 4) | digit;
+                if (--escapeRemaining == 0) {
+                    append((byte) escapeValue);
+                }
+            } else if (b == '%') {
+                escapeRemaining = 2;
+                escapeValue = 0;
+            } else if (b == '+') {
+                append((byte) ' ');
+            } else {
+                append(b);
+            }
+        }
+    }
+
+    /**
+     * Must be called once all the data has been parsed
+     */
+    void finish() {
+        endField();
+    }
+
+    private void append(final byte b) {
+        if (length == data.length) {
+            if (length == MAX_FIELD_SIZE) {
+                tooBig = true;
+                state = STATE_SKIP;
+                return;
+            }
+            data = Arrays.copyOf(data, Math.min(MAX_FIELD_SIZE, length * 2));
+        }
+        data[length++] = b;
+    }
+
+    private void endName() {
+        if (escapeRemaining > 0) {
+            malformed = true;
+        }
+        currentField = MCMPField.fromName(data, length);
+        if (currentField == null && unknownField == null) {
+            unknownField = new String(data, 0, length, UTF_8);
+        }
+        state = currentField == null ? STATE_SKIP : STATE_VALUE;
+        length = 0;
+        escapeRemaining = 0;
+    }
+
+    private void endField() {
+        if (escapeRemaining > 0) {
+            malformed = true;
+        }
+        if (state == STATE_VALUE) {
+            final int index = currentField.ordinal();
+            if (values[index] == null) {
+                values[index] = new String(data, 0, length, UTF_8);
+            }
+        } else if (state == STATE_NAME && length > 0) {
+            //a name without a value
+            malformed = true;
+        }
+        state = STATE_NAME;
+        currentField = null;
+        length = 0;
+        escapeRemaining = 0;
+    }
+
+    /**
+     * @param field The field
+     * @return The value of the field, or <code>null</code> if it was not present
+     */
+    String get(final MCMPField field) {
+        return values[field.ordinal()];
+    }
+
+    /**
+     * @param field The field
+     * @return <code>true</code> if the field was present
+     */
+    boolean has(final MCMPField field) {
+        return values[field.ordinal()] != null;
+    }
+
+    /**
+     * Checks that no fields other than the allowed fields were sent.
+     *
+     * @param allowed The fields that are allowed
+     * @return The name of the first field that is not allowed, or <code>null</code> if all fields are allowed
+     */
+    String checkFields(final MCMPField... allowed) {
+        if (unknownField != null) {
+            return unknownField;
+        }
+        for (MCMPField field : MCMPField.values()) {
+            if (values[field.ordinal()] != null && !contains(allowed, field)) {
+                return field.getName();
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(final MCMPField[] fields, final MCMPField field) {
+        for (MCMPField f : fields) {
+            if (f == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The name of the first field that was not a known MCMP field, or <code>null</code>
+     */
+    String getUnknownField() {
+        return unknownField;
+    }
+
+    /**
+     * @return <code>true</code> if the body could not be decoded
+     */
+    boolean isMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return <code>true</code> if a field was larger than {@link #MAX_FIELD_SIZE}
+     */
+    boolean isTooBig() {
+        return tooBig;
+    }
+}
@@ -23,17 +23,30 @@ import io.undertow.client.UndertowClient;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.server.handlers.proxy.ProxyConnectionPool;
+import org.xnio.IoFuture;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.Xnio;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioIoThread;
+import org.xnio.XnioWorker;
 import org.xnio.ssl.XnioSsl;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Container for all mod_proxy related things.
@@ -49,7 +62,30 @@ public class ModClusterContainer {
     private final List<VHost> hosts = new CopyOnWriteArrayList<VHost>();
     private final List<SessionId> sessionIds = Collections.synchronizedList(new ArrayList<SessionId>());
     private final Random random = new SecureRandom();
-    private Timer timer;
+
+    /**
+     * Indexes over the lists above, so lookups by MCMP messages and session routes do not have to scan every
+     * entry. All modifications happen while holding the container lock, which keeps the lists and the indexes
+     * consistent with each other.
+     */
+    private final Map<String, Node> nodesByRoute = new ConcurrentHashMap<String, Node>();
+    private final Map<Long, VHost> hostsById = new ConcurrentHashMap<Long, VHost>();
+    private final Map<HostKey, VHost> hostsByKey = new ConcurrentHashMap<HostKey, VHost>();
+    private final Map<ContextKey, Context> contextsByKey = new ConcurrentHashMap<ContextKey, Context>();
+    private long hostIdCounter;
+
+    /**
+     * The routes to use for new requests, rebuilt whenever an MCMP message changes the contexts. A new node load
+     * only reweighs the routes that contain the node.
+     */
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
+
+    private final List<ScheduledTask> tasks = new CopyOnWriteArrayList<ScheduledTask>();
+    private XnioWorker worker;
+    /**
+     * The worker created by {@link #start()}, which is shut down when the container is stopped
+     */
+    private XnioWorker ownedWorker;
 
     private final UndertowClient undertowClient;
     private final XnioSsl ssl;
@@ -69,20 +105,55 @@ public class ModClusterContainer {
         this(UndertowClient.getInstance(), null);
     }
 
+    /**
+     * Starts the container with a single threaded worker of its own, which is shut down again by {@link #stop()}.
+     *
+     * @deprecated Use {@link #start(XnioWorker)}, so the background tasks run in the server's worker
+     */
+    @Deprecated
     public synchronized void start() {
-        timer = new Timer(true);
-
+        final XnioWorker worker;
+        try {
+            worker = Xnio.getInstance().createWorker(OptionMap.builder()
+                    .set(Options.WORKER_IO_THREADS, 1)
+                    .set(Options.WORKER_TASK_CORE_THREADS, 1)
+                    .set(Options.WORKER_TASK_MAX_THREADS, 1)
+                    .set(Options.THREAD_DAEMON, true)
+                    .set(Options.WORKER_NAME, "mod_cluster")
+                    .getMap());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        ownedWorker = worker;
+        start(worker);
+    }
 
-        startNewTimerTask(new NodeStatusChecker(), 500);
-        // Start new thread for failed node health check
-        startNewTimerTask(new HealthChecker(), 5000);
-        startNewTimerTask(new MCMConfigBackgroundProcessor(), 5000);
+    /**
+     * Starts the container. The periodic node checks run in the IO threads of the given worker, so none of them may
+     * block.
+     *
+     * @param worker The worker to run the background tasks in
+     */
+    public synchronized void start(XnioWorker worker) {
+        this.worker = worker;
+        scheduleTask(new NodeStatusChecker(), 500);
+        // health check for failed nodes
+        scheduleTask(new HealthChecker(), 5000);
+        scheduleTask(new MCMConfigBackgroundProcessor(), 5000);
         proxyClient = new ModClusterLoadBalancingProxyClient(null, this);
     }
 
     public synchronized void stop() {
-        timer.cancel();
+        for (ScheduledTask task : tasks) {
+            task.remove();
+        }
+        tasks.clear();
+        worker = null;
         proxyClient = null;
+        if (ownedWorker != null) {
+            ownedWorker.shutdown();
+            ownedWorker = null;
+        }
     }
 
     public ModClusterLoadBalancingProxyClient getProxyClient() {
@@ -90,13 +161,14 @@ public class ModClusterContainer {
     }
 
     public Node findNode(final HttpServerExchange exchange) {
+        final RoutingTable.Route route = routingTable.find(exchange.getHostName(), exchange.getRelativePath());
         for (Balancer balancer : balancers) {
-            Map<String, Cookie> cookies = exchange.getRequestCookies();
             if (balancer.isStickySession()) {
-                if (cookies.containsKey(balancer.getStickySessionCookie())) {
-                    Node node = findNodeBySessionId(cookies.get(balancer.getStickySessionCookie()).getValue());
+                Cookie cookie = exchange.getRequestCookie(balancer.getStickySessionCookie());
+                if (cookie != null) {
+                    Node node = findNodeBySessionId(cookie.getValue());
                     if (node != null && node.getConnectionPool().available() != ProxyConnectionPool.AvailabilityType.PROBLEM
-                            && node.getNodeState().isNodeUp()) {
+                            && node.getNodeState().isNodeUp() && (route == null || route.contains(node))) {
                         return node;
                     }
                 }
@@ -104,12 +176,19 @@ public class ModClusterContainer {
                     String id = exchange.getPathParameters().get(balancer.getStickySessionPath()).getFirst();
                     Node node = findNodeBySessionId(id);
                     if (node != null && node.getConnectionPool().available() != ProxyConnectionPool.AvailabilityType.PROBLEM
-                            && node.getNodeState().isNodeUp()) {
+                            && node.getNodeState().isNodeUp() && (route == null || route.contains(node))) {
                         return node;
                     }
                 }
             }
         }
+        if (route != null) {
+            Node node = route.select();
+            if (node != null) {
+                node.getNodeState().setElected(node.getNodeState().getElected() + 1);
+                return node;
+            }
+        }
         return getNode();
     }
 
@@ -128,25 +207,11 @@ public class ModClusterContainer {
         if (index != -1) {
             route = route.substring(0, index);
         }
-        for (Node node : nodes) {
-            if (route.equals(node.getJvmRoute())) {
-                return node;
-            }
-        }
-        return null;
+        return nodesByRoute.get(route);
     }
 
     //OLD CODE
 
-    /**
-     * Create and start a new thread for the specified target task
-     *
-     * @param task
-     */
-    private void startNewTimerTask(final TimerTask task, long interval) {
-        timer.schedule(task, interval, interval);
-    }
-
     /**
      * @return the number of active nodes
      */
@@ -228,12 +293,7 @@ public class ModClusterContainer {
     }
 
     public Node getNode(String jvmRoute) {
-        for (Node nod : nodes) {
-            if (nod.getJvmRoute().equals(jvmRoute)) {
-                return nod;
-            }
-        }
-        return null;
+        return nodesByRoute.get(jvmRoute);
     }
 
     /* get the least loaded node according to the tablel values */
@@ -255,33 +315,21 @@ public class ModClusterContainer {
         return nodeConfig;
     }
 
-    public void insertupdate(NodeConfig nodeConfig) {
-        if (nodes.isEmpty()) {
-            // TODO add the connection manager.
-            nodes.add(new Node(nodeConfig, this, ssl, undertowClient));
+    public synchronized void insertupdate(NodeConfig nodeConfig) {
+        Node existing = nodesByRoute.get(nodeConfig.getJvmRoute());
+        if (existing != null) {
+            // TODO that is more tricky see mod_cluster C code.
+            existing.updateConfig(nodeConfig);
         } else {
-            int i = 1;
-            Node replace = null;
-            for (Node nod : nodes) {
-                if (nod.getJvmRoute().equals(nodeConfig.getJvmRoute())) {
-                    // replace it.
-                    // TODO that is more tricky see mod_cluster C code.
-                    replace = nod;
-                    break;
-                } else {
-                    i++;
-                }
-            }
-            if (replace != null) {
-                replace.updateConfig(nodeConfig);
-            } else {
-                // TODO add the connection manager.
-                nodes.add(new Node(nodeConfig, this, ssl, undertowClient));
-            }
+            // TODO add the connection manager.
+            Node node = new Node(nodeConfig, this, ssl, undertowClient);
+            nodesByRoute.put(node.getJvmRoute(), node);
+            nodes.add(node);
         }
+        updateRoutingTable();
     }
 
-    public void insertupdate(Balancer balancer) {
+    public synchronized void insertupdate(Balancer balancer) {
         if (getBalancers().isEmpty()) {
             getBalancers().add(balancer);
         } else {
@@ -297,51 +345,31 @@ public class ModClusterContainer {
         }
     }
 
-    public long insertupdate(VHost host) {
-        int i = 1;
-        if (hosts.isEmpty()) {
-            host.setId(i);
-            hosts.add(host);
-            return 1;
-        } else {
-            for (VHost hos : hosts) {
-                if (hos.getJVMRoute().equals(host.getJVMRoute())
-                        && isSame(host.getAliases(), hos.getAliases())) {
-                    return hos.getId();
-                }
-                i++;
-            }
+    public synchronized long insertupdate(VHost host) {
+        HostKey key = new HostKey(host.getJVMRoute(), host.getAliases());
+        VHost existing = hostsByKey.get(key);
+        if (existing != null) {
+            return existing.getId();
         }
-        host.setId(i);
+        long id = ++hostIdCounter;
+        host.setId(id);
+        hostsByKey.put(key, host);
+        hostsById.put(id, host);
         hosts.add(host);
-        return i;
+        return id;
     }
 
-    private boolean isSame(List<String> aliases, List<String> aliases2) {
-        if (aliases.size() != aliases2.size())
-            return false;
-        for (String host : aliases)
-            if (!aliases.contains(host))
-                return false;
-        return true;
-    }
-
-    public void insertupdate(Context context) {
-        if (contexts.isEmpty()) {
-            contexts.add(context);
-            return;
+    public synchronized void insertupdate(Context context) {
+        ContextKey key = new ContextKey(context.getJvmRoute(), context.getHostid(), context.getPath());
+        Context existing = contextsByKey.get(key);
+        if (existing != null) {
+            // update the status.
+            existing.setStatus(context.getStatus());
         } else {
-            for (Context con : contexts) {
-                if (context.getJvmRoute().equals(con.getJvmRoute())
-                        && context.getHostid() == con.getHostid()
-                        && context.getPath().equals(con.getPath())) {
-                    // update the status.
-                    con.setStatus(context.getStatus());
-                    return;
-                }
-            }
+            contextsByKey.put(key, context);
             contexts.add(context);
         }
+        updateRoutingTable();
     }
 
     public void checkHealthNode() {
@@ -359,66 +387,87 @@ public class ModClusterContainer {
      * remove the context and the corresponding host if that is last context of the host.
      */
 
-    public void remove(Context context, VHost host) {
-        for (Context con : contexts) {
-            if (context.getJvmRoute().equals(con.getJvmRoute())
-                    && isSame(getHostById(con.getHostid()).getAliases(), host.getAliases())
-                    && context.getPath().equals(con.getPath())) {
-                contexts.remove(con);
-                removeEmptyHost(con.getHostid());
-                return;
-            }
-
+    public synchronized void remove(Context context, VHost host) {
+        if (host == null) {
+            return;
+        }
+        VHost existing = hostsByKey.get(new HostKey(context.getJvmRoute(), host.getAliases()));
+        if (existing == null) {
+            return;
+        }
+        Context con = contextsByKey.remove(new ContextKey(context.getJvmRoute(), existing.getId(), context.getPath()));
+        if (con != null) {
+            contexts.remove(con);
+            removeEmptyHost(existing);
+            updateRoutingTable();
         }
     }
 
-    private void removeEmptyHost(long hostid) {
-        boolean remove = true;
+    private void removeEmptyHost(VHost host) {
         for (Context con : contexts) {
-            if (con.getHostid() == hostid) {
-                remove = false;
-                break;
+            if (con.getHostid() == host.getId()) {
+                return;
             }
         }
-        if (remove)
-            hosts.remove(getHostById(hostid));
+        removeHost(host);
     }
 
-    private VHost getHostById(long hostid) {
-        for (VHost hos : hosts) {
-            if (hos.getId() == hostid)
-                return hos;
+    private void removeHost(VHost host) {
+        hosts.remove(host);
+        hostsById.remove(host.getId());
+        hostsByKey.remove(new HostKey(host.getJVMRoute(), host.getAliases()));
+    }
+
+    VHost getHostById(long hostid) {
+        return hostsById.get(hostid);
+    }
+
+    /**
+     * @return the contexts registered by the given node
+     */
+    List<Context> getContexts(String jvmRoute) {
+        List<Context> result = new ArrayList<Context>();
+        for (Context con : contexts) {
+            if (con.getJvmRoute().equals(jvmRoute)) {
+                result.add(con);
+            }
         }
-        return null;
+        return result;
     }
 
     /*
      * Remove the node, host, context corresponding to jvmRoute.
      */
-    public void removeNode(String jvmRoute) {
-        List<Context> remcons = new ArrayList<Context>();
-        for (Context con : contexts) {
-            if (con.getJvmRoute().equals(jvmRoute))
-                remcons.add(con);
-        }
-        for (Context con : remcons)
+    public synchronized void removeNode(String jvmRoute) {
+        for (Context con : getContexts(jvmRoute)) {
             contexts.remove(con);
-
-        List<VHost> remhosts = new ArrayList<VHost>();
+            contextsByKey.remove(new ContextKey(con.getJvmRoute(), con.getHostid(), con.getPath()));
+        }
         for (VHost hos : hosts) {
-            if (hos.getJVMRoute().equals(jvmRoute))
-                remhosts.add(hos);
+            if (hos.getJVMRoute().equals(jvmRoute)) {
+                removeHost(hos);
+            }
+        }
+        Node node = nodesByRoute.remove(jvmRoute);
+        if (node != null) {
+            nodes.remove(node);
+            failedNodes.remove(node);
         }
-        for (VHost hos : remhosts)
-            hosts.remove(hos);
+        updateRoutingTable();
+    }
 
-        List<Node> remnodes = new ArrayList<Node>();
-        for (Node nod : nodes) {
-            if (nod.getJvmRoute().equals(jvmRoute))
-                remnodes.add(nod);
+    /**
+     * Updates the load factor of a node, which changes its weight in the routes that contain it
+     */
+    public synchronized void updateLoad(Node node, int load) {
+        if (node.getNodeState().getLoad() != load) {
+            node.getNodeState().setLoad(load);
+            routingTable.updateLoad(node);
         }
-        for (Node nod : remnodes)
-            nodes.remove(nod);
+    }
+
+    private void updateRoutingTable() {
+        routingTable = RoutingTable.build(hosts, contexts, nodesByRoute);
     }
 
     public List<SessionId> getSessionIds() {
@@ -437,8 +486,19 @@ public class ModClusterContainer {
         return "" + i;
     }
 
-    void scheduleTask(TimerTask task, int interval) {
-        timer.schedule(task, interval, interval);
+    /**
+     * Runs the task every <code>interval</code> milliseconds in one of the IO threads, until either the returned key
+     * is removed or the container is stopped.
+     *
+     * @param task     The task, which must not block
+     * @param interval The interval in milliseconds
+     * @return A key that can be used to cancel the task
+     */
+    synchronized XnioExecutor.Key scheduleTask(Runnable task, int interval) {
+        ScheduledTask scheduled = new ScheduledTask(task, worker.getIoThread(), interval);
+        tasks.add(scheduled);
+        scheduled.schedule();
+        return scheduled;
     }
 
     public List<Node> getNodes() {
@@ -462,7 +522,7 @@ public class ModClusterContainer {
     }
 
 
-    protected class MCMConfigBackgroundProcessor extends TimerTask {
+    protected class MCMConfigBackgroundProcessor implements Runnable {
 
         @Override
         public void run() {
@@ -478,61 +538,49 @@ public class ModClusterContainer {
      *
      * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
      */
-    private class HealthChecker extends TimerTask {
+    private class HealthChecker implements Runnable {
 
         @Override
         public void run() {
-            List<Node> tmp = new ArrayList<Node>();
             if (failedNodes.isEmpty()) {
                 return;
             }
             UndertowLogger.ROOT_LOGGER.debug("Starting health check for previously failed nodes");
-            for (Node nodeConfig : failedNodes) {
-                if (checkHealth(nodeConfig)) {
-                    nodeConfig.getNodeState().setStatus(NodeState.NodeStatus.NODE_UP);
-                    tmp.add(nodeConfig);
-                }
+            for (Node node : failedNodes) {
+                checkHealth(node);
             }
-
-            if (tmp.isEmpty()) {
-                return;
-            }
-
-            nodes.addAll(tmp);
-
-            failedNodes.removeAll(tmp);
-
         }
 
         /**
-         * Check the health of the failed node
+         * Check the health of the failed node by opening a connection to it, without blocking the IO thread. If the
+         * node is reachable it is moved back to the list of healthy nodes once the connection has been established.
          *
          * @param node
-         * @return <tt>true</tt> if the node is reachable else <tt>false</tt>
          */
-        public boolean checkHealth(Node node) {
-            if (node == null) {
-                return false;
-            }
-            boolean ok = false;
+        public void checkHealth(final Node node) {
             // TODO we should use the connectionPool instead.
-            java.net.Socket s = null;
-            try {
-                s = new java.net.Socket(node.getNodeConfig().getHostname(), node.getNodeConfig().getPort());
-                s.setSoLinger(true, 0);
-                ok = true;
-            } catch (Exception e) {
-                // Ignore
-            } finally {
-                if (s != null) {
-                    try {
-                        s.close();
-                    } catch (Exception e) {
-                        // Ignore
+            XnioWorker worker = ModClusterContainer.this.worker;
+            if (worker == null) {
+                return;
+            }
+            InetSocketAddress address = new InetSocketAddress(node.getNodeConfig().getHostname(), node.getNodeConfig().getPort());
+            worker.getIoThread().openStreamConnection(address, null, OptionMap.EMPTY).addNotifier(new IoFuture.HandlingNotifier<StreamConnection, Node>() {
+                @Override
+                public void handleDone(StreamConnection connection, Node node) {
+                    IoUtils.safeClose(connection);
+                    synchronized (ModClusterContainer.this) {
+                        if (failedNodes.remove(node)) {
+                            node.getNodeState().setStatus(NodeState.NodeStatus.NODE_UP);
+                            nodes.add(node);
+                        }
                     }
                 }
-            }
-            return ok;
+
+                @Override
+                public void handleFailed(IOException exception, Node node) {
+                    // Ignore, the node is still down
+                }
+            }, node);
         }
     }
 
@@ -543,10 +591,16 @@ public class ModClusterContainer {
      *
      * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
      */
-    private class NodeStatusChecker extends TimerTask {
+    private class NodeStatusChecker implements Runnable {
 
         @Override
         public void run() {
+            synchronized (ModClusterContainer.this) {
+                checkNodeStatus();
+            }
+        }
+
+        private void checkNodeStatus() {
             List<Node> tmp = new ArrayList<Node>();
             try {
                 // Retrieve nodes with status "DOWN"
@@ -556,14 +610,13 @@ public class ModClusterContainer {
                     }
                 }
 
-                if (tmp.isEmpty()) {
-                    return;
+                if (!tmp.isEmpty()) {
+                    // Remove failed nodes from the list of nodes
+                    nodes.removeAll(tmp);
+                    // Add selected nodes to the list of failed nodes
+                    failedNodes.addAll(tmp);
+                    tmp.clear();
                 }
-                // Remove failed nodes from the list of nodes
-                nodes.removeAll(tmp);
-                // Add selected nodes to the list of failed nodes
-                failedNodes.addAll(tmp);
-                tmp.clear();
 
                 // Retrieve nodes with status "UP"
                 for (Node n : failedNodes) {
@@ -583,10 +636,113 @@ public class ModClusterContainer {
 
                 // printNodes();
             } catch (Throwable e) {
-                e.printStackTrace();
+                UndertowLogger.ROOT_LOGGER.debug("Failed to check node status", e);
+            }
+
+        }
+    }
+
+    /**
+     * A task that reschedules itself in the same IO thread after every run.
+     */
+    private final class ScheduledTask implements Runnable, XnioExecutor.Key {
+
+        private final Runnable task;
+        private final XnioIoThread ioThread;
+        private final int interval;
+        private volatile boolean removed;
+        private volatile XnioExecutor.Key key;
+
+        private ScheduledTask(Runnable task, XnioIoThread ioThread, int interval) {
+            this.task = task;
+            this.ioThread = ioThread;
+            this.interval = interval;
+        }
+
+        void schedule() {
+            key = ioThread.executeAfter(this, interval, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (removed) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                UndertowLogger.ROOT_LOGGER.debug("Mod cluster background task failed", e);
             }
+            if (!removed) {
+                schedule();
+            }
+        }
 
+        @Override
+        public boolean remove() {
+            removed = true;
+            tasks.remove(this);
+            XnioExecutor.Key key = this.key;
+            return key == null || key.remove();
+        }
+    }
+
+    private static final class HostKey {
+
+        private final String jvmRoute;
+        private final Set<String> aliases;
+
+        HostKey(String jvmRoute, List<String> aliases) {
+            this.jvmRoute = jvmRoute;
+            this.aliases = new HashSet<String>(aliases);
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HostKey)) {
+                return false;
+            }
+            HostKey other = (HostKey) o;
+            return equal(jvmRoute, other.jvmRoute) && aliases.equals(other.aliases);
+        }
+
+        @Override
+        public int hashCode() {
+            return (jvmRoute == null ? 0 : jvmRoute.hashCode()) * 31 + aliases.hashCode();
+        }
+    }
+
+    private static final class ContextKey {
+
+        private final String jvmRoute;
+        private final long hostId;
+        private final String path;
+
+        ContextKey(String jvmRoute, long hostId, String path) {
+            this.jvmRoute = jvmRoute;
+            this.hostId = hostId;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ContextKey)) {
+                return false;
+            }
+            ContextKey other = (ContextKey) o;
+            return hostId == other.hostId && equal(jvmRoute, other.jvmRoute) && equal(path, other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = jvmRoute == null ? 0 : jvmRoute.hashCode();
+            result = 31 * result + (int) (hostId ^ (hostId >>> 32));
+            return 31 * result + (path == null ? 0 : path.hashCode());
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
 
 }
@@ -46,6 +46,12 @@ public class NodeState {
      * Load factor received via the STATUS messages
      */
     private int load;
+    /**
+     * Number of STATUS messages received, and the total time spent processing them
+     */
+    private long statusCount;
+    private long statusProcessingTime;
+    private long lastStatus;
 
     /**
      * Getter for status
@@ -122,6 +128,38 @@ public class NodeState {
         return this.load;
     }
 
+    /**
+     * @return the number of STATUS messages that have been processed for this node
+     */
+    public synchronized long getStatusCount() {
+        return statusCount;
+    }
+
+    /**
+     * @return the total time spent processing STATUS messages for this node, in nanoseconds
+     */
+    public synchronized long getStatusProcessingTime() {
+        return statusProcessingTime;
+    }
+
+    /**
+     * @return the time the last STATUS message was processed, as returned by {@link System#currentTimeMillis()}
+     */
+    public synchronized long getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * Records that a STATUS message has been processed for this node
+     *
+     * @param processingTime the time taken to process the message once its body has been read, in nanoseconds
+     */
+    public synchronized void statusProcessed(long processingTime) {
+        statusCount++;
+        statusProcessingTime += processingTime;
+        lastStatus = System.currentTimeMillis();
+    }
+
     public int getOldelected() {
         return oldelected;
     }
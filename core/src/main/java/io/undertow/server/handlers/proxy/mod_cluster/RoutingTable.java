@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy.mod_cluster;
+
+import io.undertow.server.handlers.proxy.ProxyConnectionPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable snapshot of which nodes serve each (virtual host, context path) pair, with the nodes weighted by the
+ * load factor they last reported.
+ * <p/>
+ * The container builds a new table whenever an MCMP message changes the nodes, hosts or contexts, and publishes it
+ * with a single volatile write, so routing a request never has to take a lock or walk the contexts. Looking up a
+ * request costs one map lookup for the host, and one for each path segment of the request.
+ * <p/>
+ * Load factors change with every STATUS message, so they do not cause a rebuild. Instead only the weights of the
+ * routes that contain the node are recalculated, see {@link #updateLoad(Node)}.
+ */
+final class RoutingTable {
+
+    static final RoutingTable EMPTY = new RoutingTable(Collections.<String, Map<String, Route>>emptyMap(), Collections.<String, Route>emptyMap(), Collections.<Node, List<Route>>emptyMap());
+
+    /**
+     * Host alias to context path to route
+     */
+    private final Map<String, Map<String, Route>> hosts;
+
+    /**
+     * Context path to route for all hosts, used if the request host is not a known alias
+     */
+    private final Map<String, Route> anyHost;
+
+    /**
+     * Node to all the routes that contain it, so a new load factor only has to touch those routes
+     */
+    private final Map<Node, List<Route>> routesByNode;
+
+    private RoutingTable(Map<String, Map<String, Route>> hosts, Map<String, Route> anyHost, Map<Node, List<Route>> routesByNode) {
+        this.hosts = hosts;
+        this.anyHost = anyHost;
+        this.routesByNode = routesByNode;
+    }
+
+    /**
+     * Builds a table from the current state of the container. Only enabled contexts are routed to.
+     */
+    static RoutingTable build(Collection<VHost> hosts, Collection<Context> contexts, Map<String, Node> nodes) {
+        Map<Long, VHost> hostsById = new HashMap<Long, VHost>();
+        for (VHost host : hosts) {
+            hostsById.put(host.getId(), host);
+        }
+        Map<String, Map<String, List<Node>>> byHost = new HashMap<String, Map<String, List<Node>>>();
+        Map<String, List<Node>> byPath = new HashMap<String, List<Node>>();
+        for (Context context : contexts) {
+            if (!context.isEnabled()) {
+                continue;
+            }
+            Node node = nodes.get(context.getJvmRoute());
+            VHost host = hostsById.get(context.getHostid());
+            if (node == null || host == null) {
+                continue;
+            }
+            String path = normalize(context.getPath());
+            for (String alias : host.getAliases()) {
+                String key = alias.toLowerCase(Locale.ENGLISH);
+                Map<String, List<Node>> paths = byHost.get(key);
+                if (paths == null) {
+                    byHost.put(key, paths = new HashMap<String, List<Node>>());
+                }
+                add(paths, path, node);
+            }
+            add(byPath, path, node);
+        }
+        Map<Node, List<Route>> routesByNode = new HashMap<Node, List<Route>>();
+        Map<String, Map<String, Route>> routes = new HashMap<String, Map<String, Route>>();
+        for (Map.Entry<String, Map<String, List<Node>>> entry : byHost.entrySet()) {
+            routes.put(entry.getKey(), createRoutes(entry.getValue(), routesByNode));
+        }
+        return new RoutingTable(routes, createRoutes(byPath, routesByNode), routesByNode);
+    }
+
+    private static void add(Map<String, List<Node>> paths, String path, Node node) {
+        List<Node> list = paths.get(path);
+        if (list == null) {
+            paths.put(path, list = new ArrayList<Node>());
+        }
+        if (!list.contains(node)) {
+            list.add(node);
+        }
+    }
+
+    private static Map<String, Route> createRoutes(Map<String, List<Node>> paths, Map<Node, List<Route>> routesByNode) {
+        Map<String, Route> routes = new HashMap<String, Route>();
+        for (Map.Entry<String, List<Node>> entry : paths.entrySet()) {
+            Route route = new Route(entry.getValue());
+            routes.put(entry.getKey(), route);
+            for (Node node : entry.getValue()) {
+                List<Route> list = routesByNode.get(node);
+                if (list == null) {
+                    routesByNode.put(node, list = new ArrayList<Route>());
+                }
+                list.add(route);
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Strips any trailing slashes, so the root context is the empty string
+     */
+    private static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            --end;
+        }
+        return path.substring(0, end);
+    }
+
+    boolean isEmpty() {
+        return anyHost.isEmpty();
+    }
+
+    /**
+     * Recalculates the weights of every route that contains the node, after it has reported a new load factor.
+     * The other routes are left alone.
+     */
+    void updateLoad(Node node) {
+        List<Route> routes = routesByNode.get(node);
+        if (routes != null) {
+            for (Route route : routes) {
+                route.updateWeights();
+            }
+        }
+    }
+
+    /**
+     * Finds the route for the context with the longest path that matches the request.
+     *
+     * @param host        The request host name
+     * @param requestPath The request path
+     * @return The route, or <code>null</code> if no enabled context matches
+     */
+    Route find(String host, String requestPath) {
+        Map<String, Route> paths = host == null ? null : hosts.get(host.toLowerCase(Locale.ENGLISH));
+        if (paths == null) {
+            paths = anyHost;
+        }
+        String path = normalize(requestPath);
+        for (; ; ) {
+            Route route = paths.get(path);
+            if (route != null) {
+                return route;
+            }
+            if (path.isEmpty()) {
+                return null;
+            }
+            path = path.substring(0, Math.max(0, path.lastIndexOf('/')));
+        }
+    }
+
+    /**
+     * The nodes that serve a context. Nodes are selected in a weighted round robin, where the weight of each node is
+     * the load factor it reported in its last STATUS message. If no node has reported a load all nodes get the same
+     * weight.
+     */
+    static final class Route {
+
+        private final Node[] nodes;
+        /**
+         * The weights of the nodes, replaced as a whole when one of the nodes reports a new load factor
+         */
+        private volatile Weights weights;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        Route(List<Node> nodes) {
+            this.nodes = nodes.toArray(new Node[nodes.size()]);
+            this.weights = new Weights(this.nodes);
+        }
+
+        void updateWeights() {
+            weights = new Weights(nodes);
+        }
+
+        /**
+         * @return The next available node, or <code>null</code> if none of the nodes are available
+         */
+        Node select() {
+            final Weights weights = this.weights;
+            final int[] running = weights.running;
+            int pos = (counter.getAndIncrement() & Integer.MAX_VALUE) % weights.total;
+            int low = 0;
+            int high = running.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (running[mid] > pos) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            for (int i = 0; i < nodes.length; ++i) {
+                Node node = nodes[(low + i) % nodes.length];
+                if (isAvailable(node)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        boolean contains(Node node) {
+            for (Node n : nodes) {
+                if (n == node) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isAvailable(Node node) {
+            return node.getNodeState().isNodeUp() && node.getConnectionPool().available() != ProxyConnectionPool.AvailabilityType.PROBLEM;
+        }
+    }
+
+    private static final class Weights {
+
+        /**
+         * The running total of the weights, so a node can be found with a binary search
+         */
+        private final int[] running;
+        private final int total;
+
+        Weights(Node[] nodes) {
+            this.running = new int[nodes.length];
+            int total = 0;
+            for (int i = 0; i < nodes.length; ++i) {
+                total += Math.max(0, nodes[i].getNodeState().getLoad());
+                running[i] = total;
+            }
+            if (total == 0) {
+                for (int i = 0; i < nodes.length; ++i) {
+                    running[i] = i + 1;
+                }
+                total = nodes.length;
+            }
+            this.total = total;
+        }
+    }
+}
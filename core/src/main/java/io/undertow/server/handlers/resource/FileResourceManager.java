@@ -29,6 +29,7 @@ import io.undertow.UndertowMessages;
 import org.xnio.FileChangeCallback;
 import org.xnio.FileChangeEvent;
 import org.xnio.FileSystemWatcher;
+import org.xnio.IoUtils;
 import org.xnio.OptionMap;
 import org.xnio.Xnio;
 
@@ -136,6 +137,11 @@ public class FileResourceManager implements ResourceManager {
     @Override
     public synchronized void removeResourceChangeListener(ResourceChangeListener listener) {
         listeners.remove(listener);
+        if (listeners.isEmpty() && fileSystemWatcher != null) {
+            //nothing is listening any more, so stop the watcher thread
+            IoUtils.safeClose(fileSystemWatcher);
+            fileSystemWatcher = null;
+        }
     }
 
     public long getTransferMinSize() {
@@ -146,6 +152,7 @@ public class FileResourceManager implements ResourceManager {
     public synchronized void close() throws IOException {
         if (fileSystemWatcher != null) {
             fileSystemWatcher.close();
+            fileSystemWatcher = null;
         }
     }
 }
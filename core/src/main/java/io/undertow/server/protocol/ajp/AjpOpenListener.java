@@ -20,8 +20,10 @@ package io.undertow.server.protocol.ajp;
 
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowMessages;
+import io.undertow.server.ConnectionLimiter;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.OpenListener;
+import org.xnio.IoUtils;
 import org.xnio.OptionMap;
 import org.xnio.Pool;
 import org.xnio.StreamConnection;
@@ -29,6 +31,8 @@ import org.xnio.StreamConnection;
 import java.nio.ByteBuffer;
 
 import static io.undertow.UndertowOptions.DECODE_URL;
+import static io.undertow.UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE;
+import static io.undertow.UndertowOptions.MAX_AJP_PACKET_SIZE;
 import static io.undertow.UndertowOptions.URL_CHARSET;
 
 /**
@@ -46,6 +50,8 @@ public class AjpOpenListener implements OpenListener {
 
     private volatile OptionMap undertowOptions;
 
+    private volatile ConnectionLimiter connectionLimiter;
+
     private final AjpRequestParser parser;
 
     public AjpOpenListener(final Pool<ByteBuffer> pool, final int bufferSize) {
@@ -53,6 +59,7 @@ public class AjpOpenListener implements OpenListener {
     }
 
     public AjpOpenListener(final Pool<ByteBuffer> pool, final OptionMap undertowOptions, final int bufferSize) {
+        checkPacketSize(undertowOptions);
         this.undertowOptions = undertowOptions;
         this.bufferPool = pool;
         this.bufferSize = bufferSize;
@@ -63,8 +70,21 @@ public class AjpOpenListener implements OpenListener {
         if (UndertowLogger.REQUEST_LOGGER.isTraceEnabled()) {
             UndertowLogger.REQUEST_LOGGER.tracef("Opened connection with %s", channel.getPeerAddress());
         }
+        final ConnectionLimiter connectionLimiter = this.connectionLimiter;
+        ConnectionLimiter.Permit permit = ConnectionLimiter.Permit.UNLIMITED;
+        if (connectionLimiter != null) {
+            permit = connectionLimiter.tryOpen(channel);
+            if (permit == null) {
+                UndertowLogger.REQUEST_LOGGER.debugf("Rejecting connection from %s, too many connections", channel.getPeerAddress());
+                IoUtils.safeClose(channel);
+                return;
+            }
+        }
 
         AjpServerConnection connection = new AjpServerConnection(channel, bufferPool, rootHandler, undertowOptions, bufferSize);
+        if (permit != ConnectionLimiter.Permit.UNLIMITED) {
+            connection.addCloseListener(permit);
+        }
         AjpReadListener readListener = new AjpReadListener(connection, scheme, parser);
         connection.setAjpReadListener(readListener);
         readListener.startRequest();
@@ -88,14 +108,37 @@ public class AjpOpenListener implements OpenListener {
         if (undertowOptions == null) {
             throw UndertowMessages.MESSAGES.argumentCannotBeNull("undertowOptions");
         }
+        checkPacketSize(undertowOptions);
         this.undertowOptions = undertowOptions;
     }
 
+    private static void checkPacketSize(final OptionMap undertowOptions) {
+        int maxPacketSize = undertowOptions.get(MAX_AJP_PACKET_SIZE, DEFAULT_MAX_AJP_PACKET_SIZE);
+        //the packet length is a 16 bit field, and the front end will always send packets of at least 8k
+        if (maxPacketSize < DEFAULT_MAX_AJP_PACKET_SIZE || maxPacketSize > 65536) {
+            throw UndertowMessages.MESSAGES.invalidAjpPacketSize(maxPacketSize);
+        }
+    }
+
     @Override
     public Pool<ByteBuffer> getBufferPool() {
         return bufferPool;
     }
 
+    public ConnectionLimiter getConnectionLimiter() {
+        return connectionLimiter;
+    }
+
+    /**
+     * Sets the limiter that is used to cap the number of connections from each peer address. As AJP connections
+     * come from the front end proxy request rates are not limited.
+     *
+     * @param connectionLimiter The limiter, or null to disable limiting
+     */
+    public void setConnectionLimiter(final ConnectionLimiter connectionLimiter) {
+        this.connectionLimiter = connectionLimiter;
+    }
+
     public String getScheme() {
         return scheme;
     }
@@ -62,6 +62,7 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
     private volatile int read = 0;
     private final int maxRequestSize;
     private final long maxEntitySize;
+    private final int maxPacketSize;
     private final AjpRequestParser parser;
     private WriteReadyHandler.ChannelListenerHandler<ConduitStreamSinkChannel> writeReadyHandler;
 
@@ -72,6 +73,7 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
         this.parser = parser;
         this.maxRequestSize = connection.getUndertowOptions().get(UndertowOptions.MAX_HEADER_SIZE, UndertowOptions.DEFAULT_MAX_HEADER_SIZE);
         this.maxEntitySize = connection.getUndertowOptions().get(UndertowOptions.MAX_ENTITY_SIZE, UndertowOptions.DEFAULT_MAX_ENTITY_SIZE);
+        this.maxPacketSize = connection.getUndertowOptions().get(UndertowOptions.MAX_AJP_PACKET_SIZE, UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE);
         this.writeReadyHandler = new WriteReadyHandler.ChannelListenerHandler<ConduitStreamSinkChannel>(connection.getChannel().getSinkChannel());
         this.recordRequestStartTime = connection.getUndertowOptions().get(UndertowOptions.RECORD_REQUEST_START_TIME, false);
     }
@@ -180,7 +182,7 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
                 public void handleEvent(AjpServerResponseConduit channel) {
                     Connectors.terminateResponse(httpServerExchange);
                 }
-            }, httpServerExchange.getRequestMethod().equals(Methods.HEAD));
+            }, httpServerExchange.getRequestMethod().equals(Methods.HEAD), maxPacketSize);
             connection.getChannel().getSinkChannel().setConduit(responseConduit);
             connection.getChannel().getSourceChannel().setConduit(createSourceConduit(connection.getChannel().getSourceChannel().getConduit(), responseConduit, httpServerExchange));
             //we need to set the write ready handler. This allows the response conduit to wrap it
@@ -304,7 +306,7 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
             public void handleEvent(AjpServerRequestConduit channel) {
                 Connectors.terminateRequest(exchange);
             }
-        });
+        }, maxPacketSize);
     }
 
 }
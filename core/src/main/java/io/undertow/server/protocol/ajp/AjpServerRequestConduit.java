@@ -24,6 +24,7 @@ import java.nio.channels.FileChannel;
 import java.util.concurrent.TimeUnit;
 
 import io.undertow.UndertowMessages;
+import io.undertow.UndertowOptions;
 import io.undertow.conduits.ConduitListener;
 import io.undertow.server.HttpServerExchange;
 import org.xnio.IoUtils;
@@ -42,21 +43,7 @@ import static org.xnio.Bits.longBitMask;
  */
 public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamSourceConduit> {
 
-    private static final ByteBuffer READ_BODY_CHUNK;
-
-    static {
-        ByteBuffer readBody = ByteBuffer.allocateDirect(7);
-        readBody.put((byte) 'A');
-        readBody.put((byte) 'B');
-        readBody.put((byte) 0);
-        readBody.put((byte) 3);
-        readBody.put((byte) 6);
-        readBody.put((byte) 0x1F);
-        readBody.put((byte) 0xFA);
-        readBody.flip();
-        READ_BODY_CHUNK = readBody;
-
-    }
+    private static final ByteBuffer READ_BODY_CHUNK = createReadBodyChunk(UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE);
 
     private static final int HEADER_LENGTH = 6;
 
@@ -90,6 +77,11 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
 
     private final ConduitListener<? super AjpServerRequestConduit> finishListener;
 
+    /**
+     * The GET_BODY_CHUNK packet, which asks for as much data as fits in a packet
+     */
+    private final ByteBuffer readBodyChunk;
+
     /**
     /**
      * The total amount of remaining data. If this is unknown it is -1.
@@ -107,10 +99,15 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
     private long totalRead;
 
     public AjpServerRequestConduit(final StreamSourceConduit delegate, HttpServerExchange exchange, AjpServerResponseConduit ajpResponseConduit, Long size, ConduitListener<? super AjpServerRequestConduit> finishListener) {
+        this(delegate, exchange, ajpResponseConduit, size, finishListener, UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE);
+    }
+
+    public AjpServerRequestConduit(final StreamSourceConduit delegate, HttpServerExchange exchange, AjpServerResponseConduit ajpResponseConduit, Long size, ConduitListener<? super AjpServerRequestConduit> finishListener, int maxPacketSize) {
         super(delegate);
         this.exchange = exchange;
         this.ajpResponseConduit = ajpResponseConduit;
         this.finishListener = finishListener;
+        this.readBodyChunk = maxPacketSize == UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE ? READ_BODY_CHUNK : createReadBodyChunk(maxPacketSize);
         if (size == null) {
             state = STATE_SEND_REQUIRED;
             remaining = -1;
@@ -123,6 +120,21 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
         }
     }
 
+    private static ByteBuffer createReadBodyChunk(final int maxPacketSize) {
+        //the most data the front end can send back in a single packet
+        final int size = maxPacketSize - HEADER_LENGTH;
+        ByteBuffer readBody = ByteBuffer.allocateDirect(7);
+        readBody.put((byte) 'A');
+        readBody.put((byte) 'B');
+        readBody.put((byte) 0);
+        readBody.put((byte) 3);
+        readBody.put((byte) 6);
+        readBody.put((byte) ((size >> 8) & 0xFF));
+        readBody.put((byte) (size & 0xFF));
+        readBody.flip();
+        return readBody;
+    }
+
     @Override
     public long transferTo(long position, long count, FileChannel target) throws IOException {
         return target.transferFrom(new ConduitReadableByteChannel(this), position, count);
@@ -158,7 +170,7 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
             return -1;
         } else if (anyAreSet(state, STATE_SEND_REQUIRED)) {
             state = this.state = (state & STATE_MASK) | STATE_READING;
-            if (!ajpResponseConduit.doGetRequestBodyChunk(READ_BODY_CHUNK.duplicate(), this)) {
+            if (!ajpResponseConduit.doGetRequestBodyChunk(readBodyChunk.duplicate(), this)) {
                 return 0;
             }
         }
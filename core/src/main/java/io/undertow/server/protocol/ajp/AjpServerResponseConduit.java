@@ -41,8 +41,10 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.xnio.Bits.allAreClear;
@@ -50,7 +52,11 @@ import static org.xnio.Bits.anyAreSet;
 
 /**
  * AJP response channel. For now we are going to assume that the buffers are sized to
- * fit complete packets. As AJP packets are limited to 8k this is a reasonable assumption.
+ * fit the response header packet. As AJP packets are limited to 8k by default this is a reasonable assumption.
+ * <p>
+ * Response data is sent as SEND_BODY_CHUNK packets of up to the configured maximum packet size (see
+ * {@link io.undertow.UndertowOptions#MAX_AJP_PACKET_SIZE}). Data passed to a single write is split into packets
+ * which are all sent with one gathering write, and a final write also carries the END_RESPONSE packet.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  * @author Stuart Douglas
@@ -59,7 +65,17 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
     private static final Logger log = Logger.getLogger("io.undertow.server.channel.ajp.response");
 
-    private static final int MAX_DATA_SIZE = 8184;
+    /**
+     * The overhead of a SEND_BODY_CHUNK packet, the 4 byte packet header, the type and chunk length, and the
+     * trailing null byte.
+     */
+    private static final int PACKET_OVERHEAD = 8;
+
+    /**
+     * The maximum number of buffers passed to a single gathering write, this is kept well below the IOV_MAX
+     * of common operating systems.
+     */
+    private static final int MAX_GATHERED_BUFFERS = 512;
 
     private static final Map<HttpString, Integer> HEADER_MAP;
 
@@ -83,6 +99,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
     private static final int FLAG_WRITE_RESUMED = 1 << 2;
     private static final int FLAG_WRITE_READ_BODY_CHUNK_FROM_LISTENER = 1 << 3;
     private static final int FLAG_WRITE_SHUTDOWN = 1 << 4;
+    private static final int FLAG_CLOSE_FRAME_QUEUED = 1 << 5;
 
     private static final ByteBuffer CLOSE_FRAME_PERSISTENT;
     private static final ByteBuffer CLOSE_FRAME_NON_PERSISTENT;
@@ -104,6 +121,8 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         CLOSE_FRAME_NON_PERSISTENT = buffer;
     }
 
+    private static final ByteBuffer FOOTER = ByteBuffer.wrap(new byte[1]);
+
 
     private final Pool<ByteBuffer> pool;
 
@@ -118,12 +137,18 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
     private final boolean headRequest;
 
-    AjpServerResponseConduit(final StreamSinkConduit next, final Pool<ByteBuffer> pool, final HttpServerExchange exchange, ConduitListener<? super AjpServerResponseConduit> finishListener, boolean headRequest) {
+    /**
+     * The maximum amount of data sent in a single SEND_BODY_CHUNK packet
+     */
+    private final int maxDataSize;
+
+    AjpServerResponseConduit(final StreamSinkConduit next, final Pool<ByteBuffer> pool, final HttpServerExchange exchange, ConduitListener<? super AjpServerResponseConduit> finishListener, boolean headRequest, int maxPacketSize) {
         super(next);
         this.pool = pool;
         this.exchange = exchange;
         this.finishListener = finishListener;
         this.headRequest = headRequest;
+        this.maxDataSize = maxPacketSize - PACKET_OVERHEAD;
         state = FLAG_START;
     }
 
@@ -161,6 +186,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
             //merge the cookies into the header map
             Connectors.flattenCookies(exchange);
+            Connectors.flattenHeaderBlocks(exchange);
 
             Pooled<ByteBuffer> pooled = pool.allocate();
             ByteBuffer buffer = pooled.getResource();
@@ -234,66 +260,187 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
     @Override
     protected void queueCloseFrames() {
         processAJPHeader();
+        if (anyAreSet(state, FLAG_CLOSE_FRAME_QUEUED)) {
+            //already sent as part of the final write
+            return;
+        }
         final ByteBuffer buffer = exchange.isPersistent() ? CLOSE_FRAME_PERSISTENT.duplicate() : CLOSE_FRAME_NON_PERSISTENT.duplicate();
         queueFrame(null, buffer);
     }
 
     public int write(final ByteBuffer src) throws IOException {
-        if(queuedDataLength() > 0) {
+        return (int) writeChunks(new ByteBuffer[]{src}, 0, 1, false);
+    }
+
+    public long write(final ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        return writeChunks(srcs, offset, length, false);
+    }
+
+    @Override
+    public int writeFinal(final ByteBuffer src) throws IOException {
+        return (int) writeChunks(new ByteBuffer[]{src}, 0, 1, true);
+    }
+
+    @Override
+    public long writeFinal(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        return writeChunks(srcs, offset, length, true);
+    }
+
+    /**
+     * Writes the data as a series of SEND_BODY_CHUNK packets. All the packets, along with the response header if it
+     * has not been sent yet, are written out with a single gathering write. If this is the final write and all the
+     * data fits in the batch the END_RESPONSE packet is included as well.
+     * <p>
+     * A packet that has been partially written has to be completed before anything else can be sent, so if the write
+     * stops part way through a packet the rest of it is copied and queued. Packets that have not been started are
+     * not counted as written.
+     *
+     * @return The number of bytes of user data that were consumed
+     */
+    private long writeChunks(final ByteBuffer[] srcs, final int offset, final int length, final boolean last) throws IOException {
+        if (queuedDataLength() > 0) {
             //if there is data in the queue we flush and return
             //otherwise the queue can grow indefinitely
-            if(!flush()) {
+            if (!flush()) {
                 return 0;
             }
         }
         processAJPHeader();
+        final long total = Buffers.remaining(srcs, offset, length);
         if (headRequest) {
-            int remaining = src.remaining();
-            src.position(src.position() + remaining);
-            return remaining;
+            for (int i = offset; i < offset + length; ++i) {
+                srcs[i].position(srcs[i].limit());
+            }
+            if (last) {
+                terminateWrites();
+            }
+            return total;
         }
-        int limit = src.limit();
-        try {
-            if (src.remaining() > MAX_DATA_SIZE) {
-                src.limit(src.position() + MAX_DATA_SIZE);
+        if (total == 0) {
+            if (last) {
+                terminateWrites();
             }
-            final int writeSize = src.remaining();
-            final ByteBuffer[] buffers = createHeader(src);
-            int toWrite = 0;
-            for (ByteBuffer buffer : buffers) {
-                toWrite += buffer.remaining();
+            return 0;
+        }
+
+        final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        final List<AjpChunk> chunks = new ArrayList<AjpChunk>();
+        long batched = 0;
+        AjpChunk chunk = null;
+        for (int i = offset; i < offset + length && buffers.size() < MAX_GATHERED_BUFFERS - 2; ++i) {
+            final ByteBuffer src = srcs[i];
+            int pos = src.position();
+            while (pos < src.limit() && buffers.size() < MAX_GATHERED_BUFFERS - 2) {
+                if (chunk == null) {
+                    chunk = new AjpChunk(buffers.size());
+                    buffers.add(null); //the header is filled in once the size of the chunk is known
+                }
+                final int size = Math.min(src.limit() - pos, maxDataSize - chunk.length);
+                final ByteBuffer piece = src.duplicate();
+                piece.limit(pos + size);
+                piece.position(pos);
+                buffers.add(piece);
+                chunk.length += size;
+                batched += size;
+                pos += size;
+                if (chunk.length == maxDataSize) {
+                    finishChunk(chunk, buffers, chunks);
+                    chunk = null;
+                }
             }
-            final int originalPayloadSize = writeSize;
-            long r = 0;
-            do {
-                r = super.write(buffers, 0, buffers.length);
-                toWrite -= r;
-                if (r == -1) {
-                    throw new ClosedChannelException();
-                } else if (r == 0) {
-                    //we need to copy all the remaining bytes
-                    //TODO: this assumes the buffer is big enough
-                    Pooled<ByteBuffer> newPooledBuffer = pool.allocate();
-                    while (src.hasRemaining()) {
-                        newPooledBuffer.getResource().put(src);
-                    }
-                    newPooledBuffer.getResource().flip();
-                    ByteBuffer[] savedBuffers = new ByteBuffer[3];
-                    savedBuffers[0] = buffers[0];
-                    savedBuffers[1] = newPooledBuffer.getResource();
-                    savedBuffers[2] = buffers[2];
-                    queueFrame(new PooledBufferFrameCallback(newPooledBuffer), savedBuffers);
-                    return originalPayloadSize;
+        }
+        if (chunk != null) {
+            finishChunk(chunk, buffers, chunks);
+        }
+        ByteBuffer closeFrame = null;
+        if (last && batched == total) {
+            closeFrame = exchange.isPersistent() ? CLOSE_FRAME_PERSISTENT.duplicate() : CLOSE_FRAME_NON_PERSISTENT.duplicate();
+            buffers.add(closeFrame);
+        }
+
+        final ByteBuffer[] data = buffers.toArray(new ByteBuffer[buffers.size()]);
+        long toWrite = Buffers.remaining(data);
+        long r;
+        do {
+            r = super.write(data, 0, data.length);
+            if (r == -1) {
+                throw new ClosedChannelException();
+            }
+            toWrite -= r;
+        } while (r > 0 && toWrite > 0);
+
+        long consumed = 0;
+        for (AjpChunk current : chunks) {
+            if (!current.footer.hasRemaining()) {
+                consumed += current.length;
+            } else {
+                if (current.header.position() > 0) {
+                    //this packet has been started, so it must be completed before anything else is sent
+                    queueRemainder(current, data);
+                    consumed += current.length;
                 }
-            } while (toWrite > 0);
-            return originalPayloadSize;
-        } finally {
-            src.limit(limit);
+                //no later packet can have been started
+                break;
+            }
+        }
+        if (closeFrame != null && consumed == total) {
+            if (closeFrame.hasRemaining()) {
+                queueFrame(null, closeFrame);
+            }
+            state |= FLAG_CLOSE_FRAME_QUEUED;
+            terminateWrites();
+        }
+
+        long toSkip = consumed;
+        for (int i = offset; i < offset + length && toSkip > 0; ++i) {
+            final int skip = (int) Math.min(srcs[i].remaining(), toSkip);
+            srcs[i].position(srcs[i].position() + skip);
+            toSkip -= skip;
         }
+        return consumed;
     }
 
-    private ByteBuffer[] createHeader(final ByteBuffer src) {
-        int remaining = src.remaining();
+    private void finishChunk(final AjpChunk chunk, final List<ByteBuffer> buffers, final List<AjpChunk> chunks) {
+        chunk.header = createHeader(chunk.length);
+        buffers.set(chunk.headerIndex, chunk.header);
+        chunk.footer = FOOTER.duplicate();
+        buffers.add(chunk.footer);
+        chunk.footerIndex = buffers.size() - 1;
+        chunks.add(chunk);
+    }
+
+    /**
+     * Copies the unwritten part of a partially written packet into pooled buffers, and queues it for sending.
+     */
+    private void queueRemainder(final AjpChunk chunk, final ByteBuffer[] data) {
+        final List<Pooled<ByteBuffer>> copies = new ArrayList<Pooled<ByteBuffer>>();
+        Pooled<ByteBuffer> pooled = pool.allocate();
+        copies.add(pooled);
+        for (int i = chunk.headerIndex + 1; i < chunk.footerIndex; ++i) {
+            final ByteBuffer piece = data[i];
+            while (piece.hasRemaining()) {
+                if (!pooled.getResource().hasRemaining()) {
+                    pooled = pool.allocate();
+                    copies.add(pooled);
+                }
+                Buffers.copy(pooled.getResource(), piece);
+            }
+        }
+        final ByteBuffer[] frame = new ByteBuffer[copies.size() + 2];
+        frame[0] = chunk.header;
+        for (int i = 0; i < copies.size(); ++i) {
+            frame[i + 1] = copies.get(i).getResource();
+            frame[i + 1].flip();
+        }
+        frame[frame.length - 1] = chunk.footer;
+        queueFrame(new PooledBuffersFrameCallback(copies.toArray(new Pooled[copies.size()])), frame);
+    }
+
+    private static ByteBuffer createHeader(final int remaining) {
         int chunkSize = remaining + 4;
         byte[] header = new byte[7];
         header[0] = (byte) 'A';
@@ -303,33 +450,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         header[4] = (byte) (3 & 0xFF);
         header[5] = (byte) ((remaining >> 8) & 0xFF);
         header[6] = (byte) (remaining & 0xFF);
-
-        byte[] footer = new byte[1];
-        footer[0] = 0;
-
-        final ByteBuffer[] buffers = new ByteBuffer[3];
-        buffers[0] = ByteBuffer.wrap(header);
-        buffers[1] = src;
-        buffers[2] = ByteBuffer.wrap(footer);
-        return buffers;
-    }
-
-    public long write(final ByteBuffer[] srcs) throws IOException {
-        return write(srcs, 0, srcs.length);
-    }
-
-    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
-        long total = 0;
-        for (int i = offset; i < offset + length; ++i) {
-            while (srcs[i].hasRemaining()) {
-                int written = write(srcs[i]);
-                if (written == 0) {
-                    return total;
-                }
-                total += written;
-            }
-        }
-        return total;
+        return ByteBuffer.wrap(header);
     }
 
     public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
@@ -453,4 +574,23 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         }
     }
 
+    /**
+     * A SEND_BODY_CHUNK packet that is being assembled for a gathering write
+     */
+    private static final class AjpChunk {
+
+        /**
+         * The index of the packet header in the gathered buffers, the data follows it
+         */
+        final int headerIndex;
+        int footerIndex;
+        int length;
+        ByteBuffer header;
+        ByteBuffer footer;
+
+        private AjpChunk(final int headerIndex) {
+            this.headerIndex = headerIndex;
+        }
+    }
+
 }
@@ -74,19 +74,35 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
     private final FramePriority<C, R, S> framePriority;
 
     /**
-     * List of frames that are ready to send
+     * List of frames that are ready to send. This is allocated when first needed.
      */
-    private final List<S> pendingFrames = new LinkedList<S>();
+    private List<S> pendingFrames;
     /**
-     * Frames that are not yet read to send.
+     * Frames that are not yet read to send. This is allocated when first needed.
      */
-    private final Deque<S> heldFrames = new ArrayDeque<S>();
+    private Deque<S> heldFrames;
 
     /**
      * new frames to be sent. These will be added to either the pending or held frames list
-     * depending on the {@link #framePriority} implementation in use.
+     * depending on the {@link #framePriority} implementation in use. This is allocated when first needed.
      */
-    private final Deque<S> newFrames = new ArrayDeque<S>();
+    private Deque<S> newFrames;
+
+    /**
+     * If the frame queues should be released once they are empty, so an idle channel holds as little memory as possible
+     */
+    private boolean compactWhenIdle;
+
+    /**
+     * The maximum number of buffer bytes that may be held by frames queued for sending, or -1 for no limit
+     */
+    private long maxQueuedBytes = -1;
+
+    /**
+     * The number of buffer bytes held by frames that have been queued and not yet fully written. This is kept up to
+     * date as frames are queued and flushed, so the queue limit can be checked without walking the queues.
+     */
+    private long queuedBytes;
 
     private volatile R receiver = null;
     private final List<R> receivers = new CopyOnWriteArrayList<R>();
@@ -347,7 +363,10 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
     protected abstract FrameHeaderData parseFrame(ByteBuffer data) throws IOException;
 
     protected synchronized void recalculateHeldFrames() throws IOException {
-        if (!heldFrames.isEmpty()) {
+        if (heldFrames != null && !heldFrames.isEmpty()) {
+            if (pendingFrames == null) {
+                pendingFrames = new LinkedList<S>();
+            }
             framePriority.frameAdded(null, pendingFrames, heldFrames);
             flushSenders();
         }
@@ -364,17 +383,27 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
      */
     protected synchronized void flushSenders() throws IOException {
         int toSend = 0;
-        while (!newFrames.isEmpty()) {
+        while (newFrames != null && !newFrames.isEmpty()) {
             S frame = newFrames.poll();
+            if (pendingFrames == null) {
+                pendingFrames = new LinkedList<S>();
+            }
             if (framePriority.insertFrame(frame, pendingFrames)) {
-                if (!heldFrames.isEmpty()) {
+                if (heldFrames != null && !heldFrames.isEmpty()) {
                     framePriority.frameAdded(frame, pendingFrames, heldFrames);
                 }
             } else {
+                if (heldFrames == null) {
+                    heldFrames = new ArrayDeque<S>();
+                }
                 heldFrames.add(frame);
             }
         }
 
+        if (pendingFrames == null) {
+            compactIfIdle();
+            return;
+        }
         boolean finalFrame = false;
         ListIterator<S> it = pendingFrames.listIterator();
         while (it.hasNext()) {
@@ -389,6 +418,7 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
             }
         }
         if (toSend == 0) {
+            compactIfIdle();
             return;
         }
         ByteBuffer[] data = new ByteBuffer[toSend * 3];
@@ -429,8 +459,11 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
                     || sinkChannel.getFrameFooter().hasRemaining()) {
                 break;
             }
+            //the buffer may be freed once the flush is complete
+            final int capacity = sinkChannel.getBuffer().capacity();
             sinkChannel.flushComplete();
             pendingFrames.remove(sinkChannel);
+            queuedBytes -= capacity;
             max--;
         }
         if (!pendingFrames.isEmpty()) {
@@ -444,6 +477,21 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
                 channel.getSinkChannel().resumeWrites();
             }
         }
+        compactIfIdle();
+    }
+
+    private void compactIfIdle() {
+        if (compactWhenIdle) {
+            if (pendingFrames != null && pendingFrames.isEmpty()) {
+                pendingFrames = null;
+            }
+            if (newFrames != null && newFrames.isEmpty()) {
+                newFrames = null;
+            }
+            if (heldFrames != null && heldFrames.isEmpty()) {
+                heldFrames = null;
+            }
+        }
     }
 
     void awaitWritable() throws IOException {
@@ -463,11 +511,21 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
      * @param channel The channel
      */
     protected synchronized void queueFrame(final S channel) throws IOException {
-        assert !newFrames.contains(channel);
+        assert newFrames == null || !newFrames.contains(channel);
         if (isWritesBroken() || !this.channel.getSinkChannel().isOpen()) {
             throw UndertowMessages.MESSAGES.channelIsClosed();
         }
+        //the last frame is always accepted, so the connection can still be closed cleanly
+        if (maxQueuedBytes > 0 && !channel.isLastFrame()
+                && queuedBytes + channel.getBuffer().capacity() > maxQueuedBytes) {
+            channel.markBroken();
+            throw UndertowMessages.MESSAGES.tooMuchDataQueued(maxQueuedBytes);
+        }
+        if (newFrames == null) {
+            newFrames = new ArrayDeque<S>();
+        }
         newFrames.add(channel);
+        queuedBytes += channel.getBuffer().capacity();
         if (newFrames.peek() == channel) {
             flushSenders();
         }
@@ -581,18 +639,25 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
             handleBrokenSinkChannel(cause);
             safeClose(channel.getSinkChannel());
             synchronized (this) {
-                for (final S channel : pendingFrames) {
-                    channel.markBroken();
+                if (pendingFrames != null) {
+                    for (final S channel : pendingFrames) {
+                        channel.markBroken();
+                    }
+                    pendingFrames.clear();
                 }
-                pendingFrames.clear();
-                for (final S channel : newFrames) {
-                    channel.markBroken();
+                if (newFrames != null) {
+                    for (final S channel : newFrames) {
+                        channel.markBroken();
+                    }
+                    newFrames.clear();
                 }
-                newFrames.clear();
-                for (final S channel : heldFrames) {
-                    channel.markBroken();
+                if (heldFrames != null) {
+                    for (final S channel : heldFrames) {
+                        channel.markBroken();
+                    }
+                    heldFrames.clear();
                 }
-                heldFrames.clear();
+                queuedBytes = 0;
             }
         }
     }
@@ -690,12 +755,14 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
         public void handleEvent(final StreamSinkChannel channel) {
             synchronized (AbstractFramedChannel.this) {
                 //first we invoke the write listeners
-                for (S sender : pendingFrames) {
-                    if (sender.isWriteResumed()) {
-                        ChannelListeners.invokeChannelListener(sender, sender.getWriteListener());
+                if (pendingFrames != null) {
+                    for (S sender : pendingFrames) {
+                        if (sender.isWriteResumed()) {
+                            ChannelListeners.invokeChannelListener(sender, sender.getWriteListener());
+                        }
                     }
                 }
-                if (pendingFrames.isEmpty()) {
+                if (pendingFrames == null || pendingFrames.isEmpty()) {
                     channel.suspendWrites();
                 }
             }
@@ -719,17 +786,23 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
                     ChannelListeners.invokeChannelListener(receiver, ((SimpleSetter) receiver.getReadSetter()).get());
                 }
                 synchronized (AbstractFramedChannel.this) {
-                    for (final S channel : pendingFrames) {
-                        //if this was a clean shutdown there should not be any senders
-                        channel.markBroken();
+                    if (pendingFrames != null) {
+                        for (final S channel : pendingFrames) {
+                            //if this was a clean shutdown there should not be any senders
+                            channel.markBroken();
+                        }
                     }
-                    for (final S channel : newFrames) {
-                        //if this was a clean shutdown there should not be any senders
-                        channel.markBroken();
+                    if (newFrames != null) {
+                        for (final S channel : newFrames) {
+                            //if this was a clean shutdown there should not be any senders
+                            channel.markBroken();
+                        }
                     }
-                    for (final S channel : heldFrames) {
-                        //if this was a clean shutdown there should not be any senders
-                        channel.markBroken();
+                    if (heldFrames != null) {
+                        for (final S channel : heldFrames) {
+                            //if this was a clean shutdown there should not be any senders
+                            channel.markBroken();
+                        }
                     }
                 }
             } finally {
@@ -769,9 +842,75 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
         closeTasks.add(task);
     }
 
+    /**
+     * If this is enabled the frame queues are released as soon as they are empty, and reallocated when the next frame
+     * is sent. This reduces the memory used by a large number of mostly idle connections, at the cost of some extra
+     * allocation when a connection is busy.
+     * <p/>
+     * The read buffer is always returned to the pool when it does not hold part of a frame.
+     *
+     * @param compactWhenIdle <code>true</code> to release the frame queues when they are empty
+     */
+    public synchronized void setCompactWhenIdle(boolean compactWhenIdle) {
+        this.compactWhenIdle = compactWhenIdle;
+        if (compactWhenIdle) {
+            compactIfIdle();
+        }
+    }
+
+    public synchronized boolean isCompactWhenIdle() {
+        return compactWhenIdle;
+    }
+
+    /**
+     * Sets the maximum number of bytes that may be held in pooled buffers by frames that are queued for sending. If
+     * a new frame would take this connection over the limit it is rejected, and the write fails with an
+     * {@link IOException}. The frame that closes the connection is never rejected.
+     *
+     * @param maxQueuedBytes The limit, or -1 for no limit
+     */
+    public synchronized void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    public synchronized long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    /**
+     * Returns the number of bytes held in pooled buffers by frames that are queued for sending.
+     *
+     * @return The number of queued bytes
+     */
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the number of bytes this connection is currently holding in pooled buffers. This is the read buffer, if
+     * it holds a partial frame or data that has not been received yet, plus the buffers of all frames that are queued
+     * for sending.
+     *
+     * @return The number of buffered bytes
+     */
+    public synchronized long getBufferedBytes() {
+        long bytes = getQueuedBytes();
+        //the read buffer is replaced and freed by the IO thread without holding the lock, so it is read once, and
+        //may already have been freed by the time we look at it
+        final ReferenceCountedPooled<ByteBuffer> readData = this.readData;
+        if (readData != null) {
+            try {
+                bytes += readData.getResource().capacity();
+            } catch (IllegalStateException e) {
+                //the buffer was freed, so it no longer counts
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public String toString() {
-        return getClass().getSimpleName() + "[ " + (receiver == null ? "No Receiver" : receiver.toString()) + " " + pendingFrames.toString() + " -- " + heldFrames.toString() + " -- " + newFrames.toString() + "]";
+        return getClass().getSimpleName() + "[ " + (receiver == null ? "No Receiver" : receiver.toString()) + " " + pendingFrames + " -- " + heldFrames + " -- " + newFrames + "]";
     }
 
     protected StreamConnection getUnderlyingConnection() {
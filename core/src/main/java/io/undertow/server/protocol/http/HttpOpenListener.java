@@ -22,6 +22,7 @@ import io.undertow.UndertowLogger;
 import io.undertow.UndertowMessages;
 import io.undertow.conduits.ReadTimeoutStreamSourceConduit;
 import io.undertow.conduits.WriteTimeoutStreamSinkConduit;
+import io.undertow.server.ConnectionLimiter;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.OpenListener;
 import org.xnio.ChannelListener;
@@ -51,6 +52,8 @@ public final class HttpOpenListener implements ChannelListener<StreamConnection>
 
     private volatile HttpRequestParser parser;
 
+    private volatile ConnectionLimiter connectionLimiter;
+
     public HttpOpenListener(final Pool<ByteBuffer> pool, final int bufferSize) {
         this(pool, OptionMap.EMPTY, bufferSize);
     }
@@ -66,6 +69,16 @@ public final class HttpOpenListener implements ChannelListener<StreamConnection>
         if (UndertowLogger.REQUEST_LOGGER.isTraceEnabled()) {
             UndertowLogger.REQUEST_LOGGER.tracef("Opened connection with %s", channel.getPeerAddress());
         }
+        final ConnectionLimiter connectionLimiter = this.connectionLimiter;
+        ConnectionLimiter.Permit permit = ConnectionLimiter.Permit.UNLIMITED;
+        if (connectionLimiter != null) {
+            permit = connectionLimiter.tryOpen(channel);
+            if (permit == null) {
+                UndertowLogger.REQUEST_LOGGER.debugf("Rejecting connection from %s, too many connections", channel.getPeerAddress());
+                IoUtils.safeClose(channel);
+                return;
+            }
+        }
 
         //set read and write timeouts
         try {
@@ -84,7 +97,10 @@ public final class HttpOpenListener implements ChannelListener<StreamConnection>
 
 
         HttpServerConnection connection = new HttpServerConnection(channel, bufferPool, rootHandler, undertowOptions, bufferSize);
-        HttpReadListener readListener = new HttpReadListener(connection, parser);
+        if (permit != ConnectionLimiter.Permit.UNLIMITED) {
+            connection.addCloseListener(permit);
+        }
+        HttpReadListener readListener = new HttpReadListener(connection, parser, permit);
 
         connection.setReadListener(readListener);
         readListener.newRequest();
@@ -120,4 +136,17 @@ public final class HttpOpenListener implements ChannelListener<StreamConnection>
     public Pool<ByteBuffer> getBufferPool() {
         return bufferPool;
     }
+
+    public ConnectionLimiter getConnectionLimiter() {
+        return connectionLimiter;
+    }
+
+    /**
+     * Sets the limiter that is used to cap the number of connections and the request rate of each client address.
+     *
+     * @param connectionLimiter The limiter, or null to disable limiting
+     */
+    public void setConnectionLimiter(final ConnectionLimiter connectionLimiter) {
+        this.connectionLimiter = connectionLimiter;
+    }
 }
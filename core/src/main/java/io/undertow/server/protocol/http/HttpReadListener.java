@@ -21,6 +21,7 @@ package io.undertow.server.protocol.http;
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowOptions;
 import io.undertow.conduits.ReadDataStreamSourceConduit;
+import io.undertow.server.ConnectionLimiter;
 import io.undertow.server.Connectors;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.StringWriteChannelListener;
@@ -45,10 +46,12 @@ import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 final class HttpReadListener implements ChannelListener<ConduitStreamSourceChannel>, Runnable {
 
     private static final String BAD_REQUEST = "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+    private static final String SERVICE_UNAVAILABLE = "HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
 
     private final HttpServerConnection connection;
     private final ParseState state = new ParseState();
     private final HttpRequestParser parser;
+    private final ConnectionLimiter.Permit permit;
 
     private HttpServerExchange httpServerExchange;
 
@@ -65,8 +68,13 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
     private static final AtomicIntegerFieldUpdater<HttpReadListener> requestStateUpdater = AtomicIntegerFieldUpdater.newUpdater(HttpReadListener.class, "requestState");
 
     HttpReadListener(final HttpServerConnection connection, final HttpRequestParser parser) {
+        this(connection, parser, ConnectionLimiter.Permit.UNLIMITED);
+    }
+
+    HttpReadListener(final HttpServerConnection connection, final HttpRequestParser parser, final ConnectionLimiter.Permit permit) {
         this.connection = connection;
         this.parser = parser;
+        this.permit = permit;
         this.maxRequestSize = connection.getUndertowOptions().get(UndertowOptions.MAX_HEADER_SIZE, UndertowOptions.DEFAULT_MAX_HEADER_SIZE);
         this.maxEntitySize = connection.getUndertowOptions().get(UndertowOptions.MAX_ENTITY_SIZE, UndertowOptions.DEFAULT_MAX_ENTITY_SIZE);
         this.recordRequestStartTime = connection.getUndertowOptions().get(UndertowOptions.RECORD_REQUEST_START_TIME, false);
@@ -130,6 +138,13 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
                 } else {
                     buffer.flip();
                 }
+                //the rate check is made when the first bytes of a request arrive, so that requests over
+                //the rate are rejected without spending any time parsing them
+                if (read == 0 && !permit.tryAcquireRequest()) {
+                    UndertowLogger.REQUEST_LOGGER.debugf("Rejecting request from %s, request rate exceeded", connection.getPeerAddress());
+                    sendResponseAndClose(connection.getChannel(), SERVICE_UNAVAILABLE);
+                    return;
+                }
                 parser.handle(buffer, state, httpServerExchange);
                 if (buffer.hasRemaining()) {
                     free = false;
@@ -187,8 +202,12 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
 
     private void sendBadRequestAndClose(final StreamConnection connection, final Exception exception) {
         UndertowLogger.REQUEST_IO_LOGGER.failedToParseRequest(exception);
+        sendResponseAndClose(connection, BAD_REQUEST);
+    }
+
+    private void sendResponseAndClose(final StreamConnection connection, final String response) {
         connection.getSourceChannel().suspendReads();
-        new StringWriteChannelListener(BAD_REQUEST) {
+        new StringWriteChannelListener(response) {
             @Override
             protected void writeDone(final StreamSinkChannel c) {
                 super.writeDone(c);
@@ -33,6 +33,7 @@ import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
 import io.undertow.util.Protocols;
+import io.undertow.util.QueryParameterIndex;
 import io.undertow.util.URLUtils;
 import org.xnio.OptionMap;
 
@@ -455,30 +456,16 @@ public abstract class HttpRequestParser {
     @SuppressWarnings("unused")
     final void handleQueryParameters(ByteBuffer buffer, ParseState state, HttpServerExchange exchange) {
         StringBuilder stringBuilder = state.stringBuilder;
-        int queryParamPos = state.pos;
-        int mapCount = state.mapCount;
-        boolean urlDecodeRequired = state.urlDecodeRequired;
-        String nextQueryParam = state.nextQueryParam;
 
-        //so this is a bit funky, because it not only deals with parsing, but
-        //also deals with URL decoding the query parameters as well, while also
-        //maintaining a non-decoded version to use as the query string
-        //In most cases these string will be the same, and as we do not want to
-        //build up two separate strings we don't use encodedStringBuilder unless
-        //we encounter an encoded character
+        //the query string is only indexed here, individual parameters are decoded
+        //lazily if and when they are requested from the exchange
 
         while (buffer.hasRemaining()) {
             char next = (char) buffer.get();
             if (next == ' ' || next == '\t') {
                 final String queryString = stringBuilder.toString();
                 exchange.setQueryString(queryString);
-                if (nextQueryParam == null) {
-                    if (queryParamPos != stringBuilder.length()) {
-                        exchange.addQueryParam(decode(stringBuilder.substring(queryParamPos), urlDecodeRequired, state, true), "");
-                    }
-                } else {
-                    exchange.addQueryParam(nextQueryParam, decode(stringBuilder.substring(queryParamPos), urlDecodeRequired, state, true));
-                }
+                exchange.setQueryParameterIndex(new QueryParameterIndex(queryString, charset, decode, maxParameters));
                 state.state = ParseState.VERSION;
                 state.stringBuilder.setLength(0);
                 state.pos = 0;
@@ -489,39 +476,9 @@ public abstract class HttpRequestParser {
             } else if (next == '\r' || next == '\n') {
                 throw UndertowMessages.MESSAGES.failedToParsePath();
             } else {
-                if (decode && (next == '+' || next == '%')) {
-                    urlDecodeRequired = true;
-                } else if (next == '=' && nextQueryParam == null) {
-                    nextQueryParam = decode(stringBuilder.substring(queryParamPos), urlDecodeRequired, state, true);
-                    urlDecodeRequired = false;
-                    queryParamPos = stringBuilder.length() + 1;
-                } else if (next == '&' && nextQueryParam == null) {
-                    if (mapCount++ > maxParameters) {
-                        throw UndertowMessages.MESSAGES.tooManyQueryParameters(maxParameters);
-                    }
-                    if (queryParamPos != stringBuilder.length()) {
-                        exchange.addQueryParam(decode(stringBuilder.substring(queryParamPos), urlDecodeRequired, state, true), "");
-                    }
-                    urlDecodeRequired = false;
-                    queryParamPos = stringBuilder.length() + 1;
-                } else if (next == '&') {
-                    if (mapCount++ > maxParameters) {
-                        throw UndertowMessages.MESSAGES.tooManyQueryParameters(maxParameters);
-                    }
-                    exchange.addQueryParam(nextQueryParam, decode(stringBuilder.substring(queryParamPos), urlDecodeRequired, state, true));
-                    urlDecodeRequired = false;
-                    queryParamPos = stringBuilder.length() + 1;
-                    nextQueryParam = null;
-                }
                 stringBuilder.append(next);
-
             }
-
         }
-        state.pos = queryParamPos;
-        state.nextQueryParam = nextQueryParam;
-        state.urlDecodeRequired = urlDecodeRequired;
-        state.mapCount = 0;
     }
 
     private String decode(final String value, boolean urlDecodeRequired, ParseState state, final boolean allowEncodedSlash) {
@@ -22,13 +22,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
 import io.undertow.server.Connectors;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.TruncatedResponseException;
+import io.undertow.util.HeaderBlock;
 import io.undertow.util.HeaderMap;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.HttpString;
+import io.undertow.util.Protocols;
 import io.undertow.util.StatusCodes;
 import org.xnio.Pool;
 import org.xnio.Pooled;
@@ -72,6 +75,27 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
     private static final int STATE_HDR_FINAL_LF = 9; // Final LF
     private static final int STATE_BUF_FLUSH = 10; // flush the buffer and go to writing body
 
+    private static final int STATUS_LINES_START = 100;
+    private static final int STATUS_LINES_END = 600;
+
+    /**
+     * Pre-encoded HTTP/1.1 status lines, including the trailing CRLF, indexed by status code - STATUS_LINES_START
+     */
+    private static final byte[][] HTTP_1_1_STATUS_LINES;
+
+    static {
+        final byte[][] lines = new byte[STATUS_LINES_END - STATUS_LINES_START][];
+        for (int code = STATUS_LINES_START; code < STATUS_LINES_END; ++code) {
+            final String line = Protocols.HTTP_1_1_STRING + " " + code + " " + StatusCodes.getReason(code) + "\r\n";
+            final byte[] bytes = new byte[line.length()];
+            for (int i = 0; i < bytes.length; ++i) {
+                bytes[i] = (byte) line.charAt(i);
+            }
+            lines[code - STATUS_LINES_START] = bytes;
+        }
+        HTTP_1_1_STATUS_LINES = lines;
+    }
+
     private static final int MASK_STATE = 0x0000000F;
     private static final int FLAG_SHUTDOWN = 0x00000010;
 
@@ -147,17 +171,38 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
 
 
         assert buffer.remaining() >= 0x100;
-        exchange.getProtocol().appendTo(buffer);
-        buffer.put((byte) ' ');
         int code = exchange.getResponseCode();
         assert 999 >= code && code >= 100;
-        buffer.put((byte) (code / 100 + '0'));
-        buffer.put((byte) (code / 10 % 10 + '0'));
-        buffer.put((byte) (code % 10 + '0'));
-        buffer.put((byte) ' ');
-        String string = StatusCodes.getReason(code);
-        writeString(buffer, string);
-        buffer.put((byte) '\r').put((byte) '\n');
+        String string = null;
+        if (code >= STATUS_LINES_START && code < STATUS_LINES_END && exchange.getProtocol().equals(Protocols.HTTP_1_1)) {
+            buffer.put(HTTP_1_1_STATUS_LINES[code - STATUS_LINES_START]);
+        } else {
+            exchange.getProtocol().appendTo(buffer);
+            buffer.put((byte) ' ');
+            buffer.put((byte) (code / 100 + '0'));
+            buffer.put((byte) (code / 10 % 10 + '0'));
+            buffer.put((byte) (code % 10 + '0'));
+            buffer.put((byte) ' ');
+            string = StatusCodes.getReason(code);
+            writeString(buffer, string);
+            buffer.put((byte) '\r').put((byte) '\n');
+        }
+
+        List<HeaderBlock> headerBlocks = Connectors.getResponseHeaderBlocks(exchange);
+        if (headerBlocks != null) {
+            int blockLength = 0;
+            for (int i = 0; i < headerBlocks.size(); ++i) {
+                blockLength += headerBlocks.get(i).length();
+            }
+            if (blockLength + 2 <= buffer.remaining()) {
+                for (int i = 0; i < headerBlocks.size(); ++i) {
+                    headerBlocks.get(i).appendTo(buffer);
+                }
+            } else {
+                //too big to fit in the buffer, they will be written out with the rest of the headers
+                Connectors.flattenHeaderBlocks(exchange);
+            }
+        }
 
         int remaining = buffer.remaining();
 
@@ -20,6 +20,7 @@ package io.undertow.server.protocol.spdy;
 
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowMessages;
+import io.undertow.server.ConnectionLimiter;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.OpenListener;
 import io.undertow.server.protocol.http.HttpOpenListener;
@@ -64,6 +65,8 @@ public final class SpdyOpenListener implements ChannelListener<StreamConnection>
     private volatile OptionMap undertowOptions;
     private final HttpOpenListener delegate;
 
+    private volatile ConnectionLimiter connectionLimiter;
+
     public SpdyOpenListener(final Pool<ByteBuffer> pool, final Pool<ByteBuffer> heapBufferPool, final int bufferSize) {
         this(pool, heapBufferPool, OptionMap.EMPTY, bufferSize, null);
     }
@@ -104,9 +107,7 @@ public final class SpdyOpenListener implements ChannelListener<StreamConnection>
         if (existing != null) {
             UndertowLogger.REQUEST_LOGGER.debug("Resuming existing session, not doing NPN negotiation");
             if(existing.equals(SPDY_3_1) || existing.equals(SPDY_3)) {
-                SpdyChannel sc = new SpdyChannel(channel, bufferPool, new ImmediatePooled<ByteBuffer>(ByteBuffer.wrap(new byte[0])), heapBufferPool);
-                sc.getReceiveSetter().set(new SpdyReceiveListener(rootHandler, getUndertowOptions(), bufferSize));
-                sc.resumeReceives();
+                openSpdyChannel(channel, new ImmediatePooled<ByteBuffer>(ByteBuffer.wrap(new byte[0])));
             } else {
                 if (delegate == null) {
                     UndertowLogger.REQUEST_IO_LOGGER.couldNotInitiateSpdyConnection();
@@ -138,6 +139,52 @@ public final class SpdyOpenListener implements ChannelListener<StreamConnection>
         }
     }
 
+    /**
+     * Creates the SPDY channel for a connection, unless the connection limiter rejects it.
+     *
+     * @return true if the channel was created and has taken ownership of the data buffer
+     */
+    private boolean openSpdyChannel(final StreamConnection channel, final Pooled<ByteBuffer> data) {
+        final ConnectionLimiter connectionLimiter = this.connectionLimiter;
+        ConnectionLimiter.Permit permit = ConnectionLimiter.Permit.UNLIMITED;
+        if (connectionLimiter != null) {
+            permit = connectionLimiter.tryOpen(channel);
+            if (permit == null) {
+                UndertowLogger.REQUEST_LOGGER.debugf("Rejecting connection from %s, too many connections", channel.getPeerAddress());
+                IoUtils.safeClose(channel);
+                return false;
+            }
+        }
+        SpdyChannel sc = new SpdyChannel(channel, bufferPool, data, heapBufferPool);
+        final ConnectionLimiter.Permit connectionPermit = permit;
+        sc.addCloseTask(new ChannelListener<SpdyChannel>() {
+            @Override
+            public void handleEvent(SpdyChannel channel) {
+                connectionPermit.release();
+            }
+        });
+        sc.getReceiveSetter().set(new SpdyReceiveListener(rootHandler, getUndertowOptions(), bufferSize, connectionPermit));
+        sc.resumeReceives();
+        return true;
+    }
+
+    public ConnectionLimiter getConnectionLimiter() {
+        return connectionLimiter;
+    }
+
+    /**
+     * Sets the limiter that is used to cap the number of connections from each client address. The limiter
+     * is also set on the HTTP delegate, which applies it to connections that do not negotiate SPDY.
+     *
+     * @param connectionLimiter The limiter, or null to disable limiting
+     */
+    public void setConnectionLimiter(final ConnectionLimiter connectionLimiter) {
+        this.connectionLimiter = connectionLimiter;
+        if (delegate != null) {
+            delegate.setConnectionLimiter(connectionLimiter);
+        }
+    }
+
     @Override
     public HttpHandler getRootHandler() {
         return rootHandler;
@@ -193,10 +240,7 @@ public final class SpdyOpenListener implements ChannelListener<StreamConnection>
 
                         NextProtoNego.remove(JsseXnioSsl.getSslEngine((SslConnection) channel));
                         //cool, we have a spdy connection.
-                        SpdyChannel channel = new SpdyChannel(this.channel, bufferPool, buffer, heapBufferPool);
-                        free = false;
-                        channel.getReceiveSetter().set(new SpdyReceiveListener(rootHandler, getUndertowOptions(), bufferSize));
-                        channel.resumeReceives();
+                        free = !openSpdyChannel(channel, buffer);
                         return;
                     } else if (HTTP_1_1.equals(selected) || res > 0) {
                         NextProtoNego.remove(JsseXnioSsl.getSslEngine((SslConnection) channel));
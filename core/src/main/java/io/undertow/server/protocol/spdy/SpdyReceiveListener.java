@@ -20,6 +20,7 @@ package io.undertow.server.protocol.spdy;
 
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowOptions;
+import io.undertow.server.ConnectionLimiter;
 import io.undertow.server.Connectors;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
@@ -60,12 +61,22 @@ public class SpdyReceiveListener implements ChannelListener<SpdyChannel> {
     private final StringBuilder decodeBuffer = new StringBuilder();
     private final boolean allowEncodingSlash;
     private final int bufferSize;
+    private final ConnectionLimiter.Permit permit;
 
 
     public SpdyReceiveListener(HttpHandler rootHandler, OptionMap undertowOptions, int bufferSize) {
+        this(rootHandler, undertowOptions, bufferSize, ConnectionLimiter.Permit.UNLIMITED);
+    }
+
+    /**
+     * @param permit The connection limiter permit for the connection. A request rate token is taken from it for
+     *               every stream the client opens.
+     */
+    public SpdyReceiveListener(HttpHandler rootHandler, OptionMap undertowOptions, int bufferSize, ConnectionLimiter.Permit permit) {
         this.rootHandler = rootHandler;
         this.undertowOptions = undertowOptions;
         this.bufferSize = bufferSize;
+        this.permit = permit;
         this.maxEntitySize = undertowOptions.get(UndertowOptions.MAX_ENTITY_SIZE, UndertowOptions.DEFAULT_MAX_ENTITY_SIZE);
         this.allowEncodingSlash = undertowOptions.get(UndertowOptions.ALLOW_ENCODED_SLASH, false);
         if (undertowOptions.get(UndertowOptions.DECODE_URL, true)) {
@@ -92,6 +103,7 @@ public class SpdyReceiveListener implements ChannelListener<SpdyChannel> {
 
 
                 final HttpServerExchange exchange = new HttpServerExchange(connection, dataChannel.getHeaders(), dataChannel.getResponseChannel().getHeaders(), maxEntitySize);
+                final boolean permitted = permit.tryAcquireRequest();
                 exchange.setRequestScheme(exchange.getRequestHeaders().getFirst(SCHEME));
                 exchange.setProtocol(new HttpString(exchange.getRequestHeaders().getFirst(VERSION)));
                 exchange.setRequestMethod(new HttpString(exchange.getRequestHeaders().getFirst(METHOD)));
@@ -120,6 +132,14 @@ public class SpdyReceiveListener implements ChannelListener<SpdyChannel> {
                     });
                 }
 
+                if (!permitted) {
+                    //the stream is over the client's request rate, so it is answered with a 503 without
+                    //the handler chain ever seeing it. The other streams on the connection are not affected.
+                    UndertowLogger.REQUEST_LOGGER.debugf("Rejecting request from %s, request rate exceeded", channel.getPeerAddress());
+                    exchange.setResponseCode(503);
+                    exchange.endExchange();
+                    return;
+                }
                 Connectors.executeRootHandler(rootHandler, exchange);
             }
 
@@ -207,6 +207,7 @@ public class SpdyServerConnection extends ServerConnection {
         headers.add(STATUS, exchange.getResponseCode() + " " + StatusCodes.getReason(exchange.getResponseCode()));
         headers.add(VERSION, exchange.getProtocol().toString());
         Connectors.flattenCookies(exchange);
+        Connectors.flattenHeaderBlocks(exchange);
         return originalSinkConduit;
     }
 
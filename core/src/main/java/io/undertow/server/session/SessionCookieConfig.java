@@ -18,7 +18,6 @@
 
 package io.undertow.server.session;
 
-import java.util.Map;
 
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.Cookie;
@@ -80,12 +79,9 @@ public class SessionCookieConfig implements SessionConfig {
 
     @Override
     public String findSessionId(final HttpServerExchange exchange) {
-        Map<String, Cookie> cookies = exchange.getRequestCookies();
-        if (cookies != null) {
-            Cookie sessionId = cookies.get(cookieName);
-            if (sessionId != null) {
-                return sessionId.getValue();
-            }
+        Cookie sessionId = exchange.getRequestCookie(cookieName);
+        if (sessionId != null) {
+            return sessionId.getValue();
         }
         return null;
     }
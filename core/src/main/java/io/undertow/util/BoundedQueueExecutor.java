@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a bounded task queue, intended for use as a dispatch executor.
+ * <p>
+ * Once all threads are busy and the queue is full further tasks are rejected with a
+ * {@link RejectedExecutionException}, which results in a 503 response for dispatched requests.
+ * The number of rejected tasks is recorded.
+ */
+public class BoundedQueueExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong rejectedTasks = new AtomicLong();
+    private final int queueCapacity;
+
+    /**
+     * @param threads       The number of threads
+     * @param queueCapacity The maximum number of tasks that can be waiting for a thread
+     * @param namePrefix    The prefix of the thread names
+     */
+    public BoundedQueueExecutor(final int threads, final int queueCapacity, final String namePrefix) {
+        this(threads, threads, 60, TimeUnit.SECONDS, queueCapacity, namePrefix);
+    }
+
+    public BoundedQueueExecutor(final int coreThreads, final int maxThreads, final long keepAlive, final TimeUnit unit, final int queueCapacity, final String namePrefix) {
+        super(coreThreads, maxThreads, keepAlive, unit, new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(namePrefix));
+        this.queueCapacity = queueCapacity;
+        setRejectedExecutionHandler(new CountingRejectionHandler());
+    }
+
+    /**
+     * @return The number of tasks that have been rejected
+     */
+    public long getRejectedTaskCount() {
+        return rejectedTasks.get();
+    }
+
+    /**
+     * @return The number of tasks currently waiting for a thread
+     */
+    public int getQueuedTaskCount() {
+        return getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    private final class CountingRejectionHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            rejectedTasks.incrementAndGet();
+            throw new RejectedExecutionException();
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(final String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
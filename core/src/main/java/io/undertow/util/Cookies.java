@@ -290,6 +290,153 @@ public class Cookies {
         }
     }
 
+    /**
+     * Finds a single request cookie without parsing every cookie into a map. The header values are scanned using the
+     * same rules as {@link #parseRequestCookies(int, boolean, java.util.List)}, and the result is equal to the cookie
+     * that would be stored in that map under the given name. Only the value of the requested cookie is copied out of
+     * the header.
+     *
+     * @param name              The cookie name
+     * @param allowEqualInValue if true equal characters are allowed in cookie values
+     * @param cookies           The cookie values to parse
+     * @return The cookie, or <code>null</code> if it is not present
+     */
+    public static Cookie parseRequestCookie(final String name, final boolean allowEqualInValue, final List<String> cookies) {
+        if (cookies == null || name.isEmpty()) {
+            return null;
+        }
+        //when the map is built later headers replace cookies from earlier ones, so search from the end
+        for (int i = cookies.size() - 1; i >= 0; --i) {
+            final CookieLookup lookup = new CookieLookup(cookies.get(i), name);
+            lookup.scan(allowEqualInValue);
+            if (lookup.value != null) {
+                final Cookie c = new CookieImpl(name, lookup.value);
+                if (lookup.domain != null) {
+                    c.setDomain(lookup.domain);
+                }
+                if (lookup.version != null) {
+                    c.setVersion(Integer.parseInt(lookup.version));
+                }
+                if (lookup.path != null) {
+                    c.setPath(lookup.path);
+                }
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Single header version of {@link #parseCookie(String, java.util.Map, int, boolean)} that works on offsets, and only
+     * creates strings for the requested cookie and the <code>$</code> attributes.
+     */
+    private static final class CookieLookup {
+        private final String cookie;
+        private final String name;
+        String value;
+        String domain;
+        String version;
+        String path;
+
+        private CookieLookup(final String cookie, final String name) {
+            this.cookie = cookie;
+            this.name = name;
+        }
+
+        void scan(final boolean allowEqualInValue) {
+            int state = 0;
+            int nameStart = -1;
+            int nameEnd = -1;
+            int start = 0;
+            for (int i = 0; i < cookie.length(); ++i) {
+                char c = cookie.charAt(i);
+                switch (state) {
+                    case 0: {
+                        //eat leading whitespace
+                        if (c == ' ' || c == '\t' || c == ';') {
+                            start = i + 1;
+                            break;
+                        }
+                        state = 1;
+                        //fall through
+                    }
+                    case 1: {
+                        //extract key, a key without a value never creates a new cookie
+                        if (c == '=') {
+                            nameStart = start;
+                            nameEnd = i;
+                            start = i + 1;
+                            state = 2;
+                        } else if (c == ';') {
+                            state = 0;
+                            start = i + 1;
+                        }
+                        break;
+                    }
+                    case 2: {
+                        //extract value
+                        if (c == ';') {
+                            found(nameStart, nameEnd, start, i);
+                            state = 0;
+                            start = i + 1;
+                        } else if (c == '"') {
+                            state = 3;
+                            start = i + 1;
+                        } else if (!allowEqualInValue && c == '=') {
+                            found(nameStart, nameEnd, start, i);
+                            state = 4;
+                            start = i + 1;
+                        }
+                        break;
+                    }
+                    case 3: {
+                        //extract quoted value
+                        if (c == '"') {
+                            found(nameStart, nameEnd, start, i);
+                            state = 0;
+                            start = i + 1;
+                        }
+                        break;
+                    }
+                    case 4: {
+                        //skip value portion behind '='
+                        if (c == ';') {
+                            state = 0;
+                        }
+                        start = i + 1;
+                        break;
+                    }
+                }
+            }
+            if (state == 2) {
+                found(nameStart, nameEnd, start, cookie.length());
+            }
+        }
+
+        private void found(final int nameStart, final int nameEnd, final int valueStart, final int valueEnd) {
+            final int length = nameEnd - nameStart;
+            if (length == 0) {
+                return;
+            }
+            //as with the map only the first occurrence of a name in a header counts
+            if (cookie.charAt(nameStart) == '$') {
+                if (domain == null && matches(nameStart, length, DOMAIN)) {
+                    domain = cookie.substring(valueStart, valueEnd);
+                } else if (version == null && matches(nameStart, length, VERSION)) {
+                    version = cookie.substring(valueStart, valueEnd);
+                } else if (path == null && matches(nameStart, length, PATH)) {
+                    path = cookie.substring(valueStart, valueEnd);
+                }
+            } else if (value == null && matches(nameStart, length, name)) {
+                value = cookie.substring(valueStart, valueEnd);
+            }
+        }
+
+        private boolean matches(final int nameStart, final int length, final String expected) {
+            return length == expected.length() && cookie.regionMatches(nameStart, expected, 0, length);
+        }
+    }
+
     private static int createCookie(final String name, final String value, int maxCookies, int cookieCount,
             final Map<String, String> cookies, final Map<String, String> additional) {
         if (name.charAt(0) == '$') {
@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.undertow.UndertowMessages;
+
+/**
+ * An immutable block of response headers that has been encoded to bytes ahead of time.
+ * <p/>
+ * Responses often share a large part of their header block (e.g. Server, Content-Type and Cache-Control).
+ * A header block can be built once and then attached to any number of exchanges using
+ * {@link io.undertow.server.HttpServerExchange#addResponseHeaderBlock(HeaderBlock)}. The HTTP connector will
+ * copy the encoded bytes into the response with a single bulk put, while other connectors will add the headers
+ * to the response header map before the response is written.
+ * <p/>
+ * Note that headers in a block are not visible through {@link io.undertow.server.HttpServerExchange#getResponseHeaders()},
+ * so it is up to the caller to make sure they do not duplicate headers set by other handlers. Headers that are
+ * used to delimit the response (Content-Length, Transfer-Encoding and Connection) are not allowed.
+ */
+public final class HeaderBlock {
+
+    private final HttpString[] names;
+    private final String[] values;
+    private final byte[] encoded;
+
+    private HeaderBlock(final HttpString[] names, final String[] values, final byte[] encoded) {
+        this.names = names;
+        this.values = values;
+        this.encoded = encoded;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The length of the encoded header block, including the trailing CRLF of every header line
+     */
+    public int length() {
+        return encoded.length;
+    }
+
+    /**
+     * Copies the encoded header lines to the buffer
+     *
+     * @param buffer The buffer
+     */
+    public void appendTo(final ByteBuffer buffer) {
+        buffer.put(encoded);
+    }
+
+    /**
+     * Adds the headers in this block to a header map. This is used by connectors that do not write
+     * HTTP/1.x header blocks directly.
+     *
+     * @param headerMap The header map
+     */
+    public void addTo(final HeaderMap headerMap) {
+        for (int i = 0; i < names.length; ++i) {
+            headerMap.add(names[i], values[i]);
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<HttpString> names = new ArrayList<HttpString>();
+        private final List<String> values = new ArrayList<String>();
+
+        Builder() {
+        }
+
+        public Builder add(final HttpString name, final String value) {
+            if (name.equals(Headers.CONTENT_LENGTH) || name.equals(Headers.TRANSFER_ENCODING) || name.equals(Headers.CONNECTION)) {
+                throw UndertowMessages.MESSAGES.headerCannotBePreEncoded(name);
+            }
+            //the block is written to the wire as is, so a line break would allow response splitting
+            for (int i = 0; i < name.length(); ++i) {
+                if (isLineBreak(name.byteAt(i))) {
+                    throw UndertowMessages.MESSAGES.invalidCharacterInHeaderBlock(name);
+                }
+            }
+            for (int i = 0; i < value.length(); ++i) {
+                if (isLineBreak(value.charAt(i))) {
+                    throw UndertowMessages.MESSAGES.invalidCharacterInHeaderBlock(name);
+                }
+            }
+            names.add(name);
+            values.add(value);
+            return this;
+        }
+
+        private static boolean isLineBreak(final int c) {
+            return c == '\r' || c == '\n';
+        }
+
+        public HeaderBlock build() {
+            int length = 0;
+            for (int i = 0; i < names.size(); ++i) {
+                length += names.get(i).length() + values.get(i).length() + 4;
+            }
+            final byte[] encoded = new byte[length];
+            int pos = 0;
+            for (int i = 0; i < names.size(); ++i) {
+                final HttpString name = names.get(i);
+                name.copyTo(encoded, pos);
+                pos += name.length();
+                encoded[pos++] = ':';
+                encoded[pos++] = ' ';
+                final String value = values.get(i);
+                for (int j = 0; j < value.length(); ++j) {
+                    encoded[pos++] = (byte) value.charAt(j);
+                }
+                encoded[pos++] = '\r';
+                encoded[pos++] = '\n';
+            }
+            return new HeaderBlock(names.toArray(new HttpString[names.size()]), values.toArray(new String[values.size()]), encoded);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.undertow.UndertowMessages;
+
+/**
+ * An index over a raw query string.
+ * <p>
+ * The query string is scanned once to record the offsets of each parameter, names and values are only
+ * decoded when they are actually asked for. This means that requests that only look at one or two parameters
+ * (or none at all) do not pay to decode and store every parameter in the query string.
+ * <p>
+ * The parsing rules are the same as the ones used by the HTTP parser, and malformed escape sequences are
+ * rejected when the index is created, so an invalid query string still fails the request up front.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class QueryParameterIndex {
+
+    private static final int ENTRY_SIZE = 4;
+    private static final int START = 0;
+    private static final int EQUALS = 1;
+    private static final int END = 2;
+    private static final int FLAGS = 3;
+
+    private static final int KEY_DECODE = 1;
+    private static final int VALUE_DECODE = 2;
+
+    private final String queryString;
+    private final String charset;
+    private int[] entries;
+    private int count;
+
+    /**
+     * @param queryString   The raw query string, without the leading <code>?</code>
+     * @param charset       The charset used to decode escaped characters
+     * @param decode        If names and values should be URL decoded
+     * @param maxParameters The maximum number of parameters allowed
+     */
+    public QueryParameterIndex(final String queryString, final String charset, final boolean decode, final int maxParameters) {
+        this.queryString = queryString;
+        this.charset = charset;
+        this.entries = new int[ENTRY_SIZE * 4];
+        int separators = 0;
+        int start = 0;
+        int equals = -1;
+        int flags = 0;
+        final int length = queryString.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = queryString.charAt(i);
+            if (c == '=' && equals == -1) {
+                equals = i;
+            } else if (c == '&') {
+                if (separators++ > maxParameters) {
+                    throw UndertowMessages.MESSAGES.tooManyQueryParameters(maxParameters);
+                }
+                if (equals != -1 || start != i) {
+                    addEntry(start, equals, i, flags);
+                }
+                start = i + 1;
+                equals = -1;
+                flags = 0;
+            } else if (decode && (c == '+' || c == '%')) {
+                if (c == '%' && (i + 2 >= length || !isHex(queryString.charAt(i + 1)) || !isHex(queryString.charAt(i + 2)))) {
+                    throw UndertowMessages.MESSAGES.failedToDecodeURL(queryString, charset);
+                }
+                flags |= equals == -1 ? KEY_DECODE : VALUE_DECODE;
+            }
+        }
+        if (equals != -1 || start != length) {
+            addEntry(start, equals, length, flags);
+        }
+    }
+
+    private static boolean isHex(final char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private void addEntry(final int start, final int equals, final int end, final int flags) {
+        int pos = count * ENTRY_SIZE;
+        if (pos == entries.length) {
+            final int[] old = entries;
+            entries = new int[old.length * 2];
+            System.arraycopy(old, 0, entries, 0, old.length);
+        }
+        entries[pos + START] = start;
+        entries[pos + EQUALS] = equals;
+        entries[pos + END] = end;
+        entries[pos + FLAGS] = flags;
+        ++count;
+    }
+
+    /**
+     *
+     * @return The raw query string this index was built from
+     */
+    public String getQueryString() {
+        return queryString;
+    }
+
+    /**
+     *
+     * @return The number of parameters in the query string, including repeated names
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the first value of the given parameter.
+     *
+     * @param name The decoded parameter name
+     * @return The first decoded value, or <code>null</code> if the parameter is not present
+     */
+    public String getFirst(final String name) {
+        for (int i = 0; i < count; ++i) {
+            if (keyMatches(i, name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all values of the given parameter.
+     *
+     * @param name The decoded parameter name
+     * @return The decoded values, or <code>null</code> if the parameter is not present
+     */
+    public Deque<String> get(final String name) {
+        Deque<String> result = null;
+        for (int i = 0; i < count; ++i) {
+            if (keyMatches(i, name)) {
+                if (result == null) {
+                    result = new ArrayDeque<String>(2);
+                }
+                result.add(value(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return The decoded parameter names, in the order they first appear
+     */
+    public Set<String> names() {
+        final Set<String> names = new LinkedHashSet<String>();
+        for (int i = 0; i < count; ++i) {
+            names.add(key(i));
+        }
+        return names;
+    }
+
+    /**
+     * Decodes every parameter into a new mutable map, in the format used by
+     * {@link io.undertow.server.HttpServerExchange#getQueryParameters()}.
+     *
+     * @return The parameter map
+     */
+    public Map<String, Deque<String>> toMap() {
+        final Map<String, Deque<String>> map = new TreeMap<String, Deque<String>>();
+        for (int i = 0; i < count; ++i) {
+            final String key = key(i);
+            Deque<String> values = map.get(key);
+            if (values == null) {
+                map.put(key, values = new ArrayDeque<String>(2));
+            }
+            values.add(value(i));
+        }
+        return map;
+    }
+
+    private boolean keyMatches(final int entry, final String name) {
+        final int pos = entry * ENTRY_SIZE;
+        if ((entries[pos + FLAGS] & KEY_DECODE) != 0) {
+            return key(entry).equals(name);
+        }
+        final int start = entries[pos + START];
+        final int end = entries[pos + EQUALS] == -1 ? entries[pos + END] : entries[pos + EQUALS];
+        return end - start == name.length() && queryString.regionMatches(start, name, 0, name.length());
+    }
+
+    private String key(final int entry) {
+        final int pos = entry * ENTRY_SIZE;
+        final int start = entries[pos + START];
+        final int end = entries[pos + EQUALS] == -1 ? entries[pos + END] : entries[pos + EQUALS];
+        return decode(queryString.substring(start, end), (entries[pos + FLAGS] & KEY_DECODE) != 0);
+    }
+
+    private String value(final int entry) {
+        final int pos = entry * ENTRY_SIZE;
+        final int equals = entries[pos + EQUALS];
+        if (equals == -1) {
+            return "";
+        }
+        return decode(queryString.substring(equals + 1, entries[pos + END]), (entries[pos + FLAGS] & VALUE_DECODE) != 0);
+    }
+
+    private String decode(final String value, final boolean required) {
+        if (!required) {
+            return value;
+        }
+        return URLUtils.decode(value, charset, true, new StringBuilder(value.length()));
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import io.undertow.UndertowMessages;
+import org.xnio.BufferAllocator;
+import org.xnio.Pool;
+import org.xnio.Pooled;
+import org.xnio.XnioIoThread;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A buffer pool that keeps a cache of buffers for every XNIO IO thread.
+ * <p/>
+ * Most buffer allocate/free traffic happens on IO threads, and with a single shared pool all of them contend on
+ * the same structures. This pool lets each IO thread allocate from and free to its own cache without any
+ * synchronization. When a cache runs dry it is refilled in bulk with a batch of buffers from a shared arena, and when
+ * it overflows a batch is returned to the arena. Non IO threads (e.g. worker threads) allocate directly from the arena.
+ * <p/>
+ * Buffers are sliced from regions that are allocated by the thread that first needs them, so on NUMA systems the
+ * memory for an IO thread's buffers will generally be local to the node that thread runs on.
+ * <p/>
+ * If leak detection is enabled the allocation point of every outstanding buffer is recorded, and can be retrieved
+ * using {@link #getLeakedAllocationPoints()}. This has a significant cost and should only be used for debugging.
+ * <p/>
+ * Statistics are maintained without synchronization, and as such should be treated as approximate.
+ */
+public class ThreadLocalBufferPool implements Pool<ByteBuffer> {
+
+    /**
+     * The default number of buffers that are moved between a thread cache and the shared arena at once
+     */
+    public static final int DEFAULT_BATCH_SIZE = 16;
+
+    private final BufferAllocator<ByteBuffer> allocator;
+    private final int bufferSize;
+    private final int buffersPerRegion;
+    private final int batchSize;
+    private final boolean leakDetection;
+
+    /**
+     * Batches of free buffers returned by thread caches
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer[]> batches = new ConcurrentLinkedQueue<ByteBuffer[]>();
+
+    /**
+     * Free buffers returned by threads that do not have a cache
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> looseBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>();
+
+    /**
+     * All thread caches, used to aggregate statistics
+     */
+    private final List<ThreadCache> caches = new CopyOnWriteArrayList<ThreadCache>();
+
+    /**
+     * Statistics for threads that do not have a cache
+     */
+    private final ThreadCache sharedStatistics = new ThreadCache(0);
+
+    private final Set<PooledBuffer> outstanding;
+
+    public ThreadLocalBufferPool(final BufferAllocator<ByteBuffer> allocator, final int bufferSize, final int buffersPerRegion) {
+        this(allocator, bufferSize, buffersPerRegion, DEFAULT_BATCH_SIZE, false);
+    }
+
+    public ThreadLocalBufferPool(final BufferAllocator<ByteBuffer> allocator, final int bufferSize, final int buffersPerRegion, final int batchSize, final boolean leakDetection) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize");
+        }
+        if (buffersPerRegion <= 0) {
+            throw new IllegalArgumentException("buffersPerRegion");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize");
+        }
+        this.allocator = allocator;
+        this.bufferSize = bufferSize;
+        this.buffersPerRegion = buffersPerRegion;
+        this.batchSize = batchSize;
+        this.leakDetection = leakDetection;
+        this.outstanding = leakDetection ? Collections.newSetFromMap(new ConcurrentHashMap<PooledBuffer, Boolean>()) : null;
+    }
+
+    @Override
+    public Pooled<ByteBuffer> allocate() {
+        ByteBuffer buffer;
+        final ThreadCache cache = getCache();
+        if (cache != null) {
+            buffer = cache.poll();
+            if (buffer != null) {
+                cache.hits++;
+            } else {
+                cache.misses++;
+                refill(cache);
+                buffer = cache.poll();
+            }
+            cache.allocations++;
+        } else {
+            synchronized (sharedStatistics) {
+                sharedStatistics.misses++;
+                sharedStatistics.allocations++;
+            }
+            buffer = looseBuffers.poll();
+            if (buffer == null) {
+                ByteBuffer[] batch = batches.poll();
+                if (batch == null) {
+                    batch = allocateRegion();
+                }
+                buffer = batch[0];
+                for (int i = 1; i < batch.length; ++i) {
+                    looseBuffers.add(batch[i]);
+                }
+            }
+        }
+        final PooledBuffer pooled = new PooledBuffer(buffer);
+        if (leakDetection) {
+            outstanding.add(pooled);
+        }
+        return pooled;
+    }
+
+    private void free(final PooledBuffer pooled) {
+        if (leakDetection) {
+            outstanding.remove(pooled);
+        }
+        final ByteBuffer buffer = pooled.buffer;
+        buffer.clear();
+        final ThreadCache cache = getCache();
+        if (cache != null) {
+            cache.frees++;
+            if (cache.isFull()) {
+                batches.add(cache.drain(batchSize));
+            }
+            cache.push(buffer);
+        } else {
+            synchronized (sharedStatistics) {
+                sharedStatistics.frees++;
+            }
+            looseBuffers.add(buffer);
+        }
+    }
+
+    private void discard(final PooledBuffer pooled) {
+        if (leakDetection) {
+            outstanding.remove(pooled);
+        }
+        final ThreadCache cache = getCache();
+        if (cache != null) {
+            cache.frees++;
+        } else {
+            synchronized (sharedStatistics) {
+                sharedStatistics.frees++;
+            }
+        }
+    }
+
+    private ThreadCache getCache() {
+        ThreadCache cache = threadCache.get();
+        if (cache == null) {
+            if (!(Thread.currentThread() instanceof XnioIoThread)) {
+                return null;
+            }
+            cache = new ThreadCache(batchSize * 2);
+            threadCache.set(cache);
+            caches.add(cache);
+        }
+        return cache;
+    }
+
+    private void refill(final ThreadCache cache) {
+        final ByteBuffer[] batch = batches.poll();
+        if (batch != null) {
+            cache.pushAll(batch);
+            return;
+        }
+        ByteBuffer loose;
+        int count = 0;
+        while (count < batchSize && (loose = looseBuffers.poll()) != null) {
+            cache.push(loose);
+            ++count;
+        }
+        if (count == 0) {
+            final ByteBuffer[] region = allocateRegion();
+            int i = 0;
+            for (; i < region.length && !cache.isFull(); ++i) {
+                cache.push(region[i]);
+            }
+            for (; i < region.length; ++i) {
+                looseBuffers.add(region[i]);
+            }
+        }
+    }
+
+    private ByteBuffer[] allocateRegion() {
+        final ByteBuffer region = allocator.allocate(bufferSize * buffersPerRegion);
+        final ByteBuffer[] buffers = new ByteBuffer[buffersPerRegion];
+        for (int i = 0; i < buffersPerRegion; ++i) {
+            region.limit((i + 1) * bufferSize);
+            region.position(i * bufferSize);
+            buffers[i] = region.slice();
+        }
+        return buffers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of allocations that were satisfied from the allocating thread's cache
+     */
+    public long getCacheHits() {
+        long hits = 0;
+        for (ThreadCache cache : caches) {
+            hits += cache.hits;
+        }
+        return hits;
+    }
+
+    /**
+     * @return The number of allocations that had to go to the shared arena
+     */
+    public long getCacheMisses() {
+        long misses;
+        synchronized (sharedStatistics) {
+            misses = sharedStatistics.misses;
+        }
+        for (ThreadCache cache : caches) {
+            misses += cache.misses;
+        }
+        return misses;
+    }
+
+    /**
+     * @return The number of buffers that have been allocated and not yet freed or discarded
+     */
+    public long getOutstandingBuffers() {
+        long outstanding;
+        synchronized (sharedStatistics) {
+            outstanding = sharedStatistics.allocations - sharedStatistics.frees;
+        }
+        for (ThreadCache cache : caches) {
+            outstanding += cache.allocations - cache.frees;
+        }
+        return outstanding;
+    }
+
+    /**
+     * Returns the allocation points of all buffers that are currently outstanding. If leak detection is not
+     * enabled this will always be empty.
+     *
+     * @return The allocation points of outstanding buffers
+     */
+    public List<Throwable> getLeakedAllocationPoints() {
+        if (!leakDetection) {
+            return Collections.emptyList();
+        }
+        final List<Throwable> result = new ArrayList<Throwable>();
+        for (PooledBuffer buffer : outstanding) {
+            result.add(buffer.allocationPoint);
+        }
+        return result;
+    }
+
+    /**
+     * A fixed size stack of buffers owned by a single thread
+     */
+    private static final class ThreadCache {
+
+        private final ByteBuffer[] buffers;
+        private int size;
+
+        long hits;
+        long misses;
+        long allocations;
+        long frees;
+
+        ThreadCache(final int capacity) {
+            this.buffers = new ByteBuffer[capacity];
+        }
+
+        ByteBuffer poll() {
+            if (size == 0) {
+                return null;
+            }
+            final ByteBuffer buffer = buffers[--size];
+            buffers[size] = null;
+            return buffer;
+        }
+
+        boolean isFull() {
+            return size == buffers.length;
+        }
+
+        void push(final ByteBuffer buffer) {
+            buffers[size++] = buffer;
+        }
+
+        void pushAll(final ByteBuffer[] batch) {
+            System.arraycopy(batch, 0, buffers, size, batch.length);
+            size += batch.length;
+        }
+
+        ByteBuffer[] drain(final int count) {
+            final ByteBuffer[] batch = new ByteBuffer[count];
+            size -= count;
+            System.arraycopy(buffers, size, batch, 0, count);
+            for (int i = size; i < size + count; ++i) {
+                buffers[i] = null;
+            }
+            return batch;
+        }
+    }
+
+    private final class PooledBuffer implements Pooled<ByteBuffer> {
+
+        private final ByteBuffer buffer;
+        private final RuntimeException allocationPoint;
+        private boolean freed;
+
+        PooledBuffer(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.allocationPoint = leakDetection ? new RuntimeException("Buffer allocation point") : null;
+        }
+
+        @Override
+        public void discard() {
+            if (!freed) {
+                freed = true;
+                ThreadLocalBufferPool.this.discard(this);
+            }
+        }
+
+        @Override
+        public void free() {
+            if (!freed) {
+                freed = true;
+                ThreadLocalBufferPool.this.free(this);
+            }
+        }
+
+        @Override
+        public ByteBuffer getResource() throws IllegalStateException {
+            if (freed) {
+                throw UndertowMessages.MESSAGES.bufferAlreadyFreed();
+            }
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            free();
+        }
+
+        @Override
+        public String toString() {
+            return "Pooled buffer " + buffer;
+        }
+    }
+}
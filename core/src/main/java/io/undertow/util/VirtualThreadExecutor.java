@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.undertow.UndertowMessages;
+
+/**
+ * Executor that runs every task on a new virtual thread.
+ * <p>
+ * Virtual threads are only available on newer JVMs, so they are looked up reflectively. Use
+ * {@link #isSupported()} to check if they are available, or {@link #create(String, java.util.concurrent.Executor)}
+ * to fall back to a different executor if they are not.
+ * <p>
+ * Blocking IO performed on a virtual thread still uses the XNIO blocking primitives, so this executor
+ * removes the limit on the number of concurrent blocking requests rather than the cost of each one.
+ */
+public final class VirtualThreadExecutor implements Executor {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            //on JDK 19 and 20 the method exists but throws UnsupportedOperationException unless preview
+            //features are enabled, so it has to actually be invoked to find out if virtual threads can be used
+            ofVirtual.invoke(null);
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    private final ThreadFactory threadFactory;
+    private final AtomicLong startedThreads = new AtomicLong();
+
+    /**
+     * @param namePrefix The prefix of the thread names, a sequence number is appended to it
+     * @throws IllegalStateException If virtual threads are not supported
+     */
+    public VirtualThreadExecutor(final String namePrefix) {
+        if (OF_VIRTUAL == null) {
+            throw UndertowMessages.MESSAGES.virtualThreadsNotSupported();
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            this.threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (Exception e) {
+            IllegalStateException ise = UndertowMessages.MESSAGES.virtualThreadsNotSupported();
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the current JVM supports virtual threads, and they are enabled
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a virtual thread executor if the JVM supports them, otherwise returns the fallback executor.
+     *
+     * @param namePrefix The thread name prefix
+     * @param fallback   The executor to use if virtual threads are not supported
+     * @return The executor
+     */
+    public static Executor create(final String namePrefix, final Executor fallback) {
+        if (isSupported()) {
+            return new VirtualThreadExecutor(namePrefix);
+        }
+        return fallback;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        final Thread thread = threadFactory.newThread(command);
+        thread.start();
+        startedThreads.incrementAndGet();
+    }
+
+    /**
+     * @return The number of threads that have been started by this executor
+     */
+    public long getStartedThreads() {
+        return startedThreads.get();
+    }
+}
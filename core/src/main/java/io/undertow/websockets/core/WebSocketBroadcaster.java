@@ -0,0 +1,273 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.core;
+
+import io.undertow.util.ReferenceCountedPooled;
+import org.xnio.IoUtils;
+import org.xnio.Pooled;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the same message to a large number of web socket channels.
+ * <p>
+ * The message is encoded once into a single read only buffer that is shared by all channels, each channel writes
+ * its own duplicate of the buffer, and the buffer is released when the last channel has finished with it.
+ * <p>
+ * A channel that has not finished writing a previous broadcast message is a slow consumer, and further messages
+ * for that channel are handled according to the {@link SlowConsumerPolicy} of the broadcaster. At most one broadcast
+ * message per channel is in the process of being written at any time.
+ */
+public class WebSocketBroadcaster {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * What to do with a message for a channel that is still writing an earlier message.
+     */
+    public enum SlowConsumerPolicy {
+        /**
+         * The message is dropped for that channel
+         */
+        DROP,
+        /**
+         * The message is queued, if the queue is full the message is dropped for that channel
+         */
+        QUEUE,
+        /**
+         * The message is queued, if the queue is full the channel is closed
+         */
+        CLOSE
+    }
+
+    private final SlowConsumerPolicy policy;
+    private final int maxQueuedMessages;
+    private final ConcurrentMap<WebSocketChannel, ChannelState> busyChannels = new ConcurrentHashMap<WebSocketChannel, ChannelState>();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong closedChannels = new AtomicLong();
+
+    /**
+     * @param policy            The policy for slow consumers
+     * @param maxQueuedMessages The maximum number of messages that are queued per channel, ignored for {@link SlowConsumerPolicy#DROP}
+     */
+    public WebSocketBroadcaster(final SlowConsumerPolicy policy, final int maxQueuedMessages) {
+        this.policy = policy;
+        this.maxQueuedMessages = policy == SlowConsumerPolicy.DROP ? 0 : maxQueuedMessages;
+    }
+
+    /**
+     * Sends a text message to all the given channels.
+     *
+     * @param message  The message
+     * @param channels The channels
+     */
+    public void broadcastText(final String message, final Collection<WebSocketChannel> channels) {
+        broadcast(new HeapPooled(ByteBuffer.wrap(message.getBytes(UTF_8))), WebSocketFrameType.TEXT, channels);
+    }
+
+    /**
+     * Sends a binary message to all the given channels. The buffer must not be modified until all channels have
+     * finished writing it.
+     *
+     * @param data     The message
+     * @param channels The channels
+     */
+    public void broadcastBinary(final ByteBuffer data, final Collection<WebSocketChannel> channels) {
+        broadcast(new HeapPooled(data), WebSocketFrameType.BINARY, channels);
+    }
+
+    /**
+     * Sends a binary message to all the given channels. Ownership of the pooled buffer passes to the broadcaster,
+     * and it is freed when the last channel has finished writing it.
+     *
+     * @param data     The message
+     * @param channels The channels
+     */
+    public void broadcastBinary(final Pooled<ByteBuffer> data, final Collection<WebSocketChannel> channels) {
+        broadcast(data, WebSocketFrameType.BINARY, channels);
+    }
+
+    private void broadcast(final Pooled<ByteBuffer> data, final WebSocketFrameType type, final Collection<WebSocketChannel> channels) {
+        //the reference held by this method is released once every channel has taken its own
+        final ReferenceCountedPooled<ByteBuffer> payload = new ReferenceCountedPooled<ByteBuffer>(data, 1);
+        final ByteBuffer shared = data.getResource().asReadOnlyBuffer();
+        final Message message = new Message(payload, shared, type);
+        try {
+            for (WebSocketChannel channel : channels) {
+                if (channel.isOpen()) {
+                    payload.increaseReferenceCount();
+                    offer(channel, message);
+                }
+            }
+        } finally {
+            payload.free();
+        }
+    }
+
+    private void offer(final WebSocketChannel channel, final Message message) {
+        for (;;) {
+            ChannelState state = busyChannels.get(channel);
+            if (state == null) {
+                state = new ChannelState(channel);
+                if (busyChannels.putIfAbsent(channel, state) == null) {
+                    send(state, message);
+                    return;
+                }
+                continue;
+            }
+            boolean close = false;
+            synchronized (state) {
+                if (state.done) {
+                    //the state has just been removed, try again
+                    continue;
+                }
+                if (state.queue.size() < maxQueuedMessages) {
+                    state.queue.add(message);
+                    return;
+                } else if (policy == SlowConsumerPolicy.CLOSE) {
+                    close = true;
+                }
+            }
+            message.payload.free();
+            if (close) {
+                closedChannels.incrementAndGet();
+                IoUtils.safeClose(channel);
+            } else {
+                droppedMessages.incrementAndGet();
+            }
+            return;
+        }
+    }
+
+    private void send(final ChannelState state, final Message message) {
+        WebSockets.sendInternal(new ByteBuffer[]{message.data.duplicate()}, message.type, state.channel, new WebSocketCallback<Void>() {
+            @Override
+            public void complete(final WebSocketChannel channel, final Void context) {
+                message.payload.free();
+                sendNext(state);
+            }
+
+            @Override
+            public void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+                message.payload.free();
+                IoUtils.safeClose(channel);
+                final Message[] remaining;
+                synchronized (state) {
+                    state.done = true;
+                    busyChannels.remove(state.channel, state);
+                    remaining = state.queue.toArray(new Message[state.queue.size()]);
+                    state.queue.clear();
+                }
+                for (Message m : remaining) {
+                    m.payload.free();
+                }
+            }
+        });
+    }
+
+    private void sendNext(final ChannelState state) {
+        final Message next;
+        synchronized (state) {
+            next = state.queue.poll();
+            if (next == null) {
+                state.done = true;
+                busyChannels.remove(state.channel, state);
+                return;
+            }
+        }
+        send(state, next);
+    }
+
+    /**
+     * @return The number of channel messages that were dropped because the channel was too slow
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * @return The number of channels that were closed because they were too slow
+     */
+    public long getClosedChannels() {
+        return closedChannels.get();
+    }
+
+    /**
+     * @return The number of channels that are currently writing a broadcast message
+     */
+    public int getBusyChannels() {
+        return busyChannels.size();
+    }
+
+    private static final class Message {
+        final ReferenceCountedPooled<ByteBuffer> payload;
+        final ByteBuffer data;
+        final WebSocketFrameType type;
+
+        private Message(final ReferenceCountedPooled<ByteBuffer> payload, final ByteBuffer data, final WebSocketFrameType type) {
+            this.payload = payload;
+            this.data = data;
+            this.type = type;
+        }
+    }
+
+    private static final class ChannelState {
+        final WebSocketChannel channel;
+        final ArrayDeque<Message> queue = new ArrayDeque<Message>();
+        boolean done;
+
+        private ChannelState(final WebSocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A heap buffer that does not belong to a pool
+     */
+    private static final class HeapPooled implements Pooled<ByteBuffer> {
+        private final ByteBuffer buffer;
+
+        private HeapPooled(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void discard() {
+        }
+
+        @Override
+        public void free() {
+        }
+
+        @Override
+        public ByteBuffer getResource() {
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -229,7 +229,7 @@ public class WebSockets {
         sendBlockingInternal(data, WebSocketFrameType.CLOSE, wsChannel);
     }
 
-    private static void sendInternal(final ByteBuffer[] data, WebSocketFrameType type, final WebSocketChannel wsChannel, final WebSocketCallback<Void> callback) {
+    static void sendInternal(final ByteBuffer[] data, WebSocketFrameType type, final WebSocketChannel wsChannel, final WebSocketCallback<Void> callback) {
         try {
             long totalData = Buffers.remaining(data);
             StreamSinkFrameChannel channel = wsChannel.send(type, totalData);
@@ -0,0 +1,234 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.client;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.util.Methods;
+import io.undertow.util.StringReadChannelListener;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.ChannelListeners;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.StreamSinkChannel;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class ClientConnectionPoolTestCase {
+
+    private static XnioWorker worker;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        //a single IO thread, so all requests share the same connections
+        worker = Xnio.getInstance().createWorker(null, OptionMap.builder()
+                .set(Options.WORKER_IO_THREADS, 1)
+                .set(Options.TCP_NODELAY, true)
+                .getMap());
+        DefaultServer.setRootHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                if (exchange.getRelativePath().equals("/slow")) {
+                    exchange.dispatch(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Thread.sleep(2000);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            exchange.getResponseSender().send(Integer.toString(exchange.getSourceAddress().getPort()));
+                        }
+                    });
+                    return;
+                }
+                exchange.getResponseSender().send(Integer.toString(exchange.getSourceAddress().getPort()));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        worker.shutdown();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        ClientConnectionPool pool = ClientConnectionPool.builder(worker, new ByteBufferSlicePool(1024, 1024))
+                .setMaxConnectionsPerThread(1)
+                .build();
+        try {
+            BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+            Set<String> ports = new HashSet<String>();
+            for (int i = 0; i < 5; ++i) {
+                sendRequest(pool, results);
+                String result = results.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(result);
+                ports.add(result);
+            }
+            Assert.assertEquals(1, ports.size());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testRequestsQueuedOnConnection() throws Exception {
+        ClientConnectionPool pool = ClientConnectionPool.builder(worker, new ByteBufferSlicePool(1024, 1024))
+                .setMaxConnectionsPerThread(1)
+                .setMaxRequestsPerConnection(5)
+                .setAcquireTimeout(10, TimeUnit.SECONDS)
+                .build();
+        try {
+            BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+            for (int i = 0; i < 10; ++i) {
+                sendRequest(pool, results);
+            }
+            Set<String> ports = new HashSet<String>();
+            for (int i = 0; i < 10; ++i) {
+                String result = results.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(result);
+                ports.add(result);
+            }
+            Assert.assertEquals(1, ports.size());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testNewConnectionPreferredToQueueing() throws Exception {
+        ClientConnectionPool pool = ClientConnectionPool.builder(worker, new ByteBufferSlicePool(1024, 1024))
+                .setMaxConnectionsPerThread(2)
+                .setMaxRequestsPerConnection(5)
+                .build();
+        try {
+            BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+            //open the first connection, so the slow request is sent on an existing connection
+            sendRequest(pool, results);
+            Assert.assertNotNull(results.poll(10, TimeUnit.SECONDS));
+            //the pool is below its limit, so the next request gets its own connection rather than waiting behind the slow one
+            sendRequest(pool, results, "/slow");
+            sendRequest(pool, results, "/");
+            String fast = results.poll(1, TimeUnit.SECONDS);
+            Assert.assertNotNull(fast);
+            String slow = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(slow);
+            Assert.assertNotEquals(slow, fast);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testAcquireTimeout() throws Exception {
+        ClientConnectionPool pool = ClientConnectionPool.builder(worker, new ByteBufferSlicePool(1024, 1024))
+                .setMaxConnectionsPerThread(1)
+                .setAcquireTimeout(200, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+            //the slow request holds the only connection, so the second one times out waiting for it
+            sendRequest(pool, results, "/slow");
+            sendRequest(pool, results, "/");
+            Assert.assertEquals("failed", results.poll(10, TimeUnit.SECONDS));
+            String result = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(result);
+            Assert.assertNotEquals("failed", result);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testClosedPoolRejectsRequests() throws Exception {
+        ClientConnectionPool pool = ClientConnectionPool.builder(worker, new ByteBufferSlicePool(1024, 1024)).build();
+        pool.close();
+        BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+        sendRequest(pool, results);
+        Assert.assertEquals("failed", results.poll(10, TimeUnit.SECONDS));
+    }
+
+    private static void sendRequest(final ClientConnectionPool pool, final BlockingQueue<String> results) throws Exception {
+        sendRequest(pool, results, "/");
+    }
+
+    private static void sendRequest(final ClientConnectionPool pool, final BlockingQueue<String> results, final String path) throws Exception {
+        final ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath(path);
+        pool.sendRequest(new URI(DefaultServer.getDefaultServerURL()), request, new ClientCallback<ClientExchange>() {
+            @Override
+            public void completed(final ClientExchange exchange) {
+                exchange.setResponseListener(new ClientCallback<ClientExchange>() {
+                    @Override
+                    public void completed(ClientExchange result) {
+                        new StringReadChannelListener(result.getConnection().getBufferPool()) {
+                            @Override
+                            protected void stringDone(String string) {
+                                results.add(string);
+                            }
+
+                            @Override
+                            protected void error(IOException e) {
+                                results.add("failed");
+                            }
+                        }.setup(result.getResponseChannel());
+                    }
+
+                    @Override
+                    public void failed(IOException e) {
+                        results.add("failed");
+                    }
+                });
+                try {
+                    exchange.getRequestChannel().shutdownWrites();
+                    if (!exchange.getRequestChannel().flush()) {
+                        exchange.getRequestChannel().getWriteSetter().set(ChannelListeners.<StreamSinkChannel>flushingChannelListener(null, null));
+                        exchange.getRequestChannel().resumeWrites();
+                    }
+                } catch (IOException e) {
+                    results.add("failed");
+                }
+            }
+
+            @Override
+            public void failed(IOException e) {
+                results.add("failed");
+            }
+        });
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.client;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.util.Methods;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.ChannelListeners;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.StreamSinkChannel;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class ResponseBodyPublisherTestCase {
+
+    private static final int BODY_SIZE = 100000;
+    private static final String CHUNK = "chunk";
+    private static final String COMPLETE = "complete";
+    private static final String FAILED = "failed";
+
+    private static XnioWorker worker;
+    private static String body;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        worker = Xnio.getInstance().createWorker(null, OptionMap.builder()
+                .set(Options.WORKER_IO_THREADS, 1)
+                .set(Options.TCP_NODELAY, true)
+                .getMap());
+        StringBuilder sb = new StringBuilder(BODY_SIZE);
+        for (int i = 0; i < BODY_SIZE; ++i) {
+            sb.append((char) ('a' + i % 26));
+        }
+        body = sb.toString();
+        DefaultServer.setRootHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(HttpServerExchange exchange) throws Exception {
+                exchange.getResponseSender().send(body);
+            }
+        });
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        worker.shutdown();
+    }
+
+    @Test
+    public void testBodyDeliveredOnDemand() throws Exception {
+        final ClientConnection connection = UndertowClient.getInstance().connect(new URI(DefaultServer.getDefaultServerURL()), worker, new ByteBufferSlicePool(1024, 1024), OptionMap.EMPTY).get();
+        try {
+            final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+            final StringBuilder received = new StringBuilder();
+            final BodySubscription[] subscription = new BodySubscription[1];
+            sendRequest(connection, events, new RecordingSubscriber(events) {
+                @Override
+                public void onSubscribe(final BodySubscription s) {
+                    subscription[0] = s;
+                    s.request(1);
+                }
+
+                @Override
+                public void onNext(final ByteBuffer buffer) {
+                    byte[] data = new byte[buffer.remaining()];
+                    buffer.get(data);
+                    synchronized (received) {
+                        received.append(new String(data));
+                    }
+                    super.onNext(buffer);
+                }
+            });
+            int chunks = 0;
+            for (; ; ) {
+                String event = events.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(event);
+                if (event.equals(COMPLETE)) {
+                    break;
+                }
+                Assert.assertEquals(CHUNK, event);
+                ++chunks;
+                //nothing more is delivered until we ask for it
+                Assert.assertNull(events.poll(50, TimeUnit.MILLISECONDS));
+                subscription[0].request(1);
+            }
+            Assert.assertTrue(chunks > 1);
+            synchronized (received) {
+                Assert.assertEquals(body, received.toString());
+            }
+        } finally {
+            IoUtils.safeClose(connection);
+        }
+    }
+
+    @Test
+    public void testCancelledBodyIsDiscarded() throws Exception {
+        final ClientConnection connection = UndertowClient.getInstance().connect(new URI(DefaultServer.getDefaultServerURL()), worker, new ByteBufferSlicePool(1024, 1024), OptionMap.EMPTY).get();
+        try {
+            final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+            sendRequest(connection, events, new RecordingSubscriber(events) {
+                @Override
+                public void onSubscribe(final BodySubscription s) {
+                    s.request(1);
+                }
+
+                @Override
+                public void onNext(final ByteBuffer buffer) {
+                    super.onNext(buffer);
+                    subscription.cancel();
+                }
+            });
+            Assert.assertEquals(CHUNK, events.poll(10, TimeUnit.SECONDS));
+            Assert.assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+
+            //the rest of the body is discarded, so the connection can be used for another request
+            sendRequest(connection, events, new RecordingSubscriber(events) {
+                @Override
+                public void onSubscribe(final BodySubscription s) {
+                    s.request(Long.MAX_VALUE);
+                }
+            });
+            String event = events.poll(10, TimeUnit.SECONDS);
+            while (CHUNK.equals(event)) {
+                event = events.poll(10, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals(COMPLETE, event);
+        } finally {
+            IoUtils.safeClose(connection);
+        }
+    }
+
+    private static void sendRequest(final ClientConnection connection, final BlockingQueue<String> events, final RecordingSubscriber subscriber) {
+        connection.getIoThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                final ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath("/");
+                connection.sendRequest(request, new ClientCallback<ClientExchange>() {
+                    @Override
+                    public void completed(final ClientExchange exchange) {
+                        exchange.setResponseListener(new ClientCallback<ClientExchange>() {
+                            @Override
+                            public void completed(final ClientExchange result) {
+                                subscriber.subscription = ResponseBodyPublisher.subscribe(result, subscriber);
+                            }
+
+                            @Override
+                            public void failed(IOException e) {
+                                events.add(FAILED);
+                            }
+                        });
+                        try {
+                            exchange.getRequestChannel().shutdownWrites();
+                            if (!exchange.getRequestChannel().flush()) {
+                                exchange.getRequestChannel().getWriteSetter().set(ChannelListeners.<StreamSinkChannel>flushingChannelListener(null, null));
+                                exchange.getRequestChannel().resumeWrites();
+                            }
+                        } catch (IOException e) {
+                            events.add(FAILED);
+                        }
+                    }
+
+                    @Override
+                    public void failed(IOException e) {
+                        events.add(FAILED);
+                    }
+                });
+            }
+        });
+    }
+
+    private abstract static class RecordingSubscriber implements BodySubscriber {
+
+        private final BlockingQueue<String> events;
+        volatile BodySubscription subscription;
+
+        RecordingSubscriber(final BlockingQueue<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onNext(final ByteBuffer buffer) {
+            events.add(CHUNK);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add(COMPLETE);
+        }
+
+        @Override
+        public void onError(final IOException e) {
+            events.add(FAILED);
+        }
+    }
+}
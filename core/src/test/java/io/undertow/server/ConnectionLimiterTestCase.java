@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConnectionLimiter}
+ */
+public class ConnectionLimiterTestCase {
+
+    @Test
+    public void testConnectionLimit() throws UnknownHostException {
+        ConnectionLimiter limiter = new ConnectionLimiter(2, -1, 1);
+        InetAddress first = InetAddress.getByAddress(new byte[]{10, 0, 0, 1});
+        InetAddress second = InetAddress.getByAddress(new byte[]{10, 0, 0, 2});
+        ConnectionLimiter.Permit p1 = limiter.tryOpen(first);
+        ConnectionLimiter.Permit p2 = limiter.tryOpen(first);
+        Assert.assertNotNull(p1);
+        Assert.assertNotNull(p2);
+        Assert.assertNull(limiter.tryOpen(first));
+        Assert.assertNotNull(limiter.tryOpen(second));
+        Assert.assertEquals(1, limiter.getRejectedConnections());
+
+        p1.release();
+        //release is idempotent
+        p1.release();
+        Assert.assertNotNull(limiter.tryOpen(first));
+        Assert.assertNull(limiter.tryOpen(first));
+        Assert.assertEquals(2, limiter.getTrackedAddresses());
+    }
+
+    @Test
+    public void testRequestRate() throws UnknownHostException {
+        ConnectionLimiter limiter = new ConnectionLimiter(-1, 0.001, 3);
+        ConnectionLimiter.Permit permit = limiter.tryOpen(InetAddress.getByAddress(new byte[]{10, 0, 0, 1}));
+        Assert.assertTrue(permit.tryAcquireRequest());
+        Assert.assertTrue(permit.tryAcquireRequest());
+        Assert.assertTrue(permit.tryAcquireRequest());
+        Assert.assertFalse(permit.tryAcquireRequest());
+        Assert.assertEquals(1, limiter.getRejectedRequests());
+
+        //the bucket is shared between all connections from the address
+        ConnectionLimiter.Permit other = limiter.tryOpen(InetAddress.getByAddress(new byte[]{10, 0, 0, 1}));
+        Assert.assertFalse(other.tryAcquireRequest());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.undertow.Undertow;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.testutils.DefaultServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.Options;
+
+/**
+ * Tests that the per IO thread connection counts rise as connections are accepted, and that the open
+ * connection counts fall again when the connections are closed.
+ */
+public class IoThreadConnectionCounterTestCase {
+
+    private static final int CONNECTIONS = 6;
+
+    @Test
+    public void testOpenConnectionsRiseAndFall() throws Exception {
+        Undertow server = Undertow.builder()
+                .addHttpListener(DefaultServer.getHostPort("default") + 3, DefaultServer.getHostAddress("default"))
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setIoThreads(2)
+                .setHandler(ResponseCodeHandler.HANDLE_200)
+                .build();
+        server.start();
+        List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            IoThreadConnectionCounter counter = server.getConnectionCounters().get(0);
+            Assert.assertEquals(0, counter.getOpenConnections());
+            for (int i = 0; i < CONNECTIONS; ++i) {
+                sockets.add(new Socket(DefaultServer.getHostAddress("default"), DefaultServer.getHostPort("default") + 3));
+            }
+            waitForOpenConnections(counter, CONNECTIONS);
+            Assert.assertEquals(CONNECTIONS, counter.getTotalConnections());
+            Assert.assertEquals(CONNECTIONS, sum(counter.getConnectionsPerIoThread()));
+            Assert.assertEquals(CONNECTIONS, sum(counter.getOpenConnectionsPerIoThread()));
+
+            for (int i = 0; i < CONNECTIONS / 2; ++i) {
+                sockets.remove(0).close();
+            }
+            waitForOpenConnections(counter, CONNECTIONS - CONNECTIONS / 2);
+
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            sockets.clear();
+            waitForOpenConnections(counter, 0);
+            for (long open : counter.getOpenConnectionsPerIoThread()) {
+                Assert.assertEquals(0, open);
+            }
+            //the accepted counts are cumulative, and do not fall on close
+            Assert.assertEquals(CONNECTIONS, counter.getTotalConnections());
+        } finally {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {
+                }
+            }
+            server.stop();
+        }
+    }
+
+    private static void waitForOpenConnections(final IoThreadConnectionCounter counter, final long expected) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (counter.getOpenConnections() != expected && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(expected, counter.getOpenConnections());
+    }
+
+    private static long sum(final long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import io.undertow.Undertow;
+import io.undertow.testutils.DefaultServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.Options;
+
+/**
+ * Tests the handshake statistics of a HTTPS listener, by connecting twice with the same client session cache so
+ * the second connection resumes the session of the first.
+ */
+public class SslHandshakeResumptionTestCase {
+
+    @Test
+    public void testResumedHandshakeIsCounted() throws Exception {
+        final int port = DefaultServer.getHostPort("default") + 4;
+        Undertow server = Undertow.builder()
+                .addHttpsListener(port, DefaultServer.getHostAddress("default"), DefaultServer.getServerSslContext())
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setSslSessionCacheSize(100)
+                .setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                        ConnectionSSLSessionInfo info = (ConnectionSSLSessionInfo) exchange.getConnection().getSslSessionInfo();
+                        exchange.getResponseSender().send(info.isSessionResumed() ? "resumed" : "full");
+                    }
+                })
+                .build();
+        server.start();
+        try {
+            SslHandshakeStatistics statistics = server.getSslHandshakeStatistics().get(0);
+            SSLSocketFactory factory = DefaultServer.createClientSslContext().getSocketFactory();
+
+            Assert.assertTrue(request(factory, port).endsWith("full"));
+            Assert.assertTrue(request(factory, port).endsWith("resumed"));
+            Assert.assertEquals(1, statistics.getFullHandshakes());
+            Assert.assertEquals(1, statistics.getResumedHandshakes());
+
+            //once the sessions are invalidated the client has to do a full handshake again
+            Assert.assertEquals(1, statistics.invalidateSessions());
+            Assert.assertTrue(request(factory, port).endsWith("full"));
+            Assert.assertEquals(2, statistics.getFullHandshakes());
+            Assert.assertEquals(1, statistics.getResumedHandshakes());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String request(final SSLSocketFactory factory, final int port) throws IOException {
+        SSLSocket socket = (SSLSocket) factory.createSocket(DefaultServer.getHostAddress("default"), port);
+        try {
+            if (Arrays.asList(socket.getSupportedProtocols()).contains("TLSv1.2")) {
+                //TLS 1.3 resumes with one time tickets rather than by session ID
+                socket.setEnabledProtocols(new String[]{"TLSv1.2"});
+            }
+            socket.startHandshake();
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buf = new byte[100];
+            int res;
+            while ((res = in.read(buf)) != -1) {
+                response.write(buf, 0, res);
+            }
+            return response.toString("US-ASCII");
+        } finally {
+            socket.close();
+        }
+    }
+}
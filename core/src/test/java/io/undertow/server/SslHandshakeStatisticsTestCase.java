@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SslHandshakeStatisticsTestCase {
+
+    @Test
+    public void testHandshakesAreClassifiedAndBucketed() {
+        SslHandshakeStatistics statistics = new SslHandshakeStatistics(null, null);
+
+        Assert.assertFalse(statistics.handshakeComplete(session(1), TimeUnit.MILLISECONDS.toNanos(30)));
+        Assert.assertTrue(statistics.handshakeComplete(session(1), TimeUnit.MICROSECONDS.toNanos(500)));
+        Assert.assertFalse(statistics.handshakeComplete(session(2), TimeUnit.SECONDS.toNanos(10)));
+        //a session without an ID can never be resumed
+        Assert.assertFalse(statistics.handshakeComplete(session(), TimeUnit.MILLISECONDS.toNanos(3)));
+        Assert.assertFalse(statistics.handshakeComplete(session(), TimeUnit.MILLISECONDS.toNanos(3)));
+
+        Assert.assertEquals(4, statistics.getFullHandshakes());
+        Assert.assertEquals(1, statistics.getResumedHandshakes());
+
+        long[] buckets = SslHandshakeStatistics.getHandshakeLatencyBuckets();
+        long[] histogram = statistics.getHandshakeLatencyHistogram();
+        Assert.assertEquals(buckets.length + 1, histogram.length);
+        Assert.assertEquals(1, histogram[0]);
+        Assert.assertEquals(1, histogram[histogram.length - 1]);
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        Assert.assertEquals(5, total);
+    }
+
+    @Test
+    public void testInvalidateWithoutSessionContext() {
+        Assert.assertEquals(0, new SslHandshakeStatistics(null, null).invalidateSessions());
+    }
+
+    private static SSLSession session(final byte... id) {
+        return (SSLSession) Proxy.newProxyInstance(SSLSession.class.getClassLoader(), new Class[]{SSLSession.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("getId")) {
+                    return id.clone();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers;
+
+import java.io.IOException;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.HeaderBlock;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests that pre-encoded header blocks are written out with the response.
+ */
+@RunWith(DefaultServer.class)
+public class ResponseHeaderBlockTestCase {
+
+    private static final HeaderBlock BLOCK = HeaderBlock.builder()
+            .add(Headers.CACHE_CONTROL, "no-cache")
+            .add(new HttpString("X-Block"), "first")
+            .build();
+
+    @BeforeClass
+    public static void setup() {
+        DefaultServer.setRootHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(final HttpServerExchange exchange) {
+                exchange.addResponseHeaderBlock(BLOCK);
+                exchange.getResponseHeaders().put(new HttpString("X-Map"), "second");
+                exchange.getResponseSender().send("hello");
+            }
+        });
+    }
+
+    @Test
+    public void testHeaderBlockWritten() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("OK", result.getStatusLine().getReasonPhrase());
+            Assert.assertEquals("no-cache", result.getFirstHeader(Headers.CACHE_CONTROL_STRING).getValue());
+            Assert.assertEquals("first", result.getFirstHeader("X-Block").getValue());
+            Assert.assertEquals("second", result.getFirstHeader("X-Map").getValue());
+            Assert.assertEquals("hello", HttpClientUtils.readResponse(result));
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDelimitingHeadersRejected() {
+        HeaderBlock.builder().add(Headers.CONTENT_LENGTH, "10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLineBreakInValueRejected() {
+        HeaderBlock.builder().add(new HttpString("X-Block"), "value\r\nSet-Cookie: injected");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLineBreakInNameRejected() {
+        HeaderBlock.builder().add(new HttpString("X-Block\nSet-Cookie"), "value");
+    }
+}
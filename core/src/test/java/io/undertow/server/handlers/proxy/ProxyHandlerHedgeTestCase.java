@@ -0,0 +1,174 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy;
+
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.testutils.TestHttpClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.StringEntity;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.Options;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that a hedged request is answered by whichever backend responds first, and that the request to the slower
+ * backend is cancelled.
+ * <p/>
+ * The response time tracker is seeded with very short response times, so every request is hedged almost straight
+ * away. The load balancer sends the two attempts of a request to different backends.
+ */
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class ProxyHandlerHedgeTestCase {
+
+    private static final long SLOW_RESPONSE_TIME = TimeUnit.SECONDS.toMillis(5);
+    private static final int REQUESTS = 4;
+
+    private static final AtomicInteger slowRequests = new AtomicInteger();
+    private static final AtomicInteger slowRequestsCancelled = new AtomicInteger();
+
+    private static Undertow slowServer;
+    private static Undertow fastServer;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException {
+        int port = DefaultServer.getHostPort("default");
+        slowServer = Undertow.builder()
+                .addHttpListener(port + 1, DefaultServer.getHostAddress("default"))
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                        slowRequests.incrementAndGet();
+                        //the proxy keeps its backend connections alive, so a close means the request was cancelled
+                        exchange.getConnection().addCloseListener(new ServerConnection.CloseListener() {
+                            @Override
+                            public void closed(final ServerConnection connection) {
+                                slowRequestsCancelled.incrementAndGet();
+                            }
+                        });
+                        exchange.dispatch(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    Thread.sleep(SLOW_RESPONSE_TIME);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                                exchange.getResponseSender().send("slow");
+                            }
+                        });
+                    }
+                })
+                .build();
+        fastServer = Undertow.builder()
+                .addHttpListener(port + 2, DefaultServer.getHostAddress("default"))
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                        exchange.getResponseSender().send("fast");
+                    }
+                })
+                .build();
+        slowServer.start();
+        fastServer.start();
+
+        ProxyHandler proxyHandler = new ProxyHandler(new LoadBalancingProxyClient()
+                .setConnectionsPerThread(REQUESTS)
+                .addHost(new URI("http", null, DefaultServer.getHostAddress("default"), port + 1, null, null, null), "s1")
+                .addHost(new URI("http", null, DefaultServer.getHostAddress("default"), port + 2, null, null, null), "s2")
+                , 30000, ResponseCodeHandler.HANDLE_404)
+                .setHedgePercentile(95);
+        ResponseTimeTracker tracker = proxyHandler.getResponseTimes();
+        for (int i = 0; i < ResponseTimeTracker.WINDOW_SIZE; ++i) {
+            tracker.record(1);
+        }
+        DefaultServer.setRootHandler(proxyHandler);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        slowServer.stop();
+        fastServer.stop();
+    }
+
+    @Test
+    public void testFirstResponseWinsAndLoserIsCancelled() throws IOException, InterruptedException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < REQUESTS; ++i) {
+                long start = System.currentTimeMillis();
+                HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/path"));
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("fast", HttpClientUtils.readResponse(result));
+                Assert.assertTrue(System.currentTimeMillis() - start < SLOW_RESPONSE_TIME);
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+        //every request was hedged, so one of its two attempts went to the slow backend. If that was the hedged
+        //attempt it may have been cancelled before it reached the backend, but the first attempts must have
+        Assert.assertTrue(slowRequests.get() > 0);
+        long end = System.currentTimeMillis() + SLOW_RESPONSE_TIME;
+        while (slowRequestsCancelled.get() < slowRequests.get() && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(slowRequests.get(), slowRequestsCancelled.get());
+    }
+
+    @Test
+    public void testHedgedRequestWithEmptyBody() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < REQUESTS; ++i) {
+                long start = System.currentTimeMillis();
+                //Content-Length: 0, which is replayed by every attempt instead of being streamed by the first one
+                HttpPut put = new HttpPut(DefaultServer.getDefaultServerURL() + "/path");
+                put.setEntity(new StringEntity(""));
+                HttpResponse result = client.execute(put);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("fast", HttpClientUtils.readResponse(result));
+                Assert.assertTrue(System.currentTimeMillis() - start < SLOW_RESPONSE_TIME);
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+}
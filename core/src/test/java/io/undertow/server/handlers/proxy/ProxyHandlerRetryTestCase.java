@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy;
+
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.FileUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.StringEntity;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.IoUtils;
+import org.xnio.Options;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Tests that idempotent requests are retried on another backend when a backend drops the connection.
+ */
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class ProxyHandlerRetryTestCase {
+
+    private static Undertow server1;
+    private static Undertow server2;
+
+    @BeforeClass
+    public static void setup() throws URISyntaxException {
+        int port = DefaultServer.getHostPort("default");
+        //server1 drops every connection before sending a response
+        server1 = Undertow.builder()
+                .addHttpListener(port + 1, DefaultServer.getHostAddress("default"))
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(HttpServerExchange exchange) throws Exception {
+                        IoUtils.safeClose(exchange.getConnection());
+                    }
+                })
+                .build();
+        server2 = Undertow.builder()
+                .addHttpListener(port + 2, DefaultServer.getHostAddress("default"))
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(HttpServerExchange exchange) throws Exception {
+                        if (exchange.isInIoThread()) {
+                            exchange.dispatch(this);
+                            return;
+                        }
+                        exchange.startBlocking();
+                        exchange.getResponseSender().send("server2:" + FileUtils.readFile(exchange.getInputStream()));
+                    }
+                })
+                .build();
+        server1.start();
+        server2.start();
+
+        DefaultServer.setRootHandler(new ProxyHandler(new LoadBalancingProxyClient()
+                .setConnectionsPerThread(1)
+                .addHost(new URI("http", null, DefaultServer.getHostAddress("default"), port + 1, null, null, null), "s1")
+                .addHost(new URI("http", null, DefaultServer.getHostAddress("default"), port + 2, null, null, null), "s2")
+                , 10000, ResponseCodeHandler.HANDLE_404)
+                .setMaxRetries(3));
+    }
+
+    @AfterClass
+    public static void teardown() {
+        server1.stop();
+        server2.stop();
+    }
+
+    @Test
+    public void testGetRetried() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < 4; ++i) {
+                HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/path"));
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("server2:", HttpClientUtils.readResponse(result));
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testBufferedBodyReplayed() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < 4; ++i) {
+                HttpPut put = new HttpPut(DefaultServer.getDefaultServerURL() + "/path");
+                put.setEntity(new StringEntity("body" + i));
+                HttpResponse result = client.execute(put);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("server2:body" + i, HttpClientUtils.readResponse(result));
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testResponseTimePercentile() {
+        ResponseTimeTracker tracker = new ResponseTimeTracker();
+        for (int i = 1; i < ResponseTimeTracker.MIN_SAMPLES; ++i) {
+            tracker.record(i);
+        }
+        Assert.assertEquals(-1, tracker.getPercentile(95));
+        tracker.record(ResponseTimeTracker.MIN_SAMPLES);
+        Assert.assertEquals(95, tracker.getPercentile(95));
+        Assert.assertEquals(50, tracker.getPercentile(50));
+    }
+}
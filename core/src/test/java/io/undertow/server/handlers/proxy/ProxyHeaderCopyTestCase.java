@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy;
+
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that hop-by-hop headers are not forwarded by the proxy.
+ */
+public class ProxyHeaderCopyTestCase {
+
+    private static final HttpString CUSTOM_HOP = new HttpString("X-Custom-Hop");
+    private static final HttpString CUSTOM_END_TO_END = new HttpString("X-Custom");
+
+    @Test
+    public void testHopByHopHeadersRemoved() {
+        HeaderMap from = new HeaderMap();
+        from.put(Headers.HOST, "localhost");
+        from.put(Headers.CONNECTION, "keep-alive, X-Custom-Hop");
+        from.put(new HttpString("Keep-Alive"), "timeout=5");
+        from.put(Headers.TE, "trailers");
+        from.put(Headers.CONTENT_LENGTH, "10");
+        from.put(CUSTOM_HOP, "hop");
+        from.add(CUSTOM_END_TO_END, "a");
+        from.add(CUSTOM_END_TO_END, "b");
+
+        HeaderMap to = new HeaderMap();
+        ProxyHandler.copyEndToEndHeaders(to, from, false);
+
+        Assert.assertEquals("localhost", to.getFirst(Headers.HOST));
+        Assert.assertEquals("10", to.getFirst(Headers.CONTENT_LENGTH));
+        Assert.assertEquals(2, to.count(CUSTOM_END_TO_END));
+        Assert.assertFalse(to.contains(Headers.CONNECTION));
+        Assert.assertFalse(to.contains("Keep-Alive"));
+        Assert.assertFalse(to.contains(Headers.TE));
+        Assert.assertFalse(to.contains(CUSTOM_HOP));
+    }
+
+    @Test
+    public void testUpgradeHeadersRetained() {
+        HeaderMap from = new HeaderMap();
+        from.put(Headers.CONNECTION, "Upgrade");
+        from.put(Headers.UPGRADE, "websocket");
+
+        HeaderMap to = new HeaderMap();
+        ProxyHandler.copyEndToEndHeaders(to, from, true);
+
+        Assert.assertEquals("Upgrade", to.getFirst(Headers.CONNECTION));
+        Assert.assertEquals("websocket", to.getFirst(Headers.UPGRADE));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy.mod_cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class MCMPRequestParserTestCase {
+
+    @Test
+    public void testFieldsDecoded() {
+        MCMPRequestParser parser = parse("JVMRoute=node%201&load=+50&Alias=default-host%2Clocalhost");
+        Assert.assertFalse(parser.isMalformed());
+        Assert.assertFalse(parser.isTooBig());
+        Assert.assertEquals("node 1", parser.get(MCMPField.JVM_ROUTE));
+        Assert.assertEquals(" 50", parser.get(MCMPField.LOAD));
+        Assert.assertEquals("default-host,localhost", parser.get(MCMPField.ALIAS));
+        Assert.assertFalse(parser.has(MCMPField.CONTEXT));
+        Assert.assertEquals("Alias", parser.checkFields(MCMPField.JVM_ROUTE, MCMPField.LOAD));
+        Assert.assertNull(parser.checkFields(MCMPField.JVM_ROUTE, MCMPField.LOAD, MCMPField.ALIAS));
+    }
+
+    @Test
+    public void testFieldSplitAcrossBuffers() {
+        String body = "JVMRoute=node1&flushpacket=on&Context=%2Fapp";
+        for (int i = 1; i < body.length(); ++i) {
+            MCMPRequestParser parser = new MCMPRequestParser();
+            parser.parse(ByteBuffer.wrap(body.substring(0, i).getBytes()));
+            parser.parse(ByteBuffer.wrap(body.substring(i).getBytes()));
+            parser.finish();
+            Assert.assertEquals("node1", parser.get(MCMPField.JVM_ROUTE));
+            Assert.assertEquals("on", parser.get(MCMPField.FLUSH_PACKETS));
+            Assert.assertEquals("/app", parser.get(MCMPField.CONTEXT));
+        }
+    }
+
+    @Test
+    public void testUnknownField() {
+        MCMPRequestParser parser = parse("JVMRoute=node1&Foo=bar");
+        Assert.assertFalse(parser.isMalformed());
+        Assert.assertEquals("Foo", parser.getUnknownField());
+        Assert.assertEquals("Foo", parser.checkFields(MCMPField.JVM_ROUTE));
+    }
+
+    @Test
+    public void testMalformed() {
+        Assert.assertTrue(parse("JVMRoute=node%2").isMalformed());
+        Assert.assertTrue(parse("JVMRoute=node%zz").isMalformed());
+        Assert.assertTrue(parse("JVMRoute").isMalformed());
+    }
+
+    @Test
+    public void testFieldTooBig() {
+        char[] value = new char[MCMPRequestParser.MAX_FIELD_SIZE + 1];
+        Arrays.fill(value, 'a');
+        MCMPRequestParser parser = parse("JVMRoute=" + new String(value) + "&Load=1");
+        Assert.assertTrue(parser.isTooBig());
+        Assert.assertEquals("1", parser.get(MCMPField.LOAD));
+    }
+
+    private static MCMPRequestParser parse(String body) {
+        MCMPRequestParser parser = new MCMPRequestParser();
+        parser.parse(ByteBuffer.wrap(body.getBytes()));
+        parser.finish();
+        return parser;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy.mod_cluster;
+
+import io.undertow.client.UndertowClient;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RoutingTableTestCase {
+
+    private static final long HOST_ID = 1;
+
+    private static XnioWorker worker;
+
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        //node availability checks the connection pool, which can only be done in an IO thread
+        worker = Xnio.getInstance().createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        worker.shutdown();
+    }
+
+    @Test
+    public void testSelectIsWeightedByLoad() throws Exception {
+        Node a = node("a", 1);
+        Node b = node("b", 3);
+        RoutingTable.Route route = build(context(a, "/app"), context(b, "/app")).find("localhost", "/app");
+        Map<Node, Integer> counts = count(select(route, 400));
+        Assert.assertEquals(100, (int) counts.get(a));
+        Assert.assertEquals(300, (int) counts.get(b));
+    }
+
+    @Test
+    public void testZeroLoad() throws Exception {
+        //if no node has reported a load they are all used equally
+        Node a = node("a", 0);
+        Node b = node("b", 0);
+        RoutingTable.Route route = build(context(a, "/app"), context(b, "/app")).find("localhost", "/app");
+        Map<Node, Integer> counts = count(select(route, 100));
+        Assert.assertEquals(50, (int) counts.get(a));
+        Assert.assertEquals(50, (int) counts.get(b));
+
+        //otherwise a node with no load gets no requests
+        Node c = node("c", 0);
+        Node d = node("d", 5);
+        route = build(context(c, "/app"), context(d, "/app")).find("localhost", "/app");
+        counts = count(select(route, 100));
+        Assert.assertNull(counts.get(c));
+        Assert.assertEquals(100, (int) counts.get(d));
+    }
+
+    @Test
+    public void testUnavailableNodesAreSkipped() throws Exception {
+        Node a = node("a", 1);
+        Node b = node("b", 1);
+        Node c = node("c", 1);
+        RoutingTable.Route route = build(context(a, "/app"), context(b, "/app"), context(c, "/app")).find("localhost", "/app");
+        b.getNodeState().setStatus(NodeState.NodeStatus.NODE_DOWN);
+        Map<Node, Integer> counts = count(select(route, 300));
+        Assert.assertNull(counts.get(b));
+        Assert.assertEquals(300, counts.get(a) + counts.get(c));
+
+        a.getNodeState().setStatus(NodeState.NodeStatus.NODE_DOWN);
+        c.getNodeState().setStatus(NodeState.NodeStatus.NODE_PAUSED);
+        Assert.assertEquals(Arrays.asList((Node) null), select(route, 1));
+    }
+
+    @Test
+    public void testUpdateLoadReweighsRoutes() throws Exception {
+        Node a = node("a", 1);
+        Node b = node("b", 1);
+        Node c = node("c", 1);
+        RoutingTable table = build(context(a, "/app"), context(b, "/app"), context(c, "/other"));
+        RoutingTable.Route app = table.find("localhost", "/app");
+        RoutingTable.Route other = table.find("localhost", "/other");
+
+        a.getNodeState().setLoad(3);
+        table.updateLoad(a);
+        //the routes are updated in place, the table is not rebuilt
+        Assert.assertSame(app, table.find("localhost", "/app"));
+        Map<Node, Integer> counts = count(select(app, 400));
+        Assert.assertEquals(300, (int) counts.get(a));
+        Assert.assertEquals(100, (int) counts.get(b));
+        Assert.assertEquals(Collections.singletonMap(c, 10), count(select(other, 10)));
+    }
+
+    @Test
+    public void testFindLongestContext() {
+        Node a = node("a", 1);
+        Node b = node("b", 1);
+        Node root = node("root", 1);
+        RoutingTable table = build(context(a, "/app"), context(b, "/app/nested/"), context(root, "/"));
+
+        Assert.assertTrue(table.find("localhost", "/app").contains(a));
+        Assert.assertTrue(table.find("localhost", "/app/index.html").contains(a));
+        Assert.assertTrue(table.find("localhost", "/app/nested").contains(b));
+        Assert.assertTrue(table.find("localhost", "/app/nested/deeper/index.html").contains(b));
+        Assert.assertFalse(table.find("localhost", "/app/nested").contains(a));
+        Assert.assertTrue(table.find("localhost", "/application").contains(root));
+        Assert.assertTrue(table.find("localhost", "/").contains(root));
+        Assert.assertTrue(table.find("localhost", "").contains(root));
+        Assert.assertTrue(table.find("LocalHost", "/app").contains(a));
+    }
+
+    @Test
+    public void testNoMatchingContext() {
+        Node a = node("a", 1);
+        Node b = node("b", 1);
+        Context disabled = context(b, "/disabled");
+        disabled.setStatus(Context.Status.DISABLED);
+        RoutingTable table = build(context(a, "/app"), disabled);
+        Assert.assertNull(table.find("localhost", "/other"));
+        Assert.assertNull(table.find("localhost", "/"));
+        Assert.assertNull(table.find("localhost", "/disabled"));
+        Assert.assertNull(RoutingTable.EMPTY.find("localhost", "/app"));
+        Assert.assertTrue(RoutingTable.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void testUnknownHost() {
+        Node a = node("a", 1);
+        RoutingTable table = build(context(a, "/app"));
+        //a host that is not an alias of any virtual host falls back to the contexts of all hosts
+        Assert.assertTrue(table.find("unknown.example.com", "/app/index.html").contains(a));
+        Assert.assertTrue(table.find(null, "/app").contains(a));
+        Assert.assertNull(table.find("unknown.example.com", "/other"));
+    }
+
+    private Node node(String jvmRoute, int load) {
+        NodeConfig.NodeBuilder builder = NodeConfig.builder();
+        builder.setJvmRoute(jvmRoute);
+        builder.setHostname("localhost");
+        builder.setPort(8080);
+        builder.setType("http");
+        Node node = new Node(builder.build(), new ModClusterContainer(), null, UndertowClient.getInstance());
+        node.getNodeState().setLoad(load);
+        nodes.put(jvmRoute, node);
+        return node;
+    }
+
+    private static Context context(Node node, String path) {
+        Context.ContextBuilder builder = Context.builder();
+        builder.setJvmRoute(node.getJvmRoute());
+        builder.setPath(path);
+        builder.setHostid(HOST_ID);
+        builder.setStatus(Context.Status.ENABLED);
+        return builder.build();
+    }
+
+    private RoutingTable build(Context... contexts) {
+        VHost.VHostBuilder host = VHost.builder();
+        host.setId(HOST_ID);
+        host.setName("default-host");
+        host.addAliases(Arrays.asList("default-host", "localhost"));
+        return RoutingTable.build(Collections.singletonList(host.build()), Arrays.asList(contexts), nodes);
+    }
+
+    private static List<Node> select(final RoutingTable.Route route, final int count) throws InterruptedException {
+        final List<Node> result = new ArrayList<Node>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        worker.getIoThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; ++i) {
+                        result.add(route.select());
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static Map<Node, Integer> count(List<Node> nodes) {
+        Map<Node, Integer> counts = new HashMap<Node, Integer>();
+        for (Node node : nodes) {
+            Integer existing = counts.get(node);
+            counts.put(node, existing == null ? 1 : existing + 1);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.protocol.ajp;
+
+import io.undertow.UndertowOptions;
+import io.undertow.server.HttpServerExchange;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.XnioIoThread;
+import org.xnio.XnioWorker;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.StreamSinkConduit;
+import org.xnio.conduits.WriteReadyHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AjpServerResponseConduitTestCase {
+
+    private static final int HEADER = 4;
+    private static final int BODY_CHUNK = 3;
+    private static final int END_RESPONSE = 5;
+
+    @Test
+    public void testFinalWriteIsGathered() throws IOException {
+        CapturingConduit sink = new CapturingConduit(Integer.MAX_VALUE);
+        AjpServerResponseConduit conduit = createConduit(sink, UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE);
+        byte[] data = createData(20000);
+        ByteBuffer[] buffers = {ByteBuffer.wrap(data, 0, 5000), ByteBuffer.wrap(data, 5000, 15000)};
+        Assert.assertEquals(20000, conduit.writeFinal(buffers, 0, buffers.length));
+        Assert.assertTrue(conduit.flush());
+
+        //the header, all the body chunks and the end of the response go out in a single write
+        Assert.assertEquals(1, sink.writes);
+        List<Integer> types = new ArrayList<Integer>();
+        Assert.assertArrayEquals(data, parse(sink.out.toByteArray(), types, 8184));
+        //the chunks are filled across buffer boundaries
+        Assert.assertEquals(5, types.size());
+        Assert.assertEquals(HEADER, (int) types.get(0));
+        Assert.assertEquals(BODY_CHUNK, (int) types.get(1));
+        Assert.assertEquals(BODY_CHUNK, (int) types.get(2));
+        Assert.assertEquals(BODY_CHUNK, (int) types.get(3));
+        Assert.assertEquals(END_RESPONSE, (int) types.get(4));
+    }
+
+    @Test
+    public void testPartialWritesKeepPacketsIntact() throws IOException {
+        CapturingConduit sink = new CapturingConduit(100);
+        AjpServerResponseConduit conduit = createConduit(sink, UndertowOptions.DEFAULT_MAX_AJP_PACKET_SIZE);
+        byte[] data = createData(30000);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            conduit.write(buffer);
+        }
+        conduit.terminateWrites();
+        boolean flushed = conduit.flush();
+        while (!flushed) {
+            flushed = conduit.flush();
+        }
+        List<Integer> types = new ArrayList<Integer>();
+        Assert.assertArrayEquals(data, parse(sink.out.toByteArray(), types, 8184));
+        Assert.assertEquals(HEADER, (int) types.get(0));
+        Assert.assertEquals(END_RESPONSE, (int) types.get(types.size() - 1));
+    }
+
+    @Test
+    public void testLargePacketSize() throws IOException {
+        CapturingConduit sink = new CapturingConduit(Integer.MAX_VALUE);
+        AjpServerResponseConduit conduit = createConduit(sink, 65536);
+        byte[] data = createData(60000);
+        Assert.assertEquals(60000, conduit.writeFinal(ByteBuffer.wrap(data)));
+        List<Integer> types = new ArrayList<Integer>();
+        Assert.assertArrayEquals(data, parse(sink.out.toByteArray(), types, 65528));
+        Assert.assertEquals(3, types.size());
+    }
+
+    private static AjpServerResponseConduit createConduit(final StreamSinkConduit sink, final int maxPacketSize) {
+        return new AjpServerResponseConduit(sink, new ByteBufferSlicePool(1024, 1024), new HttpServerExchange(null), null, false, maxPacketSize);
+    }
+
+    private static byte[] createData(final int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * Parses the AJP packets, checking they are well formed, and returns the body data
+     */
+    private static byte[] parse(final byte[] packets, final List<Integer> types, final int maxChunk) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < packets.length) {
+            Assert.assertEquals('A', packets[pos]);
+            Assert.assertEquals('B', packets[pos + 1]);
+            int length = ((packets[pos + 2] & 0xFF) << 8) | (packets[pos + 3] & 0xFF);
+            int type = packets[pos + 4];
+            types.add(type);
+            if (type == BODY_CHUNK) {
+                int chunk = ((packets[pos + 5] & 0xFF) << 8) | (packets[pos + 6] & 0xFF);
+                Assert.assertTrue(chunk <= maxChunk);
+                Assert.assertEquals(chunk + 4, length);
+                body.write(packets, pos + 7, chunk);
+                Assert.assertEquals(0, packets[pos + 7 + chunk]);
+            }
+            pos += length + 4;
+        }
+        Assert.assertEquals(packets.length, pos);
+        return body.toByteArray();
+    }
+
+    /**
+     * A sink that records everything that is written to it. Every second write is refused, and the others
+     * accept at most the given number of bytes.
+     */
+    private static final class CapturingConduit implements StreamSinkConduit {
+
+        private final int maxWrite;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int writes;
+        private boolean refuse;
+
+        private CapturingConduit(final int maxWrite) {
+            this.maxWrite = maxWrite;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offs, final int len) throws IOException {
+            ++writes;
+            if (maxWrite != Integer.MAX_VALUE) {
+                refuse = !refuse;
+                if (refuse) {
+                    return 0;
+                }
+            }
+            long total = 0;
+            for (int i = offs; i < offs + len && total < maxWrite; ++i) {
+                while (srcs[i].hasRemaining() && total < maxWrite) {
+                    out.write(srcs[i].get());
+                    ++total;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            return (int) write(new ByteBuffer[]{src}, 0, 1);
+        }
+
+        @Override
+        public int writeFinal(final ByteBuffer src) throws IOException {
+            return write(src);
+        }
+
+        @Override
+        public long writeFinal(final ByteBuffer[] srcs, final int offs, final int len) throws IOException {
+            return write(srcs, offs, len);
+        }
+
+        @Override
+        public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferFrom(final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void terminateWrites() throws IOException {
+        }
+
+        @Override
+        public boolean isWriteShutdown() {
+            return false;
+        }
+
+        @Override
+        public void resumeWrites() {
+        }
+
+        @Override
+        public void suspendWrites() {
+        }
+
+        @Override
+        public void wakeupWrites() {
+        }
+
+        @Override
+        public boolean isWriteResumed() {
+            return false;
+        }
+
+        @Override
+        public void awaitWritable() throws IOException {
+        }
+
+        @Override
+        public void awaitWritable(final long time, final TimeUnit timeUnit) throws IOException {
+        }
+
+        @Override
+        public XnioIoThread getWriteThread() {
+            return null;
+        }
+
+        @Override
+        public void setWriteReadyHandler(final WriteReadyHandler handler) {
+        }
+
+        @Override
+        public void truncateWrites() throws IOException {
+        }
+
+        @Override
+        public boolean flush() throws IOException {
+            return true;
+        }
+
+        @Override
+        public XnioWorker getWorker() {
+            return null;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import io.undertow.server.handlers.Cookie;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -154,4 +155,29 @@ public class CookiesTestCase {
         Assert.assertNotNull(cookie);
         Assert.assertEquals("FEDEX", cookie.getValue());
     }
+
+    @Test
+    public void testSingleCookieLookupMatchesMap() {
+        List<String> headers = Arrays.asList(
+                "$Version=\"1\"; Customer=\"WILE_E_COYOTE\"; $Path=\"/acme\"; Part_Number=\"Rocket_Launcher_0001\"",
+                "_ga=GA1.2.3; JSESSIONID=abc.node1; flag; quoted=\"a=b\"; eq=x=y; JSESSIONID=ignored",
+                "Customer=second");
+        Map<String, Cookie> map = Cookies.parseRequestCookies(200, false, headers);
+        for (String name : Arrays.asList("Customer", "Part_Number", "_ga", "JSESSIONID", "quoted", "eq", "missing", "$Path")) {
+            Cookie expected = map.get(name);
+            Cookie actual = Cookies.parseRequestCookie(name, false, headers);
+            if (expected == null) {
+                Assert.assertNull(name, actual);
+            } else {
+                Assert.assertNotNull(name, actual);
+                Assert.assertEquals(name, expected.getValue(), actual.getValue());
+                Assert.assertEquals(name, expected.getPath(), actual.getPath());
+                Assert.assertEquals(name, expected.getVersion(), actual.getVersion());
+            }
+        }
+        Assert.assertEquals("second", Cookies.parseRequestCookie("Customer", false, headers).getValue());
+        Assert.assertEquals("abc.node1", Cookies.parseRequestCookie("JSESSIONID", false, headers).getValue());
+        Assert.assertEquals("/acme", Cookies.parseRequestCookie("Part_Number", false, headers).getPath());
+        Assert.assertEquals("x=y", Cookies.parseRequestCookie("eq", true, headers).getValue());
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryParameterIndexTestCase {
+
+    @Test
+    public void testLookups() {
+        QueryParameterIndex index = new QueryParameterIndex("a=1&b=two+words&a=3&flag&&c=&n%20m=%C3%A9", "UTF-8", true, 1000);
+        Assert.assertEquals(6, index.size());
+        Assert.assertEquals("1", index.getFirst("a"));
+        Assert.assertEquals(Arrays.asList("1", "3"), Arrays.asList(index.get("a").toArray()));
+        Assert.assertEquals("two words", index.getFirst("b"));
+        Assert.assertEquals("", index.getFirst("flag"));
+        Assert.assertEquals("", index.getFirst("c"));
+        Assert.assertEquals("é", index.getFirst("n m"));
+        Assert.assertNull(index.getFirst("missing"));
+        Assert.assertNull(index.get("missing"));
+        Assert.assertEquals(Arrays.asList("a", "b", "flag", "c", "n m"), Arrays.asList(index.names().toArray()));
+    }
+
+    @Test
+    public void testToMap() {
+        Map<String, Deque<String>> map = new QueryParameterIndex("b=2&a=1&b=3", "UTF-8", true, 1000).toMap();
+        Assert.assertEquals(Arrays.asList("a", "b"), Arrays.asList(map.keySet().toArray()));
+        Assert.assertEquals(Arrays.asList("2", "3"), Arrays.asList(map.get("b").toArray()));
+        map.get("a").add("mutable");
+    }
+
+    @Test
+    public void testNoDecoding() {
+        QueryParameterIndex index = new QueryParameterIndex("a=%41+b", "UTF-8", false, 1000);
+        Assert.assertEquals("%41+b", index.getFirst("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEscapeRejectedUpFront() {
+        new QueryParameterIndex("a=%4", "UTF-8", true, 1000);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTooManyParameters() {
+        new QueryParameterIndex("a&b&c&d&e", "UTF-8", true, 2);
+    }
+}
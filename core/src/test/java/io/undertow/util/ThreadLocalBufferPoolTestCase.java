@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.BufferAllocator;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Pooled;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+/**
+ * Tests for {@link ThreadLocalBufferPool}. Unless stated otherwise the tests do not run on an IO thread, so they use
+ * the shared arena.
+ */
+public class ThreadLocalBufferPoolTestCase {
+
+    @Test
+    public void testBuffersAreReused() {
+        ThreadLocalBufferPool pool = new ThreadLocalBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 100, 2);
+        Pooled<ByteBuffer> first = pool.allocate();
+        Assert.assertEquals(100, first.getResource().capacity());
+        first.getResource().put((byte) 1);
+        ByteBuffer firstBuffer = first.getResource();
+        first.free();
+        Pooled<ByteBuffer> second = pool.allocate();
+        Pooled<ByteBuffer> third = pool.allocate();
+        Assert.assertEquals(0, third.getResource().position());
+        Assert.assertEquals(2, pool.getOutstandingBuffers());
+        Assert.assertTrue(second.getResource() == firstBuffer || third.getResource() == firstBuffer);
+        second.free();
+        third.discard();
+        Assert.assertEquals(0, pool.getOutstandingBuffers());
+        Assert.assertEquals(3, pool.getCacheMisses());
+    }
+
+    @Test
+    public void testIoThreadCacheReusesBuffers() throws Exception {
+        final ThreadLocalBufferPool pool = new ThreadLocalBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 100, 8, 2, false);
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+        XnioWorker worker = Xnio.getInstance().createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        try {
+            worker.getIoThread().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Pooled<ByteBuffer> first = pool.allocate();
+                        ByteBuffer firstBuffer = first.getResource();
+                        first.free();
+                        Pooled<ByteBuffer> second = pool.allocate();
+                        //the cache is LIFO, so the buffer that was just freed is handed out again
+                        boolean reused = second.getResource() == firstBuffer;
+                        second.free();
+                        results.add(reused);
+                    } catch (Throwable t) {
+                        results.add(t);
+                    }
+                }
+            });
+            Assert.assertEquals(Boolean.TRUE, results.poll(10, TimeUnit.SECONDS));
+        } finally {
+            worker.shutdown();
+        }
+        //the first allocation refilled the empty cache, the second was served from it
+        Assert.assertEquals(1, pool.getCacheMisses());
+        Assert.assertEquals(1, pool.getCacheHits());
+        Assert.assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFreedBufferCannotBeUsed() {
+        ThreadLocalBufferPool pool = new ThreadLocalBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 100, 2);
+        Pooled<ByteBuffer> pooled = pool.allocate();
+        pooled.free();
+        pooled.getResource();
+    }
+
+    @Test
+    public void testLeakDetection() {
+        ThreadLocalBufferPool pool = new ThreadLocalBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 100, 2, 4, true);
+        Pooled<ByteBuffer> leaked = pool.allocate();
+        Pooled<ByteBuffer> freed = pool.allocate();
+        freed.free();
+        Assert.assertEquals(1, pool.getLeakedAllocationPoints().size());
+        leaked.free();
+        Assert.assertTrue(pool.getLeakedAllocationPoints().isEmpty());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.core;
+
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.client.WebSocketClient;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Pool;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class WebSocketBroadcasterTestCase {
+
+    private static final int CLIENTS = 5;
+
+    private static XnioWorker worker;
+    private static final List<WebSocketChannel> serverChannels = new CopyOnWriteArrayList<WebSocketChannel>();
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        DefaultServer.setRootHandler(new WebSocketProtocolHandshakeHandler(new WebSocketConnectionCallback() {
+            @Override
+            public void onConnect(final WebSocketHttpExchange exchange, final WebSocketChannel channel) {
+                serverChannels.add(channel);
+                channel.getReceiveSetter().set(new AbstractReceiveListener() {
+                });
+                channel.resumeReceives();
+            }
+        }));
+        Xnio xnio = Xnio.getInstance(DefaultServer.class.getClassLoader());
+        worker = xnio.createWorker(OptionMap.builder()
+                .set(Options.WORKER_IO_THREADS, 2)
+                .set(Options.TCP_NODELAY, true)
+                .getMap());
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        worker.shutdown();
+    }
+
+    private final Pool<ByteBuffer> buffer = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 1024, 1024);
+
+    @Test
+    public void testBroadcastReachesAllChannels() throws Exception {
+        final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+        final List<WebSocketChannel> clients = new ArrayList<WebSocketChannel>();
+        serverChannels.clear();
+        try {
+            for (int i = 0; i < CLIENTS; ++i) {
+                WebSocketChannel client = WebSocketClient.connect(worker, buffer, OptionMap.EMPTY, new URI(DefaultServer.getDefaultServerURL()), WebSocketVersion.V13).get();
+                client.getReceiveSetter().set(new AbstractReceiveListener() {
+                    @Override
+                    protected void onFullTextMessage(final WebSocketChannel channel, final BufferedTextMessage message) {
+                        received.add(message.getData());
+                    }
+                });
+                client.resumeReceives();
+                clients.add(client);
+            }
+            long end = System.currentTimeMillis() + 10000;
+            while (serverChannels.size() < CLIENTS && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(CLIENTS, serverChannels.size());
+
+            WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(WebSocketBroadcaster.SlowConsumerPolicy.QUEUE, 10);
+            broadcaster.broadcastText("first", serverChannels);
+            broadcaster.broadcastText("second", serverChannels);
+
+            int first = 0;
+            int second = 0;
+            for (int i = 0; i < CLIENTS * 2; ++i) {
+                String message = received.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(message);
+                if (message.equals("first")) {
+                    ++first;
+                } else if (message.equals("second")) {
+                    ++second;
+                }
+            }
+            Assert.assertEquals(CLIENTS, first);
+            Assert.assertEquals(CLIENTS, second);
+            Assert.assertEquals(0, broadcaster.getDroppedMessages());
+        } finally {
+            for (WebSocketChannel client : clients) {
+                client.sendClose();
+            }
+        }
+    }
+}
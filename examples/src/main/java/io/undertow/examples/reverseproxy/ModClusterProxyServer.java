@@ -24,6 +24,8 @@ import io.undertow.server.handlers.ResponseCodeHandler;
 import io.undertow.server.handlers.proxy.ProxyHandler;
 import io.undertow.server.handlers.proxy.mod_cluster.MCMPHandler;
 import io.undertow.server.handlers.proxy.mod_cluster.ModClusterContainer;
+import org.xnio.OptionMap;
+import org.xnio.Xnio;
 
 /**
  * @author Jean-Frederic Clere
@@ -49,7 +51,7 @@ public class ModClusterProxyServer {
                 chost = java.net.InetAddress.getLocalHost().getHostName();
                 System.out.println("Using: " + chost + ":" + cport);
             }
-            container.start();
+            container.start(Xnio.getInstance().createWorker(OptionMap.EMPTY));
             ProxyHandler proxy = new ProxyHandler(container.getProxyClient(), 30000, ResponseCodeHandler.HANDLE_404);
             MCMPHandler.MCMPHandlerBuilder mcmpBuilder = MCMPHandler.builder();
             mcmpBuilder.setManagementHost(chost);
@@ -28,6 +28,7 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.session.SessionManager;
 import io.undertow.servlet.core.ManagedFilters;
 import io.undertow.servlet.core.ApplicationListeners;
+import io.undertow.servlet.core.AsyncTimeoutManager;
 import io.undertow.servlet.core.ManagedServlets;
 import io.undertow.servlet.core.CompositeThreadSetupAction;
 import io.undertow.servlet.core.ErrorPages;
@@ -65,6 +66,12 @@ public interface Deployment {
 
     ServletDispatcher getServletDispatcher();
 
+    /**
+     *
+     * @return The manager for async request timeouts, which also tracks the number of async requests in progress
+     */
+    AsyncTimeoutManager getAsyncTimeoutManager();
+
     /**
      *
      * @return The session manager
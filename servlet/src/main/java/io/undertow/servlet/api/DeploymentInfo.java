@@ -66,6 +66,7 @@ public class DeploymentInfo implements Cloneable {
     private int minorVersion;
     private Executor executor;
     private Executor asyncExecutor;
+    private Executor startupExecutor;
     private File tempDir;
     private JspConfigDescriptor jspConfigDescriptor;
     private DefaultServletConfig defaultServletConfig;
@@ -93,6 +94,8 @@ public class DeploymentInfo implements Cloneable {
     private MetricsCollector metricsCollector = null;
     private SessionConfigWrapper sessionConfigWrapper = null;
     private boolean eagerFilterInit = false;
+    private int servletPathMatchCacheSize = 1024;
+    private boolean cacheWelcomeFileMatches = false;
     private boolean disableCachingForSecuredPages = true;
     private final Map<String, ServletInfo> servlets = new HashMap<String, ServletInfo>();
     private final Map<String, FilterInfo> filters = new HashMap<String, FilterInfo>();
@@ -432,6 +435,38 @@ public class DeploymentInfo implements Cloneable {
         return this;
     }
 
+    public int getServletPathMatchCacheSize() {
+        return servletPathMatchCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of request paths for which the resolved servlet path match is cached. If this
+     * is zero or less then path matches are not cached.
+     *
+     * @param servletPathMatchCacheSize The cache size
+     */
+    public DeploymentInfo setServletPathMatchCacheSize(final int servletPathMatchCacheSize) {
+        this.servletPathMatchCacheSize = servletPathMatchCacheSize;
+        return this;
+    }
+
+    public boolean isCacheWelcomeFileMatches() {
+        return cacheWelcomeFileMatches;
+    }
+
+    /**
+     * If this is true then path matches that depend on the welcome files, including paths that have no welcome
+     * file, are also cached. This registers a change listener with the resource manager so the cache can be
+     * cleared when resources change, which for a {@link io.undertow.server.handlers.resource.FileResourceManager}
+     * means watching the whole document root for changes.
+     *
+     * @param cacheWelcomeFileMatches <code>true</code> if welcome file matches should be cached
+     */
+    public DeploymentInfo setCacheWelcomeFileMatches(final boolean cacheWelcomeFileMatches) {
+        this.cacheWelcomeFileMatches = cacheWelcomeFileMatches;
+        return this;
+    }
+
     public DeploymentInfo addInitParameter(final String name, final String value) {
         initParameters.put(name, value);
         return this;
@@ -563,6 +598,25 @@ public class DeploymentInfo implements Cloneable {
         return this;
     }
 
+    public Executor getStartupExecutor() {
+        return startupExecutor;
+    }
+
+    /**
+     * Sets the executor that is used to initialize load on startup servlets and eagerly initialized filters.
+     * <p/>
+     * Servlets with the same load on startup value are initialized concurrently, servlets with a lower value are
+     * always initialized before servlets with a higher value.
+     * <p/>
+     * If this is null then everything is initialized sequentially in the thread that starts the deployment
+     *
+     * @param startupExecutor The executor
+     */
+    public DeploymentInfo setStartupExecutor(final Executor startupExecutor) {
+        this.startupExecutor = startupExecutor;
+        return this;
+    }
+
     public File getTempDir() {
         return tempDir;
     }
@@ -1045,6 +1099,7 @@ public class DeploymentInfo implements Cloneable {
         info.mimeMappings.addAll(mimeMappings);
         info.executor = executor;
         info.asyncExecutor = asyncExecutor;
+        info.startupExecutor = startupExecutor;
         info.tempDir = tempDir;
         info.jspConfigDescriptor = jspConfigDescriptor;
         info.defaultServletConfig = defaultServletConfig;
@@ -1084,6 +1139,8 @@ public class DeploymentInfo implements Cloneable {
         info.metricsCollector = metricsCollector;
         info.sessionConfigWrapper = sessionConfigWrapper;
         info.eagerFilterInit = eagerFilterInit;
+        info.servletPathMatchCacheSize = servletPathMatchCacheSize;
+        info.cacheWelcomeFileMatches = cacheWelcomeFileMatches;
         info.disableCachingForSecuredPages = disableCachingForSecuredPages;
         this.lifecycleInterceptors.addAll(lifecycleInterceptors);
         return info;
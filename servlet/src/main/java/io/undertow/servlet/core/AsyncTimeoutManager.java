@@ -0,0 +1,211 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import io.undertow.servlet.UndertowServletLogger;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioIoThread;
+
+/**
+ * Manages the timeouts of suspended async requests for a deployment.
+ * <p/>
+ * Rather than registering a timer with the IO thread for every request, timeouts are grouped into buckets by their
+ * deadline, rounded up to the resolution of the manager. Each IO thread has at most one timer registered, for the
+ * earliest bucket. Cancelling a timeout just marks it as cancelled, it is discarded when its bucket expires.
+ * <p/>
+ * This also tracks the number of async requests that are currently in progress.
+ */
+public class AsyncTimeoutManager {
+
+    private static final long DEFAULT_RESOLUTION = 100;
+
+    private final long resolution;
+    private final ConcurrentMap<XnioIoThread, ThreadTimeouts> threads = new ConcurrentHashMap<XnioIoThread, ThreadTimeouts>();
+    private final AtomicInteger scheduledTimeouts = new AtomicInteger();
+    private final AtomicInteger asyncRequests = new AtomicInteger();
+
+    public AsyncTimeoutManager() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * @param resolution The bucket size in milliseconds. Timeouts may fire up to this much later than requested.
+     */
+    public AsyncTimeoutManager(final long resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Schedules a timeout task to run in the given IO thread.
+     *
+     * @param thread  The IO thread
+     * @param task    The task
+     * @param timeout The timeout in milliseconds
+     * @return A key that can be used to cancel the timeout. {@link XnioExecutor.Key#remove()} returns false if the
+     *         task has already run, or is running.
+     */
+    public XnioExecutor.Key schedule(final XnioIoThread thread, final Runnable task, final long timeout) {
+        ThreadTimeouts timeouts = threads.get(thread);
+        if (timeouts == null) {
+            ThreadTimeouts existing = threads.putIfAbsent(thread, timeouts = new ThreadTimeouts(thread));
+            if (existing != null) {
+                timeouts = existing;
+            }
+        }
+        final long deadline = System.currentTimeMillis() + timeout;
+        final long bucket = (deadline + resolution - 1) / resolution;
+        final Timeout result = new Timeout(task);
+        timeouts.add(bucket, result);
+        scheduledTimeouts.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Called when an async request is started
+     */
+    public void asyncRequestStarted() {
+        asyncRequests.incrementAndGet();
+    }
+
+    /**
+     * Called when an async request is complete
+     */
+    public void asyncRequestComplete() {
+        asyncRequests.decrementAndGet();
+    }
+
+    /**
+     * @return The number of async requests that have been started and have not yet completed
+     */
+    public int getAsyncRequests() {
+        return asyncRequests.get();
+    }
+
+    /**
+     * @return The number of timeouts that are scheduled and have not been cancelled
+     */
+    public int getScheduledTimeouts() {
+        return scheduledTimeouts.get();
+    }
+
+    private final class ThreadTimeouts implements Runnable {
+
+        private final XnioIoThread thread;
+        private final TreeMap<Long, List<Timeout>> buckets = new TreeMap<Long, List<Timeout>>();
+        private XnioExecutor.Key timerKey;
+        private long timerBucket = -1;
+
+        private ThreadTimeouts(final XnioIoThread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void add(final long bucket, final Timeout timeout) {
+            List<Timeout> list = buckets.get(bucket);
+            if (list == null) {
+                buckets.put(bucket, list = new ArrayList<Timeout>());
+            }
+            list.add(timeout);
+            if (timerBucket == -1 || bucket < timerBucket) {
+                if (timerKey != null) {
+                    timerKey.remove();
+                }
+                scheduleTimer(bucket);
+            }
+        }
+
+        private void scheduleTimer(final long bucket) {
+            timerBucket = bucket;
+            final long delay = Math.max(0, bucket * resolution - System.currentTimeMillis());
+            timerKey = thread.executeAfter(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            final List<Timeout> expired = new ArrayList<Timeout>();
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                final Iterator<Map.Entry<Long, List<Timeout>>> it = buckets.entrySet().iterator();
+                while (it.hasNext()) {
+                    final Map.Entry<Long, List<Timeout>> entry = it.next();
+                    if (entry.getKey() * resolution > now) {
+                        break;
+                    }
+                    expired.addAll(entry.getValue());
+                    it.remove();
+                }
+                timerKey = null;
+                timerBucket = -1;
+                if (!buckets.isEmpty()) {
+                    scheduleTimer(buckets.firstKey());
+                }
+            }
+            for (Timeout timeout : expired) {
+                timeout.fire();
+            }
+        }
+    }
+
+    private final class Timeout implements XnioExecutor.Key {
+
+        private static final int STATE_SCHEDULED = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_FIRED = 2;
+
+        private final Runnable task;
+        //not private, as the field updater must be able to access it
+        volatile int state = STATE_SCHEDULED;
+
+        private Timeout(final Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean remove() {
+            if (stateUpdater.compareAndSet(this, STATE_SCHEDULED, STATE_CANCELLED)) {
+                scheduledTimeouts.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void fire() {
+            if (stateUpdater.compareAndSet(this, STATE_SCHEDULED, STATE_FIRED)) {
+                scheduledTimeouts.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    UndertowServletLogger.REQUEST_LOGGER.errorf(t, "Failed to run async timeout task");
+                }
+            }
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<Timeout> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+}
@@ -55,6 +55,7 @@ public class DeploymentImpl implements Deployment {
     private final ServletContainer servletContainer;
     private final List<Lifecycle> lifecycleObjects = new ArrayList<Lifecycle>();
     private final ServletPathMatches servletPaths;
+    private final AsyncTimeoutManager asyncTimeoutManager = new AsyncTimeoutManager();
     private final ManagedServlets servlets;
     private final ManagedFilters filters;
     private final Executor executor;
@@ -183,6 +184,11 @@ public class DeploymentImpl implements Deployment {
         return servletHandler;
     }
 
+    @Override
+    public AsyncTimeoutManager getAsyncTimeoutManager() {
+        return asyncTimeoutManager;
+    }
+
     @Override
     public SessionManager getSessionManager() {
         return sessionManager;
@@ -223,6 +229,7 @@ public class DeploymentImpl implements Deployment {
     void destroy(){
         getApplicationListeners().contextDestroyed();
         getApplicationListeners().stop();
+        servletPaths.destroy();
         if (servletContext!=null){
             servletContext.destroy();
         }
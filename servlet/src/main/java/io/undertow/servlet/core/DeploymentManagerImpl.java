@@ -101,6 +101,10 @@ import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static javax.servlet.http.HttpServletRequest.BASIC_AUTH;
 import static javax.servlet.http.HttpServletRequest.CLIENT_CERT_AUTH;
@@ -500,16 +504,31 @@ public class DeploymentManagerImpl implements DeploymentManager {
                     list.add(servlet);
                 }
             }
+            final Executor startupExecutor = deployment.getDeploymentInfo().getStartupExecutor();
             for(Map.Entry<Integer, List<ManagedServlet>> load : loadOnStartup.entrySet()) {
-                for(ManagedServlet servlet : load.getValue()) {
-                    servlet.createServlet();
+                final List<StartupTask> tasks = new ArrayList<StartupTask>();
+                for(final ManagedServlet servlet : load.getValue()) {
+                    tasks.add(new StartupTask() {
+                        @Override
+                        public void run() throws ServletException {
+                            servlet.createServlet();
+                        }
+                    });
                 }
+                runStartupTasks(tasks, startupExecutor);
             }
 
             if (deployment.getDeploymentInfo().isEagerFilterInit()){
-                for(ManagedFilter filter: deployment.getFilters().getFilters().values()) {
-                    filter.createFilter();
+                final List<StartupTask> tasks = new ArrayList<StartupTask>();
+                for(final ManagedFilter filter: deployment.getFilters().getFilters().values()) {
+                    tasks.add(new StartupTask() {
+                        @Override
+                        public void run() throws ServletException {
+                            filter.createFilter();
+                        }
+                    });
                 }
+                runStartupTasks(tasks, startupExecutor);
             }
 
             state = State.STARTED;
@@ -519,6 +538,63 @@ public class DeploymentManagerImpl implements DeploymentManager {
         }
     }
 
+    /**
+     * Runs the given tasks, and waits for them to complete. If there is a startup executor and more than one task
+     * the tasks are run concurrently, with the deployment thread setup actions applied in each thread.
+     */
+    private void runStartupTasks(final List<StartupTask> tasks, final Executor executor) throws ServletException {
+        if (executor == null || tasks.size() < 2) {
+            for (StartupTask task : tasks) {
+                task.run();
+            }
+            return;
+        }
+        final ThreadSetupAction threadSetupAction = deployment.getThreadSetupAction();
+        final CountDownLatch latch = new CountDownLatch(tasks.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (final StartupTask task : tasks) {
+            final Runnable runnable = new Runnable() {
+                @Override
+                public void run() {
+                    ThreadSetupAction.Handle handle = threadSetupAction.setup(null);
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        handle.tearDown();
+                        latch.countDown();
+                    }
+                }
+            };
+            try {
+                executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(e);
+        }
+        final Throwable t = failure.get();
+        if (t instanceof ServletException) {
+            throw (ServletException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new ServletException(t);
+        }
+    }
+
+    private interface StartupTask {
+        void run() throws ServletException;
+    }
+
     @Override
     public void stop() throws ServletException {
         ThreadSetupAction.Handle handle = deployment.getThreadSetupAction().setup(null);
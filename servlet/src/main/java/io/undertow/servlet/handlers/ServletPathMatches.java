@@ -18,9 +18,13 @@
 
 package io.undertow.servlet.handlers;
 
+import io.undertow.UndertowLogger;
 import io.undertow.server.HandlerWrapper;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.cache.LRUCache;
 import io.undertow.server.handlers.resource.Resource;
+import io.undertow.server.handlers.resource.ResourceChangeEvent;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
 import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.servlet.UndertowServletMessages;
 import io.undertow.servlet.api.Deployment;
@@ -36,12 +40,14 @@ import io.undertow.servlet.handlers.security.ServletSecurityRoleHandler;
 import javax.servlet.DispatcherType;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.undertow.servlet.handlers.ServletPathMatch.Type.REDIRECT;
 import static io.undertow.servlet.handlers.ServletPathMatch.Type.REWRITE;
@@ -59,7 +65,17 @@ public class ServletPathMatches {
     private final String[] welcomePages;
     private final ResourceManager resourceManager;
 
-    private volatile ServletPathMatchesData data;
+    private volatile MatchState state;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Listener that clears the path match cache if resources change, as welcome file matches depend on
+     * the contents of the resource manager. It is only registered if {@link DeploymentInfo#isCacheWelcomeFileMatches()}
+     * is set. If this is null welcome file matches are not cached.
+     */
+    private volatile ResourceChangeListener changeListener;
 
     public ServletPathMatches(final Deployment deployment) {
         this.deployment = deployment;
@@ -68,14 +84,42 @@ public class ServletPathMatches {
     }
 
     public ServletChain getServletHandlerByName(final String name) {
-        return getData().getServletHandlerByName(name);
+        return getState().data.getServletHandlerByName(name);
     }
 
     public ServletPathMatch getServletHandlerByPath(final String path) {
-        ServletPathMatch match = getData().getServletHandlerByPath(path);
+        final MatchState state = getState();
+        final LRUCache<String, ServletPathMatch> cache = state.cache;
+        if (cache == null) {
+            return resolveServletHandlerByPath(state.data, path);
+        }
+        ServletPathMatch match = cache.get(path);
+        if (match != null) {
+            cacheHits.incrementAndGet();
+            return match;
+        }
+        cacheMisses.incrementAndGet();
+        match = state.data.getServletHandlerByPath(path);
+        if (match.isRequiredWelcomeFileMatch()) {
+            match = resolveWelcomeFile(state.data, match);
+            if (changeListener == null) {
+                //we cannot tell when the resources change, so welcome file matches cannot be cached
+                return match;
+            }
+        }
+        cache.add(path, match);
+        return match;
+    }
+
+    private ServletPathMatch resolveServletHandlerByPath(final ServletPathMatchesData data, final String path) {
+        ServletPathMatch match = data.getServletHandlerByPath(path);
         if (!match.isRequiredWelcomeFileMatch()) {
             return match;
         }
+        return resolveWelcomeFile(data, match);
+    }
+
+    private ServletPathMatch resolveWelcomeFile(final ServletPathMatchesData data, final ServletPathMatch match) {
         try {
 
             String remaining = match.getRemaining() == null ? match.getMatched() : match.getRemaining();
@@ -87,12 +131,12 @@ public class ServletPathMatches {
             boolean pathEndsWithSlash = remaining.endsWith("/");
             final String pathWithTrailingSlash = pathEndsWithSlash ? remaining : remaining + "/";
 
-            ServletPathMatch welcomePage = findWelcomeFile(pathWithTrailingSlash, !pathEndsWithSlash);
+            ServletPathMatch welcomePage = findWelcomeFile(data, pathWithTrailingSlash, !pathEndsWithSlash);
 
             if (welcomePage != null) {
                 return welcomePage;
             } else {
-                welcomePage = findWelcomeServlet(pathWithTrailingSlash, !pathEndsWithSlash);
+                welcomePage = findWelcomeServlet(data, pathWithTrailingSlash, !pathEndsWithSlash);
                 if (welcomePage != null) {
                     return welcomePage;
                 } else if(pathEndsWithSlash) {
@@ -109,23 +153,75 @@ public class ServletPathMatches {
     }
 
     public void invalidate() {
-        this.data = null;
+        this.state = null;
+    }
+
+    /**
+     * @return The number of path lookups that were served from the path match cache
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return The number of path lookups that were not in the path match cache
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Removes the resource change listener, if one has been registered
+     */
+    public synchronized void destroy() {
+        if (changeListener != null) {
+            resourceManager.removeResourceChangeListener(changeListener);
+            changeListener = null;
+        }
+        state = null;
     }
 
-    private ServletPathMatchesData getData() {
-        ServletPathMatchesData data = this.data;
-        if (data != null) {
-            return data;
+    private MatchState getState() {
+        MatchState state = this.state;
+        if (state != null) {
+            return state;
         }
         synchronized (this) {
-            if (this.data != null) {
-                return this.data;
+            if (this.state != null) {
+                return this.state;
             }
-            return this.data = setupServletChains();
+            final int cacheSize = deployment.getDeploymentInfo().getServletPathMatchCacheSize();
+            if (cacheSize > 0 && deployment.getDeploymentInfo().isCacheWelcomeFileMatches()) {
+                registerChangeListener();
+            }
+            return this.state = new MatchState(setupServletChains(), cacheSize > 0 ? new LRUCache<String, ServletPathMatch>(cacheSize, -1) : null);
         }
     }
 
-    private ServletPathMatch findWelcomeFile(final String path, boolean requiresRedirect) {
+    private void registerChangeListener() {
+        if (changeListener != null || !resourceManager.isResourceChangeListenerSupported()) {
+            return;
+        }
+        final ResourceChangeListener listener = new ResourceChangeListener() {
+            @Override
+            public void handleChanges(final Collection<ResourceChangeEvent> changes) {
+                synchronized (ServletPathMatches.this) {
+                    final MatchState current = state;
+                    if (current != null && current.cache != null) {
+                        state = new MatchState(current.data, new LRUCache<String, ServletPathMatch>(deployment.getDeploymentInfo().getServletPathMatchCacheSize(), -1));
+                    }
+                }
+            }
+        };
+        try {
+            resourceManager.registerResourceChangeListener(listener);
+            changeListener = listener;
+        } catch (Exception e) {
+            UndertowLogger.ROOT_LOGGER.couldNotRegisterChangeListener(e);
+        }
+    }
+
+    private ServletPathMatch findWelcomeFile(final ServletPathMatchesData data, final String path, boolean requiresRedirect) {
         for (String i : welcomePages) {
             try {
                 String mergedPath = path + i;
@@ -140,7 +236,7 @@ public class ServletPathMatches {
         return null;
     }
 
-    private ServletPathMatch findWelcomeServlet(final String path, boolean requiresRedirect) {
+    private ServletPathMatch findWelcomeServlet(final ServletPathMatchesData data, final String path, boolean requiresRedirect) {
         for (String i : welcomePages) {
             String mergedPath = path + i;
             final ServletPathMatch handler = data.getServletHandlerByPath(mergedPath);
@@ -435,6 +531,20 @@ public class ServletPathMatches {
         return current;
     }
 
+    /**
+     * The current path matches, along with the cache of resolved matches. These are always replaced together, so
+     * a cached match can never refer to stale path data.
+     */
+    private static final class MatchState {
+        final ServletPathMatchesData data;
+        final LRUCache<String, ServletPathMatch> cache;
+
+        private MatchState(final ServletPathMatchesData data, final LRUCache<String, ServletPathMatch> cache) {
+            this.data = data;
+            this.cache = cache;
+        }
+    }
+
     private static class MatchData {
         final ServletHandler handler;
         final String matchedPath;
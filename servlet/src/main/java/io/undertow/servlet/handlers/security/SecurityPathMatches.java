@@ -25,6 +25,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.SecurityConstraint;
@@ -34,15 +36,35 @@ import io.undertow.servlet.api.TransportGuaranteeType;
 import io.undertow.servlet.api.WebResourceCollection;
 
 /**
+ * The security constraints of a deployment, indexed by URL pattern.
+ * <p>
+ * The merged result of a lookup only depends on which pattern entries matched the path and on the request
+ * method, so results are memoized in a decision table keyed by exactly that. Methods that are not named by
+ * any constraint all share a single slot in the table, as every such method produces the same result. This
+ * means that after warm up a lookup only has to find the matching patterns, the merge itself is not redone.
+ *
  * @author Stuart Douglas
  */
 public class SecurityPathMatches {
 
+    /**
+     * The maximum number of decisions that will be memoized. The table is naturally bounded by the number
+     * of pattern combinations and known methods, this is just a safety net for very large deployments.
+     */
+    private static final int MAX_DECISIONS = 4096;
+
+    private static final PathSecurityInformation[] NO_MATCHES = new PathSecurityInformation[0];
+
     private final boolean denyUncoveredHttpMethods;
     private final PathSecurityInformation defaultPathSecurityInformation;
     private final Map<String, PathSecurityInformation> exactPathRoleInformation;
     private final Map<String, PathSecurityInformation> prefixPathRoleInformation;
     private final Map<String, PathSecurityInformation> extensionRoleInformation;
+    /**
+     * All methods that are explicitly named by a constraint, either as a covered method or an omission
+     */
+    private final Set<String> knownMethods;
+    private final ConcurrentMap<DecisionKey, SecurityPathMatch> decisions = new ConcurrentHashMap<DecisionKey, SecurityPathMatch>();
 
     private SecurityPathMatches(final boolean denyUncoveredHttpMethods, final PathSecurityInformation defaultPathSecurityInformation, final Map<String, PathSecurityInformation> exactPathRoleInformation, final Map<String, PathSecurityInformation> prefixPathRoleInformation, final Map<String, PathSecurityInformation> extensionRoleInformation) {
         this.denyUncoveredHttpMethods = denyUncoveredHttpMethods;
@@ -50,6 +72,25 @@ public class SecurityPathMatches {
         this.exactPathRoleInformation = exactPathRoleInformation;
         this.prefixPathRoleInformation = prefixPathRoleInformation;
         this.extensionRoleInformation = extensionRoleInformation;
+        final Set<String> knownMethods = new HashSet<String>();
+        addKnownMethods(knownMethods, defaultPathSecurityInformation);
+        for (PathSecurityInformation info : exactPathRoleInformation.values()) {
+            addKnownMethods(knownMethods, info);
+        }
+        for (PathSecurityInformation info : prefixPathRoleInformation.values()) {
+            addKnownMethods(knownMethods, info);
+        }
+        for (PathSecurityInformation info : extensionRoleInformation.values()) {
+            addKnownMethods(knownMethods, info);
+        }
+        this.knownMethods = knownMethods;
+    }
+
+    private static void addKnownMethods(final Set<String> knownMethods, final PathSecurityInformation info) {
+        knownMethods.addAll(info.perMethodRequiredRoles.keySet());
+        for (ExcludedMethodRoles excluded : info.excludedMethodRoles) {
+            knownMethods.addAll(excluded.methods);
+        }
     }
 
     /**
@@ -66,16 +107,37 @@ public class SecurityPathMatches {
     }
 
     public SecurityPathMatch getSecurityInfo(final String path, final String method) {
+        final PathSecurityInformation[] matches = findMatches(path);
+        final DecisionKey key = new DecisionKey(matches, knownMethods.contains(method) ? method : null);
+        SecurityPathMatch result = decisions.get(key);
+        if (result != null) {
+            return result;
+        }
         RuntimeMatch currentMatch = new RuntimeMatch();
         handleMatch(method, defaultPathSecurityInformation, currentMatch);
+        for (PathSecurityInformation match : matches) {
+            handleMatch(method, match, currentMatch);
+        }
+        result = new SecurityPathMatch(currentMatch.type, mergeConstraints(currentMatch));
+        if (decisions.size() < MAX_DECISIONS) {
+            decisions.putIfAbsent(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Finds all pattern entries that match the given path, in the order in which their constraints are applied.
+     */
+    private PathSecurityInformation[] findMatches(final String path) {
+        List<PathSecurityInformation> matches = null;
         PathSecurityInformation match = exactPathRoleInformation.get(path);
         if (match != null) {
-            handleMatch(method, match, currentMatch);
+            matches = addMatch(matches, match);
         }
 
         match = prefixPathRoleInformation.get(path);
         if (match != null) {
-            handleMatch(method, match, currentMatch);
+            matches = addMatch(matches, match);
         }
 
         int qsPos = -1;
@@ -87,7 +149,7 @@ public class SecurityPathMatches {
                 final String part = path.substring(0, i);
                 match = exactPathRoleInformation.get(part);
                 if (match != null) {
-                    handleMatch(method, match, currentMatch);
+                    matches = addMatch(matches, match);
                 }
                 qsPos = i;
                 extension = false;
@@ -96,7 +158,7 @@ public class SecurityPathMatches {
                 final String part = path.substring(0, i);
                 match = prefixPathRoleInformation.get(part);
                 if (match != null) {
-                    handleMatch(method, match, currentMatch);
+                    matches = addMatch(matches, match);
                 }
             } else if (c == '.') {
                 if (!extension) {
@@ -109,14 +171,31 @@ public class SecurityPathMatches {
                     }
                     match = extensionRoleInformation.get(ext);
                     if (match != null) {
-                        handleMatch(method, match, currentMatch);
+                        matches = addMatch(matches, match);
                     }
                 }
             }
         }
+        if (matches == null) {
+            return NO_MATCHES;
+        }
+        return matches.toArray(new PathSecurityInformation[matches.size()]);
+    }
 
+    private static List<PathSecurityInformation> addMatch(List<PathSecurityInformation> matches, final PathSecurityInformation match) {
+        if (matches == null) {
+            matches = new ArrayList<PathSecurityInformation>(2);
+        }
+        matches.add(match);
+        return matches;
+    }
 
-        return new SecurityPathMatch(currentMatch.type, mergeConstraints(currentMatch));
+    /**
+     *
+     * @return The number of memoized security decisions
+     */
+    public int getDecisionCount() {
+        return decisions.size();
     }
 
     /**
@@ -135,7 +214,8 @@ public class SecurityPathMatches {
                 allowedRoles.addAll(match.getRequiredRoles());
             }
         }
-        return new SingleConstraintMatch(SecurityInfo.EmptyRoleSemantic.PERMIT, allowedRoles);
+        //the result is shared between requests, so it must not be modified
+        return new SingleConstraintMatch(SecurityInfo.EmptyRoleSemantic.PERMIT, Collections.unmodifiableSet(allowedRoles));
     }
 
     private void handleMatch(final String method, final PathSecurityInformation exact, RuntimeMatch currentMatch) {
@@ -243,7 +323,7 @@ public class SecurityPathMatches {
                     securityInformations.add(securityConstraint);
                 }
             } else if (!webResources.getHttpMethodOmissions().isEmpty()) {
-                info.excludedMethodRoles.add(new ExcludedMethodRoles(webResources.getHttpMethodOmissions(), securityConstraint));
+                info.excludedMethodRoles.add(new ExcludedMethodRoles(new HashSet<String>(webResources.getHttpMethodOmissions()), securityConstraint));
             }
         }
 
@@ -281,6 +361,54 @@ public class SecurityPathMatches {
         }
     }
 
+    /**
+     * Key of the decision table. Pattern entries are compared by identity, a <code>null</code> method stands
+     * for every method that is not named by a constraint.
+     */
+    private static final class DecisionKey {
+        private final PathSecurityInformation[] matches;
+        private final String method;
+        private final int hashCode;
+
+        private DecisionKey(final PathSecurityInformation[] matches, final String method) {
+            this.matches = matches;
+            this.method = method;
+            int hash = method == null ? 0 : method.hashCode();
+            for (PathSecurityInformation match : matches) {
+                hash = 31 * hash + System.identityHashCode(match);
+            }
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DecisionKey)) {
+                return false;
+            }
+            final DecisionKey other = (DecisionKey) o;
+            if (hashCode != other.hashCode || matches.length != other.matches.length) {
+                return false;
+            }
+            if (method == null ? other.method != null : !method.equals(other.method)) {
+                return false;
+            }
+            for (int i = 0; i < matches.length; ++i) {
+                if (matches[i] != other.matches[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     private static final class RuntimeMatch {
         TransportGuaranteeType type = TransportGuaranteeType.NONE;
         final List<SingleConstraintMatch> constraints = new ArrayList<SingleConstraintMatch>();
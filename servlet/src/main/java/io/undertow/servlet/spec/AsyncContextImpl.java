@@ -26,7 +26,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.AsyncEvent;
@@ -54,6 +53,7 @@ import io.undertow.servlet.api.InstanceHandle;
 import io.undertow.servlet.api.ServletContainer;
 import io.undertow.servlet.api.ServletDispatcher;
 import io.undertow.servlet.api.ThreadSetupAction;
+import io.undertow.servlet.core.AsyncTimeoutManager;
 import io.undertow.servlet.core.CompositeThreadSetupAction;
 import io.undertow.servlet.handlers.ServletDebugPageHandler;
 import io.undertow.servlet.handlers.ServletPathMatch;
@@ -71,6 +71,12 @@ public class AsyncContextImpl implements AsyncContext {
 
     public static final AttachmentKey<Boolean> ASYNC_SUPPORTED = AttachmentKey.create(Boolean.class);
 
+    /**
+     * Marker that is attached to the exchange once it has been counted as an async request, so an exchange
+     * that starts async multiple times is only counted once.
+     */
+    private static final AttachmentKey<Boolean> ASYNC_REQUEST_COUNTED = AttachmentKey.create(Boolean.class);
+
     private final List<BoundAsyncListener> asyncListeners = new CopyOnWriteArrayList<BoundAsyncListener>();
 
     private final HttpServerExchange exchange;
@@ -104,6 +110,21 @@ public class AsyncContextImpl implements AsyncContext {
         this.requestSupplied = requestSupplied;
         this.previousAsyncContext = previousAsyncContext;
         initiatingThread = Thread.currentThread();
+        if (exchange.getAttachment(ASYNC_REQUEST_COUNTED) == null) {
+            exchange.putAttachment(ASYNC_REQUEST_COUNTED, Boolean.TRUE);
+            final AsyncTimeoutManager timeoutManager = servletRequestContext.getDeployment().getAsyncTimeoutManager();
+            timeoutManager.asyncRequestStarted();
+            exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+                @Override
+                public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
+                    try {
+                        timeoutManager.asyncRequestComplete();
+                    } finally {
+                        nextListener.proceed();
+                    }
+                }
+            });
+        }
         exchange.dispatch(SameThreadExecutor.INSTANCE, new Runnable() {
             @Override
             public void run() {
@@ -121,7 +142,7 @@ public class AsyncContextImpl implements AsyncContext {
             }
         }
         if (timeout > 0) {
-            this.timeoutKey = exchange.getIoThread().executeAfter(timeoutTask, timeout, TimeUnit.MILLISECONDS);
+            this.timeoutKey = servletRequestContext.getDeployment().getAsyncTimeoutManager().schedule(exchange.getIoThread(), timeoutTask, timeout);
         }
     }
 
@@ -590,11 +590,8 @@ public final class HttpServletRequestImpl implements HttpServletRequest {
 
     @Override
     public String getParameter(final String name) {
-        if(queryParameters == null) {
-            queryParameters = exchange.getQueryParameters();
-        }
-        Deque<String> params = queryParameters.get(name);
-        if (params == null) {
+        final String param = getQueryParameter(name);
+        if (param == null) {
             if (exchange.getRequestMethod().equals(Methods.POST)) {
                 final FormData parsedFormData = parseFormData();
                 if (parsedFormData != null) {
@@ -608,7 +605,7 @@ public final class HttpServletRequestImpl implements HttpServletRequest {
             }
             return null;
         }
-        return params.getFirst();
+        return param;
     }
 
     @Override
@@ -637,11 +634,8 @@ public final class HttpServletRequestImpl implements HttpServletRequest {
 
     @Override
     public String[] getParameterValues(final String name) {
-        if (queryParameters == null) {
-            queryParameters = exchange.getQueryParameters();
-        }
         final List<String> ret = new ArrayList<String>();
-        Deque<String> params = queryParameters.get(name);
+        Deque<String> params = getQueryParameterValues(name);
         if (params != null) {
             for (String param : params) {
                 ret.add(param);
@@ -710,6 +704,29 @@ public final class HttpServletRequestImpl implements HttpServletRequest {
         return ret;
     }
 
+    /**
+     * Looks up the first value of a query parameter without forcing the whole query string to be decoded, unless
+     * the parameter map has already been requested or replaced by a dispatch.
+     */
+    private String getQueryParameter(final String name) {
+        if (queryParameters != null) {
+            final Deque<String> params = queryParameters.get(name);
+            return params == null ? null : params.peekFirst();
+        }
+        return exchange.getQueryParameter(name);
+    }
+
+    /**
+     * Looks up the values of a query parameter without forcing the whole query string to be decoded, unless the
+     * parameter map has already been requested or replaced by a dispatch.
+     */
+    private Deque<String> getQueryParameterValues(final String name) {
+        if (queryParameters != null) {
+            return queryParameters.get(name);
+        }
+        return exchange.getQueryParameterValues(name);
+    }
+
     private FormData parseFormData() {
         if (parsedFormData == null) {
             if (readStarted) {
@@ -163,6 +163,36 @@ public class ServletInputStreamImpl extends ServletInputStream {
         return copied;
     }
 
+    /**
+     * Reads the next chunk of request data, and returns the pooled buffer that contains it, without copying it.
+     * Ownership of the buffer passes to the caller, which must free it once it is done with the data.
+     * <p/>
+     * In async mode this has the same readiness requirements as the other read methods.
+     *
+     * @return A buffer with the data that is available, or null if the end of the stream has been reached
+     */
+    public Pooled<ByteBuffer> readPooled() throws IOException {
+        if (anyAreSet(state, FLAG_CLOSED)) {
+            throw UndertowServletMessages.MESSAGES.streamIsClosed();
+        }
+        if (listener != null) {
+            if (anyAreClear(state, FLAG_READY)) {
+                throw UndertowServletMessages.MESSAGES.streamNotReady();
+            }
+        } else {
+            readIntoBuffer();
+        }
+        if (anyAreSet(state, FLAG_FINISHED)) {
+            return null;
+        }
+        final Pooled<ByteBuffer> result = pooled;
+        pooled = null;
+        if (listener != null) {
+            readIntoBufferNonBlocking();
+        }
+        return result;
+    }
+
     private void readIntoBuffer() throws IOException {
         if (pooled == null && !anyAreSet(state, FLAG_FINISHED)) {
             pooled = bufferPool.allocate();
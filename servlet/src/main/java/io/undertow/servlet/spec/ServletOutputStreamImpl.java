@@ -85,6 +85,12 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
      */
     private ByteBuffer[] buffersToWrite;
 
+    /**
+     * A buffer that was handed over by {@link #write(org.xnio.Pooled)} and is part of {@link #buffersToWrite}. It is
+     * freed once it has been written out.
+     */
+    private Pooled<ByteBuffer> pendingPooled;
+
     private FileChannel pendingFile;
 
     private static final int FLAG_CLOSED = 1;
@@ -266,6 +272,31 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
 
     @Override
     public void write(ByteBuffer[] buffers) throws IOException {
+        write(buffers, null);
+    }
+
+    /**
+     * Writes out the contents of a pooled buffer, and takes ownership of it. The buffer will be freed once
+     * its contents have been written, and must not be used by the caller after this method has been called.
+     * <p/>
+     * In async mode data that cannot be written immediately is normally copied, as the caller is free to reuse
+     * its buffer once the write method returns. A pooled buffer is instead queued as it is, so large async writes
+     * do not need to be copied.
+     *
+     * @param pooled The buffer to write
+     */
+    public void write(final Pooled<ByteBuffer> pooled) throws IOException {
+        try {
+            write(new ByteBuffer[]{pooled.getResource()}, pooled);
+        } finally {
+            //if the buffer was not queued for an async write we are done with it
+            if (pendingPooled != pooled) {
+                pooled.free();
+            }
+        }
+    }
+
+    private void write(final ByteBuffer[] buffers, final Pooled<ByteBuffer> owned) throws IOException {
         if (anyAreSet(state, FLAG_CLOSED)) {
             throw UndertowServletMessages.MESSAGES.streamIsClosed();
         }
@@ -333,12 +364,18 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                         written += res;
                         if (res == 0) {
                             //write it out with a listener
-                            //but we need to copy any extra data
-                            //TODO: should really allocate from the pool here
-                            final ByteBuffer copy = ByteBuffer.allocate((int) Buffers.remaining(buffers));
-                            Buffers.copy(copy, buffers, 0, buffers.length);
-                            copy.flip();
-                            this.buffersToWrite = new ByteBuffer[]{buffer, copy};
+                            if (owned != null) {
+                                //we own the buffer, so it can be queued as is
+                                this.buffersToWrite = bufs;
+                                this.pendingPooled = owned;
+                            } else {
+                                //but we need to copy any extra data
+                                //TODO: should really allocate from the pool here
+                                final ByteBuffer copy = ByteBuffer.allocate((int) Buffers.remaining(buffers));
+                                Buffers.copy(copy, buffers, 0, buffers.length);
+                                copy.flip();
+                                this.buffersToWrite = new ByteBuffer[]{buffer, copy};
+                            }
                             state &= ~FLAG_READY;
                             channel.resumeWrites();
                             return;
@@ -526,13 +563,13 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
             state |= FLAG_WRITE_STARTED;
             createChannel();
 
-            long pos = 0;
+            final long start = source.position();
+            long pos = start;
             try {
                 long size = source.size();
-                pos = source.position();
 
                 while (size - pos > 0) {
-                    long ret = channel.transferFrom(pendingFile, pos, size - pos);
+                    long ret = channel.transferFrom(source, pos, size - pos);
                     if (ret <= 0) {
                         state &= ~FLAG_READY;
                         pendingFile = source;
@@ -543,7 +580,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                     pos += ret;
                 }
             } finally {
-                updateWrittenAsync(pos - source.position());
+                updateWrittenAsync(pos - start);
             }
         }
 
@@ -788,6 +825,13 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                     }
                 } while (written < toWrite);
                 buffersToWrite = null;
+                if (buffer != null) {
+                    buffer.clear();
+                }
+                if (pendingPooled != null) {
+                    pendingPooled.free();
+                    pendingPooled = null;
+                }
             }
             if (pendingFile != null) {
                 try {
@@ -862,6 +906,10 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
         }
 
         private void handleError(final IOException e) {
+            if (pendingPooled != null) {
+                pendingPooled.free();
+                pendingPooled = null;
+            }
             try {
                 ThreadSetupAction.Handle handle = threadSetupAction.setup(servletRequestContext.getExchange());
                 try {
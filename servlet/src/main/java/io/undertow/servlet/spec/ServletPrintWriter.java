@@ -27,7 +27,9 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Real servlet print writer functionality, that is not limited by extending
@@ -40,8 +42,24 @@ public class ServletPrintWriter {
 
     private static final char[] EMPTY_CHAR = {};
 
+    private static final int ENCODING_OTHER = 0;
+    private static final int ENCODING_UTF_8 = 1;
+    private static final int ENCODING_ISO_8859_1 = 2;
+
+    /**
+     * Encoders are fairly expensive to create, so we keep the ones that are not in use around, one per charset per thread.
+     * An encoder is removed from the cache while a writer is using it.
+     */
+    private static final ThreadLocal<Map<String, CharsetEncoder>> ENCODERS = new ThreadLocal<Map<String, CharsetEncoder>>() {
+        @Override
+        protected Map<String, CharsetEncoder> initialValue() {
+            return new HashMap<String, CharsetEncoder>();
+        }
+    };
+
     private final ServletOutputStreamImpl outputStream;
     private final String charset;
+    private final int encoding;
     private CharsetEncoder charsetEncoder;
     private boolean error = false;
     private boolean closed = false;
@@ -51,20 +69,36 @@ public class ServletPrintWriter {
         this.charset = charset;
         this.outputStream = outputStream;
 
-        //for some known charset we get optimistic and hope that
-        //only ascii will be output
-        //in this case we can avoid creating the encoder altogether
-        if (!charset.equalsIgnoreCase("utf-8") &&
-                !charset.equalsIgnoreCase("iso-8859-1")) {
+        //UTF-8 and ISO-8859-1 are by far the most common charsets, so they are encoded directly
+        //into the output buffer, and we avoid creating the encoder altogether
+        if (charset.equalsIgnoreCase("utf-8")) {
+            encoding = ENCODING_UTF_8;
+        } else if (charset.equalsIgnoreCase("iso-8859-1")) {
+            encoding = ENCODING_ISO_8859_1;
+        } else {
+            encoding = ENCODING_OTHER;
             createEncoder();
         }
     }
 
     private void createEncoder() {
-        this.charsetEncoder = Charset.forName(this.charset).newEncoder();
-        //replace malformed and unmappable with question marks
-        this.charsetEncoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
-        this.charsetEncoder.onMalformedInput(CodingErrorAction.REPLACE);
+        CharsetEncoder encoder = ENCODERS.get().remove(charset);
+        if (encoder == null) {
+            encoder = Charset.forName(this.charset).newEncoder();
+            //replace malformed and unmappable with question marks
+            encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoder.onMalformedInput(CodingErrorAction.REPLACE);
+        }
+        this.charsetEncoder = encoder;
+    }
+
+    private void releaseEncoder() {
+        final CharsetEncoder encoder = this.charsetEncoder;
+        if (encoder != null) {
+            this.charsetEncoder = null;
+            encoder.reset();
+            ENCODERS.get().put(charset, encoder);
+        }
     }
 
     public void flush() {
@@ -93,7 +127,26 @@ public class ServletPrintWriter {
                 buffer = CharBuffer.wrap(underflow);
                 underflow = null;
             }
-            if (charsetEncoder != null) {
+            if (encoding != ENCODING_OTHER) {
+                if (buffer.hasRemaining()) {
+                    //a lone high surrogate at the end of the output, which is malformed
+                    ByteBuffer out = outputStream.underlyingBuffer();
+                    if (out == null) {
+                        error = true;
+                        return;
+                    }
+                    if (!out.hasRemaining()) {
+                        outputStream.flushInternal();
+                        if (!out.hasRemaining()) {
+                            outputStream.close();
+                            error = true;
+                            return;
+                        }
+                    }
+                    out.put((byte) '?');
+                    outputStream.updateWritten(1);
+                }
+            } else if (charsetEncoder != null) {
                 do {
                     ByteBuffer out = outputStream.underlyingBuffer();
                     if (out == null) {
@@ -117,6 +170,8 @@ public class ServletPrintWriter {
             outputStream.close();
         } catch (IOException e) {
             error = true;
+        } finally {
+            releaseEncoder();
         }
     }
 
@@ -140,29 +195,6 @@ public class ServletPrintWriter {
                 }
             }
 
-            if (charsetEncoder == null) {
-                //fast path, basically we are hoping this is ascii only
-                int remaining = buffer.remaining();
-                boolean ok = true;
-                //so we have a pure ascii buffer, just write it out and skip all the encoder cost
-                while (input.hasRemaining()) {
-                    if (!buffer.hasRemaining()) {
-                        outputStream.flushInternal();
-                    }
-                    char c = input.get();
-                    if (c > 127) {
-                        ok = false;
-                        input.position(input.position() - 1); //push the character back
-                        break;
-                    }
-                    buffer.put((byte) c);
-                }
-                outputStream.updateWritten(remaining - buffer.remaining());
-                if (ok) {
-                    return;
-                }
-                createEncoder();
-            }
             final CharBuffer cb;
             if (underflow == null) {
                 cb = input;
@@ -173,42 +205,159 @@ public class ServletPrintWriter {
                 cb = CharBuffer.wrap(newArray);
                 underflow = null;
             }
-            int last = -1;
-            while (cb.hasRemaining()) {
-                int remaining = buffer.remaining();
-                CoderResult result = charsetEncoder.encode(cb, buffer, false);
-                outputStream.updateWritten(remaining - buffer.remaining());
-                if (result.isOverflow() || !buffer.hasRemaining()) {
-                    outputStream.flushInternal();
-                    if (!buffer.hasRemaining()) {
-                        error = true;
-                        return;
-                    }
-                }
-                if (result.isUnderflow()) {
-                    underflow = new char[cb.remaining()];
-                    cb.get(underflow);
-                    return;
+            //the written count is only updated once everything has been copied to the buffer, as reaching the
+            //content length closes the stream, and anything not yet copied at that point would be lost
+            final long written;
+            if (encoding == ENCODING_UTF_8) {
+                written = writeUtf8(cb, buffer);
+            } else if (encoding == ENCODING_ISO_8859_1) {
+                written = writeIso88591(cb, buffer);
+            } else {
+                written = writeEncoded(cb, buffer);
+            }
+            outputStream.updateWritten(written);
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    /**
+     * Encodes using the charset encoder, for all charsets that are not encoded directly.
+     *
+     * @return The number of bytes that were written
+     */
+    private long writeEncoded(final CharBuffer cb, final ByteBuffer buffer) throws IOException {
+        if (charsetEncoder == null) {
+            createEncoder();
+        }
+        long written = 0;
+        int last = -1;
+        while (cb.hasRemaining()) {
+            int remaining = buffer.remaining();
+            CoderResult result = charsetEncoder.encode(cb, buffer, false);
+            written += remaining - buffer.remaining();
+            if (result.isOverflow() || !buffer.hasRemaining()) {
+                outputStream.flushInternal();
+                if (!buffer.hasRemaining()) {
+                    error = true;
+                    return written;
                 }
-                if (result.isError()) {
+            }
+            if (result.isUnderflow()) {
+                underflow = new char[cb.remaining()];
+                cb.get(underflow);
+                return written;
+            }
+            if (result.isError()) {
+                error = true;
+                return written;
+            }
+            if (result.isUnmappable()) {
+                //this should not happen
+                error = true;
+                return written;
+            }
+            if (last == cb.remaining()) {
+                underflow = new char[cb.remaining()];
+                cb.get(underflow);
+                return written;
+            }
+            last = cb.remaining();
+        }
+        return written;
+    }
+
+    /**
+     * Encodes UTF-8 directly into the output buffer. Malformed input is replaced with a question mark, the same as
+     * the JDK encoder.
+     *
+     * @return The number of bytes that were written
+     */
+    private long writeUtf8(final CharBuffer cb, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        int start = buffer.position();
+        while (cb.hasRemaining()) {
+            if (buffer.remaining() < 4) {
+                written += buffer.position() - start;
+                outputStream.flushInternal();
+                buffer = outputStream.underlyingBuffer();
+                if (buffer == null || buffer.remaining() < 4) {
                     error = true;
-                    return;
+                    return written;
+                }
+                start = buffer.position();
+            }
+            final char c = cb.get();
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c)) {
+                if (!cb.hasRemaining()) {
+                    //the low surrogate will be in the next write
+                    underflow = new char[]{c};
+                    break;
+                }
+                final char low = cb.get(cb.position());
+                if (Character.isLowSurrogate(low)) {
+                    cb.get();
+                    final int cp = Character.toCodePoint(c, low);
+                    buffer.put((byte) (0xF0 | (cp >> 18)));
+                    buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (cp & 0x3F)));
+                } else {
+                    buffer.put((byte) '?');
                 }
-                if (result.isUnmappable()) {
-                    //this should not happen
+            } else if (Character.isLowSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return written + buffer.position() - start;
+    }
+
+    /**
+     * Encodes ISO-8859-1 directly into the output buffer. Unmappable characters are replaced with a question mark,
+     * with a surrogate pair being replaced by a single question mark, the same as the JDK encoder.
+     *
+     * @return The number of bytes that were written
+     */
+    private long writeIso88591(final CharBuffer cb, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        int start = buffer.position();
+        while (cb.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                written += buffer.position() - start;
+                outputStream.flushInternal();
+                buffer = outputStream.underlyingBuffer();
+                if (buffer == null || !buffer.hasRemaining()) {
                     error = true;
-                    return;
+                    return written;
                 }
-                if (last == cb.remaining()) {
-                    underflow = new char[cb.remaining()];
-                    cb.get(underflow);
-                    return;
+                start = buffer.position();
+            }
+            final char c = cb.get();
+            if (c <= 0xFF) {
+                buffer.put((byte) c);
+            } else if (Character.isHighSurrogate(c)) {
+                if (!cb.hasRemaining()) {
+                    underflow = new char[]{c};
+                    break;
                 }
-                last = cb.remaining();
+                if (Character.isLowSurrogate(cb.get(cb.position()))) {
+                    cb.get();
+                }
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) '?');
             }
-        } catch (IOException e) {
-            error = true;
         }
+        return written + buffer.position() - start;
     }
 
     public void write(final int c) {
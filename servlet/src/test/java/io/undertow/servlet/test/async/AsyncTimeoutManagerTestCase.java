@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.async;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.undertow.servlet.core.AsyncTimeoutManager;
+import io.undertow.testutils.DefaultServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioIoThread;
+
+@RunWith(DefaultServer.class)
+public class AsyncTimeoutManagerTestCase {
+
+    @Test
+    public void testTimeoutsFireAndCanBeCancelled() throws InterruptedException {
+        final AsyncTimeoutManager manager = new AsyncTimeoutManager(10);
+        final XnioIoThread thread = DefaultServer.getWorker().getIoThread();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicBoolean cancelledRan = new AtomicBoolean();
+
+        manager.schedule(thread, new CountDown(latch), 50);
+        XnioExecutor.Key cancelled = manager.schedule(thread, new Runnable() {
+            @Override
+            public void run() {
+                cancelledRan.set(true);
+            }
+        }, 50);
+        //scheduled with a later deadline, but must not delay the earlier ones
+        manager.schedule(thread, new CountDown(latch), 100);
+        Assert.assertEquals(3, manager.getScheduledTimeouts());
+
+        Assert.assertTrue(cancelled.remove());
+        Assert.assertFalse(cancelled.remove());
+        Assert.assertEquals(2, manager.getScheduledTimeouts());
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(cancelledRan.get());
+        Assert.assertEquals(0, manager.getScheduledTimeouts());
+    }
+
+    private static final class CountDown implements Runnable {
+        private final CountDownLatch latch;
+
+        private CountDown(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+}
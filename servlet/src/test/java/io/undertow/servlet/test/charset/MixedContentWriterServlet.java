@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.charset;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes mostly ASCII content with occasional multi byte characters, with surrogate pairs split across writes.
+ */
+public class MixedContentWriterServlet extends HttpServlet {
+
+    public static final int ITERATIONS = 5000;
+    public static final String FIRST = "Hello world, café 中文 \uD835";
+    public static final String SECOND = "\uDD0A and some more ascii text\n";
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        final String charset = req.getParameter("charset");
+        resp.setCharacterEncoding(charset);
+        if (req.getParameter("contentLength") != null) {
+            //everything in a single write, so the content length is reached part way through the write
+            final String content = content();
+            resp.setContentLength(content.getBytes(charset).length);
+            resp.getWriter().write(content);
+            return;
+        }
+        PrintWriter writer = resp.getWriter();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            writer.write(FIRST);
+            writer.write(SECOND);
+        }
+        writer.close();
+    }
+
+    public static String content() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            content.append(FIRST);
+            content.append(SECOND);
+        }
+        return content.toString();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.charset;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+
+import io.undertow.servlet.api.ServletInfo;
+import io.undertow.servlet.test.util.DeploymentUtils;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests that the writer produces the same bytes as the JDK encoders, for output that is larger than the
+ * response buffer.
+ */
+@RunWith(DefaultServer.class)
+public class MixedContentWriterTestCase {
+
+    @BeforeClass
+    public static void setup() throws ServletException {
+        DeploymentUtils.setupServlet(
+                new ServletInfo("servlet", MixedContentWriterServlet.class)
+                        .addMapping("/"));
+    }
+
+    @Test
+    public void testUtf8() throws IOException {
+        runTest("UTF-8");
+    }
+
+    @Test
+    public void testIso88591() throws IOException {
+        runTest("ISO-8859-1");
+    }
+
+    @Test
+    public void testUtf16() throws IOException {
+        runTest("UTF-16BE");
+    }
+
+    @Test
+    public void testUtf8WithContentLength() throws IOException {
+        runTest("UTF-8&contentLength=true");
+    }
+
+    @Test
+    public void testIso88591WithContentLength() throws IOException {
+        runTest("ISO-8859-1&contentLength=true");
+    }
+
+    @Test
+    public void testUtf16WithContentLength() throws IOException {
+        runTest("UTF-16BE&contentLength=true");
+    }
+
+    private void runTest(final String query) throws IOException {
+        final String charset = query.contains("&") ? query.substring(0, query.indexOf('&')) : query;
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/servletContext?charset=" + query);
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            byte[] response = HttpClientUtils.readRawResponse(result);
+            Assert.assertArrayEquals(MixedContentWriterServlet.content().getBytes(charset), response);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.lifecycle;
+
+import java.io.IOException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.ServletInfo;
+import io.undertow.servlet.test.util.DeploymentUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that servlets with the same load on startup value are initialized concurrently
+ * when a startup executor is configured.
+ */
+public class ParallelStartupTestCase {
+
+    private static final CyclicBarrier BARRIER = new CyclicBarrier(2);
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        DeploymentUtils.setupServlet(new ServletExtension() {
+                                         @Override
+                                         public void handleDeployment(final DeploymentInfo deploymentInfo, final ServletContext servletContext) {
+                                             deploymentInfo.setStartupExecutor(executor);
+                                         }
+                                     },
+                new ServletInfo("p1", ParallelServlet.class)
+                        .setLoadOnStartup(1),
+                new ServletInfo("p2", ParallelServlet.class)
+                        .setLoadOnStartup(1),
+                new ServletInfo("last", LastServlet.class)
+                        .setLoadOnStartup(2));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testServletsInitializedConcurrently() {
+        //both parallel servlets wait for each other in init(), so this would have failed if they ran sequentially
+        Assert.assertEquals(2, ParallelServlet.initCount);
+        Assert.assertTrue(LastServlet.init);
+    }
+
+    public static class ParallelServlet extends HttpServlet {
+
+        static volatile int initCount;
+
+        @Override
+        public void init(final ServletConfig config) throws ServletException {
+            super.init(config);
+            try {
+                BARRIER.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new ServletException(e);
+            }
+            synchronized (ParallelServlet.class) {
+                initCount++;
+            }
+        }
+
+        @Override
+        protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        }
+    }
+
+    public static class LastServlet extends HttpServlet {
+
+        static volatile boolean init;
+
+        @Override
+        public void init(final ServletConfig config) throws ServletException {
+            super.init(config);
+            Assert.assertEquals(2, ParallelServlet.initCount);
+            init = true;
+        }
+
+        @Override
+        protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.path;
+
+import java.io.File;
+import java.util.Collections;
+import javax.servlet.ServletException;
+
+import io.undertow.server.handlers.resource.FileResourceManager;
+import io.undertow.server.handlers.resource.ResourceChangeEvent;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
+import io.undertow.servlet.api.Deployment;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.api.ServletContainer;
+import io.undertow.servlet.api.ServletInfo;
+import io.undertow.servlet.handlers.ServletPathMatch;
+import io.undertow.servlet.handlers.ServletPathMatches;
+import io.undertow.servlet.test.util.DeploymentUtils;
+import io.undertow.servlet.test.util.TestClassIntrospector;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.util.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(DefaultServer.class)
+public class ServletPathMatchCacheTestCase {
+
+    private static Deployment deployment;
+    private static File tmpDir;
+
+    @BeforeClass
+    public static void setup() throws ServletException {
+        tmpDir = new File(System.getProperty("java.io.tmpdir") + "/pathMatchCacheTest");
+        new File(tmpDir, "dir").mkdirs();
+        new File(tmpDir, "empty").mkdirs();
+        deployment = DeploymentUtils.setupServlet(
+                new ServletInfo("/a/*", PathMappingServlet.class)
+                        .addMapping("/a/*"),
+                new ServletInfo("*.jsp", PathMappingServlet.class)
+                        .addMapping("*.jsp"));
+    }
+
+    @AfterClass
+    public static void after() {
+        FileUtils.deleteRecursive(tmpDir);
+    }
+
+    @Test
+    public void testMatchesAreCached() {
+        ServletPathMatches paths = deployment.getServletPaths();
+        long hits = paths.getCacheHits();
+        long misses = paths.getCacheMisses();
+
+        ServletPathMatch first = paths.getServletHandlerByPath("/a/cached");
+        ServletPathMatch second = paths.getServletHandlerByPath("/a/cached");
+        Assert.assertSame(first, second);
+        Assert.assertEquals("/a", first.getMatched());
+        Assert.assertEquals(misses + 1, paths.getCacheMisses());
+        Assert.assertEquals(hits + 1, paths.getCacheHits());
+
+        ServletPathMatch jsp = paths.getServletHandlerByPath("/page.jsp");
+        Assert.assertEquals("*.jsp", jsp.getServletChain().getManagedServlet().getServletInfo().getName());
+    }
+
+    @Test
+    public void testInvalidateClearsCache() {
+        ServletPathMatches paths = deployment.getServletPaths();
+        ServletPathMatch first = paths.getServletHandlerByPath("/a/invalidated");
+        paths.invalidate();
+        long misses = paths.getCacheMisses();
+        ServletPathMatch second = paths.getServletHandlerByPath("/a/invalidated");
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(misses + 1, paths.getCacheMisses());
+        Assert.assertEquals(first.getMatched(), second.getMatched());
+    }
+
+    @Test
+    public void testWelcomeFileMatchesAreCached() throws Exception {
+        TestResourceManager resourceManager = new TestResourceManager(tmpDir);
+        new File(tmpDir, "dir/index.html").createNewFile();
+        DeploymentManager manager = deployWelcomeFiles(resourceManager, true);
+        try {
+            ServletPathMatches paths = manager.getDeployment().getServletPaths();
+            Assert.assertNotNull(resourceManager.listener);
+
+            ServletPathMatch welcome = paths.getServletHandlerByPath("/dir/");
+            Assert.assertEquals(ServletPathMatch.Type.REWRITE, welcome.getType());
+            Assert.assertEquals("index.html", welcome.getRewriteLocation());
+            long misses = paths.getCacheMisses();
+            Assert.assertSame(welcome, paths.getServletHandlerByPath("/dir/"));
+            Assert.assertEquals(misses, paths.getCacheMisses());
+
+            //a directory without a welcome file is a negative result, which is cached as well
+            ServletPathMatch none = paths.getServletHandlerByPath("/empty/");
+            Assert.assertEquals(ServletPathMatch.Type.NORMAL, none.getType());
+            misses = paths.getCacheMisses();
+            Assert.assertSame(none, paths.getServletHandlerByPath("/empty/"));
+            Assert.assertEquals(misses, paths.getCacheMisses());
+
+            //adding a welcome file changes the result, once the change event has been delivered
+            new File(tmpDir, "empty/index.html").createNewFile();
+            resourceManager.listener.handleChanges(Collections.singletonList(new ResourceChangeEvent("/empty/index.html", ResourceChangeEvent.Type.ADDED)));
+            ServletPathMatch added = paths.getServletHandlerByPath("/empty/");
+            Assert.assertEquals(misses + 1, paths.getCacheMisses());
+            Assert.assertEquals(ServletPathMatch.Type.REWRITE, added.getType());
+            Assert.assertEquals("index.html", added.getRewriteLocation());
+        } finally {
+            manager.stop();
+            manager.undeploy();
+        }
+        //the listener is removed with the deployment
+        Assert.assertNull(resourceManager.listener);
+    }
+
+    @Test
+    public void testWelcomeFileMatchesNotCachedByDefault() throws Exception {
+        TestResourceManager resourceManager = new TestResourceManager(tmpDir);
+        DeploymentManager manager = deployWelcomeFiles(resourceManager, false);
+        try {
+            ServletPathMatches paths = manager.getDeployment().getServletPaths();
+            paths.getServletHandlerByPath("/dir/");
+            long misses = paths.getCacheMisses();
+            paths.getServletHandlerByPath("/dir/");
+            Assert.assertEquals(misses + 1, paths.getCacheMisses());
+            //no change listener, so nothing is watching the document root
+            Assert.assertNull(resourceManager.listener);
+        } finally {
+            manager.stop();
+            manager.undeploy();
+        }
+    }
+
+    private static DeploymentManager deployWelcomeFiles(final TestResourceManager resourceManager, final boolean cacheWelcomeFiles) throws ServletException {
+        DeploymentInfo builder = new DeploymentInfo()
+                .setClassLoader(ServletPathMatchCacheTestCase.class.getClassLoader())
+                .setContextPath("/welcome")
+                .setClassIntrospecter(TestClassIntrospector.INSTANCE)
+                .setDeploymentName("welcome.war")
+                .setResourceManager(resourceManager)
+                .addWelcomePage("index.html")
+                .setCacheWelcomeFileMatches(cacheWelcomeFiles);
+        DeploymentManager manager = ServletContainer.Factory.newInstance().addDeployment(builder);
+        manager.deploy();
+        manager.start();
+        return manager;
+    }
+
+    /**
+     * Resource manager that records the change listener instead of watching the file system, so the test can
+     * deliver change events itself.
+     */
+    private static final class TestResourceManager extends FileResourceManager {
+
+        volatile ResourceChangeListener listener;
+
+        TestResourceManager(final File base) {
+            super(base, 10485760);
+        }
+
+        @Override
+        public void registerResourceChangeListener(final ResourceChangeListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removeResourceChangeListener(final ResourceChangeListener listener) {
+            if (this.listener == listener) {
+                this.listener = null;
+            }
+        }
+    }
+}
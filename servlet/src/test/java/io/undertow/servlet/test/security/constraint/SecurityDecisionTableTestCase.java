@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.security.constraint;
+
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.SecurityConstraint;
+import io.undertow.servlet.api.WebResourceCollection;
+import io.undertow.servlet.handlers.security.SecurityPathMatches;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SecurityDecisionTableTestCase {
+
+    private static SecurityPathMatches build() {
+        SecurityPathMatches.Builder builder = SecurityPathMatches.builder(new DeploymentInfo());
+        builder.addSecurityConstraint(new SecurityConstraint()
+                .addRoleAllowed("admin")
+                .addWebResourceCollection(new WebResourceCollection()
+                        .addUrlPattern("/secured/*")));
+        builder.addSecurityConstraint(new SecurityConstraint()
+                .addRoleAllowed("writer")
+                .addWebResourceCollection(new WebResourceCollection()
+                        .addUrlPattern("/secured/docs/*")
+                        .addHttpMethod("POST")));
+        return builder.build();
+    }
+
+    @Test
+    public void testDecisionsAreSharedBetweenPaths() {
+        SecurityPathMatches matches = build();
+        Object first = matches.getSecurityInfo("/secured/a", "GET");
+        Object second = matches.getSecurityInfo("/secured/b/c", "GET");
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, matches.getDecisionCount());
+
+        Object unmatched = matches.getSecurityInfo("/public", "GET");
+        Assert.assertNotSame(first, unmatched);
+        Assert.assertSame(unmatched, matches.getSecurityInfo("/other/path.html", "GET"));
+        Assert.assertEquals(2, matches.getDecisionCount());
+    }
+
+    @Test
+    public void testUnknownMethodsShareADecision() {
+        SecurityPathMatches matches = build();
+        Object get = matches.getSecurityInfo("/secured/docs/a", "GET");
+        Object custom = matches.getSecurityInfo("/secured/docs/b", "SOMETHING");
+        Assert.assertSame(get, custom);
+
+        Object post = matches.getSecurityInfo("/secured/docs/a", "POST");
+        Assert.assertNotSame(get, post);
+        Assert.assertSame(post, matches.getSecurityInfo("/secured/docs/c", "POST"));
+        Assert.assertEquals(2, matches.getDecisionCount());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.streams;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.undertow.servlet.spec.ServletInputStreamImpl;
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
+import org.xnio.Pooled;
+
+/**
+ * Echoes the request body by handing the request buffers straight to the response stream.
+ */
+public class PooledBufferEchoServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        final ServletInputStreamImpl in = (ServletInputStreamImpl) req.getInputStream();
+        final ServletOutputStreamImpl out = (ServletOutputStreamImpl) resp.getOutputStream();
+        Pooled<ByteBuffer> pooled;
+        while ((pooled = in.readPooled()) != null) {
+            out.write(pooled);
+        }
+    }
+}
@@ -50,6 +50,7 @@ public class ServletInputStreamTestCase {
     public static final String HELLO_WORLD = "Hello World";
     public static final String BLOCKING_SERVLET = "blockingInput";
     public static final String ASYNC_SERVLET = "asyncInput";
+    public static final String POOLED_SERVLET = "pooledInput";
 
     @BeforeClass
     public static void setup() throws ServletException {
@@ -58,7 +59,9 @@ public class ServletInputStreamTestCase {
                         .addMapping("/" + BLOCKING_SERVLET),
                 new ServletInfo(ASYNC_SERVLET, AsyncInputStreamServlet.class)
                         .addMapping("/" + ASYNC_SERVLET)
-                        .setAsyncSupported(true));
+                        .setAsyncSupported(true),
+                new ServletInfo(POOLED_SERVLET, PooledBufferEchoServlet.class)
+                        .addMapping("/" + POOLED_SERVLET));
     }
 
     @Test
@@ -77,6 +80,21 @@ public class ServletInputStreamTestCase {
         }
     }
 
+    @Test
+    public void testPooledBufferEcho() {
+        StringBuilder builder = new StringBuilder(1000 * HELLO_WORLD.length());
+        for (int i = 0; i < 10; ++i) {
+            try {
+                for (int j = 0; j < 1000; ++j) {
+                    builder.append(HELLO_WORLD);
+                }
+                runTest(builder.toString(), POOLED_SERVLET);
+            } catch (Throwable e) {
+                throw new RuntimeException("test failed with i equal to " + i, e);
+            }
+        }
+    }
+
     @Test
     public void testAsyncServletInputStream() {
         //for(int h = 0; h < 20 ; ++h) {
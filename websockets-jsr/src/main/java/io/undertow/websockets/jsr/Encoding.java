@@ -22,9 +22,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +37,7 @@ import javax.websocket.EncodeException;
 import javax.websocket.Encoder;
 
 import io.undertow.servlet.api.InstanceHandle;
+import org.xnio.Buffers;
 
 /**
  * Manages all encoders and decoders for an endpoint instance
@@ -48,7 +52,18 @@ public class Encoding implements Closeable {
     private final Map<Class<?>, List<InstanceHandle<? extends Encoder>>> textEncoders;
     private final Map<Class<?>, List<InstanceHandle<? extends Decoder>>> textDecoders;
 
+    /**
+     * The factory this encoding was created from, or null if it was created directly. The factory resolves which
+     * registered encoders are used for a given type, and shares the result between all sessions of the endpoint.
+     */
+    private final EncodingFactory factory;
+
     public Encoding(final Map<Class<?>, List<InstanceHandle<? extends Encoder>>> binaryEncoders, final Map<Class<?>, List<InstanceHandle<? extends Decoder>>> binaryDecoders, final Map<Class<?>, List<InstanceHandle<? extends Encoder>>> textEncoders, final Map<Class<?>, List<InstanceHandle<? extends Decoder>>> textDecoders) {
+        this(null, binaryEncoders, binaryDecoders, textEncoders, textDecoders);
+    }
+
+    Encoding(final EncodingFactory factory, final Map<Class<?>, List<InstanceHandle<? extends Encoder>>> binaryEncoders, final Map<Class<?>, List<InstanceHandle<? extends Decoder>>> binaryDecoders, final Map<Class<?>, List<InstanceHandle<? extends Encoder>>> textEncoders, final Map<Class<?>, List<InstanceHandle<? extends Decoder>>> textDecoders) {
+        this.factory = factory;
         this.binaryEncoders = binaryEncoders;
         this.binaryDecoders = binaryDecoders;
         this.textEncoders = textEncoders;
@@ -56,19 +71,18 @@ public class Encoding implements Closeable {
     }
 
 
+    /**
+     * @return The factory this encoding was created from, or null if it was not created by a factory
+     */
+    EncodingFactory getFactory() {
+        return factory;
+    }
+
     public boolean canEncodeText(final Class<?> type) {
         if (EncodingFactory.isPrimitiveOrBoxed(type)) {
             return true;
         }
-        if(textEncoders.containsKey(type)) {
-            return true;
-        }
-        for(Class<?> key : textEncoders.keySet()) {
-            if(key.isAssignableFrom(type)) {
-                return true;
-            }
-        }
-        return false;
+        return !textEncodersFor(type).isEmpty();
     }
 
 
@@ -81,16 +95,7 @@ public class Encoding implements Closeable {
 
 
     public boolean canEncodeBinary(final Class<?> type) {
-        if(binaryEncoders.containsKey(type)) {
-            return true;
-        }
-
-        for(Class<?> key : binaryEncoders.keySet()) {
-            if(key.isAssignableFrom(type)) {
-                return true;
-            }
-        }
-        return false;
+        return !binaryEncodersFor(type).isEmpty();
     }
 
 
@@ -99,6 +104,46 @@ public class Encoding implements Closeable {
     }
 
 
+    /**
+     * Returns true if text messages of the given type are decoded by a {@link Decoder.TextStream}, in which case
+     * the message can be decoded as it arrives instead of being buffered.
+     */
+    public boolean isStreamingTextDecoder(final Class<?> type) {
+        return firstDecoder(textDecoders, type) instanceof Decoder.TextStream;
+    }
+
+    /**
+     * Returns true if binary messages of the given type are decoded by a {@link Decoder.BinaryStream}, in which case
+     * the message can be decoded as it arrives instead of being buffered.
+     */
+    public boolean isStreamingBinaryDecoder(final Class<?> type) {
+        return firstDecoder(binaryDecoders, type) instanceof Decoder.BinaryStream;
+    }
+
+    private static Decoder firstDecoder(final Map<Class<?>, List<InstanceHandle<? extends Decoder>>> decoders, final Class<?> type) {
+        List<InstanceHandle<? extends Decoder>> handles = decoders.get(type);
+        if (handles == null || handles.isEmpty()) {
+            return null;
+        }
+        return handles.get(0).getInstance();
+    }
+
+    public Object decodeText(final Class<?> targetType, final Reader message) throws DecodeException, IOException {
+        Decoder decoder = firstDecoder(textDecoders, targetType);
+        if (!(decoder instanceof Decoder.TextStream)) {
+            throw new DecodeException("", "Could not decode text stream");
+        }
+        return ((Decoder.TextStream) decoder).decode(message);
+    }
+
+    public Object decodeBinary(final Class<?> targetType, final InputStream message) throws DecodeException, IOException {
+        Decoder decoder = firstDecoder(binaryDecoders, targetType);
+        if (!(decoder instanceof Decoder.BinaryStream)) {
+            throw new DecodeException(Buffers.EMPTY_BYTE_BUFFER, "Could not decode binary stream");
+        }
+        return ((Decoder.BinaryStream) decoder).decode(message);
+    }
+
     public Object decodeText(final Class<?> targetType, final String message) throws DecodeException {
         if (EncodingFactory.isPrimitiveOrBoxed(targetType)) {
             return decodePrimitive(targetType, message);
@@ -172,16 +217,8 @@ public class Encoding implements Closeable {
         if (EncodingFactory.isPrimitiveOrBoxed(o.getClass())) {
             return o.toString();
         }
-        List<InstanceHandle<? extends Encoder>> encoders = textEncoders.get(o.getClass());
-        if(encoders == null) {
-            for(Map.Entry<Class<?>, List<InstanceHandle<? extends Encoder>>> entry : textEncoders.entrySet()) {
-                if(entry.getKey().isAssignableFrom(o.getClass())) {
-                    encoders = entry.getValue();
-                    break;
-                }
-            }
-        }
-        if (encoders != null) {
+        List<InstanceHandle<? extends Encoder>> encoders = textEncodersFor(o.getClass());
+        if (!encoders.isEmpty()) {
             for (InstanceHandle<? extends Encoder> decoderHandle : encoders) {
                 Encoder decoder = decoderHandle.getInstance();
                 if (decoder instanceof Encoder.Text) {
@@ -201,17 +238,8 @@ public class Encoding implements Closeable {
     }
 
     public ByteBuffer encodeBinary(final Object o) throws EncodeException {
-        List<InstanceHandle<? extends Encoder>> encoders = binaryEncoders.get(o.getClass());
-
-        if(encoders == null) {
-            for(Map.Entry<Class<?>, List<InstanceHandle<? extends Encoder>>> entry : binaryEncoders.entrySet()) {
-                if(entry.getKey().isAssignableFrom(o.getClass())) {
-                    encoders = entry.getValue();
-                    break;
-                }
-            }
-        }
-        if (encoders != null) {
+        List<InstanceHandle<? extends Encoder>> encoders = binaryEncodersFor(o.getClass());
+        if (!encoders.isEmpty()) {
             for (InstanceHandle<? extends Encoder> decoderHandle : encoders) {
                 Encoder decoder = decoderHandle.getInstance();
                 if (decoder instanceof Encoder.Binary) {
@@ -230,6 +258,27 @@ public class Encoding implements Closeable {
         throw new EncodeException(o, "Could not encode binary");
     }
 
+    private List<InstanceHandle<? extends Encoder>> textEncodersFor(final Class<?> type) {
+        final Class<?> registered = factory == null ? EncodingFactory.findEncoderType(textEncoders.keySet(), type) : factory.resolveTextEncoderType(type);
+        return encodersFor(textEncoders, registered);
+    }
+
+    private List<InstanceHandle<? extends Encoder>> binaryEncodersFor(final Class<?> type) {
+        final Class<?> registered = factory == null ? EncodingFactory.findEncoderType(binaryEncoders.keySet(), type) : factory.resolveBinaryEncoderType(type);
+        return encodersFor(binaryEncoders, registered);
+    }
+
+    private static List<InstanceHandle<? extends Encoder>> encodersFor(final Map<Class<?>, List<InstanceHandle<? extends Encoder>>> encoders, final Class<?> registered) {
+        if (registered == null) {
+            return Collections.emptyList();
+        }
+        final List<InstanceHandle<? extends Encoder>> result = encoders.get(registered);
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
     @Override
     public void close() {
         for (Map.Entry<Class<?>, List<InstanceHandle<? extends Decoder>>> entry : binaryDecoders.entrySet()) {
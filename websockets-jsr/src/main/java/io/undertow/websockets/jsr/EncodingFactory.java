@@ -26,10 +26,13 @@ import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.websocket.Decoder;
 import javax.websocket.DeploymentException;
@@ -60,11 +63,76 @@ public class EncodingFactory {
     private final Map<Class<?>, List<InstanceFactory<? extends Encoder>>> textEncoders;
     private final Map<Class<?>, List<InstanceFactory<? extends Decoder>>> textDecoders;
 
+    /**
+     * Marks a type that no encoder can handle, as a concurrent map cannot hold null values
+     */
+    private static final Class<?> NO_ENCODER = Void.class;
+
+    /**
+     * The registered encoder type to use for each type that is sent. Encoders are registered for a declared type,
+     * which may be a super type of the object that is actually sent. The registered types are resolved up front,
+     * other types are resolved the first time they are seen. These are shared by every {@link Encoding} created by
+     * this factory, so they only have to be resolved once per endpoint rather than once per session.
+     */
+    private final ConcurrentMap<Class<?>, Class<?>> binaryEncoderTypes;
+    private final ConcurrentMap<Class<?>, Class<?>> textEncoderTypes;
+
     public EncodingFactory(final Map<Class<?>, List<InstanceFactory<? extends Encoder>>> binaryEncoders, final Map<Class<?>, List<InstanceFactory<? extends Decoder>>> binaryDecoders, final Map<Class<?>, List<InstanceFactory<? extends Encoder>>> textEncoders, final Map<Class<?>, List<InstanceFactory<? extends Decoder>>> textDecoders) {
         this.binaryEncoders = binaryEncoders;
         this.binaryDecoders = binaryDecoders;
         this.textEncoders = textEncoders;
         this.textDecoders = textDecoders;
+        this.binaryEncoderTypes = registeredTypes(binaryEncoders.keySet());
+        this.textEncoderTypes = registeredTypes(textEncoders.keySet());
+    }
+
+    private static ConcurrentMap<Class<?>, Class<?>> registeredTypes(final Collection<Class<?>> types) {
+        final ConcurrentMap<Class<?>, Class<?>> result = new ConcurrentHashMap<Class<?>, Class<?>>(Math.max(types.size() * 2, 16));
+        for (Class<?> type : types) {
+            result.put(type, type);
+        }
+        return result;
+    }
+
+    /**
+     * @return The registered type of the text encoders for the given type, or null if it cannot be encoded
+     */
+    Class<?> resolveTextEncoderType(final Class<?> type) {
+        return resolveEncoderType(textEncoders.keySet(), textEncoderTypes, type);
+    }
+
+    /**
+     * @return The registered type of the binary encoders for the given type, or null if it cannot be encoded
+     */
+    Class<?> resolveBinaryEncoderType(final Class<?> type) {
+        return resolveEncoderType(binaryEncoders.keySet(), binaryEncoderTypes, type);
+    }
+
+    private static Class<?> resolveEncoderType(final Collection<Class<?>> registered, final ConcurrentMap<Class<?>, Class<?>> resolved, final Class<?> type) {
+        Class<?> result = resolved.get(type);
+        if (result == null) {
+            result = findEncoderType(registered, type);
+            resolved.putIfAbsent(type, result == null ? NO_ENCODER : result);
+            return result;
+        }
+        return result == NO_ENCODER ? null : result;
+    }
+
+    /**
+     * Finds the registered encoder type that can encode the given type, without caching the result
+     *
+     * @return The registered type, or null if there is none
+     */
+    static Class<?> findEncoderType(final Collection<Class<?>> registered, final Class<?> type) {
+        if (registered.contains(type)) {
+            return type;
+        }
+        for (Class<?> candidate : registered) {
+            if (candidate.isAssignableFrom(type)) {
+                return candidate;
+            }
+        }
+        return null;
     }
 
     public boolean canEncodeText(final Class<?> type) {
@@ -135,7 +203,7 @@ public class EncodingFactory {
                     val.add(instance);
                 }
             }
-            return new Encoding(binaryEncoders, binaryDecoders, textEncoders, textDecoders);
+            return new Encoding(this, binaryEncoders, binaryDecoders, textEncoders, textDecoders);
         } catch (InstantiationException e) {
             throw new RuntimeException(e);
         }
@@ -27,6 +27,7 @@ import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
 import io.undertow.websockets.jsr.util.ClassUtils;
 import org.xnio.Buffers;
+import org.xnio.IoUtils;
 import org.xnio.Pooled;
 
 import javax.websocket.CloseReason;
@@ -37,9 +38,11 @@ import javax.websocket.PongMessage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -56,6 +59,7 @@ class FrameHandler extends AbstractReceiveListener {
     private final Endpoint endpoint;
     private final UndertowSession session;
     protected static final byte[] EMPTY = new byte[0];
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private final ConcurrentMap<FrameType, HandlerWrapper> handlers = new ConcurrentHashMap<FrameType, HandlerWrapper>();
     private final Executor executor;
 
@@ -137,7 +141,9 @@ class FrameHandler extends AbstractReceiveListener {
     @Override
     protected void onText(WebSocketChannel webSocketChannel, StreamSourceFrameChannel messageChannel) throws IOException {
         final HandlerWrapper handler = getHandler(FrameType.TEXT);
-        if (handler != null && handler.isPartialHandler()) {
+        if (handler != null && handler.isStreaming()) {
+            streamMessage(messageChannel, handler, getMaxTextBufferSize());
+        } else if (handler != null && handler.isPartialHandler()) {
             BufferedTextMessage data = new BufferedTextMessage(false);
             data.read(messageChannel, new WebSocketCallback<BufferedTextMessage>() {
                 @Override
@@ -159,7 +165,9 @@ class FrameHandler extends AbstractReceiveListener {
     @Override
     protected void onBinary(WebSocketChannel webSocketChannel, StreamSourceFrameChannel messageChannel) throws IOException {
         final HandlerWrapper handler = getHandler(FrameType.BYTE);
-        if (handler != null && handler.isPartialHandler()) {
+        if (handler != null && handler.isStreaming()) {
+            streamMessage(messageChannel, handler, getMaxBinaryBufferSize());
+        } else if (handler != null && handler.isPartialHandler()) {
             BufferedBinaryMessage data = new BufferedBinaryMessage(session.getMaxBinaryMessageBufferSize(), false);
             data.read(messageChannel, new WebSocketCallback<BufferedBinaryMessage>() {
                 @Override
@@ -178,6 +186,47 @@ class FrameHandler extends AbstractReceiveListener {
 
     }
 
+    /**
+     * Delivers a message to a handler that consumes it as a stream. The handler is invoked straight away, and reads
+     * the message as it arrives, so only a few buffers are held for the message no matter how large it is.
+     */
+    private void streamMessage(final StreamSourceFrameChannel messageChannel, final HandlerWrapper handler, final long maxMessageSize) {
+        final MessageInputStream stream = new MessageInputStream(messageChannel, maxMessageSize);
+        stream.start();
+        session.getContainer().invokeEndpointMethod(executor, new Runnable() {
+            @Override
+            public void run() {
+                MessageHandler.Whole mHandler = (MessageHandler.Whole) handler.getHandler();
+                try {
+                    if (handler.getFrameType() == FrameType.TEXT) {
+                        Reader reader = new InputStreamReader(stream, UTF_8.newDecoder());
+                        if (handler.getMessageType() == Reader.class) {
+                            mHandler.onMessage(reader);
+                        } else {
+                            mHandler.onMessage(getSession().getEncoding().decodeText(handler.getMessageType(), reader));
+                        }
+                    } else {
+                        if (handler.getMessageType() == InputStream.class) {
+                            mHandler.onMessage(stream);
+                        } else {
+                            mHandler.onMessage(getSession().getEncoding().decodeBinary(handler.getMessageType(), stream));
+                        }
+                    }
+                    IOException failure = stream.getFailure();
+                    if (failure != null) {
+                        invokeOnError(failure);
+                    }
+                } catch (DecodeException e) {
+                    invokeOnError(e);
+                } catch (IOException e) {
+                    invokeOnError(e);
+                } finally {
+                    IoUtils.safeClose(stream);
+                }
+            }
+        });
+    }
+
     private void invokeBinaryHandler(final BufferedBinaryMessage context, final HandlerWrapper handler, final boolean finalFragment) {
 
         final Pooled<ByteBuffer[]> pooled = context.getData();
@@ -357,20 +406,28 @@ class FrameHandler extends AbstractReceiveListener {
             }
             throw JsrWebSocketMessages.MESSAGES.unsupportedFrameType(type);
         }
-        if (type == byte[].class || type == ByteBuffer.class || type == InputStream.class) {
+        //stream based handlers can read the message as it arrives, as long as they are not run in the IO thread
+        boolean blockingAllowed = session.getContainer().isDispatchToWorker();
+        if (type == byte[].class || type == ByteBuffer.class) {
             return new HandlerWrapper(FrameType.BYTE, handler, type, false, false);
         }
-        if (type == String.class || type == Reader.class) {
+        if (type == InputStream.class) {
+            return new HandlerWrapper(FrameType.BYTE, handler, type, false, false, blockingAllowed);
+        }
+        if (type == String.class) {
             return new HandlerWrapper(FrameType.TEXT, handler, type, false, false);
         }
+        if (type == Reader.class) {
+            return new HandlerWrapper(FrameType.TEXT, handler, type, false, false, blockingAllowed);
+        }
         if (type == PongMessage.class) {
             return new HandlerWrapper(FrameType.PONG, handler, type, false, false);
         }
         Encoding encoding = session.getEncoding();
         if (encoding.canDecodeText(type)) {
-            return new HandlerWrapper(FrameType.TEXT, handler, type, true, false);
+            return new HandlerWrapper(FrameType.TEXT, handler, type, true, false, blockingAllowed && encoding.isStreamingTextDecoder(type));
         } else if (encoding.canDecodeBinary(type)) {
-            return new HandlerWrapper(FrameType.BYTE, handler, type, true, false);
+            return new HandlerWrapper(FrameType.BYTE, handler, type, true, false, blockingAllowed && encoding.isStreamingBinaryDecoder(type));
         }
         throw JsrWebSocketMessages.MESSAGES.unsupportedFrameType(type);
     }
@@ -429,14 +486,20 @@ class FrameHandler extends AbstractReceiveListener {
         private final Class<?> msgType;
         private final boolean decodingNeeded;
         private final boolean partialHandler;
+        private final boolean streaming;
 
         private HandlerWrapper(final FrameType frameType, MessageHandler handler, final Class<?> msgType, final boolean decodingNeeded, final boolean partialHandler) {
+            this(frameType, handler, msgType, decodingNeeded, partialHandler, false);
+        }
+
+        private HandlerWrapper(final FrameType frameType, MessageHandler handler, final Class<?> msgType, final boolean decodingNeeded, final boolean partialHandler, final boolean streaming) {
             this.frameType = frameType;
             this.handler = handler;
 
             this.msgType = msgType;
             this.decodingNeeded = decodingNeeded;
             this.partialHandler = partialHandler;
+            this.streaming = streaming;
         }
 
         /**
@@ -465,6 +528,13 @@ class FrameHandler extends AbstractReceiveListener {
             return partialHandler;
         }
 
+        /**
+         * Returns true if the message is read by the handler as it arrives, rather than being buffered first.
+         */
+        boolean isStreaming() {
+            return streaming;
+        }
+
     }
 
     UndertowSession getSession() {
@@ -28,6 +28,7 @@ import org.jboss.logging.annotations.MessageBundle;
 import javax.websocket.Decoder;
 import javax.websocket.DeploymentException;
 import javax.websocket.Encoder;
+import javax.websocket.Session;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.List;
@@ -136,4 +137,10 @@ public interface JsrWebSocketMessages {
 
     @Message(id = 3034, value = "Server provided extension %s which was not in client supported extensions %s")
     IOException extensionWasNotPresentInClientHandshake(String e, List<WebSocketExtension> supportedExtensions);
+
+    @Message(id = 3035, value = "Session %s was not created by Undertow and cannot be used for a broadcast")
+    IllegalArgumentException notAnUndertowSession(Session session);
+
+    @Message(id = 3036, value = "Message stream is closed")
+    IOException streamIsClosed();
 }
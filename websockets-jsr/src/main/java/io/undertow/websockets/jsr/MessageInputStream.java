@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.jsr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import io.undertow.websockets.core.CloseMessage;
+import io.undertow.websockets.core.StreamSourceFrameChannel;
+import io.undertow.websockets.core.WebSocketMessages;
+import io.undertow.websockets.core.WebSockets;
+import org.xnio.ChannelListener;
+import org.xnio.Pooled;
+
+/**
+ * An input stream that delivers a web socket message to a blocking consumer as it is read off the wire.
+ * <p>
+ * The frame channel is read by the IO thread, which hands the filled buffers over to the consumer. At most
+ * {@link #MAX_QUEUED_BUFFERS} buffers are queued, once this limit is reached reads are suspended until the consumer
+ * catches up, so the memory used by a message is bounded no matter how large the message is.
+ * <p>
+ * The consumer must not run in the IO thread.
+ */
+final class MessageInputStream extends InputStream implements ChannelListener<StreamSourceFrameChannel> {
+
+    static final int MAX_QUEUED_BUFFERS = 3;
+
+    private final StreamSourceFrameChannel channel;
+    private final long maxMessageSize;
+    private final Runnable resumeTask = new Runnable() {
+        @Override
+        public void run() {
+            channel.resumeReads();
+        }
+    };
+
+    /**
+     * The buffers that have been read but not yet consumed, guarded by this
+     */
+    private final Deque<Pooled<ByteBuffer>> queued = new ArrayDeque<Pooled<ByteBuffer>>();
+    private boolean suspended;
+    private boolean complete;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * The buffer the IO thread is currently reading into
+     */
+    private Pooled<ByteBuffer> filling;
+    private long messageSize;
+
+    /**
+     * The buffer the consumer is currently reading from
+     */
+    private Pooled<ByteBuffer> current;
+
+    MessageInputStream(final StreamSourceFrameChannel channel, final long maxMessageSize) {
+        this.channel = channel;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Starts reading the message. This must be called from the IO thread.
+     */
+    void start() {
+        channel.getReadSetter().set(this);
+        channel.resumeReads();
+    }
+
+    @Override
+    public void handleEvent(final StreamSourceFrameChannel channel) {
+        try {
+            for (; ; ) {
+                synchronized (this) {
+                    if (closed) {
+                        freeFilling();
+                        channel.discard();
+                        return;
+                    }
+                    if (queued.size() >= MAX_QUEUED_BUFFERS) {
+                        channel.suspendReads();
+                        suspended = true;
+                        return;
+                    }
+                }
+                if (filling == null) {
+                    filling = channel.getWebSocketChannel().getBufferPool().allocate();
+                }
+                int res = channel.read(filling.getResource());
+                if (res == -1) {
+                    channel.suspendReads();
+                    synchronized (this) {
+                        publish();
+                        complete = true;
+                        notifyAll();
+                    }
+                    return;
+                } else if (res == 0) {
+                    //hand over what we have so far, the consumer should not have to wait for the buffer to fill up
+                    synchronized (this) {
+                        publish();
+                    }
+                    return;
+                }
+                checkMaxSize(res);
+                if (!filling.getResource().hasRemaining()) {
+                    synchronized (this) {
+                        publish();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            channel.suspendReads();
+            freeFilling();
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    private void publish() {
+        if (closed) {
+            freeFilling();
+        } else if (filling != null && filling.getResource().position() > 0) {
+            filling.getResource().flip();
+            queued.add(filling);
+            filling = null;
+            notifyAll();
+        }
+    }
+
+    private void freeFilling() {
+        if (filling != null) {
+            filling.free();
+            filling = null;
+        }
+    }
+
+    private void checkMaxSize(int res) throws IOException {
+        messageSize += res;
+        if (maxMessageSize > 0 && messageSize > maxMessageSize) {
+            WebSockets.sendClose(new CloseMessage(CloseMessage.MSG_TOO_BIG, WebSocketMessages.MESSAGES.messageToBig(maxMessageSize)).toByteBuffer(), channel.getWebSocketChannel(), null);
+            throw new IOException(WebSocketMessages.MESSAGES.messageToBig(maxMessageSize));
+        }
+    }
+
+    /**
+     * @return The exception that stopped the message from being read, or <code>null</code> if there was none
+     */
+    synchronized IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBuffer()) {
+            return -1;
+        }
+        return current.getResource().get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBuffer()) {
+            return -1;
+        }
+        ByteBuffer buffer = current.getResource();
+        int res = Math.min(len, buffer.remaining());
+        buffer.get(b, off, res);
+        return res;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (current != null) {
+            return current.getResource().remaining();
+        }
+        return 0;
+    }
+
+    /**
+     * Makes sure that {@link #current} has data available, blocking if required.
+     *
+     * @return <code>false</code> if the end of the message has been reached
+     */
+    private boolean nextBuffer() throws IOException {
+        if (current != null) {
+            if (current.getResource().hasRemaining()) {
+                return true;
+            }
+            current.free();
+            current = null;
+        }
+        boolean resume = false;
+        synchronized (this) {
+            if (closed) {
+                throw JsrWebSocketMessages.MESSAGES.streamIsClosed();
+            }
+            while (queued.isEmpty() && !complete && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            current = queued.poll();
+            if (current == null) {
+                if (failure != null) {
+                    throw new IOException(failure);
+                }
+                return false;
+            }
+            if (suspended) {
+                suspended = false;
+                resume = true;
+            }
+        }
+        if (resume) {
+            channel.getIoThread().execute(resumeTask);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean resume = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Pooled<ByteBuffer> buffer = queued.poll();
+            while (buffer != null) {
+                buffer.free();
+                buffer = queued.poll();
+            }
+            if (suspended) {
+                //the rest of the message still has to be discarded
+                suspended = false;
+                resume = true;
+            }
+        }
+        if (current != null) {
+            current.free();
+            current = null;
+        }
+        if (resume) {
+            channel.getIoThread().execute(resumeTask);
+        }
+    }
+}
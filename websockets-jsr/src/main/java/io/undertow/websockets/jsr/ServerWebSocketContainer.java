@@ -282,6 +282,13 @@ public class ServerWebSocketContainer implements ServerContainer, Closeable {
         return Collections.emptySet();
     }
 
+    /**
+     * @return <code>true</code> if endpoint methods are invoked in a worker thread, and so are allowed to block
+     */
+    public boolean isDispatchToWorker() {
+        return dispatchToWorker;
+    }
+
     /**
      * Runs a web socket invocation, setting up the threads and dispatching a thread pool
      * <p/>
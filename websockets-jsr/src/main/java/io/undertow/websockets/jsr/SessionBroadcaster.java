@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.jsr;
+
+import io.undertow.websockets.core.WebSocketBroadcaster;
+import io.undertow.websockets.core.WebSocketChannel;
+
+import javax.websocket.EncodeException;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the same message to a large number of {@link Session}s, using a {@link WebSocketBroadcaster}.
+ * <p>
+ * Objects are encoded once for all sessions of the same endpoint, rather than once per session. Every session has
+ * its own encoder instances, so the encoders of the first session of each endpoint are used for all of them, which
+ * assumes the encoders are stateless.
+ */
+public class SessionBroadcaster {
+
+    private final WebSocketBroadcaster broadcaster;
+
+    public SessionBroadcaster(final WebSocketBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    public void broadcastText(final String message, final Collection<? extends Session> sessions) {
+        broadcaster.broadcastText(message, channels(sessions));
+    }
+
+    public void broadcastBinary(final ByteBuffer data, final Collection<? extends Session> sessions) {
+        broadcaster.broadcastBinary(data, channels(sessions));
+    }
+
+    public void broadcastObject(final Object message, final Collection<? extends Session> sessions) throws EncodeException {
+        final Map<Object, EncodingGroup> groups = new IdentityHashMap<Object, EncodingGroup>();
+        for (Session session : sessions) {
+            final UndertowSession undertowSession = undertowSession(session);
+            final Encoding encoding = undertowSession.getEncoding();
+            //every session has its own encoder instances, but sessions of the same endpoint share the factory
+            final Object key = encoding.getFactory() == null ? encoding : encoding.getFactory();
+            EncodingGroup group = groups.get(key);
+            if (group == null) {
+                groups.put(key, group = new EncodingGroup(encoding));
+            }
+            group.channels.add(undertowSession.getWebSocketChannel());
+        }
+        for (EncodingGroup group : groups.values()) {
+            final Encoding encoding = group.encoding;
+            if (encoding.canEncodeText(message.getClass())) {
+                broadcaster.broadcastText(encoding.encodeText(message), group.channels);
+            } else if (encoding.canEncodeBinary(message.getClass())) {
+                broadcaster.broadcastBinary(encoding.encodeBinary(message), group.channels);
+            } else {
+                throw new EncodeException(message, "No suitable encoder found");
+            }
+        }
+    }
+
+    public WebSocketBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    private static List<WebSocketChannel> channels(final Collection<? extends Session> sessions) {
+        final List<WebSocketChannel> channels = new ArrayList<WebSocketChannel>(sessions.size());
+        for (Session session : sessions) {
+            channels.add(undertowSession(session).getWebSocketChannel());
+        }
+        return channels;
+    }
+
+    private static UndertowSession undertowSession(final Session session) {
+        if (session instanceof UndertowSession) {
+            return (UndertowSession) session;
+        }
+        throw JsrWebSocketMessages.MESSAGES.notAnUndertowSession(session);
+    }
+
+    private static final class EncodingGroup {
+        /**
+         * The encoding of the first session in the group, which is used to encode the message for all of them
+         */
+        final Encoding encoding;
+        final List<WebSocketChannel> channels = new ArrayList<WebSocketChannel>();
+
+        private EncodingGroup(final Encoding encoding) {
+            this.encoding = encoding;
+        }
+    }
+}
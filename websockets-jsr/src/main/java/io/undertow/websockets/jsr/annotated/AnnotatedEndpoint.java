@@ -47,8 +47,6 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Executor;
 
 /**
@@ -87,16 +85,16 @@ public class AnnotatedEndpoint extends Endpoint {
         s.setReceiveListener(new AnnotatedEndpointFrameHandler((UndertowSession) session, partialText, partialBinary));
 
         if (webSocketOpen != null) {
-            final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-            params.put(Session.class, session);
-            params.put(EndpointConfig.class, endpointConfiguration);
-            params.put(Map.class, session.getPathParameters());
+            final Object[] params = BoundMethod.arguments();
+            params[BoundMethod.SESSION] = session;
+            params[BoundMethod.ENDPOINT_CONFIG] = endpointConfiguration;
+            params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
             invokeMethod(params, webSocketOpen, s);
         }
 
     }
 
-    private void invokeMethod(final Map<Class<?>, Object> params, final BoundMethod method, final UndertowSession session) {
+    private void invokeMethod(final Object[] params, final BoundMethod method, final UndertowSession session) {
         session.getContainer().invokeEndpointMethod(executor, new Runnable() {
             @Override
             public void run() {
@@ -112,10 +110,10 @@ public class AnnotatedEndpoint extends Endpoint {
     @Override
     public void onClose(final Session session, final CloseReason closeReason) {
         if (webSocketClose != null) {
-            final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-            params.put(Session.class, session);
-            params.put(Map.class, session.getPathParameters());
-            params.put(CloseReason.class, closeReason);
+            final Object[] params = BoundMethod.arguments();
+            params[BoundMethod.SESSION] = session;
+            params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
+            params[BoundMethod.CLOSE_REASON] = closeReason;
             invokeMethod(params, webSocketClose, (UndertowSession) session);
         }
     }
@@ -124,10 +122,10 @@ public class AnnotatedEndpoint extends Endpoint {
     public void onError(final Session session, final Throwable thr) {
         try {
             if (webSocketError != null) {
-                final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-                params.put(Session.class, session);
-                params.put(Throwable.class, thr);
-                params.put(Map.class, session.getPathParameters());
+                final Object[] params = BoundMethod.arguments();
+                params[BoundMethod.SESSION] = session;
+                params[BoundMethod.THROWABLE] = thr;
+                params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
                 ((UndertowSession) session).getContainer().invokeEndpointMethod(executor, new Runnable() {
                     @Override
                     public void run() {
@@ -201,10 +199,10 @@ public class AnnotatedEndpoint extends Endpoint {
             try {
                 if (webSocketClose != null) {
                     try {
-                        final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-                        params.put(Session.class, session);
-                        params.put(Map.class, session.getPathParameters());
-                        params.put(CloseReason.class, new CloseReason(CloseReason.CloseCodes.getCloseCode(cm.getCode()), cm.getReason()));
+                        final Object[] params = BoundMethod.arguments();
+                        params[BoundMethod.SESSION] = session;
+                        params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
+                        params[BoundMethod.CLOSE_REASON] = new CloseReason(CloseReason.CloseCodes.getCloseCode(cm.getCode()), cm.getReason());
                         invokeMethod(params, webSocketClose, session);
                     } catch (Exception e) {
                         AnnotatedEndpoint.this.onError(session, e);
@@ -230,10 +228,10 @@ public class AnnotatedEndpoint extends Endpoint {
             Pooled<ByteBuffer[]> pooled = bufferedBinaryMessage.getData();
             try {
                 PongMessage message = DefaultPongMessage.create(WebSockets.mergeBuffers(pooled.getResource()));
-                final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-                params.put(Session.class, session);
-                params.put(Map.class, session.getPathParameters());
-                params.put(PongMessage.class, message);
+                final Object[] params = BoundMethod.arguments();
+                params[BoundMethod.SESSION] = session;
+                params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
+                params[BoundMethod.MESSAGE] = message;
                 session.getContainer().invokeEndpointMethod(executor, new Runnable() {
                     @Override
                     public void run() {
@@ -312,11 +310,11 @@ public class AnnotatedEndpoint extends Endpoint {
                 messageObject = data;
             }
 
-            final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-            params.put(Session.class, session);
-            params.put(Map.class, session.getPathParameters());
-            params.put(textMessage.getMessageType(), messageObject);
-            params.put(boolean.class, finalFragment);
+            final Object[] params = BoundMethod.arguments();
+            params[BoundMethod.SESSION] = session;
+            params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
+            params[BoundMethod.MESSAGE] = messageObject;
+            params[BoundMethod.LAST] = finalFragment;
             session.getContainer().invokeEndpointMethod(executor, new Runnable() {
                 @Override
                 public void run() {
@@ -397,25 +395,25 @@ public class AnnotatedEndpoint extends Endpoint {
             }
             final Pooled<ByteBuffer[]> pooled = message.getData();
             try {
-                final Map<Class<?>, Object> params = new HashMap<Class<?>, Object>();
-                params.put(Session.class, session);
-                params.put(Map.class, session.getPathParameters());
+                final Object[] params = BoundMethod.arguments();
+                params[BoundMethod.SESSION] = session;
+                params[BoundMethod.PATH_PARAMETERS] = session.getPathParameters();
                 if (binaryMessage.isDecoderRequired()) {
                     try {
-                        params.put(binaryMessage.getMessageType(), session.getEncoding().decodeBinary(binaryMessage.getMessageType(), toArray(pooled.getResource())));
+                        params[BoundMethod.MESSAGE] = session.getEncoding().decodeBinary(binaryMessage.getMessageType(), toArray(pooled.getResource()));
                     } catch (Exception e) {
                         AnnotatedEndpoint.this.onError(session, e);
                         return;
                     }
                 } else if (binaryMessage.getMessageType() == ByteBuffer.class) {
-                    params.put(ByteBuffer.class, WebSockets.mergeBuffers(pooled.getResource()));
+                    params[BoundMethod.MESSAGE] = WebSockets.mergeBuffers(pooled.getResource());
                 } else if (binaryMessage.getMessageType() == byte[].class) {
-                    params.put(byte[].class, toArray(pooled.getResource()));
+                    params[BoundMethod.MESSAGE] = toArray(pooled.getResource());
                 } else if (binaryMessage.getMessageType() == InputStream.class) {
-                    params.put(InputStream.class, new ByteArrayInputStream(toArray(pooled.getResource())));
+                    params[BoundMethod.MESSAGE] = new ByteArrayInputStream(toArray(pooled.getResource()));
                 } else {
                     try {
-                        params.put(binaryMessage.getMessageType(), session.getEncoding().decodeBinary(binaryMessage.getMessageType(), toArray(pooled.getResource())));
+                        params[BoundMethod.MESSAGE] = session.getEncoding().decodeBinary(binaryMessage.getMessageType(), toArray(pooled.getResource()));
                     } catch (DecodeException e) {
                         AnnotatedEndpoint.this.onError(session, e);
                         return;
@@ -423,7 +421,7 @@ public class AnnotatedEndpoint extends Endpoint {
                     //decoders
                     throw new RuntimeException("decoders are not implemented yet");
                 }
-                params.put(boolean.class, finalFragment);
+                params[BoundMethod.LAST] = finalFragment;
                 session.getContainer().invokeEndpointMethod(executor, new Runnable() {
                     @Override
                     public void run() {
@@ -303,14 +303,20 @@ public class AnnotatedEndpointFactory implements InstanceFactory<Endpoint> {
 
         private final int position;
         private final Class<?> type;
+        private final int slot;
 
+        /**
+         * Binds the message parameter
+         */
         public BoundSingleParameter(int position, final Class<?> type) {
             this.position = position;
             this.type = type;
+            this.slot = BoundMethod.MESSAGE;
         }
 
         public BoundSingleParameter(final Method method, final Class<?> type, final boolean optional) {
             this.type = type;
+            this.slot = BoundMethod.argumentSlot(type);
             int pos = -1;
             for (int i = 0; i < method.getParameterTypes().length; ++i) {
                 boolean pathParam = false;
@@ -347,11 +353,11 @@ public class AnnotatedEndpointFactory implements InstanceFactory<Endpoint> {
         }
 
 
-        public void populate(final Object[] params, final Map<Class<?>, Object> value) {
+        public void populate(final Object[] params, final Object[] arguments) {
             if (position == -1) {
                 return;
             }
-            params[position] = value.get(type);
+            params[position] = arguments[slot];
         }
 
         @Override
@@ -412,8 +418,8 @@ public class AnnotatedEndpointFactory implements InstanceFactory<Endpoint> {
         }
 
 
-        public void populate(final Object[] params, final Map<Class<?>, Object> value) throws DecodeException {
-            final Map<String, String> data = (Map<String, String>) value.get(Map.class);
+        public void populate(final Object[] params, final Object[] arguments) throws DecodeException {
+            final Map<String, String> data = (Map<String, String>) arguments[BoundMethod.PATH_PARAMETERS];
             for (int i = 0; i < positions.length; ++i) {
                 String name = positions[i];
                 if (name != null) {
@@ -27,18 +27,35 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.websocket.CloseReason;
 import javax.websocket.DecodeException;
 import javax.websocket.DeploymentException;
+import javax.websocket.EndpointConfig;
+import javax.websocket.Session;
 
 import io.undertow.websockets.jsr.JsrWebSocketMessages;
 
 /**
- * A method with bound parameters
+ * A method with bound parameters.
+ * <p>
+ * The binding is resolved when the endpoint is deployed: every parameter knows which argument slot it is read from,
+ * so an invocation only has to fill in a small fixed size argument array, rather than building a map that is
+ * keyed by type.
  */
 final class BoundMethod {
 
+    static final int SESSION = 0;
+    static final int PATH_PARAMETERS = 1;
+    static final int ENDPOINT_CONFIG = 2;
+    static final int CLOSE_REASON = 3;
+    static final int THROWABLE = 4;
+    static final int MESSAGE = 5;
+    static final int LAST = 6;
+    static final int ARGUMENT_COUNT = 7;
+
     private final Method method;
-    private final List<BoundParameter> parameters = new ArrayList<BoundParameter>();
+    private final int parameterCount;
+    private final BoundParameter[] parameters;
     private final Set<Class> paramTypes = new HashSet<Class>();
     private final Class<?> messageType;
     private final boolean decoderRequired;
@@ -49,6 +66,8 @@ final class BoundMethod {
         this.messageType = messageType;
         this.decoderRequired = decoderRequired;
         this.maxMessageSize = maxMessageSize;
+        this.parameterCount = method.getParameterTypes().length;
+        final List<BoundParameter> parameters = new ArrayList<BoundParameter>();
         final Set<Integer> allParams = new HashSet<Integer>();
         for (int i = 0; i < method.getParameterTypes().length; ++i) {
             allParams.add(i);
@@ -58,6 +77,7 @@ final class BoundMethod {
             parameters.add(param);
             allParams.removeAll(param.positions());
         }
+        this.parameters = parameters.toArray(new BoundParameter[parameters.size()]);
         if (!allParams.isEmpty()) {
             //first check to see if the user has accidentally used the wrong PathParam annotation
             //and if so throw a more informative error message
@@ -79,10 +99,40 @@ final class BoundMethod {
         method.setAccessible(true);
     }
 
-    public Object invoke(final Object instance, final Map<Class<?>, Object> values) throws DecodeException {
-        final Object[] params = new Object[method.getParameterTypes().length];
+    /**
+     * Returns the argument slot that provides values of the given type, for parameters that are not the message itself
+     *
+     * @param type The parameter type
+     * @return The slot
+     */
+    static int argumentSlot(final Class<?> type) {
+        if (type == Session.class) {
+            return SESSION;
+        } else if (type == Map.class) {
+            return PATH_PARAMETERS;
+        } else if (type == EndpointConfig.class) {
+            return ENDPOINT_CONFIG;
+        } else if (type == CloseReason.class) {
+            return CLOSE_REASON;
+        } else if (type == Throwable.class) {
+            return THROWABLE;
+        } else if (type == boolean.class) {
+            return LAST;
+        }
+        throw new IllegalArgumentException(type.getName());
+    }
+
+    /**
+     * @return A new argument array, to be filled in using the slot constants
+     */
+    static Object[] arguments() {
+        return new Object[ARGUMENT_COUNT];
+    }
+
+    public Object invoke(final Object instance, final Object[] arguments) throws DecodeException {
+        final Object[] params = new Object[parameterCount];
         for (BoundParameter param : parameters) {
-            param.populate(params, values);
+            param.populate(params, arguments);
         }
         try {
             return method.invoke(instance, params);
@@ -18,7 +18,6 @@
 
 package io.undertow.websockets.jsr.annotated;
 
-import java.util.Map;
 import java.util.Set;
 
 import javax.websocket.DecodeException;
@@ -29,7 +28,13 @@ import javax.websocket.DecodeException;
 public interface BoundParameter {
     Set<Integer> positions();
 
-    void populate(final Object[] params, final Map<Class<?>, Object> value) throws DecodeException;
+    /**
+     * Populates the method parameters from the invocation arguments
+     *
+     * @param params    The method parameters
+     * @param arguments The arguments, indexed by the slot constants in {@link BoundMethod}
+     */
+    void populate(final Object[] params, final Object[] arguments) throws DecodeException;
 
     Class<?> getType();
 }
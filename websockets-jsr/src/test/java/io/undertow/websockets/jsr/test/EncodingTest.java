@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.jsr.test;
+
+import io.undertow.servlet.api.InstanceHandle;
+import io.undertow.servlet.test.util.TestClassIntrospector;
+import io.undertow.servlet.util.ImmediateInstanceHandle;
+import io.undertow.websockets.jsr.Encoding;
+import io.undertow.websockets.jsr.EncodingFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.websocket.Decoder;
+import javax.websocket.DeploymentException;
+import javax.websocket.EncodeException;
+import javax.websocket.Encoder;
+import javax.websocket.EndpointConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EncodingTest {
+
+    @Test
+    public void testEncoderResolvedForSubclass() throws EncodeException {
+        Map<Class<?>, List<InstanceHandle<? extends Encoder>>> textEncoders = new HashMap<Class<?>, List<InstanceHandle<? extends Encoder>>>();
+        List<InstanceHandle<? extends Encoder>> encoders = new ArrayList<InstanceHandle<? extends Encoder>>();
+        encoders.add(new ImmediateInstanceHandle<Encoder>(new BaseTextEncoder()));
+        textEncoders.put(Base.class, encoders);
+        Encoding encoding = new Encoding(Collections.<Class<?>, List<InstanceHandle<? extends Encoder>>>emptyMap(),
+                Collections.<Class<?>, List<InstanceHandle<? extends Decoder>>>emptyMap(),
+                textEncoders,
+                Collections.<Class<?>, List<InstanceHandle<? extends Decoder>>>emptyMap());
+
+        Assert.assertTrue(encoding.canEncodeText(Base.class));
+        Assert.assertTrue(encoding.canEncodeText(Derived.class));
+        Assert.assertFalse(encoding.canEncodeText(Object.class));
+        Assert.assertFalse(encoding.canEncodeBinary(Derived.class));
+
+        //the second lookup is answered from the resolved encoders, and must give the same result
+        for (int i = 0; i < 2; ++i) {
+            Assert.assertEquals("base", encoding.encodeText(new Base()));
+            Assert.assertEquals("derived", encoding.encodeText(new Derived()));
+            try {
+                encoding.encodeText(new Object());
+                Assert.fail();
+            } catch (EncodeException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testEncoderResolutionSharedBetweenEncodings() throws EncodeException, DeploymentException {
+        EncodingFactory factory = EncodingFactory.createFactory(TestClassIntrospector.INSTANCE,
+                Collections.<Class<? extends Decoder>>emptyList(),
+                Collections.<Class<? extends Encoder>>singletonList(BaseTextEncoder.class));
+        //the types resolved by the first encoding are used by the second one, which has its own encoder instances
+        for (int i = 0; i < 2; ++i) {
+            Encoding encoding = factory.createEncoding(null);
+            Assert.assertTrue(encoding.canEncodeText(Derived.class));
+            Assert.assertFalse(encoding.canEncodeText(Object.class));
+            Assert.assertFalse(encoding.canEncodeBinary(Derived.class));
+            Assert.assertEquals("base", encoding.encodeText(new Base()));
+            Assert.assertEquals("derived", encoding.encodeText(new Derived()));
+            try {
+                encoding.encodeText(new Object());
+                Assert.fail();
+            } catch (EncodeException expected) {
+            }
+            encoding.close();
+        }
+    }
+
+    public static class Base {
+        @Override
+        public String toString() {
+            return "base";
+        }
+    }
+
+    public static class Derived extends Base {
+        @Override
+        public String toString() {
+            return "derived";
+        }
+    }
+
+    public static class BaseTextEncoder implements Encoder.Text<Base> {
+        @Override
+        public String encode(final Base object) {
+            return object.toString();
+        }
+
+        @Override
+        public void init(final EndpointConfig config) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.jsr.test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.EncodeException;
+import javax.websocket.Encoder;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpointConfig;
+
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.api.ServletContainer;
+import io.undertow.servlet.test.util.TestClassIntrospector;
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.websockets.core.WebSocketBroadcaster;
+import io.undertow.websockets.jsr.DefaultWebSocketClientSslProvider;
+import io.undertow.websockets.jsr.SessionBroadcaster;
+import io.undertow.websockets.jsr.WebSocketDeploymentInfo;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.ByteBufferSlicePool;
+
+/**
+ * Tests that an object broadcast to several sessions of the same endpoint is only encoded once.
+ */
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class SessionBroadcasterTest {
+
+    private static final int SESSIONS = 5;
+
+    private static final AtomicInteger encodeCount = new AtomicInteger();
+    private static final LinkedBlockingDeque<Session> serverSessions = new LinkedBlockingDeque<Session>();
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        final ServletContainer container = ServletContainer.Factory.newInstance();
+
+        WebSocketDeploymentInfo webSocketDeploymentInfo = new WebSocketDeploymentInfo()
+                .setBuffers(new ByteBufferSlicePool(100, 1000))
+                .setWorker(DefaultServer.getWorker())
+                .addEndpoint(ServerEndpointConfig.Builder.create(BroadcastEndpoint.class, "/broadcast")
+                        .encoders(Collections.<Class<? extends Encoder>>singletonList(CountingEncoder.class))
+                        .build());
+
+        DeploymentInfo builder = new DeploymentInfo()
+                .setClassLoader(SessionBroadcasterTest.class.getClassLoader())
+                .setContextPath("/")
+                .setClassIntrospecter(TestClassIntrospector.INSTANCE)
+                .addServletContextAttribute(WebSocketDeploymentInfo.ATTRIBUTE_NAME, webSocketDeploymentInfo)
+                .setDeploymentName("servletContext.war");
+
+        DeploymentManager manager = container.addDeployment(builder);
+        manager.deploy();
+
+        DefaultServer.setRootHandler(manager.start());
+        DefaultServer.startSSLServer();
+    }
+
+    @AfterClass
+    public static void after() throws IOException {
+        DefaultServer.stopSSLServer();
+    }
+
+    @Test
+    public void testObjectIsEncodedOnce() throws Exception {
+        final List<ClientEndpoint> endpoints = new ArrayList<ClientEndpoint>();
+        final List<Session> clientSessions = new ArrayList<Session>();
+        final List<Session> sessions = new ArrayList<Session>();
+        try {
+            for (int i = 0; i < SESSIONS; ++i) {
+                ClientEndpoint endpoint = new ClientEndpoint();
+                endpoints.add(endpoint);
+                clientSessions.add(connect(endpoint));
+                Session session = serverSessions.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(session);
+                sessions.add(session);
+            }
+
+            SessionBroadcaster broadcaster = new SessionBroadcaster(new WebSocketBroadcaster(WebSocketBroadcaster.SlowConsumerPolicy.QUEUE, 10));
+            broadcaster.broadcastObject(new Payload("hello"), sessions);
+            for (ClientEndpoint endpoint : endpoints) {
+                Assert.assertEquals("payload:hello", endpoint.messages.poll(10, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, encodeCount.get());
+        } finally {
+            for (Session session : clientSessions) {
+                session.close();
+            }
+        }
+    }
+
+    private static Session connect(final Endpoint endpoint) throws Exception {
+        SSLContext context = DefaultServer.getClientSSLContext();
+        ClientEndpointConfig clientEndpointConfig = ClientEndpointConfig.Builder.create().build();
+        clientEndpointConfig.getUserProperties().put(DefaultWebSocketClientSslProvider.SSL_CONTEXT, context);
+        return ContainerProvider.getWebSocketContainer().connectToServer(endpoint, clientEndpointConfig, new URI("wss://" + DefaultServer.getHostAddress("default") + ":" + DefaultServer.getHostSSLPort("default") + "/broadcast"));
+    }
+
+    public static class ClientEndpoint extends Endpoint {
+
+        final LinkedBlockingDeque<String> messages = new LinkedBlockingDeque<String>();
+
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(new MessageHandler.Whole<String>() {
+                @Override
+                public void onMessage(final String message) {
+                    messages.add(message);
+                }
+            });
+        }
+    }
+
+    public static class BroadcastEndpoint extends Endpoint {
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            serverSessions.add(session);
+        }
+    }
+
+    public static class Payload {
+
+        final String text;
+
+        Payload(final String text) {
+            this.text = text;
+        }
+    }
+
+    public static class CountingEncoder implements Encoder.Text<Payload> {
+
+        @Override
+        public String encode(final Payload object) throws EncodeException {
+            encodeCount.incrementAndGet();
+            return "payload:" + object.text;
+        }
+
+        @Override
+        public void init(final EndpointConfig config) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.jsr.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.CloseReason;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DecodeException;
+import javax.websocket.Decoder;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpointConfig;
+
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.api.ServletContainer;
+import io.undertow.servlet.test.util.TestClassIntrospector;
+import io.undertow.testutils.AjpIgnore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.SpdyIgnore;
+import io.undertow.websockets.jsr.DefaultWebSocketClientSslProvider;
+import io.undertow.websockets.jsr.WebSocketDeploymentInfo;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.ByteBufferSlicePool;
+
+/**
+ * Tests whole message handlers that read the message as a stream while it arrives, which is only done when
+ * endpoint invocations are dispatched to a worker thread. The buffers are much smaller than the messages, so
+ * every message is spread over a lot of buffers.
+ */
+@RunWith(DefaultServer.class)
+@AjpIgnore
+@SpdyIgnore
+public class StreamingMessageHandlerTest {
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final int MAX_MESSAGE_SIZE = 10 * BUFFER_SIZE;
+
+    private static byte[] bytes;
+    private static String text;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        bytes = new byte[256 * 1024];
+        new Random().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 256 * 1024) {
+            sb.append("Some streamed text \u00e9\u00e8\u20ac ");
+        }
+        text = sb.toString();
+
+        final ServletContainer container = ServletContainer.Factory.newInstance();
+
+        WebSocketDeploymentInfo webSocketDeploymentInfo = new WebSocketDeploymentInfo()
+                .setBuffers(new ByteBufferSlicePool(BUFFER_SIZE, 64 * BUFFER_SIZE))
+                .setWorker(DefaultServer.getWorker())
+                .addEndpoint(ServerEndpointConfig.Builder.create(InputStreamEndpoint.class, "/stream").build())
+                .addEndpoint(ServerEndpointConfig.Builder.create(ReaderEndpoint.class, "/reader").build())
+                .addEndpoint(ServerEndpointConfig.Builder.create(DecoderEndpoint.class, "/decoder")
+                        .decoders(Collections.<Class<? extends Decoder>>singletonList(PayloadDecoder.class))
+                        .build())
+                .addEndpoint(ServerEndpointConfig.Builder.create(UnreadEndpoint.class, "/unread").build())
+                .addEndpoint(ServerEndpointConfig.Builder.create(LimitedEndpoint.class, "/limited").build());
+        webSocketDeploymentInfo.setDispatchToWorkerThread(true);
+
+        DeploymentInfo builder = new DeploymentInfo()
+                .setClassLoader(StreamingMessageHandlerTest.class.getClassLoader())
+                .setContextPath("/")
+                .setClassIntrospecter(TestClassIntrospector.INSTANCE)
+                .addServletContextAttribute(WebSocketDeploymentInfo.ATTRIBUTE_NAME, webSocketDeploymentInfo)
+                .setDeploymentName("servletContext.war");
+
+        DeploymentManager manager = container.addDeployment(builder);
+        manager.deploy();
+
+        DefaultServer.setRootHandler(manager.start());
+        DefaultServer.startSSLServer();
+    }
+
+    @AfterClass
+    public static void after() throws IOException {
+        DefaultServer.stopSSLServer();
+    }
+
+    @Test
+    public void testInputStreamHandler() throws Exception {
+        ClientEndpoint endpoint = new ClientEndpoint();
+        Session session = connect(endpoint, "/stream");
+        session.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes));
+        Assert.assertArrayEquals(bytes, (byte[]) endpoint.messages.poll(15, TimeUnit.SECONDS));
+        session.close();
+    }
+
+    @Test
+    public void testReaderHandler() throws Exception {
+        ClientEndpoint endpoint = new ClientEndpoint();
+        Session session = connect(endpoint, "/reader");
+        session.getBasicRemote().sendText(text);
+        Assert.assertEquals(text, endpoint.messages.poll(15, TimeUnit.SECONDS));
+        session.close();
+    }
+
+    @Test
+    public void testTextStreamDecoder() throws Exception {
+        ClientEndpoint endpoint = new ClientEndpoint();
+        Session session = connect(endpoint, "/decoder");
+        session.getBasicRemote().sendText(text);
+        Assert.assertEquals(text, endpoint.messages.poll(15, TimeUnit.SECONDS));
+        session.close();
+    }
+
+    @Test
+    public void testUnreadMessageIsDiscarded() throws Exception {
+        ClientEndpoint endpoint = new ClientEndpoint();
+        Session session = connect(endpoint, "/unread");
+        //the handler returns straight away for the first message, the rest of it must be discarded
+        //and the next message delivered as normal
+        session.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes));
+        session.getBasicRemote().sendBinary(ByteBuffer.wrap("second".getBytes("UTF-8")));
+        Assert.assertArrayEquals("second".getBytes("UTF-8"), (byte[]) endpoint.messages.poll(15, TimeUnit.SECONDS));
+        session.close();
+    }
+
+    @Test
+    public void testMaxMessageSize() throws Exception {
+        ClientEndpoint endpoint = new ClientEndpoint();
+        Session session = connect(endpoint, "/limited");
+        session.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes));
+        CloseReason reason = endpoint.closes.poll(15, TimeUnit.SECONDS);
+        Assert.assertNotNull(reason);
+        Assert.assertEquals(CloseReason.CloseCodes.TOO_BIG.getCode(), reason.getCloseCode().getCode());
+        Assert.assertTrue(endpoint.messages.isEmpty());
+    }
+
+    private static Session connect(final Endpoint endpoint, final String path) throws Exception {
+        SSLContext context = DefaultServer.getClientSSLContext();
+        ClientEndpointConfig clientEndpointConfig = ClientEndpointConfig.Builder.create().build();
+        clientEndpointConfig.getUserProperties().put(DefaultWebSocketClientSslProvider.SSL_CONTEXT, context);
+        return ContainerProvider.getWebSocketContainer().connectToServer(endpoint, clientEndpointConfig, new URI("wss://" + DefaultServer.getHostAddress("default") + ":" + DefaultServer.getHostSSLPort("default") + path));
+    }
+
+    private static byte[] readFully(final InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[100];
+        int res;
+        while ((res = stream.read(buf)) != -1) {
+            out.write(buf, 0, res);
+        }
+        return out.toByteArray();
+    }
+
+    private static String readFully(final Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[100];
+        int res;
+        while ((res = reader.read(buf)) != -1) {
+            sb.append(buf, 0, res);
+        }
+        return sb.toString();
+    }
+
+    public static class ClientEndpoint extends Endpoint {
+
+        final LinkedBlockingDeque<Object> messages = new LinkedBlockingDeque<Object>();
+        final LinkedBlockingDeque<CloseReason> closes = new LinkedBlockingDeque<CloseReason>();
+
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(new MessageHandler.Whole<byte[]>() {
+                @Override
+                public void onMessage(final byte[] message) {
+                    messages.add(message);
+                }
+            });
+            session.addMessageHandler(new MessageHandler.Whole<String>() {
+                @Override
+                public void onMessage(final String message) {
+                    messages.add(message);
+                }
+            });
+        }
+
+        @Override
+        public void onClose(final Session session, final CloseReason closeReason) {
+            closes.add(closeReason);
+        }
+    }
+
+    public static class InputStreamEndpoint extends Endpoint {
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(new MessageHandler.Whole<InputStream>() {
+                @Override
+                public void onMessage(final InputStream message) {
+                    try {
+                        session.getBasicRemote().sendBinary(ByteBuffer.wrap(readFully(message)));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    public static class ReaderEndpoint extends Endpoint {
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(new MessageHandler.Whole<Reader>() {
+                @Override
+                public void onMessage(final Reader message) {
+                    try {
+                        session.getBasicRemote().sendText(readFully(message));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    public static class DecoderEndpoint extends Endpoint {
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(new MessageHandler.Whole<Payload>() {
+                @Override
+                public void onMessage(final Payload message) {
+                    try {
+                        session.getBasicRemote().sendText(message.text);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    public static class UnreadEndpoint extends Endpoint {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(new MessageHandler.Whole<InputStream>() {
+                @Override
+                public void onMessage(final InputStream message) {
+                    if (count.getAndIncrement() == 0) {
+                        return;
+                    }
+                    try {
+                        session.getBasicRemote().sendBinary(ByteBuffer.wrap(readFully(message)));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    public static class LimitedEndpoint extends Endpoint {
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.setMaxBinaryMessageBufferSize(MAX_MESSAGE_SIZE);
+            session.addMessageHandler(new MessageHandler.Whole<InputStream>() {
+                @Override
+                public void onMessage(final InputStream message) {
+                    try {
+                        readFully(message);
+                    } catch (IOException expected) {
+                        //the message is too big, the failure is reported to onError and the session closed with 1009
+                        return;
+                    }
+                    try {
+                        session.getBasicRemote().sendBinary(ByteBuffer.wrap(new byte[0]));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    public static class Payload {
+
+        final String text;
+
+        Payload(final String text) {
+            this.text = text;
+        }
+    }
+
+    public static class PayloadDecoder implements Decoder.TextStream<Payload> {
+
+        @Override
+        public Payload decode(final Reader reader) throws DecodeException, IOException {
+            return new Payload(readFully(reader));
+        }
+
+        @Override
+        public void init(final EndpointConfig config) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}